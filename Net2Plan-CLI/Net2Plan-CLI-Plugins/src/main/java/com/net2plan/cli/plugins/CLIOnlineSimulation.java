@@ -21,6 +21,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.Option;
@@ -38,6 +39,7 @@ import com.net2plan.internal.IExternal;
 import com.net2plan.internal.SystemUtils;
 import com.net2plan.internal.plugins.ICLIModule;
 import com.net2plan.internal.sim.SimKernel;
+import com.net2plan.internal.sim.SimReplicationRunner;
 import com.net2plan.utils.ClassLoaderUtils;
 import com.net2plan.utils.HTMLUtils;
 import com.net2plan.utils.StringUtils;
@@ -110,6 +112,21 @@ public class CLIOnlineSimulation extends ICLIModule {
         eventProcessorClassName.setArgName("classname");
         eventProcessorClassName.setRequired(true);
         OPTIONS.addOption(eventProcessorClassName);
+
+        Option numReplications = new Option(null, "replications", true, "(Optional) Maximum number of independent replications, run in parallel with different random seeds derived from the given ones. The report shows the confidence intervals of the main metrics (default 1, no replications)");
+        numReplications.setType(PatternOptionBuilder.NUMBER_VALUE);
+        numReplications.setArgName("replications");
+        OPTIONS.addOption(numReplications);
+
+        Option ciMetric = new Option(null, "ci-metric", true, "(Optional) Metric whose confidence interval is checked to stop launching replications (e.g. layer0.blockedTrafficRatio)");
+        ciMetric.setType(PatternOptionBuilder.STRING_VALUE);
+        ciMetric.setArgName("metric");
+        OPTIONS.addOption(ciMetric);
+
+        Option ciRelativeHalfWidth = new Option(null, "ci-relative-half-width", true, "(Optional) Replications stop when the half width of the 95% confidence interval of 'ci-metric', relative to its mean, is below this value (default 0.05)");
+        ciRelativeHalfWidth.setType(PatternOptionBuilder.NUMBER_VALUE);
+        ciRelativeHalfWidth.setArgName("value");
+        OPTIONS.addOption(ciRelativeHalfWidth);
     }
 
     @Override
@@ -160,8 +177,47 @@ public class CLIOnlineSimulation extends ICLIModule {
 
 		/* Initialize and run simulation */
         NetPlan aux_netPlan = new NetPlan(inputFile);
-        String html = runSimulation(new SimKernel(), aux_netPlan, aux_eventGenerator, customEventGeneratorParameters, aux_eventProcessor, customEventProcessorParameters, customSimulationParameters, net2planParameters).getSecond();
-        HTMLUtils.saveToFile(outputFile, html);
+        int numReplications = cli.hasOption("replications") ? ((Number) cli.getParsedOptionValue("replications")).intValue() : 1;
+        if (numReplications <= 1)
+        {
+            String html = runSimulation(new SimKernel(), aux_netPlan, aux_eventGenerator, customEventGeneratorParameters, aux_eventProcessor, customEventProcessorParameters, customSimulationParameters, net2planParameters).getSecond();
+            HTMLUtils.saveToFile(outputFile, html);
+            return;
+        }
+
+        /* Run independent replications in parallel */
+        List<Triple<String, String, String>> defaultEventGeneratorParameters = null;
+        try { defaultEventGeneratorParameters = aux_eventGenerator.getParameters(); }
+        catch(UnsupportedOperationException ex) { }
+
+        List<Triple<String, String, String>> defaultEventProcessorParameters = null;
+        try { defaultEventProcessorParameters = aux_eventProcessor.getParameters(); }
+        catch(UnsupportedOperationException ex) { }
+
+        Map<String, String> eventGeneratorParameters = CommandLineParser.getParameters(defaultEventGeneratorParameters, customEventGeneratorParameters);
+        Map<String, String> eventProcessorParameters = CommandLineParser.getParameters(defaultEventProcessorParameters, customEventProcessorParameters);
+        Map<String, String> simulationParameters = CommandLineParser.getParameters(new SimKernel().getSimulationParameters(), customSimulationParameters);
+
+        SimReplicationRunner runner = new SimReplicationRunner(aux_netPlan, aux_eventGenerator, eventGeneratorParameters, aux_eventProcessor, eventProcessorParameters, simulationParameters, net2planParameters);
+        if (cli.hasOption("ci-metric"))
+        {
+            double maxRelativeHalfWidth = cli.hasOption("ci-relative-half-width") ? ((Number) cli.getParsedOptionValue("ci-relative-half-width")).doubleValue() : 0.05;
+            runner.setStopCriterion((String) cli.getParsedOptionValue("ci-metric"), maxRelativeHalfWidth);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool();
+        try
+        {
+            System.out.println("Simulation started (" + numReplications + " replications at most, " + pool.getParallelism() + " in parallel)...");
+            runner.run(Math.min(numReplications, Math.max(2, pool.getParallelism())), numReplications, pool);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        System.out.println(String.format("%nSimulation finished successfully (%d replications)", runner.getReplicationResults().size()));
+        HTMLUtils.saveToFile(outputFile, runner.getReport());
     }
 
     @Override
@@ -143,22 +143,21 @@ public class Demand extends NetworkElement
 		this.offeredTraffic = origin.offeredTraffic;
 		this.carriedTraffic = origin.carriedTraffic;
 		this.routingCycleType = origin.routingCycleType;
-		this.coupledUpperLayerLink = origin.coupledUpperLayerLink == null? null : this.netPlan.getLinkFromId (origin.coupledUpperLayerLink.id);
-		this.cache_routes = new LinkedHashSet<Route> ();
-		for (Route r : origin.cache_routes) this.cache_routes.add(this.netPlan.getRouteFromId(r.id));
+		this.coupledUpperLayerLink = origin.coupledUpperLayerLink == null? null : (Link) this.netPlan.getPeerElementInThisNetPlan (origin.coupledUpperLayerLink);
+		this.cache_routes = this.netPlan.getPeerElementsInThisNetPlan(origin.cache_routes);
 		this.mandatorySequenceOfTraversedResourceTypes = new ArrayList<String> (origin.mandatorySequenceOfTraversedResourceTypes);
 		this.recoveryType = origin.recoveryType;
 		this.cache_worstCasePropagationTimeMs = origin.cache_worstCasePropagationTimeMs;
 		this.cache_worstCaseLengthInKm = origin.cache_worstCaseLengthInKm;
 		this.cacheHbH_frs.clear();
-		for (Link originLink : origin.cacheHbH_frs.keySet())
-			this.cacheHbH_frs.put(netPlan.getLinkFromId(originLink.id), origin.cacheHbH_frs.get(originLink));
+		for (Entry<Link,Double> entry : origin.cacheHbH_frs.entrySet())
+			this.cacheHbH_frs.put((Link) netPlan.getPeerElementInThisNetPlan(entry.getKey()), entry.getValue());
 		this.cacheHbH_normCarriedOccupiedPerLinkCurrentState.clear();
-		for (Link originLink : origin.cacheHbH_normCarriedOccupiedPerLinkCurrentState.keySet())
-			this.cacheHbH_normCarriedOccupiedPerLinkCurrentState.put(netPlan.getLinkFromId(originLink.id), origin.cacheHbH_normCarriedOccupiedPerLinkCurrentState.get(originLink));
+		for (Entry<Link,Pair<Double,Double>> entry : origin.cacheHbH_normCarriedOccupiedPerLinkCurrentState.entrySet())
+			this.cacheHbH_normCarriedOccupiedPerLinkCurrentState.put((Link) netPlan.getPeerElementInThisNetPlan(entry.getKey()), entry.getValue());
 		this.cacheHbH_linksPerNodeWithNonZeroFr.clear();
 		for (Entry<Node,Set<Link>> entry : origin.cacheHbH_linksPerNodeWithNonZeroFr.entrySet())
-			this.cacheHbH_linksPerNodeWithNonZeroFr.put(netPlan.getNodeFromId(entry.getKey().id), (Set<Link>) (Set<?>) netPlan.translateCollectionToThisNetPlan(entry.getValue()));
+			this.cacheHbH_linksPerNodeWithNonZeroFr.put((Node) netPlan.getPeerElementInThisNetPlan(entry.getKey()), netPlan.getPeerElementsInThisNetPlan(entry.getValue()));
 	}
 
 
@@ -594,6 +593,7 @@ public class Demand extends NetworkElement
 
 		/* Link capacity at the upper layer is equal to the carried traffic at the lower layer */
 		link.capacity = carriedTraffic;
+		link.layer.notifyLinkChanged(link);
 		link.coupledLowerLayerDemand = this;
 		this.coupledUpperLayerLink = link;
 		link.layer.cache_coupledLinks.add (link);
@@ -722,25 +722,33 @@ public class Demand extends NetworkElement
 		if (this.coupledUpperLayerLink != null) this.decouple();
 		
 		if (layer.routingType == RoutingType.SOURCE_ROUTING)
-			for (Route route : new HashSet<Route> (cache_routes)) route.remove();
-		else
+			netPlan.removeRoutes(cache_routes);
+		removeFromCaches();
+		NetPlan.removeNetworkElementAndShiftIndexes (layer.demands , index);
+		if (ErrorHandling.isDebugEnabled()) netPlan.checkCachesConsistency();
+		removeId();
+		layer.notifyDemandChanged(this);
+	}
+
+	/* Removes the demand from the caches of the other elements, but not from the list of demands of the layer. The demand must be already decoupled, 
+	 * and with no routes */
+	void removeFromCaches ()
+	{
+		if (layer.routingType == RoutingType.HOP_BY_HOP_ROUTING)
 		{
 			for (Link e : this.cacheHbH_frs.keySet()) e.cacheHbH_frs.remove(this);
 			for (Link e : this.cacheHbH_normCarriedOccupiedPerLinkCurrentState.keySet())
 			{
 				final double x_deOccup = this.cacheHbH_normCarriedOccupiedPerLinkCurrentState.get(e).getSecond();
 				e.cacheHbH_normCarriedOccupiedPerTraversingDemandCurrentState.remove(this);
-				e.cache_carriedTraffic -= x_deOccup; 
-				e.cache_occupiedCapacity -= x_deOccup; 
+				e.addTrafficAndOccupation(-x_deOccup , -x_deOccup);
 			}
 		}
         for (String tag : tags) netPlan.cache_taggedElements.get(tag).remove(this);
 		netPlan.cache_id2DemandMap.remove(id);
-		NetPlan.removeNetworkElementAndShiftIndexes (layer.demands , index);
 		ingressNode.cache_nodeOutgoingDemands.remove (this);
 		egressNode.cache_nodeIncomingDemands.remove (this);
-		if (ErrorHandling.isDebugEnabled()) netPlan.checkCachesConsistency();
-		removeId();
+		layer.removeFromNodePairCache(this);
 	}
 	
 	/**
@@ -755,6 +763,7 @@ public class Demand extends NetworkElement
 		netPlan.checkIsModifiable();
 		if (offeredTraffic < 0) throw new Net2PlanException("Offered traffic must be greater or equal than zero");
 		this.offeredTraffic = offeredTraffic;
+		layer.notifyDemandChanged(this);
 		if (!layer.isSourceRouting()) updateHopByHopRoutingToGivenFrs(this.cacheHbH_frs);
 		if (ErrorHandling.isDebugEnabled()) netPlan.checkCachesConsistency();
 	}
@@ -869,8 +878,39 @@ public class Demand extends NetworkElement
 	/* Updates all the network state, to the new situation where the hop-by-hop routing of a demand has changed */
 	void updateHopByHopRoutingToGivenFrs (Map<Link,Double> newFrsWithoutZeros)
 	{
-		final Set<Link> affectedLinks = Sets.union(newFrsWithoutZeros.keySet() , cacheHbH_frs.keySet());
-		
+		applyHopByHopRouting (computeHopByHopRouting (newFrsWithoutZeros) , null);
+	}
+
+	/* The hop-by-hop routing of a demand for some forwarding rules, computed without modifying the design */
+	static final class HopByHopRoutingComputation
+	{
+		private final Map<Link,Double> newFrsWithoutZeros;
+		private final Map<Link,Double> frsToApply;
+		private final Map<Node,Set<Link>> linksPerNodeWithNonZeroFr;
+		private final DoubleMatrix1D M;
+		private final RoutingCycleType routingCycleType;
+		private final double carriedTraffic;
+		private final double worstCasePropagationTimeMs;
+		private final double worstCaseLengthInKm;
+
+		private HopByHopRoutingComputation (Map<Link,Double> newFrsWithoutZeros , Map<Link,Double> frsToApply , Map<Node,Set<Link>> linksPerNodeWithNonZeroFr , 
+				Quintuple<DoubleMatrix1D, RoutingCycleType , Double , Double , Double> fundMatrixComputation , double carriedTraffic)
+		{
+			this.newFrsWithoutZeros = newFrsWithoutZeros;
+			this.frsToApply = frsToApply;
+			this.linksPerNodeWithNonZeroFr = linksPerNodeWithNonZeroFr;
+			this.M = fundMatrixComputation.getFirst();
+			this.routingCycleType = fundMatrixComputation.getSecond();
+			this.worstCasePropagationTimeMs = fundMatrixComputation.getFourth();
+			this.worstCaseLengthInKm = fundMatrixComputation.getFifth();
+			this.carriedTraffic = carriedTraffic;
+		}
+	}
+
+	/* Computes the hop-by-hop routing of the demand for the given forwarding rules, without changing the design (so, it can be called in parallel for
+	 * different demands). Throws a ClosedCycleRoutingException if the forwarding rules produce closed cycles */
+	HopByHopRoutingComputation computeHopByHopRouting (Map<Link,Double> newFrsWithoutZeros)
+	{
 		/* set 0 in the down links and the link in-out from the down nodes (they do not send traffic) */
 		/* update the cache per node (include failed links if fr > 0) */
 		Map<Link,Double> frsToApply = new HashMap<> ();
@@ -891,27 +931,38 @@ public class Demand extends NetworkElement
 				GraphUtils.computeRoutingFundamentalVector(frsToApply, tentativeCacheHbH_linksPerNodeWithNonZeroFr , ingressNode ,  egressNode);
 		if (fundMatrixComputation.getSecond() == RoutingCycleType.CLOSED_CYCLES) 
 			throw new ClosedCycleRoutingException("Closed routing cycle for demand " + this); 
-		DoubleMatrix1D M = fundMatrixComputation.getFirst ();
-		this.routingCycleType = fundMatrixComputation.getSecond();
-		double s_egressNode = fundMatrixComputation.getThird();
-		this.cache_worstCasePropagationTimeMs = fundMatrixComputation.getFourth();
-		this.cache_worstCaseLengthInKm = fundMatrixComputation.getFifth();
+		final double s_egressNode = fundMatrixComputation.getThird();
+		final double newCarriedTraffic = offeredTraffic * fundMatrixComputation.getFirst().get(egressNode.index) * s_egressNode;
+		if (newCarriedTraffic > offeredTraffic + 1E-5) throw new RuntimeException ("Bad");
+		return new HopByHopRoutingComputation (newFrsWithoutZeros , frsToApply , tentativeCacheHbH_linksPerNodeWithNonZeroFr , fundMatrixComputation , newCarriedTraffic);
+	}
+
+	/* Notifies a change in the upper layer link coupled to this demand, if any, since its capacity and length are the ones of this demand */
+	void notifyCoupledUpperLayerLinkChanged ()
+	{
+		if (coupledUpperLayerLink != null) coupledUpperLayerLink.layer.notifyLinkChanged(coupledUpperLayerLink);
+	}
+
+	/* Updates the caches of the demand and the traversed links to the computed hop-by-hop routing. If linkOccupationIncrements is not null, the increments 
+	 * in the carried traffic (equal to the occupied capacity) of the links are accumulated there, instead of applied to the links */
+	void applyHopByHopRouting (HopByHopRoutingComputation routing , Map<Link,Double> linkOccupationIncrements)
+	{
+		final Set<Link> affectedLinks = Sets.union(routing.newFrsWithoutZeros.keySet() , cacheHbH_frs.keySet());
+		final DoubleMatrix1D M = routing.M;
+		this.routingCycleType = routing.routingCycleType;
+		this.cache_worstCasePropagationTimeMs = routing.worstCasePropagationTimeMs;
+		this.cache_worstCaseLengthInKm = routing.worstCaseLengthInKm;
 
 		/* update different caches */
-//		System.out.println(offeredTraffic);
-//		System.out.println(M.get(egressNode.index));
-//		System.out.println(M);
-//		System.out.println("s_egress: "  + s_egressNode);
-		this.cacheHbH_linksPerNodeWithNonZeroFr = tentativeCacheHbH_linksPerNodeWithNonZeroFr;
-		carriedTraffic = offeredTraffic * M.get(egressNode.index) * s_egressNode;
-		if (coupledUpperLayerLink != null) coupledUpperLayerLink.capacity = carriedTraffic;
-
-		if (carriedTraffic > offeredTraffic + 1E-5) throw new RuntimeException ("Bad");
-		
+		this.cacheHbH_linksPerNodeWithNonZeroFr = routing.linksPerNodeWithNonZeroFr;
+		carriedTraffic = routing.carriedTraffic;
+		layer.notifyDemandChanged(this);
+		if (coupledUpperLayerLink != null) { coupledUpperLayerLink.capacity = carriedTraffic; coupledUpperLayerLink.layer.notifyLinkChanged(coupledUpperLayerLink); }
+
 		/* update the xde caches (link and demand), and the link occupations */
 		for (Link link : affectedLinks)
 		{
-			Double new_fde = frsToApply.get(link); if (new_fde == null) new_fde = 0.0;
+			Double new_fde = routing.frsToApply.get(link); if (new_fde == null) new_fde = 0.0;
 			final Pair<Double,Double> oldOccupInfo = cacheHbH_normCarriedOccupiedPerLinkCurrentState.get(link);
 			final double oldXdeOccup = oldOccupInfo == null? 0 : oldOccupInfo.getSecond(); //layer.forwardingRulesCurrentFailureState_x_de.get (demand.index , link.index);
 			final double newXdeNormalized = M.get (link.originNode.index) * new_fde; //fowardingRulesThisFailureState_f_e.get (link.index);
@@ -928,20 +979,24 @@ public class Demand extends NetworkElement
 				cacheHbH_normCarriedOccupiedPerLinkCurrentState.put(link, Pair.of(newXdeNormalized, newXdeOccup));
 				link.cacheHbH_normCarriedOccupiedPerTraversingDemandCurrentState.put(this, Pair.of(newXdeNormalized, newXdeOccup));
 			}
-			link.cache_carriedTraffic += newXdeOccup - oldXdeOccup; // in hop-by-hop carried traffic is the same as occupied capacity
-			link.cache_occupiedCapacity += newXdeOccup - oldXdeOccup;
+			if (linkOccupationIncrements != null)
+			{
+				final Double incrementSoFar = linkOccupationIncrements.get(link);
+				linkOccupationIncrements.put(link, (incrementSoFar == null? 0 : incrementSoFar) + newXdeOccup - oldXdeOccup);
+			}
+			else
+			{
+				link.addTrafficAndOccupation(newXdeOccup - oldXdeOccup , newXdeOccup - oldXdeOccup); // in hop-by-hop carried traffic is the same as occupied capacity
+			}
 			if ((newXdeNormalized > 1e-3) && (!link.isUp)) throw new RuntimeException ("Bad");
 		}
 		
 		/* update the cache_frs in the link and demand */
 		for (Link e : this.cacheHbH_frs.keySet())
 			e.cacheHbH_frs.remove(this);
-		this.cacheHbH_frs = new HashMap<> (newFrsWithoutZeros);
+		this.cacheHbH_frs = new HashMap<> (routing.newFrsWithoutZeros);
 		for (Entry<Link,Double> fr : this.cacheHbH_frs.entrySet())
 			fr.getKey().cacheHbH_frs.put(this , fr.getValue());
-		
-		/* update the routing cycle type */
-//		System.out.println ("updateHopByHopRoutingDemand demand: " + demand + ", this demand x_e: " + forwardingRules_x_de.viewRow(demand.index));
 	}
 
 
@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pablo Pavon-Marino.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     Pablo Pavon-Marino - from version 0.4.0 onwards
+ ******************************************************************************/
+
+package com.net2plan.interfaces.networkDesign;
+
+import com.net2plan.internal.ErrorHandling;
+import com.net2plan.utils.Constants.RoutingCycleType;
+import com.net2plan.utils.Pair;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * <p>Undo journal of a change in the failure state of links and nodes, returned by
+ * {@link NetPlan#setLinksAndNodesFailureStateWithJournal(java.util.Collection, java.util.Collection, java.util.Collection, java.util.Collection) setLinksAndNodesFailureStateWithJournal}.
+ * It keeps the previous value of the caches modified by the change: the up/down state of the links, nodes, routes and multicast trees, the carried
+ * traffic and occupied capacity in the links and resources, the carried traffic of the demands (and then the capacity of the upper layer links
+ * coupled to them), and the hop-by-hop routing caches of the demands.</p>
+ *
+ * <p>With {@link #rollback()}, the previous values are written back, in a time proportional to the number of elements affected by the change,
+ * and without recomputing the routing. This way, a design can be evaluated in a failure state and brought back to its previous state. The
+ * rollback must happen before any other change in the design, except the ones done through other journals, which must be rolled back first.</p>
+ *
+ * @author Pablo Pavon-Marino
+ */
+public class FailureStateJournal
+{
+	private final NetPlan netPlan;
+	private final List<Link> linksChanged;
+	private final List<Node> nodesChanged;
+	private final Map<Link,double []> linkCapacityCarriedOccupied;
+	private final Map<Resource,Double> resourceOccupiedCapacity;
+	private final Map<Demand,DemandState> demandState;
+	private final Map<MulticastDemand,Double> multicastDemandCarriedTraffic;
+	private final Map<Route,Boolean> routeIsDown;
+	private final Map<Route,Map<NetworkElement,Double>> routeOccupationCache;
+	private final Map<MulticastTree,Boolean> treeIsDown;
+	private boolean rolledBack;
+
+	private static final class DemandState
+	{
+		private final double carriedTraffic;
+		private final RoutingCycleType routingCycleType;
+		private final double worstCasePropagationTimeMs;
+		private final double worstCaseLengthInKm;
+		private final Map<Node,Set<Link>> linksPerNodeWithNonZeroFr;
+		private final Map<Link,Pair<Double,Double>> normCarriedOccupiedPerLink;
+
+		private DemandState (Demand d , boolean hopByHop)
+		{
+			this.carriedTraffic = d.carriedTraffic;
+			this.routingCycleType = d.routingCycleType;
+			this.worstCasePropagationTimeMs = d.cache_worstCasePropagationTimeMs;
+			this.worstCaseLengthInKm = d.cache_worstCaseLengthInKm;
+			this.linksPerNodeWithNonZeroFr = hopByHop? d.cacheHbH_linksPerNodeWithNonZeroFr : null; // the map is replaced, not modified
+			this.normCarriedOccupiedPerLink = hopByHop? new HashMap<> (d.cacheHbH_normCarriedOccupiedPerLinkCurrentState) : null; // this one is modified
+		}
+	}
+
+	FailureStateJournal (NetPlan netPlan)
+	{
+		this.netPlan = netPlan;
+		this.linksChanged = new ArrayList<> ();
+		this.nodesChanged = new ArrayList<> ();
+		this.linkCapacityCarriedOccupied = new HashMap<> ();
+		this.resourceOccupiedCapacity = new HashMap<> ();
+		this.demandState = new HashMap<> ();
+		this.multicastDemandCarriedTraffic = new HashMap<> ();
+		this.routeIsDown = new HashMap<> ();
+		this.routeOccupationCache = new HashMap<> ();
+		this.treeIsDown = new HashMap<> ();
+		this.rolledBack = false;
+	}
+
+	/** Returns true if the journal was already rolled back
+	 * @return see above
+	 */
+	public boolean isRolledBack () { return rolledBack; }
+
+	/** Returns the number of links and nodes whose up/down state was changed
+	 * @return see above
+	 */
+	public int getNumberOfLinksAndNodesChanged () { return linksChanged.size() + nodesChanged.size(); }
+
+	/** Returns the number of routes and multicast trees affected by the change (their state may have not changed, if they were already traversing other failing links or nodes)
+	 * @return see above
+	 */
+	public int getNumberOfRoutesAndTreesAffected () { return routeIsDown.size() + treeIsDown.size(); }
+
+	/**
+	 * <p>Restores the state the design had before the failure state change. A journal can be rolled back only once.</p>
+	 */
+	public void rollback ()
+	{
+		netPlan.checkIsModifiable();
+		if (rolledBack) throw new Net2PlanException ("The failure state change was already rolled back");
+		rolledBack = true;
+
+		for (Link e : linksChanged)
+		{
+			e.isUp = !e.isUp;
+			if (e.isUp) e.layer.cache_linksDown.remove(e); else e.layer.cache_linksDown.add(e);
+		}
+		for (Node n : nodesChanged)
+		{
+			n.isUp = !n.isUp;
+			if (n.isUp) netPlan.cache_nodesDown.remove(n); else netPlan.cache_nodesDown.add(n);
+		}
+		for (Entry<Route,Boolean> entry : routeIsDown.entrySet())
+		{
+			final Route r = entry.getKey();
+			if (entry.getValue()) r.layer.cache_routesDown.add(r); else r.layer.cache_routesDown.remove(r);
+			r.cache_linkAndResourcesTraversedOccupiedCapIfnotFailMap = routeOccupationCache.get(r);
+			r.cache_upWhenLinksUpdated = !entry.getValue();
+		}
+		for (Entry<MulticastTree,Boolean> entry : treeIsDown.entrySet())
+		{
+			final MulticastTree t = entry.getKey();
+			if (entry.getValue()) t.layer.cache_multicastTreesDown.add(t); else t.layer.cache_multicastTreesDown.remove(t);
+			t.cache_upWhenLinksUpdated = !entry.getValue();
+		}
+		for (Entry<Demand,DemandState> entry : demandState.entrySet())
+		{
+			final Demand d = entry.getKey();
+			final DemandState state = entry.getValue();
+			d.carriedTraffic = state.carriedTraffic;
+			d.routingCycleType = state.routingCycleType;
+			d.cache_worstCasePropagationTimeMs = state.worstCasePropagationTimeMs;
+			d.cache_worstCaseLengthInKm = state.worstCaseLengthInKm;
+			if (state.normCarriedOccupiedPerLink == null) continue;
+			d.cacheHbH_linksPerNodeWithNonZeroFr = state.linksPerNodeWithNonZeroFr;
+			for (Link e : d.cacheHbH_normCarriedOccupiedPerLinkCurrentState.keySet())
+				if (!state.normCarriedOccupiedPerLink.containsKey(e)) e.cacheHbH_normCarriedOccupiedPerTraversingDemandCurrentState.remove(d);
+			for (Entry<Link,Pair<Double,Double>> linkEntry : state.normCarriedOccupiedPerLink.entrySet())
+				linkEntry.getKey().cacheHbH_normCarriedOccupiedPerTraversingDemandCurrentState.put(d , linkEntry.getValue());
+			d.cacheHbH_normCarriedOccupiedPerLinkCurrentState = state.normCarriedOccupiedPerLink;
+		}
+		for (Entry<MulticastDemand,Double> entry : multicastDemandCarriedTraffic.entrySet())
+			entry.getKey().carriedTraffic = entry.getValue();
+		for (Entry<Link,double []> entry : linkCapacityCarriedOccupied.entrySet())
+		{
+			final Link e = entry.getKey();
+			e.capacity = entry.getValue() [0];
+			e.cache_carriedTraffic = entry.getValue() [1];
+			e.cache_occupiedCapacity = entry.getValue() [2];
+			e.cache_carriedTrafficCompensation = entry.getValue() [3];
+			e.cache_occupiedCapacityCompensation = entry.getValue() [4];
+		}
+		for (Entry<Resource,Double> entry : resourceOccupiedCapacity.entrySet())
+			entry.getKey().cache_totalOccupiedCapacity = entry.getValue();
+		for (Route r : routeIsDown.keySet()) r.layer.notifyRouteChanged(r);
+		for (Link e : linksChanged) e.layer.notifyLinkChanged(e);
+		for (Link e : linkCapacityCarriedOccupied.keySet()) e.layer.notifyLinkChanged(e);
+		for (Demand d : demandState.keySet()) { d.layer.notifyDemandChanged(d); d.notifyCoupledUpperLayerLinkChanged(); }
+		for (Node n : nodesChanged) netPlan.notifyNodeChanged(n);
+
+		if (ErrorHandling.isDebugEnabled()) netPlan.checkCachesConsistency();
+	}
+
+	void recordLinkStateChange (Link e) { linksChanged.add(e); }
+
+	void recordNodeStateChange (Node n) { nodesChanged.add(n); }
+
+	/* Called once the links and nodes changed their state, but before updating the demands, routes and trees affected */
+	void recordStateBeforeRoutingUpdate (Set<Demand> affectedDemandsHopByHopRouting , Set<Route> affectedRoutes , Set<MulticastTree> affectedTrees)
+	{
+		for (Demand d : affectedDemandsHopByHopRouting)
+		{
+			demandState.put(d , new DemandState (d , true));
+			if (d.coupledUpperLayerLink != null) recordLink (d.coupledUpperLayerLink);
+			for (Link e : d.cacheHbH_frs.keySet()) recordLink (e);
+			for (Link e : d.cacheHbH_normCarriedOccupiedPerLinkCurrentState.keySet()) recordLink (e);
+		}
+		for (Route r : affectedRoutes)
+		{
+			routeIsDown.put(r , r.layer.cache_routesDown.contains(r));
+			routeOccupationCache.put(r , r.cache_linkAndResourcesTraversedOccupiedCapIfnotFailMap);
+			if (!demandState.containsKey(r.demand)) demandState.put(r.demand , new DemandState (r.demand , false));
+			if (r.demand.coupledUpperLayerLink != null) recordLink (r.demand.coupledUpperLayerLink);
+			for (NetworkElement e : r.cache_linkAndResourcesTraversedOccupiedCapIfnotFailMap.keySet())
+				if (e instanceof Link) recordLink ((Link) e);
+				else if (e instanceof Resource && !resourceOccupiedCapacity.containsKey(e)) resourceOccupiedCapacity.put((Resource) e , ((Resource) e).cache_totalOccupiedCapacity);
+		}
+		for (MulticastTree t : affectedTrees)
+		{
+			treeIsDown.put(t , t.layer.cache_multicastTreesDown.contains(t));
+			if (!multicastDemandCarriedTraffic.containsKey(t.demand)) multicastDemandCarriedTraffic.put(t.demand , t.demand.carriedTraffic);
+			if (t.demand.coupledUpperLayerLinks != null) for (Link e : t.demand.coupledUpperLayerLinks.values()) recordLink (e);
+			for (Link e : t.linkSet) recordLink (e);
+		}
+	}
+
+	private void recordLink (Link e)
+	{
+		if (!linkCapacityCarriedOccupied.containsKey(e)) linkCapacityCarriedOccupied.put(e , new double [] { e.capacity , e.cache_carriedTraffic , e.cache_occupiedCapacity , e.cache_carriedTrafficCompensation , e.cache_occupiedCapacityCompensation });
+	}
+}
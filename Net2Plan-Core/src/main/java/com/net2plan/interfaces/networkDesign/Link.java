@@ -58,6 +58,8 @@ public class Link extends NetworkElement
 	double capacity;
 	double cache_carriedTraffic;
 	double cache_occupiedCapacity;
+	double cache_carriedTrafficCompensation; // compensation terms of the Kahan summation of the increments in the carried traffic and occupied capacity
+	double cache_occupiedCapacityCompensation;
 	double lengthInKm;
 	double propagationSpeedInKmPerSecond;
 	boolean isUp;
@@ -98,6 +100,8 @@ public class Link extends NetworkElement
 		this.capacity = capacity;
 		this.cache_carriedTraffic = 0;
 		this.cache_occupiedCapacity = 0;
+		this.cache_carriedTrafficCompensation = 0;
+		this.cache_occupiedCapacityCompensation = 0;
 		this.lengthInKm = lengthInKm;
 		this.propagationSpeedInKmPerSecond = propagationSpeedInKmPerSecond;
 		this.isUp = true;
@@ -118,23 +122,23 @@ public class Link extends NetworkElement
 		this.capacity = origin.capacity;
 		this.cache_carriedTraffic = origin.cache_carriedTraffic;
 		this.cache_occupiedCapacity = origin.cache_occupiedCapacity;
+		this.cache_carriedTrafficCompensation = origin.cache_carriedTrafficCompensation;
+		this.cache_occupiedCapacityCompensation = origin.cache_occupiedCapacityCompensation;
 		this.lengthInKm = origin.lengthInKm;
 		this.propagationSpeedInKmPerSecond = origin.propagationSpeedInKmPerSecond;
 		this.isUp = origin.isUp;
-		this.cache_srgs = new HashSet<SharedRiskGroup> ();
-		this.cache_traversingRoutes = new HashMap<Route,Integer> ();
-		this.cache_traversingTrees = new HashSet<MulticastTree> ();
-		for (SharedRiskGroup s : origin.cache_srgs) this.cache_srgs.add(this.netPlan.getSRGFromId(s.id));
-		for (Entry<Route,Integer> r : origin.cache_traversingRoutes.entrySet()) this.cache_traversingRoutes.put(this.netPlan.getRouteFromId(r.getKey ().id) , r.getValue());
-		for (MulticastTree t : origin.cache_traversingTrees) this.cache_traversingTrees.add(this.netPlan.getMulticastTreeFromId(t.id));
-		this.coupledLowerLayerDemand = origin.coupledLowerLayerDemand == null? null : this.netPlan.getDemandFromId(origin.coupledLowerLayerDemand.id);
-		this.coupledLowerLayerMulticastDemand = origin.coupledLowerLayerMulticastDemand == null? null : this.netPlan.getMulticastDemandFromId(origin.coupledLowerLayerMulticastDemand.id);
-		this.cacheHbH_frs.clear(); 
+		this.cache_srgs = netPlan.getPeerElementsInThisNetPlan(origin.cache_srgs);
+		this.cache_traversingRoutes = new HashMap<Route,Integer> (NetPlan.capacityForSize(origin.cache_traversingRoutes.size()));
+		for (Entry<Route,Integer> r : origin.cache_traversingRoutes.entrySet()) this.cache_traversingRoutes.put((Route) netPlan.getPeerElementInThisNetPlan(r.getKey ()) , r.getValue());
+		this.cache_traversingTrees = netPlan.getPeerElementsInThisNetPlan(origin.cache_traversingTrees);
+		this.coupledLowerLayerDemand = origin.coupledLowerLayerDemand == null? null : (Demand) netPlan.getPeerElementInThisNetPlan(origin.coupledLowerLayerDemand);
+		this.coupledLowerLayerMulticastDemand = origin.coupledLowerLayerMulticastDemand == null? null : (MulticastDemand) netPlan.getPeerElementInThisNetPlan(origin.coupledLowerLayerMulticastDemand);
+		this.cacheHbH_frs = new HashMap<> (NetPlan.capacityForSize(origin.cacheHbH_frs.size())); 
 		for (Entry<Demand,Double> fr : origin.cacheHbH_frs.entrySet()) 
-			this.cacheHbH_frs.put(netPlan.getDemandFromId(fr.getKey().id), fr.getValue());
-		this.cacheHbH_normCarriedOccupiedPerTraversingDemandCurrentState.clear();
+			this.cacheHbH_frs.put((Demand) netPlan.getPeerElementInThisNetPlan(fr.getKey()), fr.getValue());
+		this.cacheHbH_normCarriedOccupiedPerTraversingDemandCurrentState = new HashMap<> (NetPlan.capacityForSize(origin.cacheHbH_normCarriedOccupiedPerTraversingDemandCurrentState.size()));
 		for (Entry<Demand,Pair<Double,Double>> fr : origin.cacheHbH_normCarriedOccupiedPerTraversingDemandCurrentState.entrySet()) 
-			this.cacheHbH_normCarriedOccupiedPerTraversingDemandCurrentState.put(netPlan.getDemandFromId(fr.getKey().id), Pair.of(fr.getValue().getFirst(), fr.getValue().getSecond()));
+			this.cacheHbH_normCarriedOccupiedPerTraversingDemandCurrentState.put((Demand) netPlan.getPeerElementInThisNetPlan(fr.getKey()), fr.getValue()); // pairs are immutable, can be shared
 	}
 
 	boolean isDeepCopy (Link e2)
@@ -252,6 +256,7 @@ public class Link extends NetworkElement
 		if (linkCapacity < 0) throw new Net2PlanException ("Negative link capacities are not possible");
 		if ((coupledLowerLayerDemand != null) || (coupledLowerLayerMulticastDemand != null)) throw new Net2PlanException ("Coupled links cannot change its capacity");
 		this.capacity = linkCapacity;
+		layer.notifyLinkChanged(this);
 		if (ErrorHandling.isDebugEnabled()) netPlan.checkCachesConsistency();
 	}
 
@@ -331,6 +336,7 @@ public class Link extends NetworkElement
 		if (lengthInKm < 0) throw new Net2PlanException ("Link lengths cannot be negative");
 		this.lengthInKm = lengthInKm;
 		this.updateWorstCasePropagationTraversingUnicastDemandsAndMaybeRoutes();
+		layer.notifyLinkChanged(this);
 	}
 
 	/** <p>Returns the link propagation speed in km per second.</p>
@@ -569,6 +575,19 @@ public class Link extends NetworkElement
 		checkAttachedToNetPlanObject();
 		netPlan.checkIsModifiable();
 
+		removeFromCaches();
+		NetPlan.removeNetworkElementAndShiftIndexes (layer.links , index);
+		netPlan.cache_topologyVersion ++;
+		layer.notifyLayerChanged();
+
+		ErrorHandling.DEBUG = previousErrorHandling;
+		if (ErrorHandling.isDebugEnabled()) netPlan.checkCachesConsistency();
+		removeId();
+	}
+	
+	/* Removes the link, and the routing traversing it, from the caches of the other elements, but not from the list of links of the layer */
+	void removeFromCaches ()
+	{
 		if (this.coupledLowerLayerDemand != null) 
 			this.coupledLowerLayerDemand.decouple();
 		else if (this.coupledLowerLayerMulticastDemand != null)
@@ -578,22 +597,17 @@ public class Link extends NetworkElement
 		netPlan.cache_id2LinkMap.remove(id);
 		originNode.cache_nodeOutgoingLinks.remove (this);
 		destinationNode.cache_nodeIncomingLinks.remove (this);
+		layer.removeFromNodePairCache(this);
 		for (SharedRiskGroup srg : this.cache_srgs) srg.links.remove(this);
 		for (MulticastTree tree : new LinkedList<MulticastTree> (cache_traversingTrees)) tree.remove ();
 
 		if (layer.routingType == RoutingType.SOURCE_ROUTING)
-			for (Route route : new HashSet<Route> (cache_traversingRoutes.keySet())) route.remove ();
+			netPlan.removeRoutes(cache_traversingRoutes.keySet());
 		else
 			this.removeAllForwardingRules();
-
-		NetPlan.removeNetworkElementAndShiftIndexes (layer.links , index);
         for (String tag : tags) netPlan.cache_taggedElements.get(tag).remove(this);
-
-		ErrorHandling.DEBUG = previousErrorHandling;
-		if (ErrorHandling.isDebugEnabled()) netPlan.checkCachesConsistency();
-		removeId();
 	}
-	
+
 	/**
 	 * <p>Sets the failure state of the link: up or down and returns the previous failure state. The routing is updated if the failure state changed.</p>
 	 * @param setAsUp The new failure state: {@code true} if up, {@code false} if down
@@ -695,10 +709,14 @@ public class Link extends NetworkElement
 			if (!coupledLowerLayerMulticastDemand.coupledUpperLayerLinks.containsValue(this)) throw new RuntimeException ("Bad");
 	}
 	
+	/* Recomputes the carried traffic and occupied capacity from scratch, summing the traffic of the routes, demands and trees traversing the link.
+	 * Changes in one route, tree or demand update them with addTrafficAndOccupation instead */
 	void updateLinkTrafficAndOccupation ()
 	{
 		this.cache_carriedTraffic = 0;
 		this.cache_occupiedCapacity = 0;
+		this.cache_carriedTrafficCompensation = 0;
+		this.cache_occupiedCapacityCompensation = 0;
 		if (layer.isSourceRouting())
 		{
 			for (Entry<Route,Integer> entry : cache_traversingRoutes.entrySet())
@@ -720,6 +738,22 @@ public class Link extends NetworkElement
 			this.cache_carriedTraffic += t.getCarriedTraffic();
 			this.cache_occupiedCapacity += t.getOccupiedLinkCapacity();
 		}
+		layer.notifyLinkChanged(this);
+	}
+
+	/* Adds the given increments (positive or negative) to the carried traffic and occupied capacity, with Kahan compensated summation, so the
+	 * rounding errors do not accumulate along many increments */
+	void addTrafficAndOccupation (double carriedTrafficIncrement , double occupiedCapacityIncrement)
+	{
+		final double carriedTrafficIncrementCompensated = carriedTrafficIncrement - cache_carriedTrafficCompensation;
+		final double newCarriedTraffic = cache_carriedTraffic + carriedTrafficIncrementCompensated;
+		this.cache_carriedTrafficCompensation = (newCarriedTraffic - cache_carriedTraffic) - carriedTrafficIncrementCompensated;
+		this.cache_carriedTraffic = newCarriedTraffic;
+		final double occupiedCapacityIncrementCompensated = occupiedCapacityIncrement - cache_occupiedCapacityCompensation;
+		final double newOccupiedCapacity = cache_occupiedCapacity + occupiedCapacityIncrementCompensated;
+		this.cache_occupiedCapacityCompensation = (newOccupiedCapacity - cache_occupiedCapacity) - occupiedCapacityIncrementCompensated;
+		this.cache_occupiedCapacity = newOccupiedCapacity;
+		layer.notifyLinkChanged(this);
 	}
 
 	/** Returns the set of links in this layer (including this) that carry the traffic that traverses this link, before and after traversing it,
@@ -918,6 +952,7 @@ public class Link extends NetworkElement
 					final Pair<Double,Double> p = GraphUtils.computeWorstCasePropagationDelayAndLengthInKmMsForLoopLess(d.cacheHbH_frs, d.cacheHbH_linksPerNodeWithNonZeroFr, d.ingressNode, d.egressNode);
 					d.cache_worstCasePropagationTimeMs = p.getFirst();
 					d.cache_worstCaseLengthInKm = p.getSecond();
+					d.notifyCoupledUpperLayerLinkChanged();
 				}
 		}
 	}
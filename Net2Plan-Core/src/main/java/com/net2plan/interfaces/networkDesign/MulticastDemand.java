@@ -78,7 +78,7 @@ public class MulticastDemand extends NetworkElement
 		{
 			this.coupledUpperLayerLinks = new HashMap<Node,Link> ();
 			for (Node nOrigin : origin.coupledUpperLayerLinks.keySet()) 
-				this.coupledUpperLayerLinks.put(this.netPlan.getNodeFromId (nOrigin.id) , this.netPlan.getLinkFromId (origin.coupledUpperLayerLinks.get(nOrigin).id));
+				this.coupledUpperLayerLinks.put(this.netPlan.nodes.get(nOrigin.index) , (Link) this.netPlan.getPeerElementInThisNetPlan (origin.coupledUpperLayerLinks.get(nOrigin)));
 		}
 	}
 
@@ -308,6 +308,7 @@ public class MulticastDemand extends NetworkElement
 		for (Link link : links)
 		{
 			link.capacity = carriedTraffic;
+			link.layer.notifyLinkChanged(link);
 			link.coupledLowerLayerMulticastDemand = this;
 			link.layer.cache_coupledLinks.add (link);
 			this.coupledUpperLayerLinks.put(link.destinationNode, link);
@@ -50,6 +50,7 @@ public class MulticastTree extends NetworkElement
 	Set<Node> cache_traversedNodes;
 	Map<Node,Link> cache_ingressLinkOfNode;
 	Map<Node,Set<Link>> cache_egressLinksOfNode;
+	boolean cache_upWhenLinksUpdated; // true if the tree was up the last time it added its traffic to the traversed links (a tree that is down adds nothing)
 	
 
 	MulticastTree (NetPlan netPlan , long id , int index,  MulticastDemand demand , Set<Link> links , AttributeMap attributes)
@@ -67,6 +68,7 @@ public class MulticastTree extends NetworkElement
 		this.cache_traversedNodes = caches.getFirst ();
 		this.cache_ingressLinkOfNode = caches.getSecond ();
 		this.cache_egressLinksOfNode = caches.getThird ();
+		this.cache_upWhenLinksUpdated = false;
 	}
 
 	
@@ -144,7 +146,7 @@ public class MulticastTree extends NetworkElement
 		if ((this.netPlan == null) || (origin.netPlan == null) || (this.netPlan == origin.netPlan)) throw new RuntimeException ("Bad");
 
 		this.linkSet.clear (); for (Link e : origin.linkSet) this.linkSet.add((Link) this.netPlan.getPeerElementInThisNetPlan (e));
-		this.initialSetLinksWhenWasCreated.clear (); for (Link originLink : origin.initialSetLinksWhenWasCreated) this.initialSetLinksWhenWasCreated.add (this.netPlan.getLinkFromId (originLink.getId ()));  
+		this.initialSetLinksWhenWasCreated.clear (); for (Link originLink : origin.initialSetLinksWhenWasCreated) this.initialSetLinksWhenWasCreated.add ((Link) this.netPlan.getPeerElementInThisNetPlan (originLink));  
 		this.cache_traversedNodes.clear (); for (Node n : origin.cache_traversedNodes) this.cache_traversedNodes.add((Node) this.netPlan.getPeerElementInThisNetPlan (n));
 		this.cache_ingressLinkOfNode.clear (); 
 		for (Entry<Node,Link> neOrigin : origin.cache_ingressLinkOfNode.entrySet()) 
@@ -167,6 +169,7 @@ public class MulticastTree extends NetworkElement
 			Set<Link> newEgressLinks = new HashSet<Link> (); for (Link originLink : originEgressLinks) newEgressLinks.add((Link) this.netPlan.getPeerElementInThisNetPlan (originLink));
 			this.cache_egressLinksOfNode.put((Node) this.netPlan.getPeerElementInThisNetPlan (nOrigin) , newEgressLinks);
 		}
+		this.cache_upWhenLinksUpdated = origin.cache_upWhenLinksUpdated;
 	}
 
 
@@ -485,17 +488,22 @@ public class MulticastTree extends NetworkElement
 		checkAttachedToNetPlanObject();
 		netPlan.checkIsModifiable();
 		if ((newCarriedTraffic < 0) || (newOccupiedLinkCapacity < 0)) throw new Net2PlanException ("Carried traffics and occupied link capacities must be non-negative");
-//		final double extraCarriedTraffic = isDown ()? 0.0 : this.carriedTrafficIfNotFailing - newCarriedTraffic;
-//		final double extraOccupiedLinkCapacity = isDown ()? 0.0 : this.occupiedLinkCapacityIfNotFailing - newOccupiedLinkCapacity;
+		/* The traffic this tree added to the links the last time, to update them with the difference */
+		final double oldCarriedTrafficInLinks = cache_upWhenLinksUpdated? this.carriedTrafficIfNotFailing : 0;
+		final double oldOccupiedCapacityInLinks = cache_upWhenLinksUpdated? this.occupiedLinkCapacityIfNotFailing : 0;
 		this.carriedTrafficIfNotFailing = newCarriedTraffic;
 		this.occupiedLinkCapacityIfNotFailing = newOccupiedLinkCapacity;
 //		if (this.isDown()) { this.carriedTraffic = 0; this.occupiedLinkCapacity = 0;  } else { this.carriedTraffic = newCarriedTraffic; this.occupiedLinkCapacity = newOccupiedLinkCapacity; }
 		
 		/* Update the links, with the carried traffic depending on the link state */
+		final boolean isUp = !isDown();
+		final double carriedTrafficIncrement = (isUp? newCarriedTraffic : 0) - oldCarriedTrafficInLinks;
+		final double occupiedCapacityIncrement = (isUp? newOccupiedLinkCapacity : 0) - oldOccupiedCapacityInLinks;
 		for (Link link : linkSet)
-			link.updateLinkTrafficAndOccupation();
+			link.addTrafficAndOccupation(carriedTrafficIncrement , occupiedCapacityIncrement);
+		this.cache_upWhenLinksUpdated = isUp;
 		demand.carriedTraffic = 0; for (MulticastTree t : demand.cache_multicastTrees) demand.carriedTraffic += t.getCarriedTraffic();
-		if (demand.coupledUpperLayerLinks != null) for (Link e : demand.coupledUpperLayerLinks.values()) e.capacity = demand.carriedTraffic;
+		if (demand.coupledUpperLayerLinks != null) for (Link e : demand.coupledUpperLayerLinks.values()) { e.capacity = demand.carriedTraffic; e.layer.notifyLinkChanged(e); }
 		if (ErrorHandling.isDebugEnabled()) netPlan.checkCachesConsistency();
 	}
 
@@ -607,6 +615,7 @@ public class MulticastTree extends NetworkElement
 		boolean shouldBeUp = true; for (Link e : linkSet) if (!e.isUp) { shouldBeUp = false; break; }
 		if (shouldBeUp) for (Node n : cache_traversedNodes) if (!n.isUp) { shouldBeUp = false; break; }
 		if (!shouldBeUp != this.isDown()) throw new RuntimeException("Bad");
+		if (shouldBeUp != cache_upWhenLinksUpdated) throw new RuntimeException("Bad");
 		if (shouldBeUp)
 		{
 			if (getCarriedTraffic() != carriedTrafficIfNotFailing) throw new RuntimeException ("Bad");
@@ -47,6 +47,12 @@ import java.io.*;
 import java.net.URL;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -136,9 +142,16 @@ public class NetPlan extends NetworkElement
 
     Map<String,Set<NetworkElement>> cache_taggedElements;
     Map<String,Set<Node>> cache_nodesPerSiteName;
+    Map<String,Set<Node>> cache_nodesPerName;
+    Map<String,Map<String,Set<NetworkElement>>> cache_attributeIndexes; // attribute name -> attribute value -> elements (only for the indexed attributes)
 
     DirectedAcyclicGraph<NetworkLayer, DemandLinkMapping> interLayerCoupling;
 
+    long cache_topologyVersion; // changes when nodes, links, layers or SRGs are added or removed, or the SRG nodes and links change
+    long cache_modificationVersion; // changes when any modification of the design starts, except the ones of the attributes (see checkIsModifiable), and when it ends if a matrix was computed in the middle (see changeCompleted)
+    AtomicLong cache_matrixHits;
+    AtomicLong cache_matrixMisses;
+
     /**
      * <p>Default constructor. Creates an empty design</p>
      *
@@ -176,9 +189,16 @@ public class NetPlan extends NetworkElement
         
         this.cache_taggedElements = new HashMap<> ();
         this.cache_nodesPerSiteName = new HashMap<> ();
+        this.cache_nodesPerName = new HashMap<> ();
+        this.cache_attributeIndexes = new HashMap<> ();
         
         interLayerCoupling = new DirectedAcyclicGraph<NetworkLayer, DemandLinkMapping>(DemandLinkMapping.class);
 
+        this.cache_topologyVersion = 0;
+        this.cache_modificationVersion = 0;
+        this.cache_matrixHits = new AtomicLong();
+        this.cache_matrixMisses = new AtomicLong();
+
         defaultLayer = addLayer("Layer 0", null, null, null, null, null);
     }
 
@@ -340,6 +360,20 @@ public class NetPlan extends NetworkElement
     }
 
 
+    /**
+     * <p>Static factory method to get a {@link com.net2plan.interfaces.networkDesign.NetPlan NetPlan} object from a binary {@code .n2pb} file, saved
+     * with {@link #saveToBinaryFile(File) saveToBinaryFile}. The file is mapped in memory, which makes the loading of large designs faster than
+     * parsing a {@code .n2p} file.</p>
+     *
+     * @param file Input file
+     * @return A network design
+     * @since 0.5.1
+     */
+    public static NetPlan loadFromBinaryFile(File file)
+    {
+        return NetPlanBinaryFormat.read(file);
+    }
+
     /**
      * <p>Returns true if the given NetPlan object contains the same network than this, meaning that all the network elements
      * are a copy in every aspect. In particular, saving in disk a design and then loading it again, should produce a network
@@ -369,6 +403,8 @@ public class NetPlan extends NetworkElement
         for (String siteName : cache_nodesPerSiteName.keySet()) 
        		if (this.cache_nodesPerSiteName.get(siteName).size() != np2.cache_nodesPerSiteName.get(siteName).size())
        			throw new RuntimeException("Bad");
+        if (!this.cache_nodesPerName.keySet().equals(np2.cache_nodesPerName.keySet())) throw new RuntimeException("Bad");
+        if (!this.cache_attributeIndexes.keySet().equals(np2.cache_attributeIndexes.keySet())) throw new RuntimeException("Bad");
         for (int cont = 0; cont < nodes.size(); cont++)
             if (!this.getNode(cont).isDeepCopy(np2.getNode(cont))) throw new RuntimeException("Bad"); //return false;
         for (int cont = 0; cont < resources.size(); cont++)
@@ -398,6 +434,23 @@ public class NetPlan extends NetworkElement
         }
     }
 
+    /**
+     * <p>Removes the network elements contained in the list which are in the given set, and shifts the indexes of the rest of the elements accordingly.
+     * The list is compacted and renumbered in one pass, whatever the number of elements removed.</p>
+     *
+     * @param x                Network elements
+     * @param elementsToRemove Elements to remove
+     */
+    static void removeNetworkElementsAndShiftIndexes(ArrayList<? extends NetworkElement> x, Set<? extends NetworkElement> elementsToRemove)
+    {
+        if (elementsToRemove.isEmpty()) return;
+        x.removeIf(e -> elementsToRemove.contains(e));
+        for (int newIndex = 0; newIndex < x.size(); newIndex++)
+        {
+            x.get(newIndex).index = newIndex;
+        }
+    }
+
     /**
      * <p>Adds new traffic demands froma traffic matrix given as a {@code DoubleMatrix2D} object. Previous demands are not removed.</p>
      *
@@ -459,6 +512,9 @@ public class NetPlan extends NetworkElement
         layer.demands.add(demand);
         egressNode.cache_nodeIncomingDemands.add(demand);
         ingressNode.cache_nodeOutgoingDemands.add(demand);
+        layer.addToNodePairCache(demand);
+        demand.updateAttributeIndexes(true);
+        layer.notifyDemandChanged(demand);
 
         if (ErrorHandling.isDebugEnabled()) this.checkCachesConsistency();
         return demand;
@@ -530,7 +586,9 @@ public class NetPlan extends NetworkElement
         interLayerCoupling.addVertex(layer);
         cache_id2LayerMap.put(id, layer);
         layers.add(layer);
+        layer.updateAttributeIndexes(true);
         if (layers.size() == 1) defaultLayer = layer;
+        cache_topologyVersion++;
 
         if (ErrorHandling.isDebugEnabled()) this.checkCachesConsistency();
         return layer;
@@ -642,6 +700,10 @@ public class NetPlan extends NetworkElement
         layer.links.add(link);
         originNode.cache_nodeOutgoingLinks.add(link);
         destinationNode.cache_nodeIncomingLinks.add(link);
+        layer.addToNodePairCache(link);
+        link.updateAttributeIndexes(true);
+        cache_topologyVersion++;
+        layer.notifyLayerChanged();
 
         if (ErrorHandling.isDebugEnabled()) this.checkCachesConsistency();
         return link;
@@ -731,6 +793,7 @@ public class NetPlan extends NetworkElement
 
         cache_id2MulticastDemandMap.put(demandId, demand);
         layer.multicastDemands.add(demand);
+        demand.updateAttributeIndexes(true);
         for (Node n : egressNodes) n.cache_nodeIncomingMulticastDemands.add(demand);
         ingressNode.cache_nodeOutgoingMulticastDemands.add(demand);
         if (ErrorHandling.isDebugEnabled()) this.checkCachesConsistency();
@@ -777,6 +840,7 @@ public class NetPlan extends NetworkElement
 
         cache_id2MulticastTreeMap.put(treeId, tree);
         layer.multicastTrees.add(tree);
+        tree.updateAttributeIndexes(true);
         boolean treeIsUp = true;
         for (Node node : tree.cache_traversedNodes)
         {
@@ -823,11 +887,21 @@ public class NetPlan extends NetworkElement
 
         nodes.add(node);
         cache_id2NodeMap.put(nodeId, node);
+        node.addToNameCache();
+        node.updateAttributeIndexes(true);
+        cache_topologyVersion++;
+        notifyNodeChanged(node);
 
         if (ErrorHandling.isDebugEnabled()) this.checkCachesConsistency();
         return node;
     }
 
+    /* Notifies a change in the node to the listeners of all the layers, since nodes are not associated to layers */
+    void notifyNodeChanged(Node node)
+    {
+        for (NetworkLayer layer : layers) layer.notifyNodeChanged(node);
+    }
+
     /**
      * <p>Adds a new Resource to the network. Resources are associated to a node, and have no layer associated to it.</p>
      *
@@ -870,6 +944,7 @@ public class NetPlan extends NetworkElement
 
         resources.add(resource);
         cache_id2ResourceMap.put(resourceId, resource);
+        resource.updateAttributeIndexes(true);
         Set<Resource> resOfThisType = cache_type2Resources.get(type);
         if (resOfThisType == null)
         {
@@ -944,6 +1019,7 @@ public class NetPlan extends NetworkElement
 
         layer.routes.add(route);
         cache_id2RouteMap.put(routeId, route);
+        route.updateAttributeIndexes(true);
         boolean isUpThisRoute = true;
         for (Node node : route.cache_seqNodesRealPath)
         {
@@ -965,6 +1041,122 @@ public class NetPlan extends NetworkElement
         return route;
     }
 
+    /* The methods below add elements in bulk to a design that is being created (e.g. read from a file), so no listener is notified. They fill the
+     * same caches as the methods adding one element, and check the same values, but not that the nodes and links are of this design and layer */
+
+    /* Adds the nodes with the given ids, with no attributes */
+    List<Node> addNodesInBulk(long[] nodeIds, double[] xCoords, double[] yCoords, String[] names)
+    {
+        checkIsModifiable();
+        nodes.ensureCapacity(nodes.size() + nodeIds.length);
+        final List<Node> res = new ArrayList<Node>(nodeIds.length);
+        for (int n = 0; n < nodeIds.length; n++)
+        {
+            final Node node = new Node(this, nodeIds[n], nodes.size(), xCoords[n], yCoords[n], names == null ? null : names[n], new AttributeMap());
+            nodes.add(node);
+            cache_id2NodeMap.put(node.id, node);
+            node.addToNameCache();
+            res.add(node);
+        }
+        cache_topologyVersion++;
+        return res;
+    }
+
+    /* Adds the links with the given ids to the layer, up and with no attributes */
+    List<Link> addLinksInBulk(NetworkLayer layer, long[] linkIds, List<Node> originNodes, List<Node> destinationNodes, double[] capacities, double[] lengthsInKm, double[] propagationSpeedsInKmPerSecond)
+    {
+        checkIsModifiable();
+        layer.links.ensureCapacity(layer.links.size() + linkIds.length);
+        final List<Link> res = new ArrayList<Link>(linkIds.length);
+        for (int e = 0; e < linkIds.length; e++)
+        {
+            final Node originNode = originNodes.get(e);
+            final Node destinationNode = destinationNodes.get(e);
+            if (originNode == destinationNode) throw new Net2PlanException("Self-links are not allowed");
+            if (capacities[e] < 0) throw new Net2PlanException("Link capacity must be non-negative");
+            if (lengthsInKm[e] < 0) throw new Net2PlanException("Link length must be non-negative");
+            if (propagationSpeedsInKmPerSecond[e] <= 0) throw new Net2PlanException("Propagation speed must be positive");
+            final Link link = new Link(this, linkIds[e], layer.links.size(), layer, originNode, destinationNode, lengthsInKm[e], propagationSpeedsInKmPerSecond[e], NetPlan.adjustToTolerance(capacities[e]), new AttributeMap());
+            layer.links.add(link);
+            cache_id2LinkMap.put(link.id, link);
+            originNode.cache_nodeOutgoingLinks.add(link);
+            destinationNode.cache_nodeIncomingLinks.add(link);
+            layer.addToNodePairCache(link);
+            res.add(link);
+        }
+        cache_topologyVersion++;
+        return res;
+    }
+
+    /* Adds the unicast demands with the given ids to the layer, with no attributes */
+    List<Demand> addDemandsInBulk(NetworkLayer layer, long[] demandIds, List<Node> ingressNodes, List<Node> egressNodes, double[] offeredTraffics)
+    {
+        checkIsModifiable();
+        layer.demands.ensureCapacity(layer.demands.size() + demandIds.length);
+        final List<Demand> res = new ArrayList<Demand>(demandIds.length);
+        for (int d = 0; d < demandIds.length; d++)
+        {
+            final Node ingressNode = ingressNodes.get(d);
+            final Node egressNode = egressNodes.get(d);
+            if (ingressNode == egressNode) throw new Net2PlanException("Self-demands are not allowed");
+            if (offeredTraffics[d] < 0) throw new Net2PlanException("Offered traffic must be non-negative");
+            final Demand demand = new Demand(this, demandIds[d], layer.demands.size(), layer, ingressNode, egressNode, NetPlan.adjustToTolerance(offeredTraffics[d]), new AttributeMap());
+            layer.demands.add(demand);
+            cache_id2DemandMap.put(demand.id, demand);
+            ingressNode.cache_nodeOutgoingDemands.add(demand);
+            egressNode.cache_nodeIncomingDemands.add(demand);
+            layer.addToNodePairCache(demand);
+            res.add(demand);
+        }
+        return res;
+    }
+
+    /* Adds a route with the given id to the (source routing) layer of the demand, with no attributes. The caches are filled directly with the state after
+     * setCarriedTraffic when the route only traverses links, and they are up. Otherwise (failures, resources), the route is added with addServiceChain */
+    Route addRouteInBulk(long routeId, Demand demand, List<? extends NetworkElement> sequenceOfLinksAndResources, double carriedTraffic, List<Double> occupiedLinkAndResourceCapacities)
+    {
+        boolean onlyUpLinks = true;
+        for (NetworkElement e : sequenceOfLinksAndResources)
+            if (!(e instanceof Link) || !((Link) e).isUp || !((Link) e).originNode.isUp || !((Link) e).destinationNode.isUp)
+            {
+                onlyUpLinks = false;
+                break;
+            }
+        if (!onlyUpLinks) return addServiceChain(routeId, demand, carriedTraffic, occupiedLinkAndResourceCapacities, sequenceOfLinksAndResources, null);
+
+        checkIsModifiable();
+        demand.layer.checkRoutingType(RoutingType.SOURCE_ROUTING);
+        if (occupiedLinkAndResourceCapacities.size() != sequenceOfLinksAndResources.size()) throw new Net2PlanException("Wrong size of occupations vector");
+        carriedTraffic = NetPlan.adjustToTolerance(carriedTraffic);
+        final List<Double> occupations = NetPlan.adjustToTolerance(occupiedLinkAndResourceCapacities);
+        if (carriedTraffic < 0) throw new Net2PlanException("Carried traffic must be non-negative");
+        for (double val : occupations) if (val < 0) throw new Net2PlanException("Occupied capacities cannot be negative");
+
+        final NetworkLayer layer = demand.layer;
+        final Route route = new Route(this, routeId, layer.routes.size(), demand, sequenceOfLinksAndResources, new AttributeMap()); // checks the path continuity
+        route.currentCarriedTrafficIfNotFailing = carriedTraffic;
+        route.currentLinksAndResourcesOccupationIfNotFailing = new ArrayList<Double>(occupations);
+        route.initialStateCarriedTrafficIfNotFailing = carriedTraffic;
+        route.initialStateOccupationIfNotFailing = new ArrayList<Double>(occupations);
+        route.cache_linkAndResourcesTraversedOccupiedCapIfnotFailMap = route.updateLinkResourceOccupationCache();
+        route.cache_upWhenLinksUpdated = true;
+
+        layer.routes.add(route);
+        cache_id2RouteMap.put(route.id, route);
+        for (Node node : route.cache_seqNodesRealPath)
+            node.cache_nodeAssociatedRoutes.add(route);
+        for (Link link : route.cache_seqLinksRealPath)
+        {
+            final Integer numPassingTimes = link.cache_traversingRoutes.get(route);
+            link.cache_traversingRoutes.put(route, numPassingTimes == null ? 1 : numPassingTimes + 1);
+        }
+        for (Entry<NetworkElement, Double> entry : route.cache_linkAndResourcesTraversedOccupiedCapIfnotFailMap.entrySet())
+            ((Link) entry.getKey()).addTrafficAndOccupation(carriedTraffic, entry.getValue());
+        demand.cache_routes.add(route);
+        demand.carriedTraffic += carriedTraffic;
+        return route;
+    }
+
     /**
      * <p>Computes a list of disjoint path pairs for each node pair, using the paths in the input candidate path list given.</p>
      *
@@ -973,63 +1165,78 @@ public class NetPlan extends NetworkElement
      * @return List of disjoint path pairs for each demand
      */
     public static Map<Pair<Node, Node>, List<Pair<List<Link>, List<Link>>>> computeUnicastCandidate11PathList(Map<Pair<Node, Node>, List<List<Link>>> cpl, int disjointType)
+    {
+        return computeUnicastCandidate11PathList(cpl, disjointType, null);
+    }
+
+    /**
+     * <p>Computes a list of disjoint path pairs for each node pair, using the paths in the input candidate path list given. The path pairs of each node pair
+     * are computed as an independent task in the given pool. The result is the same as in the sequential version, and the returned map iterates the node pairs
+     * ordered by the indexes of the origin and destination nodes.</p>
+     *
+     * @param cpl          Candidate path list per demand
+     * @param disjointType Type of disjointness: 0 for SRG-disjoint, 1 for link and node disjoint, other value means link disjoint
+     * @param pool         The pool where the tasks are run. If {@code null}, the computation is sequential
+     * @return List of disjoint path pairs for each demand
+     */
+    public static Map<Pair<Node, Node>, List<Pair<List<Link>, List<Link>>>> computeUnicastCandidate11PathList(Map<Pair<Node, Node>, List<List<Link>>> cpl, int disjointType, ForkJoinPool pool)
+    {
+        final List<Pair<Node, Node>> nodePairs = new ArrayList<>(cpl.keySet());
+        Collections.sort(nodePairs, NODE_PAIR_INDEX_ORDER);
+        return computePerKey(nodePairs, nodePair -> computeUnicastCandidate11PathList(nodePair, cpl.get(nodePair), disjointType), pool);
+    }
+
+    private static List<Pair<List<Link>, List<Link>>> computeUnicastCandidate11PathList(Pair<Node, Node> nodePair, List<List<Link>> cplThisPair, int disjointType)
     {
         final boolean srgDisjoint = disjointType == 0;
         final boolean linkAndNodeDisjoint = disjointType == 1;
         final boolean linkDisjoint = !srgDisjoint && !linkAndNodeDisjoint;
-        Map<Pair<Node, Node>, List<Pair<List<Link>, List<Link>>>> result = new HashMap<>();
-        if (cpl.isEmpty()) return result;
-
-        for (Pair<Node, Node> nodePair : cpl.keySet())
-        {
-            List<Pair<List<Link>, List<Link>>> pairs11ThisDemand = new ArrayList<>();
-            final List<List<Link>> paths = new ArrayList<>(cpl.get(nodePair));
-            final int P_d = paths.size();
-            for (int firstPathIndex = 0; firstPathIndex < P_d - 1; firstPathIndex++)
+        List<Pair<List<Link>, List<Link>>> pairs11ThisDemand = new ArrayList<>();
+        final List<List<Link>> paths = new ArrayList<>(cplThisPair);
+        final int P_d = paths.size();
+        for (int firstPathIndex = 0; firstPathIndex < P_d - 1; firstPathIndex++)
+        {
+            final List<Link> firstPathSeqLinks = paths.get(firstPathIndex).stream().filter(e -> e instanceof Link).map(e -> (Link) e).collect(Collectors.toList());
+            final Set<Link> firstPathLinks = new HashSet<Link>(firstPathSeqLinks);
+            Set<Node> firstPathNodesButLastAndFirst = null;
+            Set<SharedRiskGroup> firstPathSRGs = null;
+            if (linkAndNodeDisjoint)
             {
-                final List<Link> firstPathSeqLinks = paths.get(firstPathIndex).stream().filter(e -> e instanceof Link).map(e -> (Link) e).collect(Collectors.toList());
-                final Set<Link> firstPathLinks = new HashSet<Link>(firstPathSeqLinks);
-                Set<Node> firstPathNodesButLastAndFirst = null;
-                Set<SharedRiskGroup> firstPathSRGs = null;
-                if (linkAndNodeDisjoint)
+                List<Node> firstPathSeqNodes = GraphUtils.convertSequenceOfLinksToSequenceOfNodes(firstPathSeqLinks);
+                firstPathNodesButLastAndFirst = new HashSet<Node>(firstPathSeqNodes);
+                firstPathNodesButLastAndFirst.remove(nodePair.getFirst());
+                firstPathNodesButLastAndFirst.remove(nodePair.getSecond());
+            } else if (srgDisjoint)
+            {
+                firstPathSRGs = SRGUtils.getAffectingSRGs(firstPathLinks);
+            }
+            for (int secondPathIndex = firstPathIndex + 1; secondPathIndex < P_d; secondPathIndex++)
+            {
+                //List<Link> secondPath = paths.get(secondPathIndex);
+                final List<Link> secondPathSeqLinks = paths.get(secondPathIndex); //.stream().filter(e -> e instanceof Link).map(e -> (Link) e).collect(Collectors.toList());
+                boolean disjoint = true;
+                if (linkDisjoint)
                 {
-                    List<Node> firstPathSeqNodes = GraphUtils.convertSequenceOfLinksToSequenceOfNodes(firstPathSeqLinks);
-                    firstPathNodesButLastAndFirst = new HashSet<Node>(firstPathSeqNodes);
-                    firstPathNodesButLastAndFirst.remove(nodePair.getFirst());
-                    firstPathNodesButLastAndFirst.remove(nodePair.getSecond());
+                    disjoint = Sets.intersection(firstPathLinks, new HashSet<>(secondPathSeqLinks)).isEmpty();
+                } else if (linkAndNodeDisjoint)
+                {
+                    Set<Node> secondPathNodes = new HashSet<Node>(GraphUtils.convertSequenceOfLinksToSequenceOfNodes(secondPathSeqLinks));
+                    secondPathNodes.remove(nodePair.getFirst());
+                    secondPathNodes.remove(nodePair.getSecond());
+                    disjoint = Sets.intersection(firstPathLinks, new HashSet<>(secondPathSeqLinks)).isEmpty() &&
+                            Sets.intersection(firstPathNodesButLastAndFirst, secondPathNodes).isEmpty();
                 } else if (srgDisjoint)
                 {
-                    firstPathSRGs = SRGUtils.getAffectingSRGs(firstPathLinks);
+                    disjoint = Sets.intersection(firstPathSRGs, SRGUtils.getAffectingSRGs(secondPathSeqLinks)).isEmpty();
                 }
-                for (int secondPathIndex = firstPathIndex + 1; secondPathIndex < P_d; secondPathIndex++)
+                if (disjoint)
                 {
-                    //List<Link> secondPath = paths.get(secondPathIndex);
-                    final List<Link> secondPathSeqLinks = paths.get(secondPathIndex); //.stream().filter(e -> e instanceof Link).map(e -> (Link) e).collect(Collectors.toList());
-                    boolean disjoint = true;
-                    if (linkDisjoint)
-                    {
-                        disjoint = Sets.intersection(firstPathLinks, new HashSet<>(secondPathSeqLinks)).isEmpty();
-                    } else if (linkAndNodeDisjoint)
-                    {
-                        Set<Node> secondPathNodes = new HashSet<Node>(GraphUtils.convertSequenceOfLinksToSequenceOfNodes(secondPathSeqLinks));
-                        secondPathNodes.remove(nodePair.getFirst());
-                        secondPathNodes.remove(nodePair.getSecond());
-                        disjoint = Sets.intersection(firstPathLinks, new HashSet<>(secondPathSeqLinks)).isEmpty() &&
-                                Sets.intersection(firstPathNodesButLastAndFirst, secondPathNodes).isEmpty();
-                    } else if (srgDisjoint)
-                    {
-                        disjoint = Sets.intersection(firstPathSRGs, SRGUtils.getAffectingSRGs(secondPathSeqLinks)).isEmpty();
-                    }
-                    if (disjoint)
-                    {
-                        checkDisjointness(firstPathSeqLinks, secondPathSeqLinks, disjointType);
-                        pairs11ThisDemand.add(Pair.of(paths.get(firstPathIndex), paths.get(secondPathIndex)));
-                    }
+                    checkDisjointness(firstPathSeqLinks, secondPathSeqLinks, disjointType);
+                    pairs11ThisDemand.add(Pair.of(paths.get(firstPathIndex), paths.get(secondPathIndex)));
                 }
             }
-            result.put(nodePair, pairs11ThisDemand);
         }
-        return result;
+        return pairs11ThisDemand;
     }
 
     /**
@@ -1170,26 +1377,50 @@ public class NetPlan extends NetworkElement
     public Map<Demand, List<List<NetworkElement>>> computeUnicastCandidateServiceChainList(DoubleMatrix1D linkCosts, DoubleMatrix1D resourceCosts,
                                                                                            int K, double maxCostServiceChain, double maxLengthInKmPerSubpath, int maxNumHopsPerSubpath, double maxPropDelayInMsPerSubpath,
                                                                                            NetworkLayer... optionalLayerParameter)
+    {
+        return computeUnicastCandidateServiceChainList(linkCosts, resourceCosts, K, maxCostServiceChain, maxLengthInKmPerSubpath, maxNumHopsPerSubpath, maxPropDelayInMsPerSubpath, null, optionalLayerParameter);
+    }
+
+    /**
+     * Computes for each demand (service chain request) up to k minimum cost service chain paths, as in
+     * {@link #computeUnicastCandidateServiceChainList(DoubleMatrix1D, DoubleMatrix1D, int, double, double, int, double, NetworkLayer...) computeUnicastCandidateServiceChainList},
+     * where the service chains of each demand are computed as an independent task in the given pool. The graph and the subpaths computed are shared among all the tasks.
+     * The result is the same as in the sequential version, and the returned map iterates the demands in the same order as in the layer.
+     *
+     * @param linkCosts                  the cost of each link (if null, all links have cost one), all numbers must be strictly positive
+     * @param resourceCosts              a vector with the cost of each resource (if null, all resources have cost zero). All costs must be nonnegative. If a resource has a cost of Double.MAX_VALUE, it is as if it did not existed (cannot be traversed)
+     * @param K                          The maximum number of service chains to return (less than K may be returned if there are no different paths).
+     * @param maxCostServiceChain        Service chains with a cost higher than this are not enumerated
+     * @param maxLengthInKmPerSubpath    The maximum length in km in each subpath. Service chains not satisfying this are not enumerated
+     * @param maxNumHopsPerSubpath       The maximum number of traversed links in each subpath. Service chains not satisfying this are not enumerated
+     * @param maxPropDelayInMsPerSubpath The propagation delay summing the links in each subpath. Service chains not satisfying this are not enumerated
+     * @param pool                       The pool where the tasks are run. If {@code null}, the computation is sequential
+     * @param optionalLayerParameter     the optional layer parameter
+     * @return Map with all the computed service chain paths (values) per demands (keys)
+     */
+    public Map<Demand, List<List<NetworkElement>>> computeUnicastCandidateServiceChainList(DoubleMatrix1D linkCosts, DoubleMatrix1D resourceCosts,
+                                                                                           int K, double maxCostServiceChain, double maxLengthInKmPerSubpath, int maxNumHopsPerSubpath, double maxPropDelayInMsPerSubpath,
+                                                                                           ForkJoinPool pool, NetworkLayer... optionalLayerParameter)
     {
         final NetworkLayer layer = checkInThisNetPlanOptionalLayerParameter(optionalLayerParameter);
-        Map<Pair<Node, Node>, List<Pair<List<Link>, Double>>> cacheSubpathLists = new HashMap<>();
-        if (linkCosts == null) linkCosts = DoubleFactory1D.dense.make(layer.links.size(), 1.0);
+        final Map<Pair<Node, Node>, List<Pair<List<Link>, Double>>> cacheSubpathLists = pool == null ? new HashMap<>() : new ConcurrentHashMap<>();
+        final DoubleMatrix1D linkCostsToUse = linkCosts == null ? DoubleFactory1D.dense.make(layer.links.size(), 1.0) : linkCosts;
         if (resourceCosts == null) resourceCosts = DoubleFactory1D.dense.make(resources.size(), 0.0);
         Map<Resource, Double> resourceCostMap = new HashMap<Resource, Double>();
         for (int rIndex = 0; rIndex < resources.size(); rIndex++)
             resourceCostMap.put(resources.get(rIndex), resourceCosts.get(rIndex));
-        Map<Demand, List<List<NetworkElement>>> cpl = new HashMap<Demand, List<List<NetworkElement>>>();
-        for (Demand d : layer.demands)
+        final Map<Link, Double> linkCostMap = new HashMap<Link, Double>();
+        for (Link e : layer.links) linkCostMap.put(e, linkCostsToUse.get(e.index));
+        final GraphUtils.CSRGraph graph = layer.links.isEmpty() || layer.demands.isEmpty() ? null : new GraphUtils.CSRGraph(nodes, layer.links, linkCostMap);
+        return computePerKey(layer.demands, d ->
         {
             List<Pair<List<NetworkElement>, Double>> kSCsInfo = GraphUtils.getKMinimumCostServiceChains(layer.links,
                     d.ingressNode, d.egressNode, d.mandatorySequenceOfTraversedResourceTypes,
-                    linkCosts, resourceCostMap,
+                    linkCostsToUse, resourceCostMap,
                     K, maxCostServiceChain, maxLengthInKmPerSubpath, maxNumHopsPerSubpath, maxPropDelayInMsPerSubpath,
-                    cacheSubpathLists);
-            List<List<NetworkElement>> kSCs = kSCsInfo.stream().map(e -> e.getFirst()).collect(Collectors.toList());
-            cpl.put(d, kSCs);
-        }
-        return cpl;
+                    cacheSubpathLists, graph);
+            return kSCsInfo.stream().map(e -> e.getFirst()).collect(Collectors.toList());
+        }, pool);
     }
 
     /**
@@ -1210,24 +1441,72 @@ public class NetPlan extends NetworkElement
     public Map<Pair<Node, Node>, List<List<Link>>> computeUnicastCandidatePathList(DoubleMatrix1D linkCosts,
                                                                                    int K, double maxLengthInKm, int maxNumHops, double maxPropDelayInMs, double maxRouteCost,
                                                                                    double maxRouteCostFactorRespectToShortestPath, double maxRouteCostRespectToShortestPath, Set<Pair<Node, Node>> nodePairs, NetworkLayer... optionalLayerParameter)
+    {
+        return computeUnicastCandidatePathList(linkCosts, K, maxLengthInKm, maxNumHops, maxPropDelayInMs, maxRouteCost, maxRouteCostFactorRespectToShortestPath, maxRouteCostRespectToShortestPath, nodePairs, null, optionalLayerParameter);
+    }
+
+    /**
+     * <p>Computes for all the node pairs, a candidate path list in the given layer, composed of the k shortest paths according with the options indicated below.
+     * The paths of each node pair are computed as an independent task in the given pool, all sharing the same graph. The result is the same as in the sequential version,
+     * and the returned map iterates the node pairs ordered by the indexes of the origin and destination nodes.</p>
+     *
+     * @param linkCosts                               the cost of each link (if null, all links have cost one), all numbers must be strictly positive
+     * @param K                                       Desired nummber of paths (a lower number of paths may be returned if there are less than {@code K} loop-less paths admissible)
+     * @param maxLengthInKm                           Maximum length of the path. If non-positive, no maximum limit is assumed
+     * @param maxNumHops                              Maximum number of hops. If non-positive, no maximum limit is assumed
+     * @param maxPropDelayInMs                        Maximum propagation delay of the path. If non-positive, no maximum limit is assumed
+     * @param maxRouteCost                            Maximum route cost. If non-positive, no maximum limit is assumed
+     * @param maxRouteCostFactorRespectToShortestPath Maximum route cost factor respect to the shortest path. If non-positive, no maximum limit is assumed
+     * @param maxRouteCostRespectToShortestPath       Maximum route cost respect to the shortest path. If non-positive, no maximum limit is assumed
+     * @param nodePairs                               if this parameter is not null, the paths are computed only for this node pairs
+     * @param pool                                    The pool where the tasks are run. If {@code null}, the computation is sequential
+     * @param optionalLayerParameter                  the layer (optional)
+     * @return Map with all the computed paths (values) per node pairs (keys)
+     */
+    public Map<Pair<Node, Node>, List<List<Link>>> computeUnicastCandidatePathList(DoubleMatrix1D linkCosts,
+                                                                                   int K, double maxLengthInKm, int maxNumHops, double maxPropDelayInMs, double maxRouteCost,
+                                                                                   double maxRouteCostFactorRespectToShortestPath, double maxRouteCostRespectToShortestPath, Set<Pair<Node, Node>> nodePairs,
+                                                                                   ForkJoinPool pool, NetworkLayer... optionalLayerParameter)
     {
         checkIsModifiable();
         final NetworkLayer layer = checkInThisNetPlanOptionalLayerParameter(optionalLayerParameter);
         if (linkCosts != null) if (linkCosts.size() != layer.links.size())
             throw new Net2PlanException("The array of costs must have the same length as the number of links in the layer");
-        Map<Pair<Node, Node>, List<List<Link>>> cpl = new HashMap<>();
         Map<Link, Double> linkCostMap = new HashMap<Link, Double>();
         for (Link e : layer.links) linkCostMap.put(e, linkCosts == null ? 1.0 : linkCosts.get(e.index));
+        final List<Pair<Node, Node>> nodePairsList;
         if (nodePairs == null)
         {
-            nodePairs = new HashSet<>();
+            nodePairsList = new ArrayList<>(nodes.size() * (nodes.size() - 1));
             for (Node n1 : nodes)
                 for (Node n2 : nodes)
-                    if (n1 != n2) nodePairs.add(Pair.of(n1, n2));
+                    if (n1 != n2) nodePairsList.add(Pair.of(n1, n2));
+        } else
+        {
+            nodePairsList = new ArrayList<>(nodePairs);
+            Collections.sort(nodePairsList, NODE_PAIR_INDEX_ORDER); // the input set is typically a HashSet, with an iteration order that changes between runs
         }
-        for (Pair<Node, Node> pair : nodePairs)
-            cpl.put(pair, GraphUtils.getKLooplessShortestPaths(nodes, layer.links, pair.getFirst(), pair.getSecond(), linkCostMap, K, maxLengthInKm, maxNumHops, maxPropDelayInMs, maxRouteCost, maxRouteCostFactorRespectToShortestPath, maxRouteCostRespectToShortestPath));
-        return cpl;
+        final GraphUtils.CSRGraph graph = new GraphUtils.CSRGraph(nodes, layer.links, linkCostMap);
+        return computePerKey(nodePairsList, pair -> graph.getKLooplessShortestPaths(pair.getFirst(), pair.getSecond(), K, maxLengthInKm, maxNumHops, maxPropDelayInMs, maxRouteCost, maxRouteCostFactorRespectToShortestPath, maxRouteCostRespectToShortestPath), pool);
+    }
+
+    /* Orders node pairs by the index of the first node, and then by the index of the second */
+    private static final Comparator<Pair<Node, Node>> NODE_PAIR_INDEX_ORDER = Comparator.<Pair<Node, Node>>comparingInt(p -> p.getFirst().index).thenComparingInt(p -> p.getSecond().index);
+
+    /* Evaluates the function for each key: sequentially if the pool is null, or as one independent task per key in the pool otherwise. In both cases the
+     * returned map iterates the keys in the order of the input list, so the result does not depend on the number of threads or on the task completion order */
+    private static <K, V> Map<K, V> computePerKey(List<K> keys, Function<K, V> function, ForkJoinPool pool)
+    {
+        final Map<K, V> res = new LinkedHashMap<>(capacityForSize(keys.size()));
+        if (pool == null)
+        {
+            for (K key : keys) res.put(key, function.apply(key));
+            return res;
+        }
+        final List<ForkJoinTask<V>> tasks = new ArrayList<>(keys.size());
+        for (K key : keys) tasks.add(pool.submit(() -> function.apply(key)));
+        for (int cont = 0; cont < keys.size(); cont++) res.put(keys.get(cont), tasks.get(cont).join());
+        return res;
     }
 
     /**
@@ -1249,7 +1528,7 @@ public class NetPlan extends NetworkElement
                     routes.add(this.addRoute(d, 0, 0, path, null));
         } catch (Exception e)
         {
-            for (Route r : routes) r.remove();
+            removeRoutes(routes);
             throw e;
         }
         if (ErrorHandling.isDebugEnabled()) this.checkCachesConsistency();
@@ -1280,7 +1559,7 @@ public class NetPlan extends NetworkElement
                 }
         } catch (Exception e)
         {
-            for (Route r : routes) r.remove();
+            removeRoutes(routes);
             throw e;
         }
         if (ErrorHandling.isDebugEnabled()) this.checkCachesConsistency();
@@ -1448,6 +1727,8 @@ public class NetPlan extends NetworkElement
 
         srgs.add(srg);
         cache_id2srgMap.put(srgId, srg);
+        srg.updateAttributeIndexes(true);
+        cache_topologyVersion++;
 
         if (ErrorHandling.isDebugEnabled()) this.checkCachesConsistency();
         return srg;
@@ -1490,7 +1771,11 @@ public class NetPlan extends NetworkElement
         this.cache_id2srgMap = netPlan.cache_id2srgMap;
         this.cache_taggedElements = netPlan.cache_taggedElements;
         this.cache_nodesPerSiteName = netPlan.cache_nodesPerSiteName;
+        this.cache_nodesPerName = netPlan.cache_nodesPerName;
+        this.cache_attributeIndexes = netPlan.cache_attributeIndexes;
         this.interLayerCoupling = netPlan.interLayerCoupling;
+        for (NetworkLayer layer : this.layers) layer.cache_matrices.clear(); // computed for the versions of the origin design
+        this.cache_topologyVersion++;
         this.tags.clear(); this.tags.addAll(netPlan.tags);
         for (String tag : this.tags) // remove reference to origin netPlan in tags (the other network elements do not change, but NetPlan does) 
         { 
@@ -1499,6 +1784,7 @@ public class NetPlan extends NetworkElement
         }
         this.attributes.clear();
         this.attributes.putAll(netPlan.attributes);
+        clearTypedAttribute();
         for (Node node : netPlan.nodes) node.netPlan = this;
         for (SharedRiskGroup srg : netPlan.srgs) srg.netPlan = this;
         for (Resource resource : netPlan.resources) resource.netPlan = this;
@@ -1765,6 +2051,30 @@ public class NetPlan extends NetworkElement
     void checkIsModifiable()
     {
         if (!isModifiable) throw new UnsupportedOperationException(UNMODIFIABLE_EXCEPTION_STRING);
+        cache_modificationVersion++;
+    }
+
+    /**
+     * <p>Checks if the {@code NetPlan} object is modifiable, for a change in the attributes of an element. When negative, an exception will be thrown.
+     * Contrary to {@link #checkIsModifiable()}, the matrices cached per layer are kept, since none of them depends on the attributes.</p>
+     */
+    void checkAttributesAreModifiable()
+    {
+        if (!isModifiable) throw new UnsupportedOperationException(UNMODIFIABLE_EXCEPTION_STRING);
+    }
+
+    /* Called at the end of a change of the design that may have computed a cached matrix in the middle of it. The matrix is stored with the version set 
+     * when the change started (see checkIsModifiable), which is still current after the change, so the version is changed again for not reusing it */
+    void changeCompleted()
+    {
+        cache_modificationVersion++;
+    }
+
+    /* Called after notifying a change to the listeners of a layer, with the number of cache misses before: if a listener computed a matrix, the change 
+     * was still in progress */
+    void changeNotified(long matrixMissesBeforeNotification)
+    {
+        if (cache_matrixMisses.get() != matrixMissesBeforeNotification) changeCompleted();
     }
 
     /**
@@ -1850,6 +2160,9 @@ public class NetPlan extends NetworkElement
 
     /**
      * <p>Returns a deep copy of the current design.</p>
+     * <p>The cost of the copy is linear in the size of the design: every network element and every cache is duplicated. 
+     * Only the attribute maps of the network elements are shared between the original and the copy, and are duplicated
+     * by an element (in any of both designs) the first time it modifies its attributes.</p>
      *
      * @return Deep copy of the current design
      * @since 0.2.0
@@ -1890,7 +2203,8 @@ public class NetPlan extends NetworkElement
 
     
     /**
-     * <p>Removes all information from the current {@code NetPlan} and copy the information from the input {@code NetPlan}.</p>
+     * <p>Removes all information from the current {@code NetPlan} and copy the information from the input {@code NetPlan}.
+     * As in {@link #copy()}, all the elements and caches are duplicated, and only the attribute maps are shared until modified.</p>
      *
      * @param originNetPlan Network plan to be copied from
      */
@@ -1902,39 +2216,46 @@ public class NetPlan extends NetworkElement
 
         this.attributes.clear();
         this.attributes.putAll(originNetPlan.attributes);
+        clearTypedAttribute();
         this.netPlan = this;
-        this.layers = new ArrayList<NetworkLayer>();
-        this.nodes = new ArrayList<Node>();
-        this.srgs = new ArrayList<SharedRiskGroup>();
-        this.resources = new ArrayList<Resource>();
+        this.layers = new ArrayList<NetworkLayer>(originNetPlan.layers.size());
+        this.nodes = new ArrayList<Node>(originNetPlan.nodes.size());
+        this.srgs = new ArrayList<SharedRiskGroup>(originNetPlan.srgs.size());
+        this.resources = new ArrayList<Resource>(originNetPlan.resources.size());
         this.cache_nodesDown = new HashSet<Node>();
         this.cache_type2Resources = new HashMap<String, Set<Resource>>();
-        this.cache_id2NodeMap = new HashMap<Long, Node>();
-        this.cache_id2ResourceMap = new HashMap<Long, Resource>();
+        this.cache_id2NodeMap = new HashMap<Long, Node>(capacityForSize(originNetPlan.cache_id2NodeMap.size()));
+        this.cache_id2ResourceMap = new HashMap<Long, Resource>(capacityForSize(originNetPlan.cache_id2ResourceMap.size()));
         this.cache_id2LayerMap = new HashMap<Long, NetworkLayer>();
-        this.cache_id2srgMap = new HashMap<Long, SharedRiskGroup>();
-        this.cache_id2LinkMap = new HashMap<Long, Link>();
-        this.cache_id2DemandMap = new HashMap<Long, Demand>();
-        this.cache_id2MulticastDemandMap = new HashMap<Long, MulticastDemand>();
-        this.cache_id2RouteMap = new HashMap<Long, Route>();
-        this.cache_id2MulticastTreeMap = new HashMap<Long, MulticastTree>();
+        this.cache_id2srgMap = new HashMap<Long, SharedRiskGroup>(capacityForSize(originNetPlan.cache_id2srgMap.size()));
+        this.cache_id2LinkMap = new HashMap<Long, Link>(capacityForSize(originNetPlan.cache_id2LinkMap.size()));
+        this.cache_id2DemandMap = new HashMap<Long, Demand>(capacityForSize(originNetPlan.cache_id2DemandMap.size()));
+        this.cache_id2MulticastDemandMap = new HashMap<Long, MulticastDemand>(capacityForSize(originNetPlan.cache_id2MulticastDemandMap.size()));
+        this.cache_id2RouteMap = new HashMap<Long, Route>(capacityForSize(originNetPlan.cache_id2RouteMap.size()));
+        this.cache_id2MulticastTreeMap = new HashMap<Long, MulticastTree>(capacityForSize(originNetPlan.cache_id2MulticastTreeMap.size()));
         this.cache_taggedElements = new HashMap<> ();
         this.cache_nodesPerSiteName = new HashMap<> ();
+        this.cache_nodesPerName = new HashMap<> ();
+        this.cache_attributeIndexes = new HashMap<> ();
         this.DEFAULT_ROUTING_TYPE = originNetPlan.DEFAULT_ROUTING_TYPE;
         this.isModifiable = true;
         this.networkDescription = originNetPlan.networkDescription;
         this.networkName = originNetPlan.networkName;
         this.nextElementId = originNetPlan.nextElementId;
         this.interLayerCoupling = new DirectedAcyclicGraph<NetworkLayer, DemandLinkMapping>(DemandLinkMapping.class);
+        this.cache_topologyVersion++;
         this.tags.clear(); for (String tag : originNetPlan.tags) this.addTag (tag);
         
 
-		/* Create the new network elements, not all the fields filled */
+		/* Create the new network elements, not all the fields filled. Attribute maps are shared with the origin (copy-on-write), 
+		 * and references to other elements are translated by index, since the copy keeps the indexes of the origin */
         for (Node originNode : originNetPlan.nodes)
         {
-            Node newElement = new Node(this, originNode.id, originNode.index, originNode.nodeXYPositionMap.getX(), originNode.nodeXYPositionMap.getY(), originNode.name, originNode.attributes);
+            Node newElement = new Node(this, originNode.id, originNode.index, originNode.nodeXYPositionMap.getX(), originNode.nodeXYPositionMap.getY(), originNode.name, null);
+            newElement.shareAttributesFrom(originNode);
             for (String tag : originNode.getTags ()) newElement.addTag (tag);
             newElement.setSiteName(originNode.siteName);
+            newElement.addToNameCache();
             cache_id2NodeMap.put(originNode.id, newElement);
             nodes.add(newElement);
             if (!originNode.isUp) cache_nodesDown.add(newElement);
@@ -1943,7 +2264,8 @@ public class NetPlan extends NetworkElement
         {
             Resource newElement = new Resource(this, originResource.id, originResource.index, originResource.type,
                     originResource.name, this.cache_id2NodeMap.get(originResource.hostNode.id),
-                    originResource.capacity, originResource.capacityMeasurementUnits, null, originResource.processingTimeToTraversingTrafficInMs, originResource.attributes);
+                    originResource.capacity, originResource.capacityMeasurementUnits, null, originResource.processingTimeToTraversingTrafficInMs, null);
+            newElement.shareAttributesFrom(originResource);
             for (String tag : originResource.getTags ()) newElement.addTag (tag);
             cache_id2ResourceMap.put(originResource.id, newElement);
             Set<Resource> resOfThisType = cache_type2Resources.get(originResource.type);
@@ -1957,14 +2279,21 @@ public class NetPlan extends NetworkElement
         }
         for (SharedRiskGroup originSrg : originNetPlan.srgs)
         {
-            SharedRiskGroup newElement = new SharedRiskGroup(this, originSrg.id, originSrg.index, null, null, originSrg.meanTimeToFailInHours, originSrg.meanTimeToRepairInHours, originSrg.attributes);
+            SharedRiskGroup newElement = new SharedRiskGroup(this, originSrg.id, originSrg.index, null, null, originSrg.meanTimeToFailInHours, originSrg.meanTimeToRepairInHours, null);
+            newElement.shareAttributesFrom(originSrg);
             for (String tag : originSrg.getTags ()) newElement.addTag (tag);
             cache_id2srgMap.put(originSrg.id, newElement);
             srgs.add(newElement);
         }
         for (NetworkLayer originLayer : originNetPlan.layers)
         {
-            NetworkLayer newLayer = new NetworkLayer(this, originLayer.id, originLayer.index, originLayer.demandTrafficUnitsName, originLayer.description, originLayer.name, originLayer.linkCapacityUnitsName, originLayer.defaultNodeIconURL, originLayer.attributes);
+            NetworkLayer newLayer = new NetworkLayer(this, originLayer.id, originLayer.index, originLayer.demandTrafficUnitsName, originLayer.description, originLayer.name, originLayer.linkCapacityUnitsName, originLayer.defaultNodeIconURL, null);
+            newLayer.shareAttributesFrom(originLayer);
+            newLayer.links.ensureCapacity(originLayer.links.size());
+            newLayer.demands.ensureCapacity(originLayer.demands.size());
+            newLayer.multicastDemands.ensureCapacity(originLayer.multicastDemands.size());
+            newLayer.routes.ensureCapacity(originLayer.routes.size());
+            newLayer.multicastTrees.ensureCapacity(originLayer.multicastTrees.size());
             for (String tag : originLayer.getTags ()) newLayer.addTag (tag);
             cache_id2LayerMap.put(originLayer.id, newLayer);
             layers.add(newLayer);
@@ -1973,7 +2302,8 @@ public class NetPlan extends NetworkElement
 
             for (Demand originDemand : originLayer.demands)
             {
-                Demand newElement = new Demand(this, originDemand.id, originDemand.index, newLayer, this.cache_id2NodeMap.get(originDemand.ingressNode.id), this.cache_id2NodeMap.get(originDemand.egressNode.id), originDemand.offeredTraffic, originDemand.attributes);
+                Demand newElement = new Demand(this, originDemand.id, originDemand.index, newLayer, this.nodes.get(originDemand.ingressNode.index), this.nodes.get(originDemand.egressNode.index), originDemand.offeredTraffic, null);
+                newElement.shareAttributesFrom(originDemand);
                 for (String tag : originDemand.getTags ()) newElement.addTag (tag);
                 newElement.mandatorySequenceOfTraversedResourceTypes = new LinkedList<String>(originDemand.mandatorySequenceOfTraversedResourceTypes);
                 cache_id2DemandMap.put(originDemand.id, newElement);
@@ -1983,24 +2313,26 @@ public class NetPlan extends NetworkElement
             {
                 Set<Node> newEgressNodes = new HashSet<Node>();
                 for (Node oldEgressNode : originDemand.egressNodes)
-                    newEgressNodes.add(this.cache_id2NodeMap.get(oldEgressNode.id));
-                MulticastDemand newElement = new MulticastDemand(this, originDemand.id, originDemand.index, newLayer, this.cache_id2NodeMap.get(originDemand.ingressNode.id), newEgressNodes, originDemand.offeredTraffic, originDemand.attributes);
+                    newEgressNodes.add(this.nodes.get(oldEgressNode.index));
+                MulticastDemand newElement = new MulticastDemand(this, originDemand.id, originDemand.index, newLayer, this.nodes.get(originDemand.ingressNode.index), newEgressNodes, originDemand.offeredTraffic, null);
+                newElement.shareAttributesFrom(originDemand);
                 for (String tag : originDemand.getTags ()) newElement.addTag (tag);
                 cache_id2MulticastDemandMap.put(originDemand.id, newElement);
                 newLayer.multicastDemands.add(newElement);
             }
             for (Link originLink : originLayer.links)
             {
-                Link newElement = new Link(this, originLink.id, originLink.index, newLayer, this.cache_id2NodeMap.get(originLink.originNode.id), this.cache_id2NodeMap.get(originLink.destinationNode.id), originLink.lengthInKm, originLink.propagationSpeedInKmPerSecond, originLink.capacity, originLink.attributes);
+                Link newElement = new Link(this, originLink.id, originLink.index, newLayer, this.nodes.get(originLink.originNode.index), this.nodes.get(originLink.destinationNode.index), originLink.lengthInKm, originLink.propagationSpeedInKmPerSecond, originLink.capacity, null);
+                newElement.shareAttributesFrom(originLink);
                 for (String tag : originLink.getTags ()) newElement.addTag (tag);
                 cache_id2LinkMap.put(originLink.id, newElement);
                 newLayer.links.add(newElement);
             }
             for (Route originRoute : originLayer.routes)
             {
-                Route newElement = new Route(this, originRoute.id, originRoute.index, cache_id2DemandMap.get(originRoute.demand.id),
-                        (List<NetworkElement>) translateCollectionToThisNetPlan(originRoute.currentPath),
-                        originRoute.attributes);
+                Route newElement = new Route(this, originRoute.id, originRoute.index, newLayer.demands.get(originRoute.demand.index),
+                        getPeerElementsInThisNetPlan(originRoute.currentPath), null);
+                newElement.shareAttributesFrom(originRoute);
                 for (String tag : originRoute.getTags ()) newElement.addTag (tag);
                 newElement.currentCarriedTrafficIfNotFailing = originRoute.currentCarriedTrafficIfNotFailing;
                 newElement.currentLinksAndResourcesOccupationIfNotFailing = new ArrayList<Double>(originRoute.currentLinksAndResourcesOccupationIfNotFailing);
@@ -2010,8 +2342,9 @@ public class NetPlan extends NetworkElement
             for (MulticastTree originTree : originLayer.multicastTrees)
             {
                 Set<Link> newSetLinks = new HashSet<Link>();
-                for (Link oldLink : originTree.linkSet) newSetLinks.add(this.cache_id2LinkMap.get(oldLink.id));
-                MulticastTree newElement = new MulticastTree(this, originTree.id, originTree.index, cache_id2MulticastDemandMap.get(originTree.demand.id), newSetLinks, originTree.attributes);
+                for (Link oldLink : originTree.linkSet) newSetLinks.add(newLayer.links.get(oldLink.index));
+                MulticastTree newElement = new MulticastTree(this, originTree.id, originTree.index, newLayer.multicastDemands.get(originTree.demand.index), newSetLinks, null);
+                newElement.shareAttributesFrom(originTree);
                 for (String tag : originTree.getTags ()) newElement.addTag (tag);
                 cache_id2MulticastTreeMap.put(originTree.id, newElement);
                 newLayer.multicastTrees.add(newElement);
@@ -2029,20 +2362,15 @@ public class NetPlan extends NetworkElement
 
         this.interLayerCoupling = new DirectedAcyclicGraph<NetworkLayer, DemandLinkMapping>(DemandLinkMapping.class);
         for (NetworkLayer layer : originNetPlan.interLayerCoupling.vertexSet())
-            this.interLayerCoupling.addVertex(this.netPlan.getNetworkLayerFromId(layer.id));
+            this.interLayerCoupling.addVertex(this.layers.get(layer.index));
         for (DemandLinkMapping mapping : originNetPlan.interLayerCoupling.edgeSet())
         {
             if (mapping.isEmpty()) throw new RuntimeException("Bad");
             DemandLinkMapping newMapping = new DemandLinkMapping();
             for (Entry<Demand, Link> originEntry : mapping.getDemandMap().entrySet())
-                newMapping.put(this.netPlan.getDemandFromId(originEntry.getKey().id), this.netPlan.getLinkFromId(originEntry.getValue().id));
+                newMapping.put((Demand) getPeerElementInThisNetPlan(originEntry.getKey()), (Link) getPeerElementInThisNetPlan(originEntry.getValue()));
             for (Entry<MulticastDemand, Set<Link>> originEntry : mapping.getMulticastDemandMap().entrySet())
-            {
-                Set<Link> newSetLink = new HashSet<Link>();
-                for (Link originLink : originEntry.getValue())
-                    newSetLink.add(this.netPlan.getLinkFromId(originLink.id));
-                newMapping.put(this.netPlan.getMulticastDemandFromId(originEntry.getKey().id), newSetLink);
-            }
+                newMapping.put((MulticastDemand) getPeerElementInThisNetPlan(originEntry.getKey()), getPeerElementsInThisNetPlan(originEntry.getValue()));
 
             try
             {
@@ -2052,6 +2380,7 @@ public class NetPlan extends NetworkElement
                 throw new RuntimeException("Bad: " + e);
             }
         }
+        for (String attribute : originNetPlan.cache_attributeIndexes.keySet()) buildAttributeIndex(attribute);
         if (ErrorHandling.isDebugEnabled()) this.checkCachesConsistency();
     }
 
@@ -2085,18 +2414,7 @@ public class NetPlan extends NetworkElement
         DoubleMatrix1D res = DoubleFactory1D.dense.make(collection.size());
         int counter = 0;
         for (NetworkElement e : collection)
-        {
-            double val = defaultValue;
-            String value = e.getAttribute(attributeName);
-            if (value != null)
-                try
-                {
-                    val = Double.parseDouble(value);
-                } catch (Exception ex)
-                {
-                }
-            res.set(counter++, val);
-        }
+            res.set(counter++, e.getAttributeAsDouble(attributeName, defaultValue));
         return res;
     }
 
@@ -2486,6 +2804,49 @@ public class NetPlan extends NetworkElement
         return res;
     }
 
+    /**
+     * <p>Returns the number of times that one of the topology or routing matrices kept in the per-layer matrix cache
+     * (node-link incidence and adjacency matrices, link-SRG assignment, demand-link carried traffic, demand-route, link-route and link-multicast tree
+     * assignments, and demand-based forwarding rules) was returned without being recomputed. The topology matrices are computed again only when
+     * nodes, links, layers or SRGs change, and the rest of them after any modification of the design.</p>
+     *
+     * @return The number of cache hits
+     * @since 0.5.1
+     */
+    public long getMatrixCacheHits()
+    {
+        return cache_matrixHits.get();
+    }
+
+    /**
+     * <p>Returns the number of times that one of the matrices kept in the per-layer matrix cache had to be computed
+     * (see {@link #getMatrixCacheHits()}).</p>
+     *
+     * @return The number of cache misses
+     * @since 0.5.1
+     */
+    public long getMatrixCacheMisses()
+    {
+        return cache_matrixMisses.get();
+    }
+
+    /* Returns a copy of the matrix cached in the layer, computing it again if the design changed since then: topology matrices
+     * are stored with the topology version, the rest with the modification version. A copy is returned since callers can modify it */
+    private DoubleMatrix2D getMatrixFromCache(NetworkLayer layer, String matrixName, boolean isTopologyMatrix, Supplier<DoubleMatrix2D> computation)
+    {
+        final long version = isTopologyMatrix ? cache_topologyVersion : cache_modificationVersion;
+        final Pair<Long, DoubleMatrix2D> cached = layer.cache_matrices.get(matrixName);
+        if (cached != null && cached.getFirst() == version)
+        {
+            cache_matrixHits.incrementAndGet();
+            return cached.getSecond().copy();
+        }
+        cache_matrixMisses.incrementAndGet();
+        final DoubleMatrix2D matrix = computation.get();
+        layer.cache_matrices.put(matrixName, Pair.of(version, matrix));
+        return matrix.copy();
+    }
+
     /**
      * <p>Returns the demand-link incidence matrix (a <i>D</i>x<i>E</i> matrix in
      * which an element <i>&delta;<sub>de</sub></i> is equal to the number of
@@ -2624,20 +2985,23 @@ public class NetPlan extends NetworkElement
     public DoubleMatrix2D getMatrixDemand2LinkTrafficCarried(NetworkLayer... optionalLayerParameter)
     {
         NetworkLayer layer = checkInThisNetPlanOptionalLayerParameter(optionalLayerParameter);
-        DoubleMatrix2D x_de = DoubleFactory2D.sparse.make(layer.demands.size(), layer.links.size());
-        if (layer.isSourceRouting())
+        return getMatrixFromCache(layer, "demand2LinkTrafficCarried", false, () ->
         {
-            for (Route r : layer.routes)
-                for (Link e : r.cache_seqLinksRealPath)
-                    x_de.set(r.demand.index, e.index, x_de.get(r.demand.index, e.index) + r.getCarriedTraffic());
-        }
-        else
-        {
-        	for (Demand d : layer.demands)
-        		for (Entry<Link,Pair<Double,Double>> xde : d.cacheHbH_normCarriedOccupiedPerLinkCurrentState.entrySet())
-        			x_de.set(d.index, xde.getKey().index, xde.getValue().getSecond());
-        }
-        return x_de;
+            DoubleMatrix2D x_de = DoubleFactory2D.sparse.make(layer.demands.size(), layer.links.size());
+            if (layer.isSourceRouting())
+            {
+                for (Route r : layer.routes)
+                    for (Link e : r.cache_seqLinksRealPath)
+                        x_de.set(r.demand.index, e.index, x_de.get(r.demand.index, e.index) + r.getCarriedTraffic());
+            }
+            else
+            {
+            	for (Demand d : layer.demands)
+            		for (Entry<Link,Pair<Double,Double>> xde : d.cacheHbH_normCarriedOccupiedPerLinkCurrentState.entrySet())
+            			x_de.set(d.index, xde.getKey().index, xde.getValue().getSecond());
+            }
+            return x_de;
+        });
     }
 
     /**
@@ -2679,11 +3043,14 @@ public class NetPlan extends NetworkElement
     {
         NetworkLayer layer = checkInThisNetPlanOptionalLayerParameter(optionalLayerParameter);
         layer.checkRoutingType(RoutingType.SOURCE_ROUTING);
-        int D = layer.demands.size();
-        int R = layer.routes.size();
-        DoubleMatrix2D delta_dr = DoubleFactory2D.sparse.make(D, R);
-        for (Route r : layer.routes) delta_dr.set(r.demand.index, r.index, 1);
-        return delta_dr;
+        return getMatrixFromCache(layer, "demand2RouteAssignment", false, () ->
+        {
+            int D = layer.demands.size();
+            int R = layer.routes.size();
+            DoubleMatrix2D delta_dr = DoubleFactory2D.sparse.make(D, R);
+            for (Route r : layer.routes) delta_dr.set(r.demand.index, r.index, 1);
+            return delta_dr;
+        });
     }
 
     /**
@@ -2719,16 +3086,19 @@ public class NetPlan extends NetworkElement
     public DoubleMatrix2D getMatrixDemandBasedForwardingRules(NetworkLayer... optionalLayerParameter)
     {
         NetworkLayer layer = checkInThisNetPlanOptionalLayerParameter(optionalLayerParameter);
-        if (layer.routingType == RoutingType.HOP_BY_HOP_ROUTING)
+        return getMatrixFromCache(layer, "demandBasedForwardingRules", false, () ->
         {
-        	final DoubleMatrix2D f_de = DoubleFactory2D.sparse.make(layer.demands.size() , layer.links.size());
-        	for (Demand d : layer.demands)
-        		for (Entry<Link,Double> fde : d.cacheHbH_frs.entrySet())
-        			f_de.set(d.index, fde.getKey().index, fde.getValue());
-        	return f_de;
-        }
-        else
-            return GraphUtils.convert_xde2fde(nodes, layer.links, layer.demands, GraphUtils.convert_xp2xde(layer.links, layer.demands, layer.routes));
+            if (layer.routingType == RoutingType.HOP_BY_HOP_ROUTING)
+            {
+            	final DoubleMatrix2D f_de = DoubleFactory2D.sparse.make(layer.demands.size() , layer.links.size());
+            	for (Demand d : layer.demands)
+            		for (Entry<Link,Double> fde : d.cacheHbH_frs.entrySet())
+            			f_de.set(d.index, fde.getKey().index, fde.getValue());
+            	return f_de;
+            }
+            else
+                return GraphUtils.convert_xde2fde(nodes, layer.links, layer.demands, GraphUtils.convert_xp2xde(layer.links, layer.demands, layer.routes));
+        });
     }
 
     /**
@@ -2783,12 +3153,15 @@ public class NetPlan extends NetworkElement
     {
         NetworkLayer layer = checkInThisNetPlanOptionalLayerParameter(optionalLayerParameter);
         layer.checkRoutingType(RoutingType.SOURCE_ROUTING);
-        int E = layer.links.size();
-        int R = layer.routes.size();
-        DoubleMatrix2D delta_er = DoubleFactory2D.sparse.make(E, R);
-        for (Route r : layer.routes)
-            for (Link e : r.cache_seqLinksRealPath) delta_er.set(e.index, r.index, delta_er.get(e.index, r.index) + 1);
-        return delta_er;
+        return getMatrixFromCache(layer, "link2RouteAssignment", false, () ->
+        {
+            int E = layer.links.size();
+            int R = layer.routes.size();
+            DoubleMatrix2D delta_er = DoubleFactory2D.sparse.make(E, R);
+            for (Route r : layer.routes)
+                for (Link e : r.cache_seqLinksRealPath) delta_er.set(e.index, r.index, delta_er.get(e.index, r.index) + 1);
+            return delta_er;
+        });
     }
 
     /**
@@ -2801,12 +3174,15 @@ public class NetPlan extends NetworkElement
     public DoubleMatrix2D getMatrixLink2MulticastTreeAssignment(NetworkLayer... optionalLayerParameter)
     {
         NetworkLayer layer = checkInThisNetPlanOptionalLayerParameter(optionalLayerParameter);
-        int E = layer.links.size();
-        int T = layer.multicastTrees.size();
-        DoubleMatrix2D delta_et = DoubleFactory2D.sparse.make(E, T);
-        for (MulticastTree t : layer.multicastTrees)
-            for (Link e : t.linkSet) delta_et.set(e.index, t.index, delta_et.get(e.index, t.index) + 1);
-        return delta_et;
+        return getMatrixFromCache(layer, "link2MulticastTreeAssignment", false, () ->
+        {
+            int E = layer.links.size();
+            int T = layer.multicastTrees.size();
+            DoubleMatrix2D delta_et = DoubleFactory2D.sparse.make(E, T);
+            for (MulticastTree t : layer.multicastTrees)
+                for (Link e : t.linkSet) delta_et.set(e.index, t.index, delta_et.get(e.index, t.index) + 1);
+            return delta_et;
+        });
     }
 
     /**
@@ -2819,17 +3195,20 @@ public class NetPlan extends NetworkElement
     public DoubleMatrix2D getMatrixLink2SRGAssignment(NetworkLayer... optionalLayerParameter)
     {
         NetworkLayer layer = checkInThisNetPlanOptionalLayerParameter(optionalLayerParameter);
-        DoubleMatrix2D delta_es = DoubleFactory2D.sparse.make(layer.links.size(), srgs.size());
-        for (SharedRiskGroup s : srgs)
+        return getMatrixFromCache(layer, "link2SRGAssignment", true, () ->
         {
-            for (Link e : s.links) if (e.layer.equals(layer)) delta_es.set(e.index, s.index, 1);
-            for (Node n : s.nodes)
+            DoubleMatrix2D delta_es = DoubleFactory2D.sparse.make(layer.links.size(), srgs.size());
+            for (SharedRiskGroup s : srgs)
             {
-                for (Link e : n.cache_nodeIncomingLinks) if (e.layer.equals(layer)) delta_es.set(e.index, s.index, 1);
-                for (Link e : n.cache_nodeOutgoingLinks) if (e.layer.equals(layer)) delta_es.set(e.index, s.index, 1);
+                for (Link e : s.links) if (e.layer.equals(layer)) delta_es.set(e.index, s.index, 1);
+                for (Node n : s.nodes)
+                {
+                    for (Link e : n.cache_nodeIncomingLinks) if (e.layer.equals(layer)) delta_es.set(e.index, s.index, 1);
+                    for (Link e : n.cache_nodeOutgoingLinks) if (e.layer.equals(layer)) delta_es.set(e.index, s.index, 1);
+                }
             }
-        }
-        return delta_es;
+            return delta_es;
+        });
     }
 
     /**
@@ -3255,11 +3634,14 @@ public class NetPlan extends NetworkElement
     public DoubleMatrix2D getMatrixNodeLinkAdjacency(NetworkLayer... optionalLayerParameter)
     {
         NetworkLayer layer = checkInThisNetPlanOptionalLayerParameter(optionalLayerParameter);
-        int N = nodes.size();
-        DoubleMatrix2D delta_nn = DoubleFactory2D.sparse.make(N, N);
-        for (Link e : layer.links)
-            delta_nn.set(e.originNode.index, e.destinationNode.index, delta_nn.get(e.originNode.index, e.destinationNode.index) + 1);
-        return delta_nn;
+        return getMatrixFromCache(layer, "nodeLinkAdjacency", true, () ->
+        {
+            int N = nodes.size();
+            DoubleMatrix2D delta_nn = DoubleFactory2D.sparse.make(N, N);
+            for (Link e : layer.links)
+                delta_nn.set(e.originNode.index, e.destinationNode.index, delta_nn.get(e.originNode.index, e.destinationNode.index) + 1);
+            return delta_nn;
+        });
     }
 
     /**
@@ -3272,15 +3654,18 @@ public class NetPlan extends NetworkElement
     public DoubleMatrix2D getMatrixNodeLinkIncidence(NetworkLayer... optionalLayerParameter)
     {
         NetworkLayer layer = checkInThisNetPlanOptionalLayerParameter(optionalLayerParameter);
-        int N = nodes.size();
-        int E = layer.links.size();
-        DoubleMatrix2D delta_ne = DoubleFactory2D.sparse.make(N, E);
-        for (Link e : layer.links)
+        return getMatrixFromCache(layer, "nodeLinkIncidence", true, () ->
         {
-            delta_ne.set(e.originNode.index, e.index, 1);
-            delta_ne.set(e.destinationNode.index, e.index, -1);
-        }
-        return delta_ne;
+            int N = nodes.size();
+            int E = layer.links.size();
+            DoubleMatrix2D delta_ne = DoubleFactory2D.sparse.make(N, E);
+            for (Link e : layer.links)
+            {
+                delta_ne.set(e.originNode.index, e.index, 1);
+                delta_ne.set(e.destinationNode.index, e.index, -1);
+            }
+            return delta_ne;
+        });
     }
 
     /**
@@ -3293,12 +3678,15 @@ public class NetPlan extends NetworkElement
     public DoubleMatrix2D getMatrixNodeLinkIncomingIncidence(NetworkLayer... optionalLayerParameter)
     {
         NetworkLayer layer = checkInThisNetPlanOptionalLayerParameter(optionalLayerParameter);
-        int N = nodes.size();
-        int E = layer.links.size();
-        DoubleMatrix2D delta_ne = DoubleFactory2D.sparse.make(N, E);
-        for (Link e : layer.links)
-            delta_ne.set(e.destinationNode.index, e.index, 1);
-        return delta_ne;
+        return getMatrixFromCache(layer, "nodeLinkIncomingIncidence", true, () ->
+        {
+            int N = nodes.size();
+            int E = layer.links.size();
+            DoubleMatrix2D delta_ne = DoubleFactory2D.sparse.make(N, E);
+            for (Link e : layer.links)
+                delta_ne.set(e.destinationNode.index, e.index, 1);
+            return delta_ne;
+        });
     }
 
     /**
@@ -3311,12 +3699,15 @@ public class NetPlan extends NetworkElement
     public DoubleMatrix2D getMatrixNodeLinkOutgoingIncidence(NetworkLayer... optionalLayerParameter)
     {
         NetworkLayer layer = checkInThisNetPlanOptionalLayerParameter(optionalLayerParameter);
-        int N = nodes.size();
-        int E = layer.links.size();
-        DoubleMatrix2D delta_ne = DoubleFactory2D.sparse.make(N, E);
-        for (Link e : layer.links)
-            delta_ne.set(e.originNode.index, e.index, 1);
-        return delta_ne;
+        return getMatrixFromCache(layer, "nodeLinkOutgoingIncidence", true, () ->
+        {
+            int N = nodes.size();
+            int E = layer.links.size();
+            DoubleMatrix2D delta_ne = DoubleFactory2D.sparse.make(N, E);
+            for (Link e : layer.links)
+                delta_ne.set(e.originNode.index, e.index, 1);
+            return delta_ne;
+        });
     }
 
     /**
@@ -3513,6 +3904,86 @@ public class NetPlan extends NetworkElement
         return null;
     }
 
+    /**
+     * <p>Starts maintaining an index of the network elements of this design (layers, nodes, links, demands, multicast demands, routes, multicast trees, 
+     * resources and SRGs) by the value of the given attribute, so they can be retrieved with {@link #getNetworkElementsByIndexedAttribute(String, String)} 
+     * without traversing all the elements. The index is kept updated as the elements and their attributes change, which adds a small cost 
+     * to these changes. If the attribute is already indexed, no action is made.</p>
+     *
+     * @param attribute Attribute name
+     */
+    public void addAttributeIndex(String attribute)
+    {
+        if (attribute == null) throw new Net2PlanException("The attribute name cannot be null");
+        if (cache_attributeIndexes.containsKey(attribute)) return;
+        buildAttributeIndex(attribute);
+    }
+
+    /**
+     * <p>Stops maintaining the index of the given attribute. If the attribute is not indexed, no action is made.</p>
+     *
+     * @param attribute Attribute name
+     * @see #addAttributeIndex(String)
+     */
+    public void removeAttributeIndex(String attribute)
+    {
+        cache_attributeIndexes.remove(attribute);
+    }
+
+    /**
+     * <p>Returns the names of the attributes for which an index is maintained.</p>
+     *
+     * @return An unmodifiable view of the indexed attribute names
+     * @see #addAttributeIndex(String)
+     */
+    public Set<String> getIndexedAttributes()
+    {
+        return Collections.unmodifiableSet(cache_attributeIndexes.keySet());
+    }
+
+    /**
+     * <p>Returns the network elements of this design that have the given value in the given attribute, which must be indexed.</p>
+     *
+     * @param attribute Attribute name
+     * @param value     Attribute value
+     * @return An unmodifiable view of the network elements with the attribute key-value (empty if none)
+     * @see #addAttributeIndex(String)
+     */
+    public Set<NetworkElement> getNetworkElementsByIndexedAttribute(String attribute, String value)
+    {
+        final Map<String, Set<NetworkElement>> index = cache_attributeIndexes.get(attribute);
+        if (index == null) throw new Net2PlanException("Attribute " + attribute + " is not indexed");
+        final Set<NetworkElement> res = index.get(value);
+        return res == null ? Collections.<NetworkElement>emptySet() : Collections.unmodifiableSet(res);
+    }
+
+    /* Creates (or recreates) the index of the given attribute from the current network elements */
+    void buildAttributeIndex(String attribute)
+    {
+        final Map<String, Set<NetworkElement>> index = new HashMap<>();
+        cache_attributeIndexes.put(attribute, index);
+        final List<NetworkElement> elements = new ArrayList<NetworkElement>(layers);
+        elements.addAll(nodes);
+        elements.addAll(resources);
+        elements.addAll(srgs);
+        for (NetworkLayer layer : layers)
+        {
+            elements.addAll(layer.links);
+            elements.addAll(layer.demands);
+            elements.addAll(layer.multicastDemands);
+            elements.addAll(layer.routes);
+            elements.addAll(layer.multicastTrees);
+        }
+        for (NetworkElement e : elements)
+        {
+            final String value = e.attributes.get(attribute);
+            if (value == null) continue;
+            Set<NetworkElement> elementsThisValue = index.get(value);
+            if (elementsThisValue == null) { elementsThisValue = new HashSet<>(); index.put(value, elementsThisValue); }
+            elementsThisValue.add(e);
+        }
+    }
+
     /**
      * Returns the next identifier for a new network element (layer, node, link, demand...)
      *
@@ -3636,8 +4107,11 @@ public class NetPlan extends NetworkElement
      */
     public Node getNodeByName(String name)
     {
-        for (Node n : nodes) if (n.name.equals(name)) return n;
-        return null;
+        final Set<Node> nodesThisName = cache_nodesPerName.get(name);
+        if (nodesThisName == null) return null;
+        Node res = null;
+        for (Node n : nodesThisName) if ((res == null) || (n.index < res.index)) res = n;
+        return res;
     }
 
     /**
@@ -3666,11 +4140,8 @@ public class NetPlan extends NetworkElement
         NetworkLayer layer = checkInThisNetPlanOptionalLayerParameter(optionalLayerParameter);
         checkInThisNetPlan(originNode);
         checkInThisNetPlan(destinationNode);
-        Set<Demand> res = new HashSet<Demand>();
-        for (Demand e : originNode.cache_nodeOutgoingDemands)
-            if (e.layer.equals(layer) && e.egressNode.equals(destinationNode)) res.add(e);
-        if (returnDemandsInBothDirections) for (Demand e : originNode.cache_nodeIncomingDemands)
-            if (e.layer.equals(layer) && e.ingressNode.equals(destinationNode)) res.add(e);
+        Set<Demand> res = new HashSet<Demand>(layer.getNodePairDemands(originNode, destinationNode));
+        if (returnDemandsInBothDirections) res.addAll(layer.getNodePairDemands(destinationNode, originNode));
         return res;
     }
 
@@ -3717,11 +4188,8 @@ public class NetPlan extends NetworkElement
         NetworkLayer layer = checkInThisNetPlanOptionalLayerParameter(optionalLayerParameter);
         checkInThisNetPlan(originNode);
         checkInThisNetPlan(destinationNode);
-        Set<Link> res = new HashSet<Link>();
-        for (Link e : originNode.cache_nodeOutgoingLinks)
-            if (e.layer.equals(layer) && e.destinationNode.equals(destinationNode)) res.add(e);
-        if (returnLinksInBothDirections) for (Link e : originNode.cache_nodeIncomingLinks)
-            if (e.layer.equals(layer) && e.originNode.equals(destinationNode)) res.add(e);
+        Set<Link> res = new HashSet<Link>(layer.getNodePairLinks(originNode, destinationNode));
+        if (returnLinksInBothDirections) res.addAll(layer.getNodePairLinks(destinationNode, originNode));
         return res;
     }
 
@@ -3741,10 +4209,8 @@ public class NetPlan extends NetworkElement
         checkInThisNetPlan(originNode);
         checkInThisNetPlan(destinationNode);
         Set<Route> res = new HashSet<Route>();
-        for (Demand e : originNode.cache_nodeOutgoingDemands)
-            if (e.layer.equals(layer) && e.egressNode.equals(destinationNode)) res.addAll(e.cache_routes);
-        if (returnRoutesInBothDirections) for (Demand e : originNode.cache_nodeIncomingDemands)
-            if (e.layer.equals(layer) && e.ingressNode.equals(destinationNode)) res.addAll(e.cache_routes);
+        for (Demand e : layer.getNodePairDemands(originNode, destinationNode)) res.addAll(e.cache_routes);
+        if (returnRoutesInBothDirections) for (Demand e : layer.getNodePairDemands(destinationNode, originNode)) res.addAll(e.cache_routes);
         return res;
     }
 
@@ -4156,7 +4622,7 @@ public class NetPlan extends NetworkElement
         if (values.size() != collection.size())
             throw new Net2PlanException("The number of elements in the collection and the number of values to assign must be the same");
         int counter = 0;
-        for (NetworkElement e : collection) e.setAttribute(attributeKey, Double.toString(values.get(counter++)));
+        for (NetworkElement e : collection) e.setAttributeAsDouble(attributeKey, values.get(counter++));
     }
 
     /**
@@ -5159,10 +5625,10 @@ public class NetPlan extends NetworkElement
         netPlan.checkIsModifiable();
         if (netPlan.layers.size() == 1) throw new Net2PlanException("At least one layer must exist");
 
-        for (Route route : new LinkedList<Route>(layer.routes)) route.remove();
+        removeRoutes(layer.routes);
         for (MulticastTree tree : new LinkedList<MulticastTree>(layer.multicastTrees)) tree.remove();
-        for (Link link : new LinkedList<Link>(layer.links)) link.remove();
-        for (Demand demand : new LinkedList<Demand>(layer.demands)) demand.remove();
+        removeLinks(layer.links);
+        removeDemands(layer.demands);
         for (MulticastDemand demand : new LinkedList<MulticastDemand>(layer.multicastDemands)) demand.remove();
         for (Node node : nodes) node.removeUrlNodeIcon(layer);
         for (String tag : layer.tags) this.cache_taggedElements.get(tag).remove(layer);
@@ -5171,6 +5637,7 @@ public class NetPlan extends NetworkElement
         netPlan.cache_id2LayerMap.remove(layer.id);
         NetPlan.removeNetworkElementAndShiftIndexes(netPlan.layers, layer.index);
         if (netPlan.defaultLayer.equals(layer)) netPlan.defaultLayer = netPlan.layers.get(0);
+        netPlan.cache_topologyVersion++;
         if (ErrorHandling.isDebugEnabled()) netPlan.checkCachesConsistency();
         layer.removeId();
     }
@@ -5184,7 +5651,7 @@ public class NetPlan extends NetworkElement
     {
         checkIsModifiable();
         NetworkLayer layer = checkInThisNetPlanOptionalLayerParameter(optionalLayerParameter);
-        for (Demand d : new ArrayList<Demand>(layer.demands)) d.remove();
+        removeDemands(layer.demands);
         if (ErrorHandling.isDebugEnabled()) this.checkCachesConsistency();
     }
 
@@ -5208,7 +5675,7 @@ public class NetPlan extends NetworkElement
         	d.cache_worstCasePropagationTimeMs = Double.MAX_VALUE;
             d.routingCycleType = RoutingCycleType.LOOPLESS;
             d.carriedTraffic = 0;
-            if (d.coupledUpperLayerLink != null) d.coupledUpperLayerLink.capacity = d.carriedTraffic;
+            if (d.coupledUpperLayerLink != null) { d.coupledUpperLayerLink.capacity = d.carriedTraffic; d.coupledUpperLayerLink.layer.notifyLinkChanged(d.coupledUpperLayerLink); }
         }
         for (Link e : layer.links)
         {
@@ -5216,7 +5683,10 @@ public class NetPlan extends NetworkElement
         	e.cacheHbH_normCarriedOccupiedPerTraversingDemandCurrentState.clear();
             e.cache_carriedTraffic = e.getMulticastCarriedTraffic();
             e.cache_occupiedCapacity = e.getMulticastOccupiedLinkCapacity();
+            e.cache_carriedTrafficCompensation = 0;
+            e.cache_occupiedCapacityCompensation = 0;
         }
+        layer.notifyLayerChanged();
         if (ErrorHandling.isDebugEnabled()) this.checkCachesConsistency();
     }
 
@@ -5231,7 +5701,7 @@ public class NetPlan extends NetworkElement
 		ErrorHandling.DEBUG = false;
         checkIsModifiable();
         NetworkLayer layer = checkInThisNetPlanOptionalLayerParameter(optionalLayerParameter);
-        for (Link e : new ArrayList<Link>(layer.links)) e.remove();
+        removeLinks(layer.links);
 		ErrorHandling.DEBUG = previousErrorHandling;
         if (ErrorHandling.isDebugEnabled()) this.checkCachesConsistency();
     }
@@ -5346,7 +5816,7 @@ public class NetPlan extends NetworkElement
         {
         	d.carriedTraffic = 0;
         	d.routingCycleType = RoutingCycleType.LOOPLESS;
-        	if (d.coupledUpperLayerLink != null) d.coupledUpperLayerLink.capacity = 0;
+        	if (d.coupledUpperLayerLink != null) { d.coupledUpperLayerLink.capacity = 0; d.coupledUpperLayerLink.layer.notifyLinkChanged(d.coupledUpperLayerLink); }
     		d.cache_routes.clear ();
     		d.cache_worstCasePropagationTimeMs = 0;        
     		d.cache_worstCaseLengthInKm = 0;
@@ -5357,6 +5827,7 @@ public class NetPlan extends NetworkElement
         	e.updateLinkTrafficAndOccupation(); // to include multicast
         }
         layer.routes.clear();
+        layer.notifyLayerChanged();
 		
         if (ErrorHandling.isDebugEnabled()) this.checkCachesConsistency();
     }
@@ -5373,7 +5844,8 @@ public class NetPlan extends NetworkElement
         checkIsModifiable();
         NetworkLayer layer = checkInThisNetPlanOptionalLayerParameter(optionalLayerParameter);
         layer.checkRoutingType(RoutingType.SOURCE_ROUTING);
-        for (Route r : new ArrayList<Route>(layer.routes))
+        final List<Route> routesToRemove = new ArrayList<Route>();
+        for (Route r : layer.routes)
         {
             if (r.currentCarriedTrafficIfNotFailing >= toleranceTrafficAndCapacityValueToConsiderUnusedRoute) continue;
             boolean emptyRoute = true;
@@ -5383,8 +5855,9 @@ public class NetPlan extends NetworkElement
                     emptyRoute = false;
                     break;
                 }
-            if (emptyRoute) r.remove();
+            if (emptyRoute) routesToRemove.add(r);
         }
+        removeRoutes(routesToRemove);
         if (ErrorHandling.isDebugEnabled()) this.checkCachesConsistency();
     }
 
@@ -5398,8 +5871,10 @@ public class NetPlan extends NetworkElement
     {
         checkIsModifiable();
         NetworkLayer layer = checkInThisNetPlanOptionalLayerParameter(optionalLayerParameter);
-        for (Link e : new ArrayList<Link>(layer.links))
-            if (e.capacity < toleranceCapacityValueToConsiderUnusedLink) e.remove();
+        final List<Link> linksToRemove = new ArrayList<Link>();
+        for (Link e : layer.links)
+            if (e.capacity < toleranceCapacityValueToConsiderUnusedLink) linksToRemove.add(e);
+        removeLinks(linksToRemove);
         if (ErrorHandling.isDebugEnabled()) this.checkCachesConsistency();
     }
 
@@ -5449,6 +5924,109 @@ public class NetPlan extends NetworkElement
         if (ErrorHandling.isDebugEnabled()) this.checkCachesConsistency();
     }
 
+    /**
+     * <p>Removes the given demands, and any associated routes or forwarding rules. The result is the same as removing the demands one by one,
+     * but the indexes of the demands and routes not removed are renumbered only once.</p>
+     *
+     * @param demands Demands to remove
+     */
+    public void removeDemands(Collection<Demand> demands)
+    {
+        checkIsModifiable();
+        if (demands.isEmpty()) return;
+        final Set<Demand> demandsToRemove = new LinkedHashSet<>(demands);
+        final Set<NetworkLayer> layersAffected = new HashSet<>();
+        for (Demand d : demandsToRemove)
+        {
+            checkInThisNetPlan(d);
+            layersAffected.add(d.layer);
+        }
+		final boolean previousErrorHandling = ErrorHandling.DEBUG; 
+		ErrorHandling.DEBUG = false;
+        final List<Route> routesToRemove = new ArrayList<>();
+        for (Demand d : demandsToRemove)
+        {
+            if (d.coupledUpperLayerLink != null) d.decouple();
+            routesToRemove.addAll(d.cache_routes);
+        }
+        removeRoutes(routesToRemove);
+        for (Demand d : demandsToRemove) d.removeFromCaches();
+        for (NetworkLayer layer : layersAffected) removeNetworkElementsAndShiftIndexes(layer.demands, demandsToRemove);
+        for (Demand d : demandsToRemove)
+        {
+            d.removeId();
+            d.layer.notifyDemandChanged(d);
+        }
+		ErrorHandling.DEBUG = previousErrorHandling;
+        if (ErrorHandling.isDebugEnabled()) this.checkCachesConsistency();
+    }
+
+    /**
+     * <p>Removes the given links. The routing is updated removing any associated routes, multicast trees or forwarding rules, and the
+     * links coupled to demands are first decoupled (see {@link Link#remove()}). The result is the same as removing the links one by one,
+     * but the indexes of the links and routes not removed are renumbered only once.</p>
+     *
+     * @param links Links to remove
+     */
+    public void removeLinks(Collection<Link> links)
+    {
+        checkIsModifiable();
+        if (links.isEmpty()) return;
+        final Set<Link> linksToRemove = new LinkedHashSet<>(links);
+        final Set<NetworkLayer> layersAffected = new HashSet<>();
+        for (Link e : linksToRemove)
+        {
+            checkInThisNetPlan(e);
+            layersAffected.add(e.layer);
+        }
+		final boolean previousErrorHandling = ErrorHandling.DEBUG; 
+		ErrorHandling.DEBUG = false;
+        final Set<Route> routesToRemove = new LinkedHashSet<>();
+        for (Link e : linksToRemove) routesToRemove.addAll(e.cache_traversingRoutes.keySet());
+        removeRoutes(routesToRemove);
+        for (Link e : linksToRemove) e.removeFromCaches();
+        for (NetworkLayer layer : layersAffected)
+        {
+            removeNetworkElementsAndShiftIndexes(layer.links, linksToRemove);
+            layer.notifyLayerChanged();
+        }
+        cache_topologyVersion++;
+        for (Link e : linksToRemove) e.removeId();
+		ErrorHandling.DEBUG = previousErrorHandling;
+        if (ErrorHandling.isDebugEnabled()) this.checkCachesConsistency();
+    }
+
+    /**
+     * <p>Removes the given routes. The result is the same as removing the routes one by one, but the indexes of the routes not removed
+     * are renumbered only once, so the time does not grow with the product of the number of routes removed and the number of routes in the layer.</p>
+     *
+     * @param routes Routes to remove
+     */
+    public void removeRoutes(Collection<Route> routes)
+    {
+        checkIsModifiable();
+        if (routes.isEmpty()) return;
+        final Set<Route> routesToRemove = new LinkedHashSet<>(routes);
+        final Set<NetworkLayer> layersAffected = new HashSet<>();
+        for (Route r : routesToRemove)
+        {
+            checkInThisNetPlan(r);
+            r.layer.checkRoutingType(RoutingType.SOURCE_ROUTING);
+            layersAffected.add(r.layer);
+        }
+		final boolean previousErrorHandling = ErrorHandling.DEBUG; 
+		ErrorHandling.DEBUG = false;
+        for (Route r : routesToRemove) r.removeFromCaches();
+        for (NetworkLayer layer : layersAffected) removeNetworkElementsAndShiftIndexes(layer.routes, routesToRemove);
+        for (Route r : routesToRemove)
+        {
+            r.removeId();
+            r.layer.notifyRouteChanged(r);
+        }
+		ErrorHandling.DEBUG = previousErrorHandling;
+        if (ErrorHandling.isDebugEnabled()) this.checkCachesConsistency();
+    }
+
     /**
      * <p>Resets the state of the network to an empty {@code NetPlan}.</p>
      */
@@ -5493,6 +6071,21 @@ public class NetPlan extends NetworkElement
         }
     }
 
+    /**
+     * <p>Saves the current network plan to a given file in the binary columnar format, with the same information as the {@code .n2p} format.
+     * If extension {@code .n2pb} is not in the file name, it will be added automatically.</p>
+     *
+     * @param file Output file
+     * @see #loadFromBinaryFile(File)
+     * @since 0.5.1
+     */
+    public void saveToBinaryFile(File file)
+    {
+        String filePath = file.getPath();
+        if (!filePath.toLowerCase(Locale.getDefault()).endsWith(".n2pb")) file = new File(filePath + ".n2pb");
+        NetPlanBinaryFormat.write(this, file);
+    }
+
     /**
      * <p>Saves the current network plan to a given output stream.</p>
      *
@@ -5917,6 +6510,29 @@ public class NetPlan extends NetworkElement
      * @param nodesToSetAsDown Nodes to set as down
      */
     public void setLinksAndNodesFailureState(Collection<Link> linksToSetAsUp, Collection<Link> linksToSetAsDown, Collection<Node> nodesToSetAsUp, Collection<Node> nodesToSetAsDown)
+    {
+        setLinksAndNodesFailureState(linksToSetAsUp, linksToSetAsDown, nodesToSetAsUp, nodesToSetAsDown, null);
+    }
+
+    /**
+     * <p>Same as {@link #setLinksAndNodesFailureState(Collection, Collection, Collection, Collection)}, but the previous value of the caches modified
+     * is recorded in the returned journal. Then, the change can be undone with {@link FailureStateJournal#rollback()}, without recomputing the routing
+     * (e.g. to evaluate the design in a failure state, and then come back to the previous state).</p>
+     *
+     * @param linksToSetAsUp   Links to set as up
+     * @param linksToSetAsDown Links to set as down
+     * @param nodesToSetAsUp   Nodes to set as up
+     * @param nodesToSetAsDown Nodes to set as down
+     * @return The undo journal of the change
+     */
+    public FailureStateJournal setLinksAndNodesFailureStateWithJournal(Collection<Link> linksToSetAsUp, Collection<Link> linksToSetAsDown, Collection<Node> nodesToSetAsUp, Collection<Node> nodesToSetAsDown)
+    {
+        final FailureStateJournal journal = new FailureStateJournal(this);
+        setLinksAndNodesFailureState(linksToSetAsUp, linksToSetAsDown, nodesToSetAsUp, nodesToSetAsDown, journal);
+        return journal;
+    }
+
+    private void setLinksAndNodesFailureState(Collection<Link> linksToSetAsUp, Collection<Link> linksToSetAsDown, Collection<Node> nodesToSetAsUp, Collection<Node> nodesToSetAsDown, FailureStateJournal journal)
     {
         checkIsModifiable();
         if (linksToSetAsUp != null) checkInThisNetPlan(linksToSetAsUp);
@@ -5941,6 +6557,8 @@ public class NetPlan extends NetworkElement
                 e.isUp = true;
                 e.layer.cache_linksDown.remove(e);
                 affectedLinks.add(e);
+                if (journal != null) journal.recordLinkStateChange(e);
+                e.layer.notifyLinkChanged(e);
             }
         if (linksToSetAsDown != null) for (Link e : linksToSetAsDown)
             if (e.isUp)
@@ -5948,6 +6566,8 @@ public class NetPlan extends NetworkElement
                 e.isUp = false;
                 e.layer.cache_linksDown.add(e);
                 affectedLinks.add(e);
+                if (journal != null) journal.recordLinkStateChange(e);
+                e.layer.notifyLinkChanged(e);
             }
         if (nodesToSetAsUp != null)
             for (Node node : nodesToSetAsUp)
@@ -5955,6 +6575,8 @@ public class NetPlan extends NetworkElement
                 {
                     node.isUp = true;
                     cache_nodesDown.remove(node);
+                    if (journal != null) journal.recordNodeStateChange(node);
+                    notifyNodeChanged(node);
                     affectedLinks.addAll(node.cache_nodeOutgoingLinks);
                     affectedLinks.addAll(node.cache_nodeIncomingLinks);
                 }
@@ -5964,6 +6586,8 @@ public class NetPlan extends NetworkElement
                 {
                     node.isUp = false;
                     cache_nodesDown.add(node);
+                    if (journal != null) journal.recordNodeStateChange(node);
+                    notifyNodeChanged(node);
                     affectedLinks.addAll(node.cache_nodeOutgoingLinks);
                     affectedLinks.addAll(node.cache_nodeIncomingLinks);
                 }
@@ -5985,6 +6609,7 @@ public class NetPlan extends NetworkElement
         }
 
 //		System.out.println ("affected routes: " + affectedRoutesSourceRouting);
+        if (journal != null) journal.recordStateBeforeRoutingUpdate(affectedDemandsHopByHopRouting, affectedRoutesSourceRouting, affectedTrees);
         for (Demand d : affectedDemandsHopByHopRouting) d.updateHopByHopRoutingToGivenFrs(d.cacheHbH_frs);
         netPlan.updateFailureStateRoutesAndTrees(affectedRoutesSourceRouting);
         netPlan.updateFailureStateRoutesAndTrees(affectedTrees);
@@ -6068,10 +6693,9 @@ public class NetPlan extends NetworkElement
         checkInThisNetPlanAndLayer(demands, layer);
         checkInThisNetPlanAndLayer(links, layer);
         
-        /* Initialize the map with existing demands */
-        Map<Demand,Map<Link,Double>> newForwardingRules = new HashMap<> ();
-        for (Demand d : layer.demands) newForwardingRules.put(d, d.cacheHbH_frs);
-        
+        /* The demands with new rules start from a copy of their current ones */
+        Map<Demand,Map<Link,Double>> newForwardingRules = new LinkedHashMap<> ();
+
         /* Update with new demands */
         Iterator<Demand> it_d = demands.iterator();
         Iterator<Link> it_e = links.iterator();
@@ -6084,7 +6708,7 @@ public class NetPlan extends NetworkElement
             if (splittingFactor < Configuration.precisionFactor) continue;
             if (splittingFactor > 1 || splittingFactor < 0) throw new Net2PlanException ("Split factors must be between 0 and 1");
             Map<Link,Double> frMap = newForwardingRules.get(demand);
-            if (frMap == null) { frMap = new HashMap <> (); newForwardingRules.put(demand, frMap); }
+            if (frMap == null) { frMap = new HashMap <> (demand.cacheHbH_frs); newForwardingRules.put(demand, frMap); }
             frMap.put(link, splittingFactor);
         }
 
@@ -6103,12 +6727,70 @@ public class NetPlan extends NetworkElement
         for (double val : sumOutFrs.values()) if (val > 1 + Configuration.precisionFactor)
         	throw new Net2PlanException ();
         
-        for (Demand d : newForwardingRules.keySet())
-        	d.updateHopByHopRoutingToGivenFrs(newForwardingRules.get(d));
+        updateHopByHopRoutingToGivenFrs(newForwardingRules, null);
         
         if (ErrorHandling.isDebugEnabled()) this.checkCachesConsistency();
     }
 
+    /**
+     * <p>Sets the forwarding rules of the given demands, replacing their previous ones. The rest of the demands keep their forwarding rules.
+     * All the demands and links must be in the same layer.</p>
+     * <p>The routing of all the demands is computed first, without changing the design (in parallel, as one task per demand, if a pool is given), and
+     * then the carried traffic of the demands, the occupation of the links and the capacity of the upper layer links coupled to the demands
+     * are updated once. If the forwarding rules of any demand produce closed routing cycles, the design is not changed.</p>
+     * <p><b>Important</b>: Routing type must be {@link com.net2plan.utils.Constants.RoutingType#HOP_BY_HOP_ROUTING HOP_BY_HOP_ROUTING}.</p>
+     *
+     * @param newForwardingRules For each demand, the splitting ratio of each link (fraction of traffic from the demand entering to the origin node of the link,
+     *                           going through the link). Each value must be between 0 and 1, and the sum of the values of the output links of a node cannot exceed one
+     * @param pool               The pool where the routing of the demands is computed ({@code null} for computing it in the calling thread)
+     * @since 0.5.1
+     */
+    public void setForwardingRules(Map<Demand, Map<Link, Double>> newForwardingRules, ForkJoinPool pool)
+    {
+        checkIsModifiable();
+        if (newForwardingRules.isEmpty()) return;
+        final NetworkLayer layer = newForwardingRules.keySet().iterator().next().layer;
+        layer.checkRoutingType(RoutingType.HOP_BY_HOP_ROUTING);
+        checkInThisNetPlanAndLayer(newForwardingRules.keySet(), layer);
+        final Map<Demand, Map<Link, Double>> newFrsWithoutZeros = new LinkedHashMap<>(capacityForSize(newForwardingRules.size()));
+        for (Entry<Demand, Map<Link, Double>> demandFrs : newForwardingRules.entrySet())
+        {
+            checkInThisNetPlanAndLayer(demandFrs.getValue().keySet(), layer);
+            final Map<Link, Double> frMap = new HashMap<>();
+            final Map<Node, Double> sumOutFrs = new HashMap<>();
+            for (Entry<Link, Double> fr : demandFrs.getValue().entrySet())
+            {
+                final double splittingFactor = fr.getValue();
+                if (splittingFactor > 1 || splittingFactor < 0) throw new Net2PlanException("Split factors must be between 0 and 1");
+                if (splittingFactor < Configuration.precisionFactor) continue;
+                final Double sumOutSoFar = sumOutFrs.get(fr.getKey().originNode);
+                if ((sumOutSoFar == null ? 0 : sumOutSoFar) + splittingFactor > 1 + Configuration.precisionFactor)
+                    throw new Net2PlanException("The sum of splitting factors for outgoing links cannot exceed one");
+                sumOutFrs.put(fr.getKey().originNode, (sumOutSoFar == null ? 0 : sumOutSoFar) + splittingFactor);
+                frMap.put(fr.getKey(), splittingFactor);
+            }
+            newFrsWithoutZeros.put(demandFrs.getKey(), frMap);
+        }
+        updateHopByHopRoutingToGivenFrs(newFrsWithoutZeros, pool);
+        if (ErrorHandling.isDebugEnabled()) this.checkCachesConsistency();
+    }
+
+    /* Updates the hop-by-hop routing of the given demands: the routing of all of them is computed first, without changing the design (in parallel if a pool is
+     * given), and then the caches of the demands and links are updated, changing the carried traffic and occupied capacity of each link once. If the
+     * rules of any demand produce closed cycles, the exception is thrown before changing the design */
+    private void updateHopByHopRoutingToGivenFrs(Map<Demand, Map<Link, Double>> newFrsWithoutZeros, ForkJoinPool pool)
+    {
+        final List<Demand> demands = new ArrayList<>(newFrsWithoutZeros.keySet());
+        final Map<Demand, Demand.HopByHopRoutingComputation> routings = computePerKey(demands, d -> d.computeHopByHopRouting(newFrsWithoutZeros.get(d)), pool);
+        final Map<Link, Double> linkOccupationIncrements = new HashMap<>();
+        for (Entry<Demand, Demand.HopByHopRoutingComputation> routing : routings.entrySet())
+            routing.getKey().applyHopByHopRouting(routing.getValue(), linkOccupationIncrements);
+        for (Entry<Link, Double> increment : linkOccupationIncrements.entrySet())
+        {
+            increment.getKey().addTrafficAndOccupation(increment.getValue(), increment.getValue()); // in hop-by-hop carried traffic is the same as occupied capacity
+        }
+    }
+
     /**
      * <p>Sets the forwarding rules for the given design. Any previous routing
      * information (either source routing or hop-by-hop routing) will be removed.</p>
@@ -6119,6 +6801,20 @@ public class NetPlan extends NetworkElement
      * @param optionalLayerParameter Network layer (optional)
      */
     public void setForwardingRules(DoubleMatrix2D f_de, NetworkLayer... optionalLayerParameter)
+    {
+        setForwardingRules(f_de, (ForkJoinPool) null, optionalLayerParameter);
+    }
+
+    /**
+     * <p>Sets the forwarding rules for the given design, as {@link #setForwardingRules(DoubleMatrix2D, NetworkLayer...)}. The routing of the demands
+     * is computed in parallel in the given pool, as one task per demand, and then the occupation of the links is updated once.</p>
+     *
+     * @param f_de                   Forwarding rules matrix (demands x links)
+     * @param pool                   The pool where the routing of the demands is computed ({@code null} for computing it in the calling thread)
+     * @param optionalLayerParameter Network layer (optional)
+     * @since 0.5.1
+     */
+    public void setForwardingRules(DoubleMatrix2D f_de, ForkJoinPool pool, NetworkLayer... optionalLayerParameter)
     {
         checkIsModifiable();
         NetworkLayer layer = checkInThisNetPlanOptionalLayerParameter(optionalLayerParameter);
@@ -6156,8 +6852,10 @@ public class NetPlan extends NetworkElement
             frMap.put(link, splittingFactor);
         }
 
+        Map<Demand,Map<Link,Double>> newFrsAllDemands = new LinkedHashMap<> (capacityForSize(layer.demands.size()));
         for (Demand d : layer.demands)
-        	d.updateHopByHopRoutingToGivenFrs(newFrs.containsKey(d)? newFrs.get(d) : new HashMap<> ());
+        	newFrsAllDemands.put(d, newFrs.containsKey(d)? newFrs.get(d) : new HashMap<> ());
+        updateHopByHopRoutingToGivenFrs(newFrsAllDemands, pool);
         if (ErrorHandling.isDebugEnabled()) this.checkCachesConsistency();
     }
 
@@ -6457,6 +7155,8 @@ public class NetPlan extends NetworkElement
                 {
                     e.cache_carriedTraffic = e.getMulticastCarriedTraffic();
                     e.cache_occupiedCapacity = e.getMulticastOccupiedLinkCapacity();
+                    e.cache_carriedTrafficCompensation = 0;
+                    e.cache_occupiedCapacityCompensation = 0;
                 	e.cacheHbH_frs.clear();
                 	e.cacheHbH_normCarriedOccupiedPerTraversingDemandCurrentState.clear ();
                 }
@@ -6491,6 +7191,8 @@ public class NetPlan extends NetworkElement
             default:
                 throw new RuntimeException("Bad - Unknown routing type " + newRoutingType);
         }
+        changeCompleted(); // the matrices may have been read in the middle of the change (e.g. the carried traffic, converting to source routing)
+        layer.notifyLayerChanged();
         if (ErrorHandling.isDebugEnabled()) this.checkCachesConsistency();
     }
 
@@ -6541,6 +7243,7 @@ public class NetPlan extends NetworkElement
         for (Demand d : layer.demands)
         {
             d.offeredTraffic = offeredTrafficVector.get(d.index);
+            layer.notifyDemandChanged(d);
             if (layer.routingType == RoutingType.HOP_BY_HOP_ROUTING) d.updateHopByHopRoutingToGivenFrs(d.cacheHbH_frs);
         }
         if (ErrorHandling.isDebugEnabled()) this.checkCachesConsistency();
@@ -6565,6 +7268,7 @@ public class NetPlan extends NetworkElement
                 throw new Net2PlanException("Coupled links cannot change its capacity");
         for (Link e : layer.links)
             e.capacity = linkCapacities.get(e.index);
+        layer.notifyLayerChanged();
         if (ErrorHandling.isDebugEnabled()) this.checkCachesConsistency();
     }
 
@@ -6942,26 +7646,66 @@ public class NetPlan extends NetworkElement
         return defaultLayer;
     }
 
+    /* Returns the element in this NetPlan that is the copy of the given element of other NetPlan. Copies keep the element indexes, 
+     * so the peer is looked up by index, and the id map is used only as a fallback (e.g. for elements that were removed in the origin) */
     NetworkElement getPeerElementInThisNetPlan(NetworkElement e)
     {
-        NetworkElement res;
         if (e instanceof NetPlan) throw new RuntimeException("Bad");
-        if (e.netPlan == null) throw new RuntimeException("Bad");
         if (e.netPlan == this) throw new RuntimeException("Bad");
-        if (e instanceof Node) res = this.cache_id2NodeMap.get(e.id);
-        else if (e instanceof Demand) res = this.cache_id2DemandMap.get(e.id);
-        else if (e instanceof Link) res = this.cache_id2LinkMap.get(e.id);
-        else if (e instanceof MulticastDemand) res = this.cache_id2MulticastDemandMap.get(e.id);
-        else if (e instanceof MulticastTree) res = this.cache_id2MulticastTreeMap.get(e.id);
-        else if (e instanceof Node) res = this.cache_id2NodeMap.get(e.id);
-        else if (e instanceof Route) res = this.cache_id2RouteMap.get(e.id);
-        else if (e instanceof SharedRiskGroup) res = this.cache_id2srgMap.get(e.id);
-        else if (e instanceof Resource) res = this.cache_id2ResourceMap.get(e.id);
+        NetworkElement res = null;
+        if (e instanceof Node) res = getByIndexOrNull(nodes, e.index);
+        else if (e instanceof Link) res = getByIndexOrNull(getByIndexOrNull(layers, ((Link) e).layer.index), e.index, Link.class);
+        else if (e instanceof Demand) res = getByIndexOrNull(getByIndexOrNull(layers, ((Demand) e).layer.index), e.index, Demand.class);
+        else if (e instanceof Route) res = getByIndexOrNull(getByIndexOrNull(layers, ((Route) e).layer.index), e.index, Route.class);
+        else if (e instanceof MulticastDemand) res = getByIndexOrNull(getByIndexOrNull(layers, ((MulticastDemand) e).layer.index), e.index, MulticastDemand.class);
+        else if (e instanceof MulticastTree) res = getByIndexOrNull(getByIndexOrNull(layers, ((MulticastTree) e).layer.index), e.index, MulticastTree.class);
+        else if (e instanceof Resource) res = getByIndexOrNull(resources, e.index);
+        else if (e instanceof SharedRiskGroup) res = getByIndexOrNull(srgs, e.index);
+        else if (e instanceof NetworkLayer) res = getByIndexOrNull(layers, e.index);
         else throw new RuntimeException("Bad");
-        if (res.index != e.index) throw new RuntimeException("Bad");
+        if ((res == null) || (res.id != e.id)) res = getFromId(e.id, e.getClass());
+        if (res == null) throw new RuntimeException("Could not translate element " + e + " to this NetPlan: unknown id: " + e.id);
+        return res;
+    }
+
+    /* Returns the peers in this NetPlan of the given list of elements of other NetPlan, keeping the order */
+    <T extends NetworkElement> List<T> getPeerElementsInThisNetPlan(List<T> origin)
+    {
+        final List<T> res = (origin instanceof LinkedList) ? new LinkedList<T>() : new ArrayList<T>(origin.size());
+        for (T e : origin) res.add((T) getPeerElementInThisNetPlan(e));
+        return res;
+    }
+
+    /* Returns the peers in this NetPlan of the given set of elements of other NetPlan. Insertion order is kept for linked sets */
+    <T extends NetworkElement> Set<T> getPeerElementsInThisNetPlan(Set<T> origin)
+    {
+        final Set<T> res = (origin instanceof LinkedHashSet) ? new LinkedHashSet<T>(capacityForSize(origin.size())) : new HashSet<T>(capacityForSize(origin.size()));
+        for (T e : origin) res.add((T) getPeerElementInThisNetPlan(e));
         return res;
     }
 
+    /* Initial capacity of a hash-based collection, so that it can hold the given number of elements without rehashing */
+    static int capacityForSize(int size)
+    {
+        return Math.max(16, (int) (size / 0.75f) + 1);
+    }
+
+    private static <T extends NetworkElement> T getByIndexOrNull(List<T> list, int index)
+    {
+        return (index < 0) || (index >= list.size()) ? null : list.get(index);
+    }
+
+    private static NetworkElement getByIndexOrNull(NetworkLayer layer, int index, Class<? extends NetworkElement> type)
+    {
+        if (layer == null) return null;
+        if (type == Link.class) return getByIndexOrNull(layer.links, index);
+        if (type == Demand.class) return getByIndexOrNull(layer.demands, index);
+        if (type == Route.class) return getByIndexOrNull(layer.routes, index);
+        if (type == MulticastDemand.class) return getByIndexOrNull(layer.multicastDemands, index);
+        if (type == MulticastTree.class) return getByIndexOrNull(layer.multicastTrees, index);
+        throw new RuntimeException("Bad");
+    }
+
     /* Receives a collection of routes, or multicast trees, and updates its failure state according to the traversing links and nodes */
     void updateFailureStateRoutesAndTrees(Collection<? extends NetworkElement> set)
     {
@@ -7108,6 +7852,21 @@ public class NetPlan extends NetworkElement
         for (String siteName : cache_nodesPerSiteName.keySet ())
         	for (Node n : cache_nodesPerSiteName.get(siteName))
         		if (!n.siteName.equals(siteName)) throw new RuntimeException();
+        /* Check node names and attribute indexes: all the elements in the caches are in this design and have that name or attribute value 
+         * (the other way around is checked in each element) */
+        for (String name : cache_nodesPerName.keySet ())
+        {
+        	if (cache_nodesPerName.get(name).isEmpty()) throw new RuntimeException("Bad");
+        	for (Node n : cache_nodesPerName.get(name))
+        		if ((n.netPlan != this) || !n.name.equals(name)) throw new RuntimeException("Bad");
+        }
+        for (String attribute : cache_attributeIndexes.keySet ())
+        	for (String value : cache_attributeIndexes.get(attribute).keySet ())
+        	{
+        		if (cache_attributeIndexes.get(attribute).get(value).isEmpty()) throw new RuntimeException("Bad");
+        		for (NetworkElement e : cache_attributeIndexes.get(attribute).get(value))
+        			if ((e.netPlan != this) || !value.equals(e.attributes.get(attribute))) throw new RuntimeException("Bad");
+        	}
 
         /* What is in the cache is correct */
         for (String type : cache_type2Resources.keySet())
@@ -0,0 +1,642 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pablo Pavon-Marino.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     Pablo Pavon-Marino - from version 0.4.0 onwards
+ ******************************************************************************/
+
+package com.net2plan.interfaces.networkDesign;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.mutable.MutableLong;
+
+import com.net2plan.internal.ErrorHandling;
+import com.net2plan.utils.Constants.RoutingType;
+import com.net2plan.utils.Pair;
+
+/**
+ * <p>Binary columnar snapshot of a design ({@code .n2pb} files), keeping the same information as the {@code .n2p} format, so a design saved
+ * in one format and loaded from the other is a deep copy of the original. The layout is (big-endian):</p>
+ * <ol>
+ *     <li>A header with the magic number ("N2PB") and the format version.</li>
+ *     <li>The network information, and one block per element type: nodes, resources, layers (each one with its links, demands, multicast demands,
+ *     multicast trees and routes or forwarding rules), SRGs and layer couplings. A block has the number of elements and then one column per field
+ *     (e.g. all the node ids, then all the x coordinates...). Variable length fields (paths, sets of links...) are a column with the lengths followed by all
+ *     the values. The tags and attributes of the elements follow. Strings are references to the string table: their index in it (-1 for {@code null}).</li>
+ *     <li>The string table: all the strings of the design (names, units, tags, attribute keys and values...) appear once, in the order of their first reference.</li>
+ *     <li>The position of the string table in the file (a long), so it is read first.</li>
+ * </ol>
+ * <p>The string table goes at the end, so the file is written in one pass without keeping the body in memory. The file is read mapping it in memory,
+ * without parsing text, and the nodes, links, demands and routes of each block are added in bulk, filling the caches once instead of notifying each addition.</p>
+ *
+ * @author Pablo Pavon-Marino
+ */
+final class NetPlanBinaryFormat
+{
+	private static final int MAGIC_NUMBER = 0x4E325042; // "N2PB"
+	private static final int FORMAT_VERSION = 1;
+
+	private NetPlanBinaryFormat () { }
+
+	static void write (NetPlan netPlan , File file)
+	{
+		try (OutputStream os = new BufferedOutputStream(new FileOutputStream(file)))
+		{
+			write (netPlan , os);
+		} catch (IOException e) { throw new Net2PlanException ("Error writing the file: " + e.getMessage()); }
+	}
+
+	static NetPlan read (File file)
+	{
+		try (FileChannel channel = FileChannel.open(file.toPath() , StandardOpenOption.READ))
+		{
+			if (channel.size() > Integer.MAX_VALUE) throw new Net2PlanException ("The file is too large to be mapped in memory");
+			final NetPlan netPlan = new Reader (channel.map(FileChannel.MapMode.READ_ONLY , 0 , channel.size())).readNetPlan();
+			if (ErrorHandling.isDebugEnabled()) netPlan.checkCachesConsistency();
+			return netPlan;
+		} catch (IOException e) { throw new Net2PlanException ("Error reading the file: " + e.getMessage()); }
+	}
+
+	private static void write (NetPlan np , OutputStream os) throws IOException
+	{
+		final Writer w = new Writer (os);
+		w.out.writeInt(MAGIC_NUMBER);
+		w.out.writeInt(FORMAT_VERSION);
+		w.string(np.networkName); w.string(np.networkDescription); w.out.writeLong(np.nextElementId.longValue());
+
+		/* Nodes */
+		final List<Node> nodes = np.nodes;
+		w.out.writeInt(nodes.size());
+		w.idColumn(nodes);
+		w.doubleColumn(nodes , n -> n.nodeXYPositionMap.getX());
+		w.doubleColumn(nodes , n -> n.nodeXYPositionMap.getY());
+		w.stringColumn(nodes , n -> n.name);
+		w.doubleColumn(nodes , n -> n.population);
+		w.stringColumn(nodes , n -> n.siteName);
+		w.booleanColumn(nodes , n -> n.isUp);
+		w.longListColumn(nodes , n -> layersWithIcon(np , n).stream().map(l -> l.id).collect(Collectors.toList()));
+		w.stringListColumn(nodes , n -> layersWithIcon(np , n).stream().map(l -> n.getUrlNodeIcon(l).toString()).collect(Collectors.toList()));
+		w.tagsAndAttributes(nodes);
+
+		/* Resources: the base resources of a resource always appear before it */
+		final List<Resource> resources = np.resources;
+		w.out.writeInt(resources.size());
+		w.idColumn(resources);
+		w.longColumn(resources , r -> r.hostNode.id);
+		w.stringColumn(resources , r -> r.type);
+		w.stringColumn(resources , r -> r.name);
+		w.stringColumn(resources , r -> r.capacityMeasurementUnits);
+		w.doubleColumn(resources , r -> r.processingTimeToTraversingTrafficInMs);
+		w.doubleColumn(resources , r -> r.capacity);
+		w.stringColumn(resources , r -> r.urlIcon == null? null : r.urlIcon.toString());
+		w.idListColumn(resources , r -> r.capacityIOccupyInBaseResource.keySet());
+		w.doubleListColumn(resources , r -> new ArrayList<> (r.capacityIOccupyInBaseResource.values()));
+		w.tagsAndAttributes(resources);
+
+		/* Layers */
+		w.out.writeInt(np.layers.size());
+		for (NetworkLayer layer : np.layers)
+		{
+			w.out.writeLong(layer.id);
+			w.string(layer.name); w.string(layer.description); w.string(layer.linkCapacityUnitsName); w.string(layer.demandTrafficUnitsName);
+			w.string(layer.defaultNodeIconURL == null? null : layer.defaultNodeIconURL.toString());
+			w.out.writeBoolean(np.defaultLayer == layer);
+			w.out.writeBoolean(layer.routingType == RoutingType.SOURCE_ROUTING);
+
+			final List<Link> links = layer.links;
+			w.out.writeInt(links.size());
+			w.idColumn(links);
+			w.longColumn(links , e -> e.originNode.id);
+			w.longColumn(links , e -> e.destinationNode.id);
+			w.doubleColumn(links , e -> e.capacity);
+			w.doubleColumn(links , e -> e.lengthInKm);
+			w.doubleColumn(links , e -> e.propagationSpeedInKmPerSecond);
+			w.booleanColumn(links , e -> e.isUp);
+			w.tagsAndAttributes(links);
+
+			final List<Demand> demands = layer.demands;
+			w.out.writeInt(demands.size());
+			w.idColumn(demands);
+			w.longColumn(demands , d -> d.ingressNode.id);
+			w.longColumn(demands , d -> d.egressNode.id);
+			w.doubleColumn(demands , d -> d.offeredTraffic);
+			w.stringColumn(demands , d -> d.recoveryType.toString());
+			w.stringListColumn(demands , d -> d.mandatorySequenceOfTraversedResourceTypes);
+			w.tagsAndAttributes(demands);
+
+			final List<MulticastDemand> multicastDemands = layer.multicastDemands;
+			w.out.writeInt(multicastDemands.size());
+			w.idColumn(multicastDemands);
+			w.longColumn(multicastDemands , d -> d.ingressNode.id);
+			w.idListColumn(multicastDemands , d -> d.egressNodes);
+			w.doubleColumn(multicastDemands , d -> d.offeredTraffic);
+			w.tagsAndAttributes(multicastDemands);
+
+			/* If the initial link set of a tree was removed, it is replaced by the current link set (as in the .n2p format) */
+			final List<MulticastTree> trees = layer.multicastTrees;
+			w.out.writeInt(trees.size());
+			w.idColumn(trees);
+			w.longColumn(trees , t -> t.demand.id);
+			w.doubleColumn(trees , t -> t.carriedTrafficIfNotFailing);
+			w.doubleColumn(trees , t -> t.occupiedLinkCapacityIfNotFailing);
+			w.idListColumn(trees , t -> t.linkSet);
+			w.idListColumn(trees , t -> t.initialSetLinksWhenWasCreated.stream().anyMatch(e -> e.netPlan == null)? t.linkSet : t.initialSetLinksWhenWasCreated);
+			w.tagsAndAttributes(trees);
+
+			if (layer.routingType == RoutingType.SOURCE_ROUTING)
+			{
+				/* If the initial path of a route traverses removed links or resources, the current path is the initial one (as when reading .n2p files) */
+				final List<Route> routes = layer.routes;
+				final Predicate<Route> initialPathExists = r -> r.initialStatePath.stream().allMatch(e -> e.netPlan != null);
+				w.out.writeInt(routes.size());
+				w.idColumn(routes);
+				w.longColumn(routes , r -> r.demand.id);
+				w.doubleColumn(routes , r -> r.currentCarriedTrafficIfNotFailing);
+				w.doubleListColumn(routes , r -> r.currentLinksAndResourcesOccupationIfNotFailing);
+				w.idListColumn(routes , r -> r.currentPath);
+				w.doubleColumn(routes , r -> initialPathExists.test(r)? r.initialStateCarriedTrafficIfNotFailing : r.currentCarriedTrafficIfNotFailing);
+				w.doubleListColumn(routes , r -> initialPathExists.test(r)? r.initialStateOccupationIfNotFailing : r.currentLinksAndResourcesOccupationIfNotFailing);
+				w.idListColumn(routes , r -> initialPathExists.test(r)? r.initialStatePath : r.currentPath);
+				w.idListColumn(routes , r -> r.backupRoutes);
+				w.tagsAndAttributes(routes);
+			}
+			else
+			{
+				final List<Pair<Demand,Entry<Link,Double>>> frs = new ArrayList<> ();
+				for (Demand d : demands) for (Entry<Link,Double> fr : d.cacheHbH_frs.entrySet()) frs.add(Pair.of(d , fr));
+				w.out.writeInt(frs.size());
+				w.longColumn(frs , fr -> fr.getFirst().id);
+				w.longColumn(frs , fr -> fr.getSecond().getKey().id);
+				w.doubleColumn(frs , fr -> fr.getSecond().getValue());
+			}
+			w.tagsAndAttributes(Collections.singletonList(layer));
+		}
+
+		/* SRGs */
+		final List<SharedRiskGroup> srgs = np.srgs;
+		w.out.writeInt(srgs.size());
+		w.idColumn(srgs);
+		w.doubleColumn(srgs , s -> s.meanTimeToFailInHours);
+		w.doubleColumn(srgs , s -> s.meanTimeToRepairInHours);
+		w.idListColumn(srgs , s -> s.nodes);
+		w.idListColumn(srgs , s -> s.links);
+		w.tagsAndAttributes(srgs);
+
+		/* Layer coupling */
+		final List<Entry<Demand,Link>> demandCouplings = new ArrayList<> ();
+		final List<Entry<MulticastDemand,Set<Link>>> multicastDemandCouplings = new ArrayList<> ();
+		for (DemandLinkMapping mapping : np.interLayerCoupling.edgeSet())
+		{
+			demandCouplings.addAll(mapping.demandLinkMapping.entrySet());
+			multicastDemandCouplings.addAll(mapping.multicastDemandLinkMapping.entrySet());
+		}
+		w.out.writeInt(demandCouplings.size());
+		w.longColumn(demandCouplings , c -> c.getKey().id);
+		w.longColumn(demandCouplings , c -> c.getValue().id);
+		w.out.writeInt(multicastDemandCouplings.size());
+		w.longColumn(multicastDemandCouplings , c -> c.getKey().id);
+		w.idListColumn(multicastDemandCouplings , c -> c.getValue());
+
+		w.tagsAndAttributes(Collections.singletonList(np));
+
+		/* The string table, once all the strings have been referenced, and its position */
+		final int stringTablePosition = w.out.size();
+		w.out.writeInt(w.stringTable.size());
+		for (String s : w.stringTable.keySet())
+		{
+			final byte [] bytes = s.getBytes(StandardCharsets.UTF_8);
+			w.out.writeInt(bytes.length);
+			w.out.write(bytes);
+		}
+		w.out.writeLong(stringTablePosition);
+		if (w.out.size() == Integer.MAX_VALUE) throw new Net2PlanException ("The design is too large to be saved in this format");
+		w.out.flush();
+	}
+
+	private static List<NetworkLayer> layersWithIcon (NetPlan np , Node n)
+	{
+		final List<NetworkLayer> res = new ArrayList<> ();
+		for (NetworkLayer layer : np.layers) if (n.getUrlNodeIcon(layer) != null) res.add(layer);
+		return res;
+	}
+
+	private static final class Writer
+	{
+		private final DataOutputStream out;
+		private final Map<String,Integer> stringTable = new LinkedHashMap<> ();
+
+		private Writer (OutputStream os) { this.out = new DataOutputStream (os); }
+
+		private int stringReference (String s)
+		{
+			if (s == null) return -1;
+			Integer index = stringTable.get(s);
+			if (index == null) { index = stringTable.size(); stringTable.put(s , index); }
+			return index;
+		}
+		private void string (String s) throws IOException { out.writeInt(stringReference(s)); }
+		private void idColumn (List<? extends NetworkElement> elements) throws IOException { for (NetworkElement e : elements) out.writeLong(e.id); }
+		private <T> void longColumn (List<T> elements , ToLongFunction<T> field) throws IOException { for (T e : elements) out.writeLong(field.applyAsLong(e)); }
+		private <T> void doubleColumn (List<T> elements , ToDoubleFunction<T> field) throws IOException { for (T e : elements) out.writeDouble(field.applyAsDouble(e)); }
+		private <T> void booleanColumn (List<T> elements , Predicate<T> field) throws IOException { for (T e : elements) out.writeBoolean(field.test(e)); }
+		private <T> void stringColumn (List<T> elements , Function<T,String> field) throws IOException { for (T e : elements) string(field.apply(e)); }
+		private <T> void idListColumn (List<T> elements , Function<T,Collection<? extends NetworkElement>> field) throws IOException
+		{
+			final List<Collection<? extends NetworkElement>> values = new ArrayList<> (elements.size());
+			for (T e : elements) values.add(field.apply(e));
+			for (Collection<? extends NetworkElement> value : values) out.writeInt(value.size());
+			for (Collection<? extends NetworkElement> value : values) for (NetworkElement e : value) out.writeLong(e.id);
+		}
+		private <T> void longListColumn (List<T> elements , Function<T,List<Long>> field) throws IOException
+		{
+			final List<List<Long>> values = new ArrayList<> (elements.size());
+			for (T e : elements) values.add(field.apply(e));
+			for (List<Long> value : values) out.writeInt(value.size());
+			for (List<Long> value : values) for (long v : value) out.writeLong(v);
+		}
+		private <T> void doubleListColumn (List<T> elements , Function<T,List<Double>> field) throws IOException
+		{
+			final List<List<Double>> values = new ArrayList<> (elements.size());
+			for (T e : elements) values.add(field.apply(e));
+			for (List<Double> value : values) out.writeInt(value.size());
+			for (List<Double> value : values) for (double v : value) out.writeDouble(v);
+		}
+		private <T> void stringListColumn (List<T> elements , Function<T,Collection<String>> field) throws IOException
+		{
+			final List<Collection<String>> values = new ArrayList<> (elements.size());
+			for (T e : elements) values.add(field.apply(e));
+			for (Collection<String> value : values) out.writeInt(value.size());
+			for (Collection<String> value : values) for (String s : value) string(s);
+		}
+		/* The tags of the elements, and then their attributes as (key, value) string references */
+		private void tagsAndAttributes (List<? extends NetworkElement> elements) throws IOException
+		{
+			stringListColumn(elements , e -> e.tags);
+			for (NetworkElement e : elements) out.writeInt(e.attributes.size());
+			for (NetworkElement e : elements) for (Entry<String,String> att : e.attributes.entrySet()) { string(att.getKey()); string(att.getValue()); }
+		}
+	}
+
+	private static final class Reader
+	{
+		private final ByteBuffer in;
+		private String [] stringTable;
+
+		private Reader (ByteBuffer in) { this.in = in; }
+
+		private NetPlan readNetPlan ()
+		{
+			if (in.remaining() < 8 || in.getInt() != MAGIC_NUMBER) throw new Net2PlanException ("Not a valid .n2pb file");
+			final int version = in.getInt();
+			if (version != FORMAT_VERSION) throw new Net2PlanException ("Wrong version number of the .n2pb file: " + version);
+			if (in.limit() < 20) throw new Net2PlanException ("Not a valid .n2pb file");
+			final long stringTablePosition = in.getLong(in.limit() - 8);
+			if (stringTablePosition < in.position() || stringTablePosition > in.limit() - 12) throw new Net2PlanException ("Not a valid .n2pb file");
+			final int bodyPosition = in.position();
+			in.position((int) stringTablePosition);
+			this.stringTable = new String [in.getInt()];
+			for (int cont = 0; cont < stringTable.length ; cont ++)
+			{
+				final byte [] bytes = new byte [in.getInt()];
+				in.get(bytes);
+				stringTable [cont] = new String (bytes , StandardCharsets.UTF_8);
+			}
+			if (in.position() != in.limit() - 8) throw new Net2PlanException ("Not a valid .n2pb file: unexpected data after the string table");
+			in.limit((int) stringTablePosition);
+			in.position(bodyPosition);
+
+			final NetPlan np = new NetPlan ();
+			np.setNetworkName(string());
+			np.setNetworkDescription(string());
+			np.nextElementId = new MutableLong(in.getLong());
+			if (np.nextElementId.toLong() <= 0) throw new Net2PlanException ("A network element has an id higher than the nextElementId");
+
+			/* Nodes (the icons are set when the layers are created) */
+			final int N = in.getInt();
+			final long [] nodeIds = idColumn(np , N);
+			final double [] xCoords = doubleColumn(N);
+			final double [] yCoords = doubleColumn(N);
+			final String [] nodeNames = stringColumn(N);
+			final double [] populations = doubleColumn(N);
+			final String [] siteNames = stringColumn(N);
+			final boolean [] nodesUp = booleanColumn(N);
+			final long [][] layerIdsWithIcon = longListColumn(N);
+			final String [][] iconUrls = stringListColumn(N);
+			final List<Node> newNodes = np.addNodesInBulk(nodeIds , xCoords , yCoords , nodeNames);
+			for (int n = 0; n < N ; n ++)
+			{
+				final Node node = newNodes.get(n);
+				if (!nodesUp [n]) node.setFailureState(false);
+				node.setPopulation(populations [n]);
+				if (siteNames [n] != null) node.setSiteName(siteNames [n]);
+			}
+			tagsAndAttributes(newNodes);
+
+			/* Resources */
+			final int R = in.getInt();
+			final long [] resourceIds = idColumn(np , R);
+			final long [] hostNodeIds = longColumn(R);
+			final String [] types = stringColumn(R);
+			final String [] resourceNames = stringColumn(R);
+			final String [] capacityUnits = stringColumn(R);
+			final double [] processingTimes = doubleColumn(R);
+			final double [] resourceCapacities = doubleColumn(R);
+			final String [] resourceIcons = stringColumn(R);
+			final long [][] baseResourceIds = longListColumn(R);
+			final double [][] baseResourceOccupations = doubleListColumn(R);
+			final List<Resource> newResources = new ArrayList<> (R);
+			for (int r = 0; r < R ; r ++)
+			{
+				final Node hostNode = np.getNodeFromId(hostNodeIds [r]);
+				if (hostNode == null) throw new Net2PlanException ("Could not find the hot node of a resource when reading");
+				final Map<Resource,Double> occupiedCapacitiesInBaseResources = new HashMap<> ();
+				for (int cont = 0; cont < baseResourceIds [r].length ; cont ++)
+					occupiedCapacitiesInBaseResources.put(resource(np , baseResourceIds [r][cont]) , baseResourceOccupations [r][cont]);
+				final Resource resource = np.addResource(resourceIds [r] , types [r] , resourceNames [r] , hostNode , resourceCapacities [r] , capacityUnits [r] ,
+						occupiedCapacitiesInBaseResources , processingTimes [r] , null);
+				resource.setUrlIcon(url(resourceIcons [r]));
+				newResources.add(resource);
+			}
+			tagsAndAttributes(newResources);
+
+			/* Layers */
+			final int L = in.getInt();
+			for (int l = 0; l < L ; l ++)
+			{
+				final long layerId = in.getLong();
+				if (layerId >= np.nextElementId.toLong()) throw new Net2PlanException ("A network element has an id higher than the nextElementId");
+				final String layerName = string();
+				final String layerDescription = string();
+				final String linkCapacityUnitsName = string();
+				final String demandTrafficUnitsName = string();
+				final URL defaultNodeIconURL = url(string());
+				final boolean isDefaultLayer = in.get() != 0;
+				final boolean isSourceRouting = in.get() != 0;
+
+				NetworkLayer layer;
+				if (l == 0 && np.layers.get(0).id == layerId)
+				{
+					layer = np.layers.get(0); // it already has the right id
+					layer.name = layerName; layer.description = layerDescription; layer.defaultNodeIconURL = defaultNodeIconURL;
+					layer.linkCapacityUnitsName = linkCapacityUnitsName; layer.demandTrafficUnitsName = demandTrafficUnitsName;
+				}
+				else
+				{
+					layer = np.addLayer(layerId , layerName , layerDescription , linkCapacityUnitsName , demandTrafficUnitsName , defaultNodeIconURL , null);
+					if (l == 0) np.removeNetworkLayer(np.layers.get(0)); // the initial layer of the design has another id
+				}
+				for (int n = 0; n < N ; n ++)
+					for (int cont = 0; cont < layerIdsWithIcon [n].length ; cont ++)
+						if (layerIdsWithIcon [n][cont] == layerId) newNodes.get(n).setUrlNodeIcon(layer , url(iconUrls [n][cont]));
+				if (isDefaultLayer) np.setNetworkLayerDefault(layer);
+				readLayerElements(np , layer , isSourceRouting);
+				tagsAndAttributes(Collections.singletonList(layer));
+			}
+
+			/* SRGs */
+			final int S = in.getInt();
+			final long [] srgIds = idColumn(np , S);
+			final double [] mttfs = doubleColumn(S);
+			final double [] mttrs = doubleColumn(S);
+			final long [][] srgNodeIds = longListColumn(S);
+			final long [][] srgLinkIds = longListColumn(S);
+			final List<SharedRiskGroup> newSrgs = new ArrayList<> (S);
+			for (int s = 0; s < S ; s ++)
+			{
+				final SharedRiskGroup srg = np.addSRG(srgIds [s] , mttfs [s] , mttrs [s] , null);
+				for (long nodeId : srgNodeIds [s]) srg.addNode(node(np , nodeId));
+				for (long linkId : srgLinkIds [s]) srg.addLink(link(np , linkId));
+				newSrgs.add(srg);
+			}
+			tagsAndAttributes(newSrgs);
+
+			/* Layer coupling */
+			final int numDemandCouplings = in.getInt();
+			final long [] coupledDemandIds = longColumn(numDemandCouplings);
+			final long [] coupledLinkIds = longColumn(numDemandCouplings);
+			for (int cont = 0; cont < numDemandCouplings ; cont ++)
+				demand(np , coupledDemandIds [cont]).coupleToUpperLayerLink(link(np , coupledLinkIds [cont]));
+			final int numMulticastDemandCouplings = in.getInt();
+			final long [] coupledMulticastDemandIds = longColumn(numMulticastDemandCouplings);
+			final long [][] coupledLinkSetIds = longListColumn(numMulticastDemandCouplings);
+			for (int cont = 0; cont < numMulticastDemandCouplings ; cont ++)
+			{
+				final MulticastDemand demand = np.getMulticastDemandFromId(coupledMulticastDemandIds [cont]);
+				if (demand == null) throw new Net2PlanException ("Unknown multicast demand id");
+				demand.couple(linkSet(np , coupledLinkSetIds [cont]));
+			}
+
+			tagsAndAttributes(Collections.singletonList(np));
+			if (in.hasRemaining()) throw new Net2PlanException ("Not a valid .n2pb file: unexpected data at the end");
+			return np;
+		}
+
+		private void readLayerElements (NetPlan np , NetworkLayer layer , boolean isSourceRouting)
+		{
+			final int E = in.getInt();
+			final long [] linkIds = idColumn(np , E);
+			final long [] originNodeIds = longColumn(E);
+			final long [] destinationNodeIds = longColumn(E);
+			final double [] capacities = doubleColumn(E);
+			final double [] lengths = doubleColumn(E);
+			final double [] propagationSpeeds = doubleColumn(E);
+			final boolean [] linksUp = booleanColumn(E);
+			final List<Node> originNodes = new ArrayList<> (E);
+			final List<Node> destinationNodes = new ArrayList<> (E);
+			for (int e = 0; e < E ; e ++)
+			{
+				originNodes.add(node(np , originNodeIds [e]));
+				destinationNodes.add(node(np , destinationNodeIds [e]));
+			}
+			final List<Link> newLinks = np.addLinksInBulk(layer , linkIds , originNodes , destinationNodes , capacities , lengths , propagationSpeeds);
+			for (int e = 0; e < E ; e ++)
+				if (!linksUp [e]) newLinks.get(e).setFailureState(false);
+			tagsAndAttributes(newLinks);
+
+			final int D = in.getInt();
+			final long [] demandIds = idColumn(np , D);
+			final long [] ingressNodeIds = longColumn(D);
+			final long [] egressNodeIds = longColumn(D);
+			final double [] offeredTraffics = doubleColumn(D);
+			final String [] recoveryTypes = stringColumn(D);
+			final String [][] serviceChainTypes = stringListColumn(D);
+			final List<Node> ingressNodes = new ArrayList<> (D);
+			final List<Node> demandEgressNodes = new ArrayList<> (D);
+			for (int d = 0; d < D ; d ++)
+			{
+				ingressNodes.add(node(np , ingressNodeIds [d]));
+				demandEgressNodes.add(node(np , egressNodeIds [d]));
+			}
+			final List<Demand> newDemands = np.addDemandsInBulk(layer , demandIds , ingressNodes , demandEgressNodes , offeredTraffics);
+			for (int d = 0; d < D ; d ++)
+			{
+				final Demand demand = newDemands.get(d);
+				Demand.IntendedRecoveryType recoveryType;
+				try { recoveryType = Demand.IntendedRecoveryType.valueOf(recoveryTypes [d]); } catch (Exception e) { recoveryType = Demand.IntendedRecoveryType.UNKNOWNTYPE; }
+				demand.setIntendedRecoveryType(recoveryType);
+				demand.setServiceChainSequenceOfTraversedResourceTypes(Arrays.asList(serviceChainTypes [d]));
+			}
+			tagsAndAttributes(newDemands);
+
+			final int MD = in.getInt();
+			final long [] multicastDemandIds = idColumn(np , MD);
+			final long [] multicastIngressNodeIds = longColumn(MD);
+			final long [][] multicastEgressNodeIds = longListColumn(MD);
+			final double [] multicastOfferedTraffics = doubleColumn(MD);
+			final List<MulticastDemand> newMulticastDemands = new ArrayList<> (MD);
+			for (int d = 0; d < MD ; d ++)
+			{
+				final Set<Node> egressNodes = new HashSet<> ();
+				for (long nodeId : multicastEgressNodeIds [d]) egressNodes.add(node(np , nodeId));
+				newMulticastDemands.add(np.addMulticastDemand(multicastDemandIds [d] , node(np , multicastIngressNodeIds [d]) , egressNodes , multicastOfferedTraffics [d] , null , layer));
+			}
+			tagsAndAttributes(newMulticastDemands);
+
+			final int T = in.getInt();
+			final long [] treeIds = idColumn(np , T);
+			final long [] treeDemandIds = longColumn(T);
+			final double [] treeCarriedTraffics = doubleColumn(T);
+			final double [] treeOccupiedCapacities = doubleColumn(T);
+			final long [][] currentLinkIds = longListColumn(T);
+			final long [][] initialLinkIds = longListColumn(T);
+			final List<MulticastTree> newTrees = new ArrayList<> (T);
+			for (int t = 0; t < T ; t ++)
+			{
+				final MulticastDemand demand = np.getMulticastDemandFromId(treeDemandIds [t]);
+				if (demand == null) throw new Net2PlanException ("Unknown multicast demand id");
+				final MulticastTree tree = np.addMulticastTree(treeIds [t] , demand , treeCarriedTraffics [t] , treeOccupiedCapacities [t] , linkSet(np , initialLinkIds [t]) , null);
+				tree.setLinks(linkSet(np , currentLinkIds [t]));
+				newTrees.add(tree);
+			}
+			tagsAndAttributes(newTrees);
+
+			if (isSourceRouting)
+			{
+				np.setRoutingType(RoutingType.SOURCE_ROUTING , layer);
+				final int numRoutes = in.getInt();
+				final long [] routeIds = idColumn(np , numRoutes);
+				final long [] routeDemandIds = longColumn(numRoutes);
+				final double [] currentCarriedTraffics = doubleColumn(numRoutes);
+				final double [][] currentOccupations = doubleListColumn(numRoutes);
+				final long [][] currentPaths = longListColumn(numRoutes);
+				final double [] initialCarriedTraffics = doubleColumn(numRoutes);
+				final double [][] initialOccupations = doubleListColumn(numRoutes);
+				final long [][] initialPaths = longListColumn(numRoutes);
+				final long [][] backupRouteIds = longListColumn(numRoutes);
+				final List<Route> newRoutes = new ArrayList<> (numRoutes);
+				for (int r = 0; r < numRoutes ; r ++)
+				{
+					final Route route = np.addRouteInBulk(routeIds [r] , demand(np , routeDemandIds [r]) , linksAndResources(np , initialPaths [r]) ,
+							initialCarriedTraffics [r] , doubleList(initialOccupations [r]));
+					if ((currentCarriedTraffics [r] != initialCarriedTraffics [r]) || !Arrays.equals(currentOccupations [r] , initialOccupations [r]) || !Arrays.equals(currentPaths [r] , initialPaths [r]))
+						route.setPath(currentCarriedTraffics [r] , linksAndResources(np , currentPaths [r]) , doubleList(currentOccupations [r]));
+					newRoutes.add(route);
+				}
+				/* Backup routes are added once all the routes exist */
+				for (int r = 0; r < numRoutes ; r ++)
+					for (long backupId : backupRouteIds [r])
+					{
+						final Route backup = np.getRouteFromId(backupId);
+						if (backup == null) throw new Net2PlanException ("Unknown route id");
+						newRoutes.get(r).addBackupRoute(backup);
+					}
+				tagsAndAttributes(newRoutes);
+			}
+			else
+			{
+				np.setRoutingType(RoutingType.HOP_BY_HOP_ROUTING , layer);
+				final int numForwardingRules = in.getInt();
+				final long [] frDemandIds = longColumn(numForwardingRules);
+				final long [] frLinkIds = longColumn(numForwardingRules);
+				final double [] splittingRatios = doubleColumn(numForwardingRules);
+				final Map<Demand,Map<Link,Double>> frs = new LinkedHashMap<> ();
+				for (int cont = 0; cont < numForwardingRules ; cont ++)
+				{
+					final Demand demand = demand(np , frDemandIds [cont]);
+					Map<Link,Double> frsThisDemand = frs.get(demand); if (frsThisDemand == null) { frsThisDemand = new HashMap<> (); frs.put(demand , frsThisDemand); }
+					frsThisDemand.put(link(np , frLinkIds [cont]) , splittingRatios [cont]);
+				}
+				np.setForwardingRules(frs , null);
+			}
+		}
+
+		private String string () { final int index = in.getInt(); return index == -1? null : stringTable [index]; }
+		private long [] idColumn (NetPlan np , int n)
+		{
+			final long [] res = longColumn(n);
+			for (long id : res) if (id >= np.nextElementId.toLong()) throw new Net2PlanException ("A network element has an id higher than the nextElementId");
+			return res;
+		}
+		private long [] longColumn (int n) { final long [] res = new long [n]; in.asLongBuffer().get(res); in.position(in.position() + 8 * n); return res; }
+		private double [] doubleColumn (int n) { final double [] res = new double [n]; in.asDoubleBuffer().get(res); in.position(in.position() + 8 * n); return res; }
+		private boolean [] booleanColumn (int n) { final boolean [] res = new boolean [n]; for (int cont = 0; cont < n ; cont ++) res [cont] = in.get() != 0; return res; }
+		private String [] stringColumn (int n) { final String [] res = new String [n]; for (int cont = 0; cont < n ; cont ++) res [cont] = string(); return res; }
+		private int [] lengths (int n) { final int [] res = new int [n]; in.asIntBuffer().get(res); in.position(in.position() + 4 * n); return res; }
+		private long [][] longListColumn (int n) { final int [] lengths = lengths(n); final long [][] res = new long [n][]; for (int cont = 0; cont < n ; cont ++) res [cont] = longColumn(lengths [cont]); return res; }
+		private double [][] doubleListColumn (int n) { final int [] lengths = lengths(n); final double [][] res = new double [n][]; for (int cont = 0; cont < n ; cont ++) res [cont] = doubleColumn(lengths [cont]); return res; }
+		private String [][] stringListColumn (int n) { final int [] lengths = lengths(n); final String [][] res = new String [n][]; for (int cont = 0; cont < n ; cont ++) res [cont] = stringColumn(lengths [cont]); return res; }
+		private void tagsAndAttributes (List<? extends NetworkElement> elements)
+		{
+			final String [][] tags = stringListColumn(elements.size());
+			final int [] numAttributes = lengths(elements.size());
+			for (int cont = 0; cont < elements.size() ; cont ++)
+			{
+				final NetworkElement e = elements.get(cont);
+				for (String tag : tags [cont]) e.addTag(tag);
+				for (int att = 0; att < numAttributes [cont] ; att ++) e.setAttribute(string() , string());
+			}
+		}
+
+		private static URL url (String s) { if (s == null) return null; try { return new URL (s); } catch (MalformedURLException e) { return null; } }
+		private static List<Double> doubleList (double [] values) { final List<Double> res = new ArrayList<> (values.length); for (double v : values) res.add(v); return res; }
+		private static Node node (NetPlan np , long id) { final Node res = np.getNodeFromId(id); if (res == null) throw new Net2PlanException ("Unknown node id"); return res; }
+		private static Link link (NetPlan np , long id) { final Link res = np.getLinkFromId(id); if (res == null) throw new Net2PlanException ("Unknown link id"); return res; }
+		private static Demand demand (NetPlan np , long id) { final Demand res = np.getDemandFromId(id); if (res == null) throw new Net2PlanException ("Unknown demand id"); return res; }
+		private static Resource resource (NetPlan np , long id) { final Resource res = np.getResourceFromId(id); if (res == null) throw new Net2PlanException ("Unknown resource id"); return res; }
+		private static Set<Link> linkSet (NetPlan np , long [] ids) { final Set<Link> res = new HashSet<> (); for (long id : ids) res.add(link(np , id)); return res; }
+		private static List<NetworkElement> linksAndResources (NetPlan np , long [] ids)
+		{
+			final List<NetworkElement> res = new ArrayList<> (ids.length);
+			for (long id : ids)
+			{
+				NetworkElement e = np.getLinkFromId(id);
+				if (e == null) e = np.getResourceFromId(id);
+				if (e == null) throw new Net2PlanException ("Unknown id in the list");
+				res.add(e);
+			}
+			return res;
+		}
+	}
+}
@@ -0,0 +1,249 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pablo Pavon-Marino.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     Pablo Pavon-Marino - from version 0.4.0 onwards
+ ******************************************************************************/
+
+package com.net2plan.interfaces.networkDesign;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import com.net2plan.internal.ErrorHandling;
+
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+
+/**
+ * <p>Builds a large design in one step, from arrays with the information of the nodes, links, demands and routes. Elements refer to other elements
+ * by their index in the arrays: e.g. a link gives the indexes of its origin and end nodes, and a route the index of its demand and the indexes
+ * of its traversed links.</p>
+ *
+ * <p>The design built is the same as the one obtained creating an empty {@code NetPlan}, and calling {@link NetPlan#addNode addNode} for each node,
+ * {@link NetPlan#addLink addLink} for each link, {@link NetPlan#addDemand addDemand} for each demand and {@link NetPlan#addRoute addRoute} for each route, in
+ * this order, in the default layer (with source routing). However, the input is validated once, and the caches of the elements are filled
+ * in one pass at {@link #build()}, instead of being updated in each call. Other elements (layers, SRGs, resources...) can be added afterwards to the built design
+ * using the {@code NetPlan} methods.</p>
+ *
+ * <p>The arrays are not copied: they should not be modified until the design is built.</p>
+ *
+ * @author Pablo Pavon-Marino
+ */
+public class NetPlanBuilder
+{
+	private double [] nodeXCoords , nodeYCoords;
+	private String [] nodeNames;
+	private int [] linkOriginNodeIndexes , linkDestinationNodeIndexes;
+	private double [] linkCapacities , linkLengthsInKm , linkPropagationSpeedsInKmPerSecond;
+	private int [] demandIngressNodeIndexes , demandEgressNodeIndexes;
+	private double [] demandOfferedTraffics;
+	private int [] routeDemandIndexes;
+	private int [][] routeLinkIndexes;
+	private double [] routeCarriedTraffics , routeOccupiedLinkCapacities;
+
+	/**
+	 * <p>Creates a builder of a design with no nodes, links, demands or routes.</p>
+	 */
+	public NetPlanBuilder ()
+	{
+		setNodes (new double [0] , new double [0] , null);
+		setLinks (new int [0] , new int [0] , new double [0] , new double [0] , new double [0]);
+		setDemands (new int [0] , new int [0] , new double [0]);
+		setRoutes (new int [0] , new int [0][] , new double [0] , new double [0]);
+	}
+
+	/**
+	 * <p>Sets the nodes of the design. The number of nodes is the length of the coordinate arrays.</p>
+	 * @param xCoords the node positions in the x-axis
+	 * @param yCoords the node positions in the y-axis
+	 * @param names the node names ({@code null} means that all the nodes have an empty name)
+	 * @return this builder
+	 */
+	public NetPlanBuilder setNodes (double [] xCoords , double [] yCoords , String [] names)
+	{
+		this.nodeXCoords = xCoords;
+		this.nodeYCoords = yCoords;
+		this.nodeNames = names;
+		return this;
+	}
+
+	/**
+	 * <p>Sets the links of the design. The number of links is the length of the arrays.</p>
+	 * @param originNodeIndexes the index of the origin node of each link
+	 * @param destinationNodeIndexes the index of the destination node of each link
+	 * @param capacities the link capacities (non-negative)
+	 * @param lengthsInKm the link lengths in km (non-negative)
+	 * @param propagationSpeedsInKmPerSecond the link propagation speeds in km/s (positive)
+	 * @return this builder
+	 */
+	public NetPlanBuilder setLinks (int [] originNodeIndexes , int [] destinationNodeIndexes , double [] capacities , double [] lengthsInKm , double [] propagationSpeedsInKmPerSecond)
+	{
+		this.linkOriginNodeIndexes = originNodeIndexes;
+		this.linkDestinationNodeIndexes = destinationNodeIndexes;
+		this.linkCapacities = capacities;
+		this.linkLengthsInKm = lengthsInKm;
+		this.linkPropagationSpeedsInKmPerSecond = propagationSpeedsInKmPerSecond;
+		return this;
+	}
+
+	/**
+	 * <p>Sets the unicast demands of the design. The number of demands is the length of the arrays.</p>
+	 * @param ingressNodeIndexes the index of the ingress node of each demand
+	 * @param egressNodeIndexes the index of the egress node of each demand
+	 * @param offeredTraffics the offered traffic of each demand (non-negative)
+	 * @return this builder
+	 */
+	public NetPlanBuilder setDemands (int [] ingressNodeIndexes , int [] egressNodeIndexes , double [] offeredTraffics)
+	{
+		this.demandIngressNodeIndexes = ingressNodeIndexes;
+		this.demandEgressNodeIndexes = egressNodeIndexes;
+		this.demandOfferedTraffics = offeredTraffics;
+		return this;
+	}
+
+	/**
+	 * <p>Sets the unicast demands of the design from a traffic matrix, in the same order as {@link NetPlan#addDemandsFromTrafficMatrix addDemandsFromTrafficMatrix}:
+	 * one demand per pair of different nodes, sorted by ingress node and then egress node index. The nodes must be set before.</p>
+	 * @param trafficMatrix the traffic matrix, where the i-th row is the ingress node, the j-th column the egress node, and each entry the offered traffic
+	 * @return this builder
+	 */
+	public NetPlanBuilder setDemandsFromTrafficMatrix (DoubleMatrix2D trafficMatrix)
+	{
+		final int N = nodeXCoords.length;
+		if ((trafficMatrix.rows() != N) || (trafficMatrix.columns() != N)) throw new Net2PlanException("Wrong matrix size");
+		final int D = N * (N - 1);
+		final int [] ingressNodeIndexes = new int [D];
+		final int [] egressNodeIndexes = new int [D];
+		final double [] offeredTraffics = new double [D];
+		int d = 0;
+		for (int n1 = 0; n1 < N ; n1 ++)
+			for (int n2 = 0; n2 < N ; n2 ++)
+				if (n1 != n2)
+				{
+					ingressNodeIndexes [d] = n1;
+					egressNodeIndexes [d] = n2;
+					offeredTraffics [d ++] = trafficMatrix.get(n1, n2);
+				}
+		return setDemands(ingressNodeIndexes , egressNodeIndexes , offeredTraffics);
+	}
+
+	/**
+	 * <p>Sets the routes of the design. The number of routes is the length of the arrays.</p>
+	 * @param demandIndexes the index of the demand of each route
+	 * @param linkIndexes the sequence of indexes of the links traversed by each route
+	 * @param carriedTraffics the carried traffic of each route (non-negative)
+	 * @param occupiedLinkCapacities the capacity occupied by each route in each traversed link (non-negative)
+	 * @return this builder
+	 */
+	public NetPlanBuilder setRoutes (int [] demandIndexes , int [][] linkIndexes , double [] carriedTraffics , double [] occupiedLinkCapacities)
+	{
+		this.routeDemandIndexes = demandIndexes;
+		this.routeLinkIndexes = linkIndexes;
+		this.routeCarriedTraffics = carriedTraffics;
+		this.routeOccupiedLinkCapacities = occupiedLinkCapacities;
+		return this;
+	}
+
+	/**
+	 * <p>Validates the input, and builds the design. The builder can be used again afterwards.</p>
+	 * @return the new design
+	 */
+	public NetPlan build ()
+	{
+		validate ();
+
+		final NetPlan np = new NetPlan ();
+		final NetworkLayer layer = np.getNetworkLayerDefault();
+		final int N = nodeXCoords.length;
+		final int E = linkOriginNodeIndexes.length;
+		final int D = demandIngressNodeIndexes.length;
+		final int R = routeDemandIndexes.length;
+		np.cache_id2NodeMap = new HashMap<Long,Node> (NetPlan.capacityForSize(N));
+		np.cache_id2LinkMap = new HashMap<Long,Link> (NetPlan.capacityForSize(E));
+		np.cache_id2DemandMap = new HashMap<Long,Demand> (NetPlan.capacityForSize(D));
+		np.cache_id2RouteMap = new HashMap<Long,Route> (NetPlan.capacityForSize(R));
+
+		final List<Node> nodes = np.addNodesInBulk (newIds (np , N) , nodeXCoords , nodeYCoords , nodeNames);
+		final List<Link> links = np.addLinksInBulk (layer , newIds (np , E) , select (nodes , linkOriginNodeIndexes) , select (nodes , linkDestinationNodeIndexes) ,
+				linkCapacities , linkLengthsInKm , linkPropagationSpeedsInKmPerSecond);
+		final List<Demand> demands = np.addDemandsInBulk (layer , newIds (np , D) , select (nodes , demandIngressNodeIndexes) , select (nodes , demandEgressNodeIndexes) , demandOfferedTraffics);
+		layer.routes.ensureCapacity(R);
+		for (int r = 0; r < R ; r ++)
+		{
+			final List<Link> seqLinks = select (links , routeLinkIndexes [r]);
+			np.addRouteInBulk (newIds (np , 1) [0] , demands.get(routeDemandIndexes [r]) , seqLinks , routeCarriedTraffics [r] , Collections.nCopies(seqLinks.size() , routeOccupiedLinkCapacities [r]));
+		}
+
+		if (ErrorHandling.isDebugEnabled()) np.checkCachesConsistency();
+		return np;
+	}
+
+	private void validate ()
+	{
+		final int N = nodeXCoords.length;
+		if (nodeYCoords.length != N) throw new Net2PlanException ("Wrong size of the node coordinates");
+		if ((nodeNames != null) && (nodeNames.length != N)) throw new Net2PlanException ("Wrong size of the node names");
+
+		final int E = linkOriginNodeIndexes.length;
+		if ((linkDestinationNodeIndexes.length != E) || (linkCapacities.length != E) || (linkLengthsInKm.length != E) || (linkPropagationSpeedsInKmPerSecond.length != E))
+			throw new Net2PlanException ("Wrong size of the link information");
+		for (int e = 0; e < E ; e ++)
+		{
+			checkIndex (linkOriginNodeIndexes [e] , N , "node");
+			checkIndex (linkDestinationNodeIndexes [e] , N , "node");
+			if (linkOriginNodeIndexes [e] == linkDestinationNodeIndexes [e]) throw new Net2PlanException("Self-links are not allowed");
+			if (linkCapacities [e] < 0) throw new Net2PlanException("Link capacity must be non-negative");
+			if (linkLengthsInKm [e] < 0) throw new Net2PlanException("Link length must be non-negative");
+			if (linkPropagationSpeedsInKmPerSecond [e] <= 0) throw new Net2PlanException("Propagation speed must be positive");
+		}
+
+		final int D = demandIngressNodeIndexes.length;
+		if ((demandEgressNodeIndexes.length != D) || (demandOfferedTraffics.length != D)) throw new Net2PlanException ("Wrong size of the demand information");
+		for (int d = 0; d < D ; d ++)
+		{
+			checkIndex (demandIngressNodeIndexes [d] , N , "node");
+			checkIndex (demandEgressNodeIndexes [d] , N , "node");
+			if (demandIngressNodeIndexes [d] == demandEgressNodeIndexes [d]) throw new Net2PlanException("Self-demands are not allowed");
+			if (demandOfferedTraffics [d] < 0) throw new Net2PlanException("Offered traffic must be non-negative");
+		}
+
+		final int R = routeDemandIndexes.length;
+		if ((routeLinkIndexes.length != R) || (routeCarriedTraffics.length != R) || (routeOccupiedLinkCapacities.length != R)) throw new Net2PlanException ("Wrong size of the route information");
+		for (int r = 0; r < R ; r ++)
+		{
+			checkIndex (routeDemandIndexes [r] , D , "demand");
+			for (int e : routeLinkIndexes [r]) checkIndex (e , E , "link");
+			if (routeCarriedTraffics [r] < 0) throw new Net2PlanException("Carried traffic must be non-negative");
+			if (routeOccupiedLinkCapacities [r] < 0) throw new Net2PlanException("Occupied capacities cannot be negative");
+		}
+	}
+
+	private static void checkIndex (int index , int numElements , String elementType)
+	{
+		if ((index < 0) || (index >= numElements)) throw new Net2PlanException ("Wrong " + elementType + " index: " + index);
+	}
+
+	private static long [] newIds (NetPlan np , int numElements)
+	{
+		final long [] ids = new long [numElements];
+		for (int cont = 0; cont < numElements ; cont ++)
+		{
+			ids [cont] = np.nextElementId.longValue();
+			np.nextElementId.increment();
+		}
+		return ids;
+	}
+
+	private static <T> List<T> select (List<T> elements , int [] indexes)
+	{
+		final List<T> res = new ArrayList<T> (indexes.length);
+		for (int index : indexes) res.add(elements.get(index));
+		return res;
+	}
+}
@@ -31,10 +31,40 @@ public class NetworkElement
 	protected NetPlan netPlan;
 	final protected long id;
 	protected int index;
-	protected final AttributeMap attributes;
+	protected AttributeMap attributes;
 	protected final Set<String> tags;
+	boolean attributesShared; // true if the attribute map object may be referenced by a peer element in another NetPlan (copy-on-write)
+	private volatile DoubleAttribute typedAttribute; // the last numeric attribute read or set in this element, as a double. Cleared on any change of the attribute map
+
+	/* Typed value of an attribute of this element. The string it was parsed from is kept, so it is used only while the map holds the same string object */
+	private static final class DoubleAttribute
+	{
+		final String key;
+		final String text;
+		final boolean isNumber;
+		final double value;
+		DoubleAttribute (String key , String text , boolean isNumber , double value) { this.key = key; this.text = text; this.isNumber = isNumber; this.value = value; }
+	}
 	
-	NetworkElement (NetPlan netPlan , long id , int index , AttributeMap attributes) { this.netPlan = netPlan; this.id = id; this.index = index; this.attributes = new AttributeMap (attributes); this.tags = new HashSet<> (); }
+	NetworkElement (NetPlan netPlan , long id , int index , AttributeMap attributes) { this.netPlan = netPlan; this.id = id; this.index = index; this.attributes = new AttributeMap (attributes); this.tags = new HashSet<> (); this.attributesShared = false; }
+
+	/* Makes this element reference the same attribute map as the given element (typically, its peer in the NetPlan it was copied from). 
+	 * The map is copied by any of the two elements only when it is first modified */
+	final void shareAttributesFrom (NetworkElement origin)
+	{
+		this.attributes = origin.attributes;
+		this.attributesShared = true;
+		origin.attributesShared = true;
+	}
+
+	/* To be called before any modification of the attribute map */
+	final void materializeAttributes ()
+	{
+		if (!attributesShared) return;
+		this.attributes = new AttributeMap (attributes);
+		this.typedAttribute = null;
+		this.attributesShared = false;
+	}
 
 	/**
 	 * <p>Checks whether this element (demand, node, route...) is attached to a netPlan object. When negative, an exception will be thrown.</p>
@@ -83,6 +113,51 @@ public class NetworkElement
 		return value == null ? netPlan.getAttribute (key) : value;
 	}
 
+	/**
+	 * <p>Returns the value of a given attribute for this network element as a {@code double}, searching it in the netPlan object 
+	 * if it is not defined in the element, as in {@link #getAttribute(String)}. The element keeps the value of the last numeric 
+	 * attribute read or set, as a {@code double}, so reading it again (e.g. the IGP weight of a link) does not parse it. Any change 
+	 * in the attributes of the element discards it.</p>
+	 *
+	 * @param key Attribute name
+	 * @param defaultValue Value to return if the attribute is not defined, or is not a number
+	 * @return Attribute value
+	 */
+	public double getAttributeAsDouble(String key , double defaultValue)
+	{
+		checkAttachedToNetPlanObject();
+		final String text = attributes.get(key);
+		if (text == null) return (this instanceof NetPlan)? defaultValue : netPlan.getAttributeAsDouble(key , defaultValue);
+		DoubleAttribute typed = typedAttribute;
+		if ((typed == null) || (typed.text != text) || !typed.key.equals(key))
+		{
+			try { typed = new DoubleAttribute(key , text , true , Double.parseDouble(text)); } catch (NumberFormatException e) { typed = new DoubleAttribute(key , text , false , 0); }
+			typedAttribute = typed;
+		}
+		return typed.isNumber? typed.value : defaultValue;
+	}
+
+	/**
+	 * <p>Sets a numeric attribute for this element. It is stored as the string representation of the value (see {@link Double#toString(double)}), 
+	 * so it is the same as calling {@link #setAttribute(String, String)} with it, but the value is also kept as a {@code double} 
+	 * for {@link #getAttributeAsDouble(String, double)}.</p>
+	 *
+	 * @param key Attribute name
+	 * @param value Attribute value
+	 */
+	public void setAttributeAsDouble (String key, double value)
+	{
+		checkAttachedToNetPlanObject();
+		netPlan.checkAttributesAreModifiable();
+		materializeAttributes();
+		updateAttributeIndexes(false);
+		final String text = Double.toString(value);
+		attributes.put (key,text);
+		updateAttributeIndexes(true);
+		typedAttribute = new DoubleAttribute(key , text , true , value);
+		attributesChanged();
+	}
+
 	/** Adds a tag to this network element. If the element already has this tag, nothing happens
 	 * @param tag the tag
 	 */
@@ -160,8 +235,13 @@ public class NetworkElement
 	final public void removeAllAttributes ()
 	{ 
 		checkAttachedToNetPlanObject();
-		netPlan.checkIsModifiable();
+		netPlan.checkAttributesAreModifiable();
+		materializeAttributes();
+		updateAttributeIndexes(false);
 		attributes.clear();
+		updateAttributeIndexes(true);
+		typedAttribute = null;
+		attributesChanged();
 	}
 
 	/**
@@ -172,8 +252,13 @@ public class NetworkElement
 	final public void removeAttribute (String key)
 	{ 
 		checkAttachedToNetPlanObject();
-		netPlan.checkIsModifiable();
+		netPlan.checkAttributesAreModifiable();
+		materializeAttributes();
+		updateAttributeIndexes(false);
 		attributes.remove(key);
+		updateAttributeIndexes(true);
+		typedAttribute = null;
+		attributesChanged();
 	}
 
 	/**
@@ -186,8 +271,13 @@ public class NetworkElement
 	public void setAttribute (String key, String value)
 	{
 		checkAttachedToNetPlanObject();
-		netPlan.checkIsModifiable();
+		netPlan.checkAttributesAreModifiable();
+		materializeAttributes();
+		updateAttributeIndexes(false);
 		attributes.put (key,value);
+		updateAttributeIndexes(true);
+		typedAttribute = null;
+		attributesChanged();
 	}
 
 	/**
@@ -197,11 +287,16 @@ public class NetworkElement
 	public void setAttributeMap (Map<String,String> map)
 	{
 		checkAttachedToNetPlanObject();
-		netPlan.checkIsModifiable();
+		netPlan.checkAttributesAreModifiable();
+		materializeAttributes();
+		updateAttributeIndexes(false);
 		attributes.clear(); 
 		if (map != null) 
 			for (Map.Entry<String,String> e : map.entrySet())
 				attributes.put (e.getKey() , e.getValue());
+		updateAttributeIndexes(true);
+		typedAttribute = null;
+		attributesChanged();
 	}
 
 	/**
@@ -229,13 +324,48 @@ public class NetworkElement
 	 */
 	final public boolean wasRemoved () { return (netPlan == null); }
 
-	final protected void removeId () { this.netPlan = null; } // called when the element is removed from the net2plan object
+	/* To be called when the attribute map is modified without the methods above */
+	final void clearTypedAttribute () { this.typedAttribute = null; }
+
+	/* Called after the attributes of this element are modified */
+	void attributesChanged () { }
+
+	final protected void removeId () { updateAttributeIndexes(false); this.netPlan = null; } // called when the element is removed from the net2plan object
+
+	/* Adds this element to (or removes it from) the indexes of the attributes it has, among the ones indexed in its NetPlan */
+	final void updateAttributeIndexes (boolean add)
+	{
+		if ((netPlan == null) || (netPlan == this) || netPlan.cache_attributeIndexes.isEmpty()) return;
+		for (Map.Entry<String,Map<String,Set<NetworkElement>>> index : netPlan.cache_attributeIndexes.entrySet())
+		{
+			final String value = attributes.get(index.getKey());
+			if (value == null) continue;
+			Set<NetworkElement> elementsThisValue = index.getValue().get(value);
+			if (add)
+			{
+				if (elementsThisValue == null) { elementsThisValue = new HashSet<> (); index.getValue().put(value, elementsThisValue); }
+				elementsThisValue.add(this);
+			}
+			else
+			{
+				elementsThisValue.remove(this);
+				if (elementsThisValue.isEmpty()) index.getValue().remove(value);
+			}
+		}
+	}
 
 
 	void checkCachesConsistency ()
 	{
 		/* Check all the tags here are in the cache */
 		for (String tag : tags) if (!netPlan.cache_taggedElements.get(tag).contains (this)) throw new RuntimeException ("tag: " + tag);
+		/* Check this element is in the indexes of the indexed attributes it has */
+		if (netPlan != this)
+			for (String attribute : netPlan.cache_attributeIndexes.keySet())
+			{
+				final String value = attributes.get(attribute);
+				if (value != null) if (!netPlan.cache_attributeIndexes.get(attribute).get(value).contains(this)) throw new RuntimeException ("attribute: " + attribute);
+			}
 	}
 
 }
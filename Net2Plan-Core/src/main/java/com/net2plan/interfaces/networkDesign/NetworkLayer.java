@@ -14,17 +14,21 @@ package com.net2plan.interfaces.networkDesign;
 
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.net2plan.internal.AttributeMap;
 import com.net2plan.libraries.GraphUtils;
 import com.net2plan.libraries.GraphUtils.ClosedCycleRoutingException;
 import com.net2plan.utils.Constants.RoutingCycleType;
 import com.net2plan.utils.Constants.RoutingType;
+import com.net2plan.utils.Pair;
 import com.net2plan.utils.Quadruple;
 import com.net2plan.utils.Triple;
 
@@ -43,6 +47,48 @@ import cern.colt.matrix.tdouble.DoubleMatrix2D;
  * @since 0.4.0 */
 public class NetworkLayer extends NetworkElement
 {
+	/**
+	 * <p>Object notified of the changes in the nodes, links, demands and routes of a layer, so it can keep incrementally updated some information computed 
+	 * from them (e.g. the WDM spectrum occupancy index in {@link com.net2plan.libraries.WDMUtils}, or the simulation statistics). The methods are called from inside the methods 
+	 * that modify the design, possibly several times for the same change, so they should just record the change and return, 
+	 * and must not modify the design.</p>
+	 */
+	public interface ILayerChangeListener
+	{
+		/**
+		 * Called when a route of the layer is added, removed (then, its {@code getNetPlan} method returns {@code null}), 
+		 * or its path, carried traffic, attributes or failure state change
+		 * @param route the route
+		 */
+		public void routeChanged (Route route);
+		
+		/**
+		 * Called when the capacity, length, carried traffic, occupied capacity or failure state of a link of the layer change
+		 * @param link the link
+		 */
+		public void linkChanged (Link link);
+
+		/**
+		 * Called when a demand of the layer is added, removed (then, its {@code getNetPlan} method returns {@code null}), 
+		 * or its offered or carried traffic change
+		 * @param demand the demand
+		 */
+		public void demandChanged (Demand demand);
+
+		/**
+		 * Called when a node is added, removed (then, its {@code getNetPlan} method returns {@code null}), or its failure state changes. 
+		 * Since nodes are not associated to layers, the change is notified to the listeners of all the layers
+		 * @param node the node
+		 */
+		public void nodeChanged (Node node);
+
+		/**
+		 * Called when a link of the layer is added or removed, or the links, demands or routes of the layer are changed 
+		 * in a bulk operation without a notification per element. The listener should consider that any node, link, demand or route of the layer may have changed
+		 */
+		public void layerChanged ();
+	}
+
 	String demandTrafficUnitsName;
 	String description;
 	String name;
@@ -66,7 +112,11 @@ public class NetworkLayer extends NetworkElement
 	
 	Set<Route> cache_routesDown;
 	Set<MulticastTree> cache_multicastTreesDown;
+	Map<Pair<Node,Node>,Set<Link>> cache_nodePairLinks; // (origin node, destination node) -> links of this layer
+	Map<Pair<Node,Node>,Set<Demand>> cache_nodePairDemands; // (ingress node, egress node) -> demands of this layer
+	Map<String,Pair<Long,DoubleMatrix2D>> cache_matrices; // matrix name -> (design version when computed, matrix)
 	URL defaultNodeIconURL;
+	List<ILayerChangeListener> changeListeners;
 
 	NetworkLayer(NetPlan netPlan, long id, int index , String demandTrafficUnitsName, String description, String name, String linkCapacityUnitsName, URL defaultNodeIconURL , AttributeMap attributes)
 	{
@@ -91,6 +141,10 @@ public class NetworkLayer extends NetworkElement
 
 		this.cache_routesDown = new HashSet<Route> ();
 		this.cache_multicastTreesDown = new HashSet<MulticastTree> ();
+		this.cache_nodePairLinks = new HashMap<Pair<Node,Node>,Set<Link>> ();
+		this.cache_nodePairDemands = new HashMap<Pair<Node,Node>,Set<Demand>> ();
+		this.cache_matrices = new ConcurrentHashMap<String,Pair<Long,DoubleMatrix2D>> ();
+		this.changeListeners = new ArrayList<ILayerChangeListener> ();
 //		this.forwardingRulesNoFailureState_f_de = null;
 //		this.forwardingRulesCurrentFailureState_x_de = null;
 //		this.forwardingRules_Aout_ne = null;
@@ -129,18 +183,136 @@ public class NetworkLayer extends NetworkElement
 //			this.forwardingRules_Ain_ne = null;
 		}
 		
-		this.cache_linksDown.clear (); for (Link e : origin.cache_linksDown) this.cache_linksDown.add(this.netPlan.getLinkFromId (e.id));
-		this.cache_coupledLinks.clear (); for (Link e : origin.cache_coupledLinks) this.cache_coupledLinks.add(this.netPlan.getLinkFromId (e.id));
-		this.cache_coupledDemands.clear (); for (Demand d : origin.cache_coupledDemands) this.cache_coupledDemands.add(this.netPlan.getDemandFromId (d.id));
-		this.cache_coupledMulticastDemands.clear (); for (MulticastDemand d : origin.cache_coupledMulticastDemands) this.cache_coupledMulticastDemands.add(this.netPlan.getMulticastDemandFromId(d.id));
-		this.cache_routesDown.clear (); for (Route r : origin.cache_routesDown) this.cache_routesDown.add(this.netPlan.getRouteFromId (r.id));
-		this.cache_multicastTreesDown.clear (); for (MulticastTree t : origin.cache_multicastTreesDown) this.cache_multicastTreesDown.add(this.netPlan.getMulticastTreeFromId (t.id));
+		this.cache_linksDown.clear (); for (Link e : origin.cache_linksDown) this.cache_linksDown.add(this.links.get(e.index));
+		this.cache_coupledLinks.clear (); for (Link e : origin.cache_coupledLinks) this.cache_coupledLinks.add(this.links.get(e.index));
+		this.cache_coupledDemands.clear (); for (Demand d : origin.cache_coupledDemands) this.cache_coupledDemands.add(this.demands.get(d.index));
+		this.cache_coupledMulticastDemands.clear (); for (MulticastDemand d : origin.cache_coupledMulticastDemands) this.cache_coupledMulticastDemands.add(this.multicastDemands.get(d.index));
+		this.cache_routesDown.clear (); for (Route r : origin.cache_routesDown) this.cache_routesDown.add(this.routes.get(r.index));
+		this.cache_multicastTreesDown.clear (); for (MulticastTree t : origin.cache_multicastTreesDown) this.cache_multicastTreesDown.add(this.multicastTrees.get(t.index));
+		this.cache_nodePairLinks.clear (); for (Link e : this.links) addToNodePairCache(e);
+		this.cache_nodePairDemands.clear (); for (Demand d : this.demands) addToNodePairCache(d);
+		this.cache_matrices.clear ();
 		
 		for (Link e : origin.links) this.links.get(e.index).copyFrom(e);
 		for (Demand d : origin.demands) this.demands.get(d.index).copyFrom(d);
 		for (MulticastDemand d : origin.multicastDemands) this.multicastDemands.get(d.index).copyFrom(d);
 		for (Route r : origin.routes) this.routes.get(r.index).copyFrom(r);
 		for (MulticastTree t : origin.multicastTrees) this.multicastTrees.get(t.index).copyFrom(t);
+		notifyLayerChanged ();
+	}
+
+	/**
+	 * <p>Adds a listener to be notified of the changes in the nodes, links, demands and routes of this layer. If it was already added, no action is made</p>
+	 * @param listener the listener
+	 */
+	public void addChangeListener (ILayerChangeListener listener)
+	{
+		checkAttachedToNetPlanObject();
+		if (!changeListeners.contains(listener)) changeListeners.add(listener);
+	}
+
+	/**
+	 * <p>Removes a listener previously added to this layer. If it was not added, no action is made</p>
+	 * @param listener the listener
+	 */
+	public void removeChangeListener (ILayerChangeListener listener)
+	{
+		changeListeners.remove(listener);
+	}
+
+	/**
+	 * <p>Returns an unmodifiable view of the listeners notified of the changes in the nodes, links, demands and routes of this layer</p>
+	 * @return see above
+	 */
+	public List<ILayerChangeListener> getChangeListeners ()
+	{
+		return Collections.unmodifiableList(changeListeners);
+	}
+
+	/* Returns the links of this layer from the origin to the destination node (an unmodifiable view, empty if none) */
+	Set<Link> getNodePairLinks (Node originNode , Node destinationNode)
+	{
+		final Set<Link> res = cache_nodePairLinks.get(Pair.of(originNode, destinationNode));
+		return res == null? Collections.<Link>emptySet() : Collections.unmodifiableSet(res);
+	}
+
+	/* Returns the demands of this layer from the ingress to the egress node (an unmodifiable view, empty if none) */
+	Set<Demand> getNodePairDemands (Node ingressNode , Node egressNode)
+	{
+		final Set<Demand> res = cache_nodePairDemands.get(Pair.of(ingressNode, egressNode));
+		return res == null? Collections.<Demand>emptySet() : Collections.unmodifiableSet(res);
+	}
+
+	void addToNodePairCache (Link e)
+	{
+		final Pair<Node,Node> nodePair = Pair.of(e.originNode, e.destinationNode);
+		Set<Link> linksThisPair = cache_nodePairLinks.get(nodePair);
+		if (linksThisPair == null) { linksThisPair = new HashSet<Link> (); cache_nodePairLinks.put(nodePair, linksThisPair); }
+		linksThisPair.add(e);
+	}
+
+	void removeFromNodePairCache (Link e)
+	{
+		final Pair<Node,Node> nodePair = Pair.of(e.originNode, e.destinationNode);
+		final Set<Link> linksThisPair = cache_nodePairLinks.get(nodePair);
+		linksThisPair.remove(e);
+		if (linksThisPair.isEmpty()) cache_nodePairLinks.remove(nodePair);
+	}
+
+	void addToNodePairCache (Demand d)
+	{
+		final Pair<Node,Node> nodePair = Pair.of(d.ingressNode, d.egressNode);
+		Set<Demand> demandsThisPair = cache_nodePairDemands.get(nodePair);
+		if (demandsThisPair == null) { demandsThisPair = new HashSet<Demand> (); cache_nodePairDemands.put(nodePair, demandsThisPair); }
+		demandsThisPair.add(d);
+	}
+
+	void removeFromNodePairCache (Demand d)
+	{
+		final Pair<Node,Node> nodePair = Pair.of(d.ingressNode, d.egressNode);
+		final Set<Demand> demandsThisPair = cache_nodePairDemands.get(nodePair);
+		demandsThisPair.remove(d);
+		if (demandsThisPair.isEmpty()) cache_nodePairDemands.remove(nodePair);
+	}
+
+	void notifyRouteChanged (Route route)
+	{
+		if (changeListeners.isEmpty()) return;
+		final long matrixMisses = netPlan.cache_matrixMisses.get();
+		for (ILayerChangeListener listener : changeListeners) listener.routeChanged(route);
+		netPlan.changeNotified(matrixMisses);
+	}
+
+	void notifyLinkChanged (Link link)
+	{
+		if (changeListeners.isEmpty()) return;
+		final long matrixMisses = netPlan.cache_matrixMisses.get();
+		for (ILayerChangeListener listener : changeListeners) listener.linkChanged(link);
+		netPlan.changeNotified(matrixMisses);
+	}
+
+	void notifyDemandChanged (Demand demand)
+	{
+		if (changeListeners.isEmpty()) return;
+		final long matrixMisses = netPlan.cache_matrixMisses.get();
+		for (ILayerChangeListener listener : changeListeners) listener.demandChanged(demand);
+		netPlan.changeNotified(matrixMisses);
+	}
+
+	void notifyNodeChanged (Node node)
+	{
+		if (changeListeners.isEmpty()) return;
+		final long matrixMisses = netPlan.cache_matrixMisses.get();
+		for (ILayerChangeListener listener : changeListeners) listener.nodeChanged(node);
+		netPlan.changeNotified(matrixMisses);
+	}
+
+	void notifyLayerChanged ()
+	{
+		if (changeListeners.isEmpty()) return;
+		final long matrixMisses = netPlan.cache_matrixMisses.get();
+		for (ILayerChangeListener listener : changeListeners) listener.layerChanged();
+		netPlan.changeNotified(matrixMisses);
 	}
 
 	/** Returns true if this layer is the default netowrk layer
@@ -275,6 +447,22 @@ public class NetworkLayer extends NetworkElement
 		for (MulticastDemand demand : cache_coupledMulticastDemands) if (demand.coupledUpperLayerLinks == null) throw new RuntimeException ("Bad");
 		for (Route route : cache_routesDown) if (!route.isDown()) throw new RuntimeException ("Bad");
 		for (MulticastTree tree : cache_multicastTreesDown) if (!tree.isDown()) throw new RuntimeException ("Bad");
+		int numLinksInNodePairCache = 0;
+		for (Entry<Pair<Node,Node>,Set<Link>> entry : cache_nodePairLinks.entrySet())
+			for (Link link : entry.getValue())
+			{
+				if ((link.layer != this) || (link.originNode != entry.getKey().getFirst()) || (link.destinationNode != entry.getKey().getSecond())) throw new RuntimeException ("Bad");
+				numLinksInNodePairCache ++;
+			}
+		if (numLinksInNodePairCache != links.size()) throw new RuntimeException ("Bad");
+		int numDemandsInNodePairCache = 0;
+		for (Entry<Pair<Node,Node>,Set<Demand>> entry : cache_nodePairDemands.entrySet())
+			for (Demand demand : entry.getValue())
+			{
+				if ((demand.layer != this) || (demand.ingressNode != entry.getKey().getFirst()) || (demand.egressNode != entry.getKey().getSecond())) throw new RuntimeException ("Bad");
+				numDemandsInNodePairCache ++;
+			}
+		if (numDemandsInNodePairCache != demands.size()) throw new RuntimeException ("Bad");
 	}
 
 
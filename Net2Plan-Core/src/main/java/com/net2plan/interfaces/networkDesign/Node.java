@@ -107,17 +107,17 @@ public class Node extends NetworkElement
 		this.siteName = origin.siteName;
 		this.nodeXYPositionMap = new UnmodifiablePoint2D(origin.nodeXYPositionMap.getX() , origin.nodeXYPositionMap.getY());
 		this.isUp = origin.isUp;
-		this.mapLayer2URLSpecificIcon.clear(); for (NetworkLayer l : origin.mapLayer2URLSpecificIcon.keySet()) this.mapLayer2URLSpecificIcon.put(this.netPlan.getNetworkLayerFromId(l.getId()) , origin.mapLayer2URLSpecificIcon.get(l));
-		this.cache_nodeIncomingLinks.clear (); for (Link e : origin.cache_nodeIncomingLinks) this.cache_nodeIncomingLinks.add(this.netPlan.getLinkFromId (e.id));
-		this.cache_nodeOutgoingLinks.clear (); for (Link e : origin.cache_nodeOutgoingLinks) this.cache_nodeOutgoingLinks.add(this.netPlan.getLinkFromId (e.id));
-		this.cache_nodeIncomingDemands.clear (); for (Demand d : origin.cache_nodeIncomingDemands) this.cache_nodeIncomingDemands.add(this.netPlan.getDemandFromId (d.id));
-		this.cache_nodeOutgoingDemands.clear (); for (Demand d : origin.cache_nodeOutgoingDemands) this.cache_nodeOutgoingDemands.add(this.netPlan.getDemandFromId (d.id));
-		this.cache_nodeIncomingMulticastDemands.clear (); for (MulticastDemand d : origin.cache_nodeIncomingMulticastDemands) this.cache_nodeIncomingMulticastDemands.add(this.netPlan.getMulticastDemandFromId(d.id));
-		this.cache_nodeOutgoingMulticastDemands.clear (); for (MulticastDemand d : origin.cache_nodeOutgoingMulticastDemands) this.cache_nodeOutgoingMulticastDemands.add(this.netPlan.getMulticastDemandFromId(d.id));
-		this.cache_nodeSRGs.clear (); for (SharedRiskGroup s : origin.cache_nodeSRGs) this.cache_nodeSRGs.add(this.netPlan.getSRGFromId(s.id));
-		this.cache_nodeResources.clear(); for (Resource r : origin.cache_nodeResources) this.cache_nodeResources.add(this.netPlan.getResourceFromId(r.id));
-		this.cache_nodeAssociatedRoutes.clear (); for (Route r : origin.cache_nodeAssociatedRoutes) this.cache_nodeAssociatedRoutes.add(this.netPlan.getRouteFromId (r.id));
-		this.cache_nodeAssociatedulticastTrees.clear (); for (MulticastTree t : origin.cache_nodeAssociatedulticastTrees) this.cache_nodeAssociatedulticastTrees.add(this.netPlan.getMulticastTreeFromId(t.id));
+		this.mapLayer2URLSpecificIcon.clear(); for (NetworkLayer l : origin.mapLayer2URLSpecificIcon.keySet()) this.mapLayer2URLSpecificIcon.put((NetworkLayer) this.netPlan.getPeerElementInThisNetPlan(l) , origin.mapLayer2URLSpecificIcon.get(l));
+		this.cache_nodeIncomingLinks = this.netPlan.getPeerElementsInThisNetPlan(origin.cache_nodeIncomingLinks);
+		this.cache_nodeOutgoingLinks = this.netPlan.getPeerElementsInThisNetPlan(origin.cache_nodeOutgoingLinks);
+		this.cache_nodeIncomingDemands = this.netPlan.getPeerElementsInThisNetPlan(origin.cache_nodeIncomingDemands);
+		this.cache_nodeOutgoingDemands = this.netPlan.getPeerElementsInThisNetPlan(origin.cache_nodeOutgoingDemands);
+		this.cache_nodeIncomingMulticastDemands = this.netPlan.getPeerElementsInThisNetPlan(origin.cache_nodeIncomingMulticastDemands);
+		this.cache_nodeOutgoingMulticastDemands = this.netPlan.getPeerElementsInThisNetPlan(origin.cache_nodeOutgoingMulticastDemands);
+		this.cache_nodeSRGs = this.netPlan.getPeerElementsInThisNetPlan(origin.cache_nodeSRGs);
+		this.cache_nodeResources = this.netPlan.getPeerElementsInThisNetPlan(origin.cache_nodeResources);
+		this.cache_nodeAssociatedRoutes = this.netPlan.getPeerElementsInThisNetPlan(origin.cache_nodeAssociatedRoutes);
+		this.cache_nodeAssociatedulticastTrees = this.netPlan.getPeerElementsInThisNetPlan(origin.cache_nodeAssociatedulticastTrees);
 	}
 	
 	boolean isDeepCopy (Node e2)
@@ -217,7 +217,25 @@ public class Node extends NetworkElement
 	{
 		checkAttachedToNetPlanObject();
 		netPlan.checkIsModifiable();
+		removeFromNameCache();
 		this.name = name == null? "" : name;
+		addToNameCache();
+	}
+
+	/* Adds the node to the NetPlan cache of nodes per name */
+	void addToNameCache ()
+	{
+		Set<Node> nodesThisName = netPlan.cache_nodesPerName.get(name);
+		if (nodesThisName == null) { nodesThisName = new HashSet<> (); netPlan.cache_nodesPerName.put(name, nodesThisName); }
+		nodesThisName.add(this);
+	}
+
+	/* Removes the node from the NetPlan cache of nodes per name */
+	void removeFromNameCache ()
+	{
+		final Set<Node> nodesThisName = netPlan.cache_nodesPerName.get(name);
+		nodesThisName.remove(this);
+		if (nodesThisName.isEmpty()) netPlan.cache_nodesPerName.remove(name);
 	}
 
 	/**
@@ -742,9 +760,13 @@ public class Node extends NetworkElement
 
 		netPlan.cache_id2NodeMap.remove (id);
         for (String tag : tags) netPlan.cache_taggedElements.get(tag).remove(this);
+		removeFromNameCache();
 		NetPlan.removeNetworkElementAndShiftIndexes(netPlan.nodes , this.index);
+		netPlan.cache_topologyVersion ++;
 		if (ErrorHandling.isDebugEnabled()) netPlan.checkCachesConsistency();
+		final NetPlan previousNetPlan = netPlan;
 		removeId ();
+		previousNetPlan.notifyNodeChanged(this);
 	}
 
 	/**
@@ -825,6 +847,7 @@ public class Node extends NetworkElement
 
 		if (isUp && netPlan.cache_nodesDown.contains(this)) throw new RuntimeException ("Bad");
 		if (!isUp && !netPlan.cache_nodesDown.contains(this)) throw new RuntimeException ("Bad");
+		if (!netPlan.cache_nodesPerName.get(name).contains(this)) throw new RuntimeException ("Bad");
 		for (Link link : cache_nodeIncomingLinks) if (link.destinationNode != this) throw new RuntimeException ("Bad");
 		for (Link link : cache_nodeOutgoingLinks) if (link.originNode != this) throw new RuntimeException ("Bad");
 		for (Demand demand : cache_nodeIncomingDemands) if (demand.egressNode != this) throw new RuntimeException ("Bad");
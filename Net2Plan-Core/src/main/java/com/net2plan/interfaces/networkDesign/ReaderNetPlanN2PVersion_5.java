@@ -20,17 +20,22 @@
 
 package com.net2plan.interfaces.networkDesign;
 
+
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.events.XMLEvent;
@@ -41,30 +46,22 @@ import org.codehaus.stax2.XMLStreamReader2;
 import com.net2plan.internal.ErrorHandling;
 import com.net2plan.libraries.ProfileUtils;
 import com.net2plan.utils.Constants.RoutingType;
-import com.net2plan.utils.DoubleUtils;
-import com.net2plan.utils.LongUtils;
 import com.net2plan.utils.Pair;
 
-import cern.colt.matrix.tdouble.DoubleFactory2D;
-import cern.colt.matrix.tdouble.DoubleMatrix2D;
-
+/* Reads the .n2p files streaming the XML, one element at a time. The consecutive elements of the same type (nodes, links, routes...) are parsed
+ * in parallel chunks into records (numbers, paths, forwarding rules...), and the elements of each chunk are added in bulk to the design
+ * (see NetPlan.addNodesInBulk). So, only the XML of one chunk is kept in memory. The forwarding rules of each hop-by-hop layer are set at once, computing the routing
+ * of the demands in parallel */
 class ReaderNetPlanN2PVersion_5 implements IReaderNetPlan //extends NetPlanFormat_v3
 {
-	private boolean hasAlreadyReadOneLayer;
-	private XMLStreamReader2 xmlStreamReader;
-	private Map<Route,List<Long>> backupRouteIdsMap;
-	private Map<Long , List<Pair<Node,URL>>> nodeAndLayerToIconURLMap;
-	
-	
+	/* The maximum number of consecutive elements of the same type whose XML is kept before parsing them */
+	private static final int CHUNK_SIZE = 4096;
+
 	public void create(NetPlan netPlan, XMLStreamReader2 xmlStreamReader) throws XMLStreamException
 	{
 		ProfileUtils.printTime("" , -1);
-		this.hasAlreadyReadOneLayer = false;
-		this.xmlStreamReader = xmlStreamReader;
-		this.backupRouteIdsMap = new HashMap<Route,List<Long>> ();
-		this.nodeAndLayerToIconURLMap = new HashMap<> ();
 
-		parseNetwork(netPlan);
+		parseNetwork(netPlan , xmlStreamReader);
 
 //		System.out.println ("End ReaderNetPlan_v5: " + netPlan + " ----------- ");
 		
@@ -72,553 +69,713 @@ class ReaderNetPlanN2PVersion_5 implements IReaderNetPlan //extends NetPlanForma
 		ProfileUtils.printTime("Reading n2p file");
 	}
 
-	protected void parseNetwork(NetPlan netPlan) throws XMLStreamException
+	private static void parseNetwork(NetPlan netPlan , XMLStreamReader2 xmlStreamReader) throws XMLStreamException
 	{
-		final String networkDescription_thisNetPlan = getString ("description");
-		final String networkName_thisNetPlan = getString ("name");
-		final Long nexElementId_thisNetPlan = getLong ("nextElementId");
-		netPlan.setNetworkDescription(networkDescription_thisNetPlan);
-		netPlan.setNetworkName(networkName_thisNetPlan);
-		netPlan.nextElementId = new MutableLong(nexElementId_thisNetPlan);
+		final XmlElement network = new XmlElement (xmlStreamReader); // its tags and attributes are added as children, and set at the end
+		netPlan.setNetworkDescription(network.getString("description"));
+		netPlan.setNetworkName(network.getString("name"));
+		netPlan.nextElementId = new MutableLong(network.getLong("nextElementId"));
 		if (netPlan.nextElementId.toLong() <= 0) throw new Net2PlanException ("A network element has an id higher than the nextElementId");
 
-		while(xmlStreamReader.hasNext())
+		/* Nodes: the icons information is put in a map for later (layers are not created yet!) */
+		final Map<Long , List<Pair<Node,URL>>> nodeAndLayerToIconURLMap = new HashMap<> ();
+		final ChunkedParser<NodeRecord> nodes = new ChunkedParser<> (NodeRecord::new , records -> addNodes(netPlan , records , nodeAndLayerToIconURLMap));
+		final ChunkedParser<ResourceRecord> resources = new ChunkedParser<> (ResourceRecord::new , records -> addResources(netPlan , records));
+		final ChunkedParser<SrgRecord> srgs = new ChunkedParser<> (SrgRecord::new , records -> addSrgs(netPlan , records));
+		final List<ChunkedParser<?>> parsers = Arrays.asList(nodes , resources , srgs);
+
+		boolean hasAlreadyReadOneLayer = false;
+		String previousChildName = null;
+		while (nextChild(xmlStreamReader))
 		{
-			xmlStreamReader.next();
-			switch(xmlStreamReader.getEventType())
+			/* The pending elements are added before the first element of another type, that may refer to them */
+			final String childName = xmlStreamReader.getLocalName();
+			if (!childName.equals(previousChildName)) for (ChunkedParser<?> parser : parsers) parser.flush();
+			previousChildName = childName;
+			switch (childName)
 			{
-				case XMLEvent.START_ELEMENT:
-					String startElementName = xmlStreamReader.getName().toString();
-					switch(startElementName)
-					{
-						case "tag":
-							netPlan.addTag(xmlStreamReader.getAttributeValue(xmlStreamReader.getAttributeIndex(null, "value")));
-							break;
-						case "attribute":
-							String key = xmlStreamReader.getAttributeValue(xmlStreamReader.getAttributeIndex(null, "key"));
-							String name = xmlStreamReader.getAttributeValue(xmlStreamReader.getAttributeIndex(null, "value"));
-							netPlan.setAttribute(key, name);
-							break;
-
-						case "layer":
-							parseLayer(netPlan);
-							break;
-
-						case "node":
-							parseNode(netPlan);
-							break;
-
-						case "resource":
-							parseResource(netPlan);
-							break;
-
-						case "srg":
-							parseSRG(netPlan);
-							break;
-
-						case "layerCouplingDemand":
-							final long upperLayerLinkId = getLong ("upperLayerLinkId");
-							final long lowerLayerDemandId = getLong ("lowerLayerDemandId");
-							netPlan.getDemandFromId(lowerLayerDemandId).coupleToUpperLayerLink(netPlan.getLinkFromId(upperLayerLinkId));
-							break;
-
-						case "layerCouplingMulticastDemand":
-							final long lowerLayerMulticastDemandId = getLong ("lowerLayerDemandId");
-							final Set<Link> setLinksToCouple = getLinkSetFromIds(netPlan , getListLong("upperLayerLinkIds"));
-							netPlan.getMulticastDemandFromId(lowerLayerMulticastDemandId).couple(setLinksToCouple);
-							break;
-
-						default:
-							throw new RuntimeException("Bad");
-					}
-
-					break;
-
-				case XMLEvent.END_ELEMENT:
-					String endElementName = xmlStreamReader.getName().toString();
-					if (endElementName.equals("network"))
-					{
-//						if (!netPlan.hasReadLayerZero && netPlan.layers.size() > 1) netPlan.removeNetworkLayer (netPlan.layers.get(0));
-						return;
-					}
-
-					break;
+				case "tag": case "attribute": network.addChild(XmlElement.read(xmlStreamReader)); break;
+				case "node": nodes.add(XmlElement.read(xmlStreamReader)); break;
+				case "resource": resources.add(XmlElement.read(xmlStreamReader)); break;
+				case "layer": parseLayer(netPlan , xmlStreamReader , hasAlreadyReadOneLayer , nodeAndLayerToIconURLMap); hasAlreadyReadOneLayer = true; break;
+				case "srg": srgs.add(XmlElement.read(xmlStreamReader)); break;
+				case "layerCouplingDemand": case "layerCouplingMulticastDemand": addCoupling(netPlan , XmlElement.read(xmlStreamReader)); break;
+				default: throw new RuntimeException("Bad");
 			}
 		}
+		for (ChunkedParser<?> parser : parsers) parser.flush();
 
-		throw new RuntimeException("'Network' element not parsed correctly (end tag not found)");
+		new ElementRecord (network).addTagsAndAttributes(netPlan);
 	}
-	
-	private void parseNode(NetPlan netPlan) throws XMLStreamException
+
+	private static void parseLayer(NetPlan netPlan, XMLStreamReader2 xmlStreamReader , boolean hasAlreadyReadOneLayer , Map<Long , List<Pair<Node,URL>>> nodeAndLayerToIconURLMap) throws XMLStreamException
 	{
-		final long nodeId = getLong ("id");
-		if (nodeId >= netPlan.nextElementId.toLong()) throw new Net2PlanException ("A network element has an id higher than the nextElementId");
-		final double xCoord = getDouble ("xCoord");
-		final double yCoord = getDouble ("yCoord");
-		final String nodeName = getString ("name");
-		double population = 0; try { population = getDouble ("population"); } catch (Exception e) {}
-		String siteName = null; try { siteName = getString ("siteName"); } catch (Exception e) {}
-		boolean isUp = true; try { isUp = getBoolean ("isUp"); } catch (Exception e) {} 
-		//netPlan.nextNodeId = new MutableLong(nodeId);
-		Node newNode = netPlan.addNode(nodeId , xCoord, yCoord, nodeName, null);
-		newNode.setFailureState(isUp);
-		newNode.setPopulation(population);
-		if (siteName != null) newNode.setSiteName(siteName);
+		final XmlElement layerElement = new XmlElement (xmlStreamReader); // its tags and attributes are added as children, and set at the end
+		final long layerId = layerElement.getLong ("id");
+		checkId(netPlan , layerId);
+		final String demandTrafficUnitsName = layerElement.getString ("demandTrafficUnitsName");
+		final String layerDescription = layerElement.getString ("description");
+		final String layerName = layerElement.getString ("name");
+		final String linkCapacityUnitsName = layerElement.getString ("linkCapacityUnitsName");
+		final URL defaultNodeIconURL = toURL(layerElement.getString ("defaultNodeIconURL"));
+		final boolean isDefaultLayer = Boolean.parseBoolean(layerElement.getString ("isDefaultLayer"));
 		
-		/* read the icons information and put it in a map for later (layers are not created yet!) */
-		for (long layerId : getListLong("layersWithIconsDefined"))
+		final NetworkLayer newLayer;
+		if (!hasAlreadyReadOneLayer)
 		{
-			List<Pair<Node,URL>> iconsThisLayerSoFar = nodeAndLayerToIconURLMap.get (layerId);
-			if (iconsThisLayerSoFar == null) { iconsThisLayerSoFar = new LinkedList<> (); nodeAndLayerToIconURLMap.put(layerId , iconsThisLayerSoFar); }
-			URL url = null; try { url = new URL (getString ("nodeIconURLLayer_" + layerId)); } catch (Exception e) {}
-			iconsThisLayerSoFar.add(Pair.of(newNode , url));
+			if (netPlan.layers.size() != 1) throw new RuntimeException ("Bad");
+			if (netPlan.layers.get (0).id != layerId)
+			{
+				// the Id of first layer is different => create a new one and remove the existing
+				newLayer = netPlan.addLayer(layerId , layerName, layerDescription, linkCapacityUnitsName, demandTrafficUnitsName, defaultNodeIconURL , null);
+				netPlan.removeNetworkLayer(netPlan.layers.get (0));
+			}
+			else
+			{
+				newLayer = netPlan.layers.get (0); // it already has the right Id
+				newLayer.demandTrafficUnitsName = demandTrafficUnitsName;
+				newLayer.description = layerDescription;
+				newLayer.name = layerName;
+				newLayer.linkCapacityUnitsName= linkCapacityUnitsName;
+			}
+		}
+		else
+		{
+			newLayer = netPlan.addLayer(layerId , layerName, layerDescription, linkCapacityUnitsName, demandTrafficUnitsName, defaultNodeIconURL , null);
 		}
-		readAndAddAttributesToEnd(newNode, "node");
-	}
 
-	private void parseDemand(NetPlan netPlan, long layerId) throws XMLStreamException
-	{
-		final long demandId = getLong ("id");
-		if (demandId >= netPlan.nextElementId.toLong()) throw new Net2PlanException ("A network element has an id higher than the nextElementId");
-		final long ingressNodeId = getLong ("ingressNodeId");
-		final long egressNodeId = getLong ("egressNodeId");
-		final double offeredTraffic = getDouble ("offeredTraffic");
-		Demand.IntendedRecoveryType recoveryType;
-		try { recoveryType = Demand.IntendedRecoveryType.valueOf(getString("intendedRecoveryType")); } 
-		catch (XMLStreamException e) { recoveryType = Demand.IntendedRecoveryType.NOTSPECIFIED; }
-		catch (Exception e) { recoveryType = Demand.IntendedRecoveryType.UNKNOWNTYPE; }
-
-		Demand newDemand = netPlan.addDemand(demandId , netPlan.getNodeFromId(ingressNodeId), netPlan.getNodeFromId(egressNodeId), offeredTraffic, null , netPlan.getNetworkLayerFromId(layerId));
-		newDemand.setIntendedRecoveryType(recoveryType);
+		/* write the node icons information, that is already there */
+		if (nodeAndLayerToIconURLMap.containsKey(newLayer.getId()))
+			for (Pair<Node,URL> iconInfo : nodeAndLayerToIconURLMap.get(newLayer.getId()))
+				iconInfo.getFirst().setUrlNodeIcon(newLayer , iconInfo.getSecond());
 		
-		List<String> mandatorySequenceOfTraversedResourceTypes = new LinkedList<String> ();
-		boolean finalElementRead = false;
-		while(xmlStreamReader.hasNext() && !finalElementRead)
-		{
-			xmlStreamReader.next();
+		if (isDefaultLayer) netPlan.setNetworkLayerDefault(newLayer);
 
-			switch(xmlStreamReader.getEventType())
+		final ChunkedParser<LinkRecord> links = new ChunkedParser<> (LinkRecord::new , records -> addLinks(netPlan , newLayer , records));
+		final ChunkedParser<DemandRecord> demands = new ChunkedParser<> (DemandRecord::new , records -> addDemands(netPlan , newLayer , records));
+		final ChunkedParser<MulticastDemandRecord> multicastDemands = new ChunkedParser<> (MulticastDemandRecord::new , records -> addMulticastDemands(netPlan , newLayer , records));
+		final ChunkedParser<MulticastTreeRecord> multicastTrees = new ChunkedParser<> (MulticastTreeRecord::new , records -> addMulticastTrees(netPlan , records));
+		final List<ChunkedParser<?>> parsers = Arrays.asList(links , demands , multicastDemands , multicastTrees);
+
+		String previousChildName = null;
+		while (nextChild(xmlStreamReader))
+		{
+			final String childName = xmlStreamReader.getLocalName();
+			if (!childName.equals(previousChildName)) for (ChunkedParser<?> parser : parsers) parser.flush();
+			previousChildName = childName;
+			switch (childName)
 			{
-				case XMLEvent.START_ELEMENT:
-					String startElementName = xmlStreamReader.getName().toString();
-					switch(startElementName)
-					{
-						case "tag":
-							newDemand.addTag(xmlStreamReader.getAttributeValue(xmlStreamReader.getAttributeIndex(null, "value")));
-							break;
-						case "attribute":
-							String key = xmlStreamReader.getAttributeValue(xmlStreamReader.getAttributeIndex(null, "key"));
-							String name = xmlStreamReader.getAttributeValue(xmlStreamReader.getAttributeIndex(null, "value"));
-							newDemand.setAttribute(key, name);
-							break;
-
-						case "serviceChainResourceTypeOfSequence":
-							String type = xmlStreamReader.getAttributeValue(xmlStreamReader.getAttributeIndex(null, "type"));
-							mandatorySequenceOfTraversedResourceTypes.add(type);
-							break;
-
-						default:
-							throw new RuntimeException("Bad");
-					}
-
-					break;
-
-				case XMLEvent.END_ELEMENT:
-					String endElementName = xmlStreamReader.getName().toString();
-					if (endElementName.equals("demand")) { finalElementRead = true; break; }
+				case "tag": case "attribute": layerElement.addChild(XmlElement.read(xmlStreamReader)); break;
+				case "link": links.add(XmlElement.read(xmlStreamReader)); break;
+				case "demand": demands.add(XmlElement.read(xmlStreamReader)); break;
+				case "multicastDemand": multicastDemands.add(XmlElement.read(xmlStreamReader)); break;
+				case "multicastTree": multicastTrees.add(XmlElement.read(xmlStreamReader)); break;
+				case "sourceRouting": parseSourceRouting(netPlan , newLayer , xmlStreamReader); break;
+				case "hopByHopRouting": parseHopByHopRouting(netPlan , newLayer , xmlStreamReader); break;
+				default: throw new RuntimeException("Bad child (" + childName + ") for layer element");
 			}
 		}
+		for (ChunkedParser<?> parser : parsers) parser.flush();
 
-		if (!finalElementRead) throw new RuntimeException("'Demand' element not parsed correctly (end tag not found)");
-		newDemand.setServiceChainSequenceOfTraversedResourceTypes(mandatorySequenceOfTraversedResourceTypes);
+		new ElementRecord (layerElement).addTagsAndAttributes(newLayer);
 	}
 
-	private void parseRoute(NetPlan netPlan, long layerId) throws XMLStreamException
+	private static void parseSourceRouting(NetPlan netPlan, NetworkLayer layer , XMLStreamReader2 xmlStreamReader) throws XMLStreamException
 	{
-		final long routeId = getLong ("id");
-		if (routeId >= netPlan.nextElementId.toLong()) throw new Net2PlanException ("A network element has an id higher than the nextElementId");
-		final long demandId = getLong ("demandId");
-		
-		final double currentCarriedTrafficIfNotFailing = getDouble ("currentCarriedTrafficIfNotFailing");
-		final List<Double> currentLinksAndResourcesOccupationIfNotFailing = getListDouble("currentLinksAndResourcesOccupationIfNotFailing");
-		final List<NetworkElement> currentPath = getLinkAndResorceListFromIds(netPlan, getListLong("currentPath"));
-		
-		/* Initial route may not exist, if so current equals the initial */
-		List<NetworkElement> initialStatePath = new ArrayList<NetworkElement> (currentPath);
-		boolean initialPathExists = true; 
-		try { initialStatePath = getLinkAndResorceListFromIds(netPlan, getListLong("initialStatePath")); } catch (Exception e) { initialPathExists = false; } 
-		final double initialStateCarriedTrafficIfNotFailing = initialPathExists? getDouble ("initialStateCarriedTrafficIfNotFailing") : currentCarriedTrafficIfNotFailing;
-		final List<Double> initialStateOccupationIfNotFailing = initialPathExists? getListDouble("initialStateOccupationIfNotFailing") : new ArrayList<Double> (currentLinksAndResourcesOccupationIfNotFailing);
-		
-		final Route newRoute = netPlan.addServiceChain(routeId , netPlan.getDemandFromId(demandId), initialStateCarriedTrafficIfNotFailing, 
-				initialStateOccupationIfNotFailing, initialStatePath, null);
-		newRoute.setPath(currentCarriedTrafficIfNotFailing, currentPath, currentLinksAndResourcesOccupationIfNotFailing);
-
-		/* To be added at the end: backup routes may not exist yet */
-		this.backupRouteIdsMap.put(newRoute ,  getListLong ("backupRoutes")); 
+		netPlan.setRoutingType (RoutingType.SOURCE_ROUTING , layer);
+		final List<Pair<Route,long []>> routesAndBackupRouteIds = new ArrayList<> ();
+		final ChunkedParser<RouteRecord> routes = new ChunkedParser<> (RouteRecord::new , records -> addRoutes(netPlan , layer , records , routesAndBackupRouteIds));
+		while (nextChild(xmlStreamReader))
+		{
+			if (!xmlStreamReader.getLocalName().equals("route")) throw new RuntimeException("Bad: " + xmlStreamReader.getLocalName());
+			routes.add(XmlElement.read(xmlStreamReader));
+		}
+		routes.flush();
 
-		readAndAddAttributesToEnd(newRoute, "route");
+		/* The backup routes are added at the end: they may not exist before */
+		for (Pair<Route,long []> routeAndBackupRouteIds : routesAndBackupRouteIds)
+			for (long backupId : routeAndBackupRouteIds.getSecond())
+			{
+				final Route backup = netPlan.getRouteFromId(backupId);
+				if (backup == null) throw new Net2PlanException ("Unknown route id");
+				routeAndBackupRouteIds.getFirst().addBackupRoute(backup);
+			}
 	}
-	
-	
-	private void parseForwardingRule(NetPlan netPlan, long layerId , DoubleMatrix2D f_de) throws XMLStreamException
+
+	private static void parseHopByHopRouting(NetPlan netPlan, NetworkLayer layer , XMLStreamReader2 xmlStreamReader) throws XMLStreamException
 	{
-		final long linkId = getLong ("linkId");
-		final long demandId = getLong ("demandId");
-		final double splittingRatio = getDouble ("splittingRatio");
+		netPlan.setRoutingType (RoutingType.HOP_BY_HOP_ROUTING , layer);
 
-		f_de.set (netPlan.getDemandFromId(demandId).index , netPlan.getLinkFromId(linkId).index  , splittingRatio);
-		readAndAddAttributesToEnd(null, "forwardingRule");
+		/* All the demands of the layer get their forwarding rules, also the ones without any */
+		final Map<Demand,Map<Link,Double>> frs = new LinkedHashMap<> ();
+		for (Demand d : layer.demands) frs.put(d , new HashMap<> ());
+		final ChunkedParser<ForwardingRuleRecord> forwardingRules = new ChunkedParser<> (ForwardingRuleRecord::new , records ->
+		{
+			for (ForwardingRuleRecord r : records)
+			{
+				final Map<Link,Double> frsThisDemand = frs.get(getDemand(netPlan , r.demandId));
+				if (frsThisDemand == null) throw new Net2PlanException ("The demand of a forwarding rule is not in the layer");
+				frsThisDemand.put(getLink(netPlan , r.linkId) , r.splittingRatio);
+			}
+		});
+		while (nextChild(xmlStreamReader))
+		{
+			if (!xmlStreamReader.getLocalName().equals("forwardingRule")) throw new RuntimeException("Bad");
+			forwardingRules.add(XmlElement.read(xmlStreamReader));
+		}
+		forwardingRules.flush();
+		netPlan.setForwardingRules(frs , ForkJoinPool.commonPool());
 	}
 
-	private void parseHopByHopRouting(NetPlan netPlan, long layerId) throws XMLStreamException
+	private static void addNodes(NetPlan netPlan , List<NodeRecord> records , Map<Long , List<Pair<Node,URL>>> nodeAndLayerToIconURLMap)
 	{
-		netPlan.setRoutingType (RoutingType.HOP_BY_HOP_ROUTING , netPlan.getNetworkLayerFromId(layerId) );
-		final NetworkLayer layer = netPlan.getNetworkLayerFromId(layerId);
-		final int D = netPlan.getNumberOfDemands(layer);
-		final int E = netPlan.getNumberOfLinks(layer);
-		DoubleMatrix2D f_de = DoubleFactory2D.sparse.make (D,E);
-
-		while(xmlStreamReader.hasNext())
+		final int N = records.size();
+		final long [] ids = new long [N];
+		final double [] xCoords = new double [N];
+		final double [] yCoords = new double [N];
+		final String [] names = new String [N];
+		for (int cont = 0; cont < N ; cont ++)
+		{
+			final NodeRecord r = records.get(cont);
+			checkId(netPlan , r.id);
+			ids [cont] = r.id; xCoords [cont] = r.xCoord; yCoords [cont] = r.yCoord; names [cont] = r.name;
+		}
+		final List<Node> newNodes = netPlan.addNodesInBulk(ids , xCoords , yCoords , names);
+		for (int cont = 0; cont < N ; cont ++)
 		{
-			xmlStreamReader.next();
+			final NodeRecord r = records.get(cont);
+			final Node newNode = newNodes.get(cont);
+			if (!r.isUp) newNode.setFailureState(false);
+			newNode.setPopulation(r.population);
+			if (r.siteName != null) newNode.setSiteName(r.siteName);
+			for (int layer = 0; layer < r.layersWithIconsDefined.length ; layer ++)
+			{
+				List<Pair<Node,URL>> iconsThisLayerSoFar = nodeAndLayerToIconURLMap.get (r.layersWithIconsDefined [layer]);
+				if (iconsThisLayerSoFar == null) { iconsThisLayerSoFar = new LinkedList<> (); nodeAndLayerToIconURLMap.put(r.layersWithIconsDefined [layer] , iconsThisLayerSoFar); }
+				iconsThisLayerSoFar.add(Pair.of(newNode , r.iconURLs [layer]));
+			}
+			r.addTagsAndAttributes(newNode);
+		}
+	}
 
-			switch(xmlStreamReader.getEventType())
+	/* The base resources of a resource appear before it */
+	private static void addResources(NetPlan netPlan , List<ResourceRecord> records)
+	{
+		netPlan.resources.ensureCapacity(netPlan.resources.size() + records.size());
+		for (ResourceRecord r : records)
+		{
+			checkId(netPlan , r.id);
+			final Node hostNode = netPlan.getNodeFromId(r.hostNodeId);
+			if (hostNode == null) throw new Net2PlanException ("Could not find the hot node of a resource when reading");
+			if (r.baseResourceAndOccupiedCapacitiesMap.length % 2 != 0) throw new Net2PlanException ("Wrong array size");
+			final Map<Resource,Double> occupiedCapacitiesInBaseResources = new HashMap<Resource,Double> ();
+			for (int cont = 0; cont < r.baseResourceAndOccupiedCapacitiesMap.length ; cont += 2)
 			{
-				case XMLEvent.START_ELEMENT:
-					String startElementName = xmlStreamReader.getName().toString();
-					switch(startElementName)
-					{
-						case "forwardingRule":
-							parseForwardingRule(netPlan, layerId,f_de);
-							break;
-
-						default:
-							throw new RuntimeException("Bad");
-					}
-					break;
-
-				case XMLEvent.END_ELEMENT:
-					String endElementName = xmlStreamReader.getName().toString();
-					if (endElementName.equals("hopByHopRouting")) 
-					{ 
-						NetworkLayer thisLayer = netPlan.getNetworkLayerFromId(layerId); 
-						netPlan.setForwardingRules(f_de , thisLayer); 
-						return; 
-					}
-					break;
+				final Resource baseResource = netPlan.getResourceFromId((long) r.baseResourceAndOccupiedCapacitiesMap [cont]);
+				if (baseResource == null) throw new Net2PlanException ("Unknown resource id");
+				occupiedCapacitiesInBaseResources.put(baseResource , r.baseResourceAndOccupiedCapacitiesMap [cont + 1]);
 			}
+			final Resource newResource = netPlan.addResource(r.id , r.type , r.name , hostNode , r.capacity , r.capacityMeasurementUnits , 
+					occupiedCapacitiesInBaseResources , r.processingTimeToTraversingTrafficInMs , null);
+			newResource.setUrlIcon(r.urlIcon);
+			r.addTagsAndAttributes(newResource);
 		}
-		
-		throw new RuntimeException("'Hop-by-hop routing' element not parsed correctly (end tag not found)");
 	}
 
-	private void parseLink(NetPlan netPlan, long layerId) throws XMLStreamException
+	private static void addLinks(NetPlan netPlan , NetworkLayer layer , List<LinkRecord> records)
 	{
-		final long linkId = getLong ("id");
-		if (linkId >= netPlan.nextElementId.toLong()) throw new Net2PlanException ("A network element has an id higher than the nextElementId");
-		final long originNodeId = getLong ("originNodeId");
-		final long destinationNodeId = getLong ("destinationNodeId");
-		final double capacity = getDouble ("capacity");
-		final double lengthInKm = getDouble ("lengthInKm");
-		final double propagationSpeedInKmPerSecond = getDouble ("propagationSpeedInKmPerSecond");
-		boolean isUp = true; try { isUp = getBoolean ("isUp"); } catch (Exception e) {} 
-
-		Link newLink = netPlan.addLink(linkId , netPlan.getNodeFromId(originNodeId), netPlan.getNodeFromId(destinationNodeId), capacity, lengthInKm, propagationSpeedInKmPerSecond, null , netPlan.getNetworkLayerFromId(layerId));
-		newLink.setFailureState(isUp);
-		readAndAddAttributesToEnd(newLink, "link");
+		final int E = records.size();
+		final long [] ids = new long [E];
+		final List<Node> originNodes = new ArrayList<> (E);
+		final List<Node> destinationNodes = new ArrayList<> (E);
+		final double [] capacities = new double [E];
+		final double [] lengthsInKm = new double [E];
+		final double [] propagationSpeedsInKmPerSecond = new double [E];
+		for (int cont = 0; cont < E ; cont ++)
+		{
+			final LinkRecord r = records.get(cont);
+			checkId(netPlan , r.id);
+			ids [cont] = r.id;
+			originNodes.add(getNode(netPlan , r.originNodeId));
+			destinationNodes.add(getNode(netPlan , r.destinationNodeId));
+			capacities [cont] = r.capacity; lengthsInKm [cont] = r.lengthInKm; propagationSpeedsInKmPerSecond [cont] = r.propagationSpeedInKmPerSecond;
+		}
+		final List<Link> newLinks = netPlan.addLinksInBulk(layer , ids , originNodes , destinationNodes , capacities , lengthsInKm , propagationSpeedsInKmPerSecond);
+		for (int cont = 0; cont < E ; cont ++)
+		{
+			final LinkRecord r = records.get(cont);
+			if (!r.isUp) newLinks.get(cont).setFailureState(false);
+			r.addTagsAndAttributes(newLinks.get(cont));
+		}
 	}
 
-	
-	private void parseSRG(NetPlan netPlan) throws XMLStreamException
+	private static void addDemands(NetPlan netPlan , NetworkLayer layer , List<DemandRecord> records)
 	{
-		final long srgId = getLong ("id");
-		if (srgId >= netPlan.nextElementId.toLong()) throw new Net2PlanException ("A network element has an id higher than the nextElementId");
-		final double meanTimeToFailInHours = getDouble ("meanTimeToFailInHours");
-		final double meanTimeToRepairInHours = getDouble ("meanTimeToRepairInHours");
-		SharedRiskGroup newSRG = netPlan.addSRG(srgId , meanTimeToFailInHours, meanTimeToRepairInHours, null);
-		Set<Node> srgNodes = getNodeSetFromIds(netPlan, getListLong("nodes"));
-		Set<Link> srgLinks = getLinkSetFromIds(netPlan, getListLong("links"));
-		for (Node n : srgNodes) newSRG.addNode(n);
-		for (Link e : srgLinks) newSRG.addLink(e);
-		readAndAddAttributesToEnd(newSRG, "srg");
+		final int D = records.size();
+		final long [] ids = new long [D];
+		final List<Node> ingressNodes = new ArrayList<> (D);
+		final List<Node> egressNodes = new ArrayList<> (D);
+		final double [] offeredTraffics = new double [D];
+		for (int cont = 0; cont < D ; cont ++)
+		{
+			final DemandRecord r = records.get(cont);
+			checkId(netPlan , r.id);
+			ids [cont] = r.id;
+			ingressNodes.add(getNode(netPlan , r.ingressNodeId));
+			egressNodes.add(getNode(netPlan , r.egressNodeId));
+			offeredTraffics [cont] = r.offeredTraffic;
+		}
+		final List<Demand> newDemands = netPlan.addDemandsInBulk(layer , ids , ingressNodes , egressNodes , offeredTraffics);
+		for (int cont = 0; cont < D ; cont ++)
+		{
+			final DemandRecord r = records.get(cont);
+			final Demand newDemand = newDemands.get(cont);
+			newDemand.setIntendedRecoveryType(r.recoveryType);
+			r.addTagsAndAttributes(newDemand);
+			newDemand.setServiceChainSequenceOfTraversedResourceTypes(r.mandatorySequenceOfTraversedResourceTypes);
+		}
 	}
 
-	private void parseResource(NetPlan netPlan) throws XMLStreamException
+	private static void addMulticastDemands(NetPlan netPlan , NetworkLayer layer , List<MulticastDemandRecord> records)
 	{
-		final long resId = getLong ("id");
-		if (resId >= netPlan.nextElementId.toLong()) throw new Net2PlanException ("A network element has an id higher than the nextElementId");
-		final long hostNodeId = getLong ("hostNodeId");
-		if (netPlan.getNodeFromId(hostNodeId) == null) throw new Net2PlanException ("Could not find the hot node of a resource when reading");
-		final String type = getString ("type");
-		final String name = getString ("name");
-		final String capacityMeasurementUnits = getString ("capacityMeasurementUnits");
-		final double processingTimeToTraversingTrafficInMs = getDouble ("processingTimeToTraversingTrafficInMs");
-		final double capacity = getDouble ("capacity");
-		URL urlIcon = null; try { urlIcon = new URL (getString ("urlIcon")); } catch (Exception e) {}
-		final List<Double> baseResourceAndOccupiedCapacitiesMap = getListDouble("baseResourceAndOccupiedCapacitiesMap");
-		Map<Resource,Double> occupiedCapacitiesInBaseResources = getResourceOccupationMap(netPlan, baseResourceAndOccupiedCapacitiesMap); 
-		Resource newResource = netPlan.addResource(resId , type , name , netPlan.getNodeFromId(hostNodeId) , capacity , capacityMeasurementUnits , 
-				occupiedCapacitiesInBaseResources , processingTimeToTraversingTrafficInMs , null);
-		newResource.setUrlIcon(urlIcon);
-		readAndAddAttributesToEnd(newResource, "resource");
+		for (MulticastDemandRecord r : records)
+		{
+			checkId(netPlan , r.id);
+			final Set<Node> egressNodes = new HashSet<Node> ();
+			for (long nodeId : r.egressNodeIds) egressNodes.add(getNode(netPlan , nodeId));
+			final MulticastDemand newDemand = netPlan.addMulticastDemand(r.id , getNode(netPlan , r.ingressNodeId), egressNodes , r.offeredTraffic, null , layer);
+			r.addTagsAndAttributes(newDemand);
+		}
 	}
-	
-	private void parseLayer(NetPlan netPlan) throws XMLStreamException
+
+	private static void addMulticastTrees(NetPlan netPlan , List<MulticastTreeRecord> records)
 	{
-		final long layerId = getLong ("id");
-		if (layerId >= netPlan.nextElementId.toLong()) throw new Net2PlanException ("A network element has an id higher than the nextElementId");
-		final String demandTrafficUnitsName = getString ("demandTrafficUnitsName");
-		final String layerDescription = getString ("description");
-		final String layerName = getString ("name");
-		final String linkCapacityUnitsName = getString ("linkCapacityUnitsName");
-		URL defaultNodeIconURL = null;
-		try { defaultNodeIconURL = new URL (getString ("defaultNodeIconURL")); } catch (Exception e) {}
-		final boolean isDefaultLayer = getBoolean ("isDefaultLayer");
-		
-		NetworkLayer newLayer;
-		if (!hasAlreadyReadOneLayer)
+		for (MulticastTreeRecord r : records)
 		{
-			if (netPlan.layers.size() != 1) throw new RuntimeException ("Bad");
-			if (netPlan.layers.get (0).id != layerId)
-			{
-				// the Id of first layer is different => create a new one and remove the existing
-				newLayer = netPlan.addLayer(layerId , layerName, layerDescription, linkCapacityUnitsName, demandTrafficUnitsName, defaultNodeIconURL , null);
-				netPlan.removeNetworkLayer(netPlan.layers.get (0));
-			}
-			else
-			{
-				newLayer = netPlan.layers.get (0); // it already has the right Id
-				newLayer.demandTrafficUnitsName = demandTrafficUnitsName;
-				newLayer.description = layerDescription;
-				newLayer.name = layerName;
-				newLayer.linkCapacityUnitsName= linkCapacityUnitsName;
-			}
-			hasAlreadyReadOneLayer = true;
+			checkId(netPlan , r.id);
+			final MulticastDemand demand = netPlan.getMulticastDemandFromId(r.demandId);
+			final MulticastTree newTree = netPlan.addMulticastTree(r.id , demand , r.carriedTrafficIfNotFailing , r.occupiedLinkCapacityIfNotFailing , getLinkSetFromIds(netPlan, r.initialSetLinks) , null);
+			newTree.setLinks(getLinkSetFromIds(netPlan, r.currentSetLinks));
+			r.addTagsAndAttributes(newTree);
 		}
-		else
+	}
+
+	/* The routes with backup routes are added to the list, to add the backup routes at the end */
+	private static void addRoutes(NetPlan netPlan , NetworkLayer layer , List<RouteRecord> records , List<Pair<Route,long []>> routesAndBackupRouteIds)
+	{
+		layer.routes.ensureCapacity(layer.routes.size() + records.size());
+		for (RouteRecord r : records)
 		{
-			newLayer = netPlan.addLayer(layerId , layerName, layerDescription, linkCapacityUnitsName, demandTrafficUnitsName, defaultNodeIconURL , null);
+			checkId(netPlan , r.id);
+
+			/* Initial route may not exist, if so current equals the initial */
+			final boolean initialPathExists = r.initialStatePath != null;
+			final List<NetworkElement> initialStatePath = getLinkAndResorceListFromIds(netPlan, initialPathExists? r.initialStatePath : r.currentPath);
+			final Route newRoute = netPlan.addRouteInBulk(r.id , getDemand(netPlan , r.demandId) , initialStatePath , r.initialStateCarriedTrafficIfNotFailing , 
+					toList(r.initialStateOccupationIfNotFailing));
+
+			/* Setting the current path when it is the initial one would release and occupy the same capacities again */
+			final boolean currentEqualsInitial = !initialPathExists || (r.currentCarriedTrafficIfNotFailing == r.initialStateCarriedTrafficIfNotFailing
+					&& Arrays.equals(r.currentPath , r.initialStatePath) && Arrays.equals(r.currentLinksAndResourcesOccupationIfNotFailing , r.initialStateOccupationIfNotFailing));
+			if (!currentEqualsInitial) newRoute.setPath(r.currentCarriedTrafficIfNotFailing, getLinkAndResorceListFromIds(netPlan, r.currentPath), toList(r.currentLinksAndResourcesOccupationIfNotFailing));
+			r.addTagsAndAttributes(newRoute);
+			if (r.backupRoutes.length > 0) routesAndBackupRouteIds.add(Pair.of(newRoute , r.backupRoutes));
 		}
+	}
 
-		/* write the node icons information, that is already there */
-		if (nodeAndLayerToIconURLMap.containsKey(newLayer.getId()))
-			for (Pair<Node,URL> iconInfo : nodeAndLayerToIconURLMap.get(newLayer.getId()))
-				iconInfo.getFirst().setUrlNodeIcon(newLayer , iconInfo.getSecond());
-		
-		if (isDefaultLayer) netPlan.setNetworkLayerDefault(newLayer);
+	private static void addSrgs(NetPlan netPlan , List<SrgRecord> records)
+	{
+		netPlan.srgs.ensureCapacity(netPlan.srgs.size() + records.size());
+		for (SrgRecord r : records)
+		{
+			checkId(netPlan , r.id);
+			final SharedRiskGroup newSRG = netPlan.addSRG(r.id , r.meanTimeToFailInHours, r.meanTimeToRepairInHours, null);
+			for (long nodeId : r.nodes) newSRG.addNode(getNode(netPlan , nodeId));
+			for (long linkId : r.links) newSRG.addLink(getLink(netPlan , linkId));
+			r.addTagsAndAttributes(newSRG);
+		}
+	}
 
-		while(xmlStreamReader.hasNext())
+	private static void addCoupling(NetPlan netPlan , XmlElement coupling)
+	{
+		if (coupling.name.equals("layerCouplingDemand"))
 		{
-			xmlStreamReader.next();
+			getDemand(netPlan , coupling.getLong("lowerLayerDemandId")).coupleToUpperLayerLink(getLink(netPlan , coupling.getLong("upperLayerLinkId")));
+		}
+		else
+		{
+			final MulticastDemand demand = netPlan.getMulticastDemandFromId(coupling.getLong("lowerLayerDemandId"));
+			if (demand == null) throw new Net2PlanException ("Unknown multicast demand id");
+			demand.couple(getLinkSetFromIds(netPlan , coupling.getLongArray("upperLayerLinkIds")));
+		}
+	}
 
-			switch(xmlStreamReader.getEventType())
+	/* Advances the stream to the start of the next child of the current element. Returns false if the end of the current element is reached before */
+	private static boolean nextChild (XMLStreamReader2 xmlStreamReader) throws XMLStreamException
+	{
+		while(xmlStreamReader.hasNext())
+		{
+			switch(xmlStreamReader.next())
 			{
-				case XMLEvent.START_ELEMENT:
-					String startElementName = xmlStreamReader.getName().toString();
-					switch(startElementName)
-					{
-						case "tag":
-							newLayer.addTag(xmlStreamReader.getAttributeValue(xmlStreamReader.getAttributeIndex(null, "value")));
-							break;
-
-						case "attribute":
-							newLayer.setAttribute(getString ("key"), getString ("name"));
-							break;
-
-						case "demand":
-							parseDemand(netPlan, layerId);
-							break;
-
-						case "multicastDemand":
-							parseMulticastDemand(netPlan, layerId);
-							break;
-
-						case "multicastTree":
-							parseMulticastTree(netPlan, layerId);
-							break;
-
-						case "link":
-							parseLink(netPlan, layerId);
-							break;
-
-						case "hopByHopRouting":
-							parseHopByHopRouting(netPlan, layerId);
-							break;
-
-						case "sourceRouting":
-							parseSourceRouting(netPlan, layerId);
-							break;
-
-						default:
-							throw new RuntimeException("Bad child (" + startElementName + ") for layer element");
-					}
-					break;
-
-				case XMLEvent.END_ELEMENT:
-					String endElementName = xmlStreamReader.getName().toString();
-					if (endElementName.equals("layer")) return;
-					break;
+				case XMLEvent.START_ELEMENT: return true;
+				case XMLEvent.END_ELEMENT: return false;
+				default: break;
 			}
 		}
+		throw new RuntimeException("Element not parsed correctly (end tag not found)");
+	}
 
-		throw new RuntimeException("'Layer' element not parsed correctly (end tag not found)");
+	private static void checkId (NetPlan netPlan , long id)
+	{
+		if (id >= netPlan.nextElementId.toLong()) throw new Net2PlanException ("A network element has an id higher than the nextElementId");
 	}
 
-	private void parseMulticastDemand(NetPlan netPlan, long layerId) throws XMLStreamException
+	private static URL toURL (String url) { if (url == null) return null; try { return new URL (url); } catch (Exception e) { return null; } }
+	private static List<Double> toList (double [] values) { final List<Double> res = new ArrayList<Double> (values.length); for (double val : values) res.add(val); return res; }
+	private static Node getNode (NetPlan np , long id) { final Node res = np.getNodeFromId(id); if (res == null) throw new Net2PlanException ("Unknown node id"); return res; }
+	private static Link getLink (NetPlan np , long id) { final Link res = np.getLinkFromId(id); if (res == null) throw new Net2PlanException ("Unknown link id"); return res; }
+	private static Demand getDemand (NetPlan np , long id) { final Demand res = np.getDemandFromId(id); if (res == null) throw new Net2PlanException ("Unknown demand id"); return res; }
+	private static Set<Link> getLinkSetFromIds (NetPlan np , long [] ids) 
 	{
-		final long demandId = getLong ("id");
-		if (demandId >= netPlan.nextElementId.toLong()) throw new Net2PlanException ("A network element has an id higher than the nextElementId");
-		final long ingressNodeId = getLong ("ingressNodeId");
-		Set<Node> newEgressNodes = getNodeSetFromIds(netPlan ,  getListLong("egressNodeIds"));
-		final double offeredTraffic = getDouble ("offeredTraffic");
-		final MulticastDemand newDemand = netPlan.addMulticastDemand(demandId , netPlan.getNodeFromId(ingressNodeId), newEgressNodes , offeredTraffic, null , netPlan.getNetworkLayerFromId(layerId));
-		readAndAddAttributesToEnd(newDemand, "multicastDemand");
+		Set<Link> res = new HashSet<Link> (); for (long id : ids) res.add(np.getLinkFromId(id)); return res; 
+	}
+	private static List<NetworkElement> getLinkAndResorceListFromIds (NetPlan np , long [] ids) 
+	{
+		List<NetworkElement> res = new ArrayList<NetworkElement> (ids.length); 
+		for (long id : ids)
+		{
+			NetworkElement e = np.getLinkFromId(id);
+			if (e == null) e = np.getResourceFromId(id);
+			if (e == null) throw new Net2PlanException ("Unknown id in the list");
+			res.add(e); 
+		}
+		return res;
 	}
 
-	private void parseSourceRouting(NetPlan netPlan, long layerId) throws XMLStreamException
+	/* Parses the consecutive elements of one type in parallel chunks, keeping their order, and passes the records of each chunk to the consumer */
+	private static final class ChunkedParser<T>
 	{
-		netPlan.setRoutingType (RoutingType.SOURCE_ROUTING , netPlan.getNetworkLayerFromId(layerId));
-		this.backupRouteIdsMap.clear(); // in multiple layers, we have to refresh this
-		
-		while(xmlStreamReader.hasNext())
+		private final Function<XmlElement,T> parser;
+		private final Consumer<List<T>> consumer;
+		private final List<XmlElement> pendingElements = new ArrayList<> ();
+
+		private ChunkedParser (Function<XmlElement,T> parser , Consumer<List<T>> consumer)
+		{
+			this.parser = parser;
+			this.consumer = consumer;
+		}
+
+		private void add (XmlElement element)
+		{
+			pendingElements.add(element);
+			if (pendingElements.size() == CHUNK_SIZE) flush ();
+		}
+
+		private void flush ()
+		{
+			if (pendingElements.isEmpty()) return;
+			final List<T> records = pendingElements.parallelStream().map(parser).collect(Collectors.toList());
+			pendingElements.clear();
+			consumer.accept(records);
+		}
+	}
+
+	/* An XML element of the stream: its name, its attributes as text, and its children */
+	private static final class XmlElement
+	{
+		private static final List<XmlElement> NO_CHILDREN = Collections.emptyList();
+		private final String name;
+		private final String [] attributeNames;
+		private final String [] attributeValues;
+		private List<XmlElement> children;
+
+		/* The element the stream is positioned at, without children */
+		private XmlElement (XMLStreamReader2 xmlStreamReader)
+		{
+			this.name = xmlStreamReader.getLocalName();
+			final int numAttributes = xmlStreamReader.getAttributeCount();
+			this.attributeNames = new String [numAttributes];
+			this.attributeValues = new String [numAttributes];
+			for (int cont = 0; cont < numAttributes ; cont ++)
+			{
+				attributeNames [cont] = xmlStreamReader.getAttributeLocalName(cont);
+				attributeValues [cont] = xmlStreamReader.getAttributeValue(cont);
+			}
+			this.children = NO_CHILDREN;
+		}
+
+		/* Reads the element the stream is positioned at, with its children, up to its end tag */
+		private static XmlElement read (XMLStreamReader2 xmlStreamReader) throws XMLStreamException
+		{
+			final XmlElement element = new XmlElement (xmlStreamReader);
+			while (nextChild(xmlStreamReader))
+				element.addChild(read (xmlStreamReader));
+			return element;
+		}
+
+		private void addChild (XmlElement child)
+		{
+			if (children == NO_CHILDREN) children = new ArrayList<XmlElement> ();
+			children.add(child);
+		}
+
+		/* Returns null if the attribute does not exist */
+		private String getString (String attributeName)
+		{
+			for (int cont = 0; cont < attributeNames.length ; cont ++) if (attributeNames [cont].equals(attributeName)) return attributeValues [cont];
+			return null;
+		}
+		private String getRequiredString (String attributeName)
+		{
+			final String res = getString (attributeName);
+			if (res == null) throw new Net2PlanException ("Attribute '" + attributeName + "' not found in element '" + name + "'");
+			return res;
+		}
+		private boolean getBoolean (String attributeName , boolean defaultValue) { final String val = getString (attributeName); return val == null? defaultValue : Boolean.parseBoolean(val.trim()); }
+		private long getLong (String attributeName) { return Long.parseLong(getRequiredString (attributeName).trim()); }
+		private double getDouble (String attributeName) { return parseDouble(getRequiredString (attributeName)); }
+		private double getDouble (String attributeName , double defaultValue) { final String val = getString (attributeName); return val == null? defaultValue : parseDouble(val); }
+		private long [] getLongArray (String attributeName)
+		{
+			final String [] tokens = split (getRequiredString (attributeName));
+			final long [] res = new long [tokens.length];
+			for (int cont = 0; cont < tokens.length ; cont ++) res [cont] = Long.parseLong(tokens [cont]);
+			return res;
+		}
+		private double [] getDoubleArray (String attributeName)
+		{
+			final String [] tokens = split (getRequiredString (attributeName));
+			final double [] res = new double [tokens.length];
+			for (int cont = 0; cont < tokens.length ; cont ++) res [cont] = parseDouble(tokens [cont]);
+			return res;
+		}
+		private static String [] split (String val) { final String trimmed = val.trim(); return trimmed.isEmpty()? new String [0] : trimmed.split("\\s+"); }
+		private static double parseDouble (String val)
 		{
-			xmlStreamReader.next();
+			final String trimmed = val.trim();
+			if (trimmed.equals("INF")) return Double.POSITIVE_INFINITY;
+			if (trimmed.equals("-INF")) return Double.NEGATIVE_INFINITY;
+			return Double.parseDouble(trimmed);
+		}
+	}
+
+	/* The records parsed from the XML elements. They keep the tags and attributes of the element, but not its XML */
 
-			switch(xmlStreamReader.getEventType())
+	private static class ElementRecord
+	{
+		private final String [] tags;
+		private final String [] attributeKeys , attributeValues;
+
+		private ElementRecord (XmlElement element)
+		{
+			int numTags = 0, numAttributes = 0;
+			for (XmlElement child : element.children)
 			{
-				case XMLEvent.START_ELEMENT:
-					String startElementName = xmlStreamReader.getName().toString();
-					switch(startElementName)
-					{
-						case "route":
-							parseRoute(netPlan, layerId);
-							break;
-
-						default:
-							throw new RuntimeException("Bad: " + startElementName);
-					}
-					break;
-
-				case XMLEvent.END_ELEMENT:
-					String endElementName = xmlStreamReader.getName().toString();
-					if (endElementName.equals("sourceRouting"))
-					{
-						/* Before returning, we add the backup routes */
-						for (Entry<Route,List<Long>> entry : this.backupRouteIdsMap.entrySet())
-						{
-							final Route primary = entry.getKey();
-							for (long backupId : entry.getValue()) primary.addBackupRoute(netPlan.getRouteFromId(backupId));
-						}
-						return;
-					}
-					break;
+				if (child.name.equals("tag")) numTags ++;
+				else if (child.name.equals("attribute")) numAttributes ++;
+			}
+			this.tags = new String [numTags];
+			this.attributeKeys = new String [numAttributes];
+			this.attributeValues = new String [numAttributes];
+			numTags = 0; numAttributes = 0;
+			for (XmlElement child : element.children)
+			{
+				if (child.name.equals("tag")) tags [numTags ++] = child.getString("value");
+				else if (child.name.equals("attribute")) { attributeKeys [numAttributes] = child.getString("key"); attributeValues [numAttributes ++] = child.getString("value"); }
 			}
 		}
 
-		throw new RuntimeException("'Source routing' element not parsed correctly (end tag not found)");
+		void addTagsAndAttributes (NetworkElement updateElement)
+		{
+			for (String tag : tags) updateElement.addTag(tag);
+			for (int cont = 0; cont < attributeKeys.length ; cont ++) updateElement.setAttribute(attributeKeys [cont] , attributeValues [cont]);
+		}
 	}
-	
-	private void parseMulticastTree(NetPlan netPlan, long layerId) throws XMLStreamException
+
+	private static final class NodeRecord extends ElementRecord
 	{
-		final long treeId = getLong ("id");
-		if (treeId >= netPlan.nextElementId.toLong()) throw new Net2PlanException ("A network element has an id higher than the nextElementId");
-		final long demandId = getLong ("demandId");
-		final double carriedTraffic = getDouble ("carriedTrafficIfNotFailing");
-		double occupiedCapacity = getDouble ("occupiedLinkCapacityIfNotFailing");
-		double carriedTrafficIfNotFailing = carriedTraffic; try { carriedTrafficIfNotFailing = getDouble ("carriedTrafficIfNotFailing"); } catch (Exception e) {} 
-		double occupiedLinkCapacityIfNotFailing = occupiedCapacity; try { occupiedLinkCapacityIfNotFailing = getDouble ("occupiedLinkCapacityIfNotFailing"); } catch (Exception e) {} 
-		if (occupiedCapacity < 0) occupiedCapacity = carriedTraffic;
-		final MulticastDemand demand = netPlan.getMulticastDemandFromId(demandId);
-		final Set<Link> initialSetLinks_link = getLinkSetFromIds(netPlan, getListLong ("initialSetLinks"));
-		final Set<Link> currentSetLinks_link = getLinkSetFromIds(netPlan, getListLong ("currentSetLinks"));
-		final MulticastTree newTree = netPlan.addMulticastTree(treeId , demand , carriedTrafficIfNotFailing , occupiedLinkCapacityIfNotFailing , initialSetLinks_link , null);
-		newTree.setLinks(currentSetLinks_link);
-		readAndAddAttributesToEnd (newTree , "multicastTree");
+		private final long id;
+		private final double xCoord, yCoord, population;
+		private final String name, siteName;
+		private final boolean isUp;
+		private final long [] layersWithIconsDefined;
+		private final URL [] iconURLs;
+
+		private NodeRecord (XmlElement element)
+		{
+			super (element);
+			this.id = element.getLong ("id");
+			this.xCoord = element.getDouble ("xCoord");
+			this.yCoord = element.getDouble ("yCoord");
+			this.name = element.getString ("name");
+			this.population = element.getDouble ("population" , 0);
+			this.siteName = element.getString ("siteName");
+			this.isUp = element.getBoolean ("isUp" , true);
+			this.layersWithIconsDefined = element.getString ("layersWithIconsDefined") == null? new long [0] : element.getLongArray ("layersWithIconsDefined");
+			this.iconURLs = new URL [layersWithIconsDefined.length];
+			for (int cont = 0; cont < layersWithIconsDefined.length ; cont ++)
+				iconURLs [cont] = toURL (element.getString ("nodeIconURLLayer_" + layersWithIconsDefined [cont]));
+		}
 	}
 
-	private boolean getBoolean (String name) { return Boolean.parseBoolean(xmlStreamReader.getAttributeValue(xmlStreamReader.getAttributeIndex(null, name))); }
-	private String getString (String name) throws XMLStreamException 	{ return xmlStreamReader.getAttributeValue(xmlStreamReader.getAttributeIndex(null, name));	}
-	private long getLong (String name) throws XMLStreamException 	{ return xmlStreamReader.getAttributeAsLong(xmlStreamReader.getAttributeIndex(null, name)); }
-	private List<Long> getListLong (String name) throws XMLStreamException 	{ return LongUtils.toList(xmlStreamReader.getAttributeAsLongArray(xmlStreamReader.getAttributeIndex(null, name))); }
-	private List<Double> getListDouble (String name) throws XMLStreamException 	{ return DoubleUtils.toList(xmlStreamReader.getAttributeAsDoubleArray(xmlStreamReader.getAttributeIndex(null, name))); }
-	private double getDouble (String name) throws XMLStreamException 	{ return xmlStreamReader.getAttributeAsDouble(xmlStreamReader.getAttributeIndex(null, name)); }
-	private static Set<Link> getLinkSetFromIds (NetPlan np , Collection<Long> ids) 
+	private static final class ResourceRecord extends ElementRecord
 	{
-		Set<Link> res = new HashSet<Link> (); for (long id : ids) res.add(np.getLinkFromId(id)); return res; 
+		private final long id, hostNodeId;
+		private final String type, name, capacityMeasurementUnits;
+		private final double processingTimeToTraversingTrafficInMs, capacity;
+		private final URL urlIcon;
+		private final double [] baseResourceAndOccupiedCapacitiesMap;
+
+		private ResourceRecord (XmlElement element)
+		{
+			super (element);
+			this.id = element.getLong ("id");
+			this.hostNodeId = element.getLong ("hostNodeId");
+			this.type = element.getString ("type");
+			this.name = element.getString ("name");
+			this.capacityMeasurementUnits = element.getString ("capacityMeasurementUnits");
+			this.processingTimeToTraversingTrafficInMs = element.getDouble ("processingTimeToTraversingTrafficInMs");
+			this.capacity = element.getDouble ("capacity");
+			this.urlIcon = toURL (element.getString ("urlIcon"));
+			this.baseResourceAndOccupiedCapacitiesMap = element.getDoubleArray ("baseResourceAndOccupiedCapacitiesMap");
+		}
 	}
-	private static Set<Node> getNodeSetFromIds (NetPlan np , Collection<Long> ids) 
+
+	private static final class LinkRecord extends ElementRecord
 	{
-		Set<Node> res = new HashSet<Node> (); for (long id : ids) res.add(np.getNodeFromId(id)); return res; 
+		private final long id, originNodeId, destinationNodeId;
+		private final double capacity, lengthInKm, propagationSpeedInKmPerSecond;
+		private final boolean isUp;
+
+		private LinkRecord (XmlElement element)
+		{
+			super (element);
+			this.id = element.getLong ("id");
+			this.originNodeId = element.getLong ("originNodeId");
+			this.destinationNodeId = element.getLong ("destinationNodeId");
+			this.capacity = element.getDouble ("capacity");
+			this.lengthInKm = element.getDouble ("lengthInKm");
+			this.propagationSpeedInKmPerSecond = element.getDouble ("propagationSpeedInKmPerSecond");
+			this.isUp = element.getBoolean ("isUp" , true);
+		}
 	}
-	private static List<Link> getLinkListFromIds (NetPlan np , Collection<Long> ids) 
+
+	private static final class DemandRecord extends ElementRecord
 	{
-		List<Link> res = new LinkedList<Link> (); for (long id : ids) res.add(np.getLinkFromId(id)); return res; 
+		private final long id, ingressNodeId, egressNodeId;
+		private final double offeredTraffic;
+		private final Demand.IntendedRecoveryType recoveryType;
+		private final List<String> mandatorySequenceOfTraversedResourceTypes;
+
+		private DemandRecord (XmlElement element)
+		{
+			super (element);
+			this.id = element.getLong ("id");
+			this.ingressNodeId = element.getLong ("ingressNodeId");
+			this.egressNodeId = element.getLong ("egressNodeId");
+			this.offeredTraffic = element.getDouble ("offeredTraffic");
+			Demand.IntendedRecoveryType recoveryType;
+			try { recoveryType = Demand.IntendedRecoveryType.valueOf(element.getRequiredString ("intendedRecoveryType")); } 
+			catch (Exception e) { recoveryType = Demand.IntendedRecoveryType.UNKNOWNTYPE; }
+			this.recoveryType = recoveryType;
+			this.mandatorySequenceOfTraversedResourceTypes = new LinkedList<String> ();
+			for (XmlElement child : element.children)
+			{
+				switch (child.name)
+				{
+					case "tag": case "attribute": break;
+					case "serviceChainResourceTypeOfSequence": mandatorySequenceOfTraversedResourceTypes.add(child.getString("type")); break;
+					default: throw new RuntimeException("Bad");
+				}
+			}
+		}
 	}
-	private static List<NetworkElement> getLinkAndResorceListFromIds (NetPlan np , Collection<Long> ids) 
+
+	private static final class MulticastDemandRecord extends ElementRecord
 	{
-		List<NetworkElement> res = new LinkedList<NetworkElement> (); 
-		for (long id : ids)
+		private final long id, ingressNodeId;
+		private final long [] egressNodeIds;
+		private final double offeredTraffic;
+
+		private MulticastDemandRecord (XmlElement element)
 		{
-			NetworkElement e = np.getLinkFromId(id);
-			if (e == null) e = np.getResourceFromId(id);
-			if (e == null) throw new Net2PlanException ("Unknown id in the list");
-			res.add(e); 
+			super (element);
+			this.id = element.getLong ("id");
+			this.ingressNodeId = element.getLong ("ingressNodeId");
+			this.egressNodeIds = element.getLongArray ("egressNodeIds");
+			this.offeredTraffic = element.getDouble ("offeredTraffic");
 		}
-		return res;
 	}
-	private static Map<Resource,Double> getResourceOccupationMap (NetPlan np , List<Double> resAndOccList)
+
+	private static final class MulticastTreeRecord extends ElementRecord
 	{
-		Map<Resource,Double> res = new HashMap<Resource,Double> ();
-		Iterator<Double> it = resAndOccList.iterator();
-		while (it.hasNext())
+		private final long id, demandId;
+		private final double carriedTrafficIfNotFailing, occupiedLinkCapacityIfNotFailing;
+		private final long [] initialSetLinks, currentSetLinks;
+
+		private MulticastTreeRecord (XmlElement element)
 		{
-			final long id = (long) (double) it.next();
-			if (!it.hasNext()) throw new Net2PlanException ("Wrong array size");
-			final double val = it.next();
-			final Resource r = np.getResourceFromId(id); if (r == null) throw new Net2PlanException ("Unknown resource id");
-			res.put(r, val);
+			super (element);
+			this.id = element.getLong ("id");
+			this.demandId = element.getLong ("demandId");
+			this.carriedTrafficIfNotFailing = element.getDouble ("carriedTrafficIfNotFailing");
+			this.occupiedLinkCapacityIfNotFailing = element.getDouble ("occupiedLinkCapacityIfNotFailing");
+			this.initialSetLinks = element.getLongArray ("initialSetLinks");
+			this.currentSetLinks = element.getLongArray ("currentSetLinks");
 		}
-		return res;
 	}
-	
-	private void readAndAddAttributesToEnd (NetworkElement updateElement , String endingTag) throws XMLStreamException
+
+	private static final class RouteRecord extends ElementRecord
 	{
-		while(xmlStreamReader.hasNext())
+		private final long id, demandId;
+		private final double currentCarriedTrafficIfNotFailing, initialStateCarriedTrafficIfNotFailing;
+		private final double [] currentLinksAndResourcesOccupationIfNotFailing, initialStateOccupationIfNotFailing;
+		private final long [] currentPath, initialStatePath; // the initial path is null if it does not exist
+		private final long [] backupRoutes;
+
+		private RouteRecord (XmlElement element)
 		{
-			xmlStreamReader.next();
+			super (element);
+			this.id = element.getLong ("id");
+			this.demandId = element.getLong ("demandId");
+			this.currentCarriedTrafficIfNotFailing = element.getDouble ("currentCarriedTrafficIfNotFailing");
+			this.currentLinksAndResourcesOccupationIfNotFailing = element.getDoubleArray ("currentLinksAndResourcesOccupationIfNotFailing");
+			this.currentPath = element.getLongArray ("currentPath");
+			final boolean initialPathExists = element.getString ("initialStatePath") != null;
+			this.initialStatePath = initialPathExists? element.getLongArray ("initialStatePath") : null;
+			this.initialStateCarriedTrafficIfNotFailing = initialPathExists? element.getDouble ("initialStateCarriedTrafficIfNotFailing") : currentCarriedTrafficIfNotFailing;
+			this.initialStateOccupationIfNotFailing = initialPathExists? element.getDoubleArray ("initialStateOccupationIfNotFailing") : currentLinksAndResourcesOccupationIfNotFailing;
+			this.backupRoutes = element.getLongArray ("backupRoutes");
+		}
+	}
 
-			switch(xmlStreamReader.getEventType())
-			{
-				case XMLEvent.START_ELEMENT:
-					String startElementName = xmlStreamReader.getName().toString();
-					switch(startElementName)
-					{
-						case "tag":
-							updateElement.addTag(xmlStreamReader.getAttributeValue(xmlStreamReader.getAttributeIndex(null, "value")));
-							break;
-
-						case "attribute":
-							String key = xmlStreamReader.getAttributeValue(xmlStreamReader.getAttributeIndex(null, "key"));
-							String name = xmlStreamReader.getAttributeValue(xmlStreamReader.getAttributeIndex(null, "value"));
-							if (updateElement != null) updateElement.setAttribute(key, name);
-							break;
-
-						default:
-							throw new RuntimeException("Bad");
-					}
-
-					break;
-
-				case XMLEvent.END_ELEMENT:
-					String endElementName = xmlStreamReader.getName().toString();
-					if (endElementName.equals(endingTag)) return;
-					break;
-			}
+	private static final class ForwardingRuleRecord
+	{
+		private final long demandId, linkId;
+		private final double splittingRatio;
+
+		private ForwardingRuleRecord (XmlElement element)
+		{
+			this.demandId = element.getLong ("demandId");
+			this.linkId = element.getLong ("linkId");
+			this.splittingRatio = element.getDouble ("splittingRatio");
 		}
+	}
 
-		throw new RuntimeException("'" + endingTag +"' tag not parsed correctly (end tag not found)");
+	private static final class SrgRecord extends ElementRecord
+	{
+		private final long id;
+		private final double meanTimeToFailInHours, meanTimeToRepairInHours;
+		private final long [] nodes, links;
 
+		private SrgRecord (XmlElement element)
+		{
+			super (element);
+			this.id = element.getLong ("id");
+			this.meanTimeToFailInHours = element.getDouble ("meanTimeToFailInHours");
+			this.meanTimeToRepairInHours = element.getDouble ("meanTimeToRepairInHours");
+			this.nodes = element.getLongArray ("nodes");
+			this.links = element.getLongArray ("links");
+		}
 	}
-	
 }
@@ -93,7 +93,7 @@ public class Resource extends NetworkElement
 		if ((this.netPlan == null) || (origin.netPlan == null) || (this.netPlan == origin.netPlan)) throw new RuntimeException ("Bad");
 		this.type = origin.type;
 		this.name = origin.name;
-		this.hostNode = this.netPlan.getNodeFromId (origin.hostNode.id);
+		this.hostNode = this.netPlan.nodes.get(origin.hostNode.index);
 		this.capacityMeasurementUnits = origin.capacityMeasurementUnits;
 		this.capacity = origin.capacity;
 		this.cache_totalOccupiedCapacity = origin.cache_totalOccupiedCapacity;
@@ -102,23 +102,20 @@ public class Resource extends NetworkElement
 		this.capacityUpperResourcesOccupyInMe = new HashMap<Resource,Double> ();
 		for (Entry<Resource,Double> entry : origin.capacityUpperResourcesOccupyInMe.entrySet())
 		{
-			final Resource resourceThisNp = this.netPlan.getResourceFromId(entry.getKey().id);
-			if (resourceThisNp == null) throw new RuntimeException ("Bad");
+			final Resource resourceThisNp = (Resource) this.netPlan.getPeerElementInThisNetPlan(entry.getKey());
 			this.capacityUpperResourcesOccupyInMe.put(resourceThisNp , entry.getValue());
 		}
 		this.capacityIOccupyInBaseResource = new HashMap<Resource,Double> ();
 		for (Entry<Resource,Double> entry : origin.capacityIOccupyInBaseResource.entrySet())
 		{
-			final Resource resourceThisNp = this.netPlan.getResourceFromId(entry.getKey().id);
-			if (resourceThisNp == null) throw new RuntimeException ("Bad");
+			final Resource resourceThisNp = (Resource) this.netPlan.getPeerElementInThisNetPlan(entry.getKey());
 			this.capacityIOccupyInBaseResource.put(resourceThisNp , entry.getValue());
 		}
 		this.cache_traversingRoutesAndOccupiedCapacitiesIfNotFailingRoute = new HashMap<Route,Double> ();
 		for (Entry<Route,Double> originRoute : origin.cache_traversingRoutesAndOccupiedCapacitiesIfNotFailingRoute.entrySet())
 		{
-			final Route routeThisNp = this.netPlan.getRouteFromId(originRoute.getKey().id);
-			if (routeThisNp == null) throw new RuntimeException ("Bad");
-			this.cache_traversingRoutesAndOccupiedCapacitiesIfNotFailingRoute.put(this.netPlan.getRouteFromId(originRoute.getKey().id) , originRoute.getValue());
+			final Route routeThisNp = (Route) this.netPlan.getPeerElementInThisNetPlan(originRoute.getKey());
+			this.cache_traversingRoutesAndOccupiedCapacitiesIfNotFailingRoute.put(routeThisNp , originRoute.getValue());
 		}
 	}
 
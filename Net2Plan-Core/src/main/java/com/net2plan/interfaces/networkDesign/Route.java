@@ -66,6 +66,7 @@ public class Route extends NetworkElement
 	Set<Route> cache_routesIAmBackUp;
 	boolean cache_hasLoops;
 	double cache_propagationDelayMs;
+	boolean cache_upWhenLinksUpdated; // true if the route was up the last time it added its traffic to the traversed links (a route that is down adds nothing)
 	
 	Route (NetPlan netPlan , long id , int index , Demand demand , List<? extends NetworkElement> seqLinksAndResourcesTraversed , AttributeMap attributes)
 	{
@@ -98,6 +99,7 @@ public class Route extends NetworkElement
 		this.cache_hasLoops = hasLoops (cache_seqNodesRealPath);
 		if (cache_hasLoops) demand.routingCycleType = RoutingCycleType.OPEN_CYCLES;
 		this.cache_propagationDelayMs = 0;
+		this.cache_upWhenLinksUpdated = false;
 		this.updatePropagationAndProcessingDelayInMiliseconds();
 	}
 
@@ -129,17 +131,18 @@ public class Route extends NetworkElement
 		if ((this.netPlan == null) || (origin.netPlan == null) || (this.netPlan == origin.netPlan)) throw new RuntimeException ("Bad");
 		this.currentCarriedTrafficIfNotFailing = origin.currentCarriedTrafficIfNotFailing;
 		this.currentLinksAndResourcesOccupationIfNotFailing = new ArrayList<Double> (origin.currentLinksAndResourcesOccupationIfNotFailing);
+		this.cache_upWhenLinksUpdated = origin.cache_upWhenLinksUpdated;
 		this.initialStateCarriedTrafficIfNotFailing = origin.initialStateCarriedTrafficIfNotFailing;
 		this.initialStateOccupationIfNotFailing = new ArrayList<Double> (origin.initialStateOccupationIfNotFailing);
-		this.initialStatePath = (List<NetworkElement>) getInThisNetPlan(origin.initialStatePath);
-		this.currentPath = (List<NetworkElement>) getInThisNetPlan(origin.currentPath);
-		this.backupRoutes = (List<Route>) getInThisNetPlan(origin.backupRoutes);
-		this.cache_routesIAmBackUp = (Set<Route>) getInThisNetPlan(origin.cache_routesIAmBackUp);
-		this.cache_seqLinksRealPath = (List<Link>) getInThisNetPlan(origin.cache_seqLinksRealPath);
-		this.cache_seqNodesRealPath = (List<Node>) getInThisNetPlan(origin.cache_seqNodesRealPath);
+		this.initialStatePath = netPlan.getPeerElementsInThisNetPlan(origin.initialStatePath);
+		this.currentPath = netPlan.getPeerElementsInThisNetPlan(origin.currentPath);
+		this.backupRoutes = netPlan.getPeerElementsInThisNetPlan(origin.backupRoutes);
+		this.cache_routesIAmBackUp = netPlan.getPeerElementsInThisNetPlan(origin.cache_routesIAmBackUp);
+		this.cache_seqLinksRealPath = netPlan.getPeerElementsInThisNetPlan(origin.cache_seqLinksRealPath);
+		this.cache_seqNodesRealPath = netPlan.getPeerElementsInThisNetPlan(origin.cache_seqNodesRealPath);
 		this.cache_hasLoops = origin.cache_hasLoops;
 		this.cache_linkAndResourcesTraversedOccupiedCapIfnotFailMap.clear();
-		for (Entry<NetworkElement,Double> e : origin.cache_linkAndResourcesTraversedOccupiedCapIfnotFailMap.entrySet()) this.cache_linkAndResourcesTraversedOccupiedCapIfnotFailMap.put(getInThisNetPlan (e.getKey()) , e.getValue());
+		for (Entry<NetworkElement,Double> e : origin.cache_linkAndResourcesTraversedOccupiedCapIfnotFailMap.entrySet()) this.cache_linkAndResourcesTraversedOccupiedCapIfnotFailMap.put(netPlan.getPeerElementInThisNetPlan (e.getKey()) , e.getValue());
 	}
 
 	
@@ -387,6 +390,7 @@ public class Route extends NetworkElement
 		}
 		demand.cache_worstCasePropagationTimeMs = Math.max(demand.cache_worstCasePropagationTimeMs, this.cache_propagationDelayMs);
 		demand.cache_worstCaseLengthInKm = Math.max(demand.cache_worstCaseLengthInKm, thisRouteLengthKm);
+		demand.notifyCoupledUpperLayerLinkChanged();
 	}
 
 	/** Returns the route average propagation speed in km per second, as the ratio between the total route length and the total route delay 
@@ -483,6 +487,9 @@ public class Route extends NetworkElement
 		return layer.cache_routesDown.contains(this);
 	}
 	
+	@Override
+	void attributesChanged () { layer.notifyRouteChanged(this); }
+
 	/**
 	 * <p>Removes this route.</p>
 	 */
@@ -491,6 +498,16 @@ public class Route extends NetworkElement
 		checkAttachedToNetPlanObject();
 		netPlan.checkIsModifiable();
 		layer.checkRoutingType(RoutingType.SOURCE_ROUTING);
+		removeFromCaches();
+		NetPlan.removeNetworkElementAndShiftIndexes(layer.routes , index);
+		if (ErrorHandling.isDebugEnabled()) netPlan.checkCachesConsistency();
+		removeId();
+		layer.notifyRouteChanged(this);
+	}
+
+	/* Releases the traffic of the route, and removes it from the caches of the other elements, but not from the list of routes of the layer */
+	void removeFromCaches ()
+	{
 		this.setCarriedTraffic(0, 0); // release all previous occupation
 		
 		for (Node node : cache_seqNodesRealPath) node.cache_nodeAssociatedRoutes.remove(this);
@@ -503,7 +520,6 @@ public class Route extends NetworkElement
 		
 		netPlan.cache_id2RouteMap.remove(id);
 		layer.cache_routesDown.remove (this);
-		NetPlan.removeNetworkElementAndShiftIndexes(layer.routes , index);
 		
 		/* remove the resources info */
 		for (NetworkElement e : cache_linkAndResourcesTraversedOccupiedCapIfnotFailMap.keySet())
@@ -528,10 +544,8 @@ public class Route extends NetworkElement
         {
         	demand.cache_worstCaseLengthInKm = 0;
         	for (Route r : demand.cache_routes) demand.cache_worstCaseLengthInKm = Math.max(demand.cache_worstCaseLengthInKm, r.getLengthInKm());
+        	demand.notifyCoupledUpperLayerLinkChanged();
         }
-
-        if (ErrorHandling.isDebugEnabled()) netPlan.checkCachesConsistency();
-		removeId();
 	}
 
 	/** Sets the route carried traffic and the occupied capacity in the traversed links and resources (typically the same as the carried traffic),
@@ -580,6 +594,10 @@ public class Route extends NetworkElement
 			if (initialStateOccupationIfNotFailing.size() != initialStatePath.size()) throw new RuntimeException ("Bad");
 		}
 
+		/* The traffic this route added to the links the last time, to update them with the difference */
+		final double oldCarriedTrafficInLinks = cache_upWhenLinksUpdated? oldRouteCarriedTrafficIfNotFailing : 0;
+		final Map<NetworkElement,Double> oldOccupationInLinks = cache_upWhenLinksUpdated? cache_linkAndResourcesTraversedOccupiedCapIfnotFailMap : Collections.emptyMap();
+
 		this.currentCarriedTrafficIfNotFailing = newCarriedTraffic;
 		this.currentLinksAndResourcesOccupationIfNotFailing = new ArrayList<Double> (linkAndResourcesOccupationInformation);
 
@@ -587,14 +605,29 @@ public class Route extends NetworkElement
 		this.cache_linkAndResourcesTraversedOccupiedCapIfnotFailMap = updateLinkResourceOccupationCache ();
 
 		demand.carriedTraffic = 0; for (Route r : demand.cache_routes) demand.carriedTraffic += r.getCarriedTraffic();
-		if (demand.coupledUpperLayerLink != null) demand.coupledUpperLayerLink.capacity = demand.carriedTraffic;
+		layer.notifyDemandChanged(demand);
+		if (demand.coupledUpperLayerLink != null) { demand.coupledUpperLayerLink.capacity = demand.carriedTraffic; demand.coupledUpperLayerLink.layer.notifyLinkChanged(demand.coupledUpperLayerLink); }
 
-		for (NetworkElement e : cache_linkAndResourcesTraversedOccupiedCapIfnotFailMap.keySet())
+		final boolean isUp = !isDown();
+		final double newCarriedTrafficInLinks = isUp? newCarriedTraffic : 0;
+		for (Entry<NetworkElement,Double> entry : cache_linkAndResourcesTraversedOccupiedCapIfnotFailMap.entrySet())
+		{
+			final NetworkElement e = entry.getKey();
 			if (e instanceof Resource)
-				((Resource) e).addTraversingRoute(this , cache_linkAndResourcesTraversedOccupiedCapIfnotFailMap.get(e));
+				((Resource) e).addTraversingRoute(this , entry.getValue());
 			else if (e instanceof Link)
-				((Link) e).updateLinkTrafficAndOccupation();
+			{
+				final Double oldOccupationInLink = oldOccupationInLinks.get(e);
+				((Link) e).addTrafficAndOccupation(newCarriedTrafficInLinks - (oldOccupationInLink == null? 0 : oldCarriedTrafficInLinks) , 
+						(isUp? entry.getValue() : 0) - (oldOccupationInLink == null? 0 : oldOccupationInLink));
+			}
+		}
+		for (Entry<NetworkElement,Double> entry : oldOccupationInLinks.entrySet())
+			if ((entry.getKey() instanceof Link) && !cache_linkAndResourcesTraversedOccupiedCapIfnotFailMap.containsKey(entry.getKey()))
+				((Link) entry.getKey()).addTrafficAndOccupation(-oldCarriedTrafficInLinks , -entry.getValue());
+		this.cache_upWhenLinksUpdated = isUp;
 		
+		layer.notifyRouteChanged(this);
 		
 		if (ErrorHandling.isDebugEnabled()) netPlan.checkCachesConsistency();
 	}
@@ -745,6 +778,7 @@ public class Route extends NetworkElement
 				System.out.println ("Node n: " + n + ", isUp " + n.isUp);
 			throw new RuntimeException("Bad.");
 		}
+		if (shouldBeUp != cache_upWhenLinksUpdated) throw new RuntimeException("Bad");
 		if (shouldBeUp)
 		{
 			assertEquals(getCarriedTraffic() , currentCarriedTrafficIfNotFailing , 0.001);
@@ -788,50 +822,7 @@ public class Route extends NetworkElement
 		return res;
 	}
 
-	private NetworkElement getInThisNetPlan (NetworkElement e)
-	{
-		NetworkElement res = null;
-		if (e instanceof Link) res = this.netPlan.getLinkFromId(e.id);
-		else if (e instanceof Resource) res = this.netPlan.getResourceFromId(e.id);
-		else if (e instanceof Node) res = this.netPlan.getNodeFromId(e.id);
-		else throw new RuntimeException ("Bad");
-		if (res == null) throw new RuntimeException ("Element of id: " + e.id + ", of class: " + e.getClass().getName() + ", does not exsit in current NetPlan");
-		return res;
-	}
-	
-	private List<? extends NetworkElement> getInThisNetPlan (List<? extends NetworkElement> list)
-	{
-		List<NetworkElement> res = new ArrayList<NetworkElement> (list.size());
-		for (NetworkElement e : list)
-		{
-			if (e instanceof Link) res.add(this.netPlan.getLinkFromId(e.id));
-			else if (e instanceof Resource) res.add(this.netPlan.getResourceFromId(e.id));
-			else if (e instanceof Node) res.add(this.netPlan.getNodeFromId(e.id));
-			else if (e instanceof Route) res.add(this.netPlan.getRouteFromId(e.id));
-			else throw new RuntimeException ("Bad");
-			if (res.get(res.size()-1) == null) throw new RuntimeException ("Element of id: " + e.id + ", of class: " + e.getClass().getName() + ", does not exsit in current NetPlan");
-		}
-		return res;
-	}
-
-	private Set<? extends NetworkElement> getInThisNetPlan (Set<? extends NetworkElement> list)
-	{
-		Set<NetworkElement> res = new HashSet<NetworkElement> (list.size());
-		for (NetworkElement e : list)
-		{
-			NetworkElement ee = null;
-			if (e instanceof Link) ee = this.netPlan.getLinkFromId(e.id);
-			else if (e instanceof Resource) ee = this.netPlan.getResourceFromId(e.id);
-			else if (e instanceof Node) ee = this.netPlan.getNodeFromId(e.id);
-			else if (e instanceof Route) ee = this.netPlan.getRouteFromId(e.id);
-			else throw new RuntimeException ("Bad");
-			if (ee == null) throw new RuntimeException ("Element of id: " + e.id + ", of class: " + e.getClass().getName() + ", does not exsit in current NetPlan");
-			res.add(ee);
-		}
-		return res;
-	}
-
-	private Map<NetworkElement,Double> updateLinkResourceOccupationCache ()
+	Map<NetworkElement,Double> updateLinkResourceOccupationCache ()
 	{
 		Map<NetworkElement,Double> res = new HashMap<NetworkElement,Double> ();
 		for (int step = 0; step < currentPath.size() ; step ++)
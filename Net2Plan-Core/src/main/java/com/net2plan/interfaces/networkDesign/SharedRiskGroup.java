@@ -66,8 +66,8 @@ public class SharedRiskGroup extends NetworkElement
 		if ((this.netPlan == null) || (origin.netPlan == null) || (this.netPlan == origin.netPlan)) throw new RuntimeException ("Bad");
 		this.meanTimeToFailInHours = origin.meanTimeToFailInHours;
 		this.meanTimeToRepairInHours = origin.meanTimeToRepairInHours;
-		this.links.clear (); for (Link e : origin.links) this.links.add(this.netPlan.getLinkFromId (e.id));
-		this.nodes.clear (); for (Node n : origin.nodes) this.nodes.add(this.netPlan.getNodeFromId (n.id));
+		this.links.clear (); for (Link e : origin.links) this.links.add((Link) this.netPlan.getPeerElementInThisNetPlan (e));
+		this.nodes.clear (); for (Node n : origin.nodes) this.nodes.add(this.netPlan.nodes.get(n.index));
 	}
 
 	boolean isDeepCopy (SharedRiskGroup e2)
@@ -299,6 +299,7 @@ public class SharedRiskGroup extends NetworkElement
 		netPlan.checkIsModifiable();
 		e.cache_srgs.remove (this);
 		links.remove (e);
+		netPlan.cache_topologyVersion ++;
 		if (ErrorHandling.isDebugEnabled()) netPlan.checkCachesConsistency();
 	}
 	
@@ -312,6 +313,7 @@ public class SharedRiskGroup extends NetworkElement
 		netPlan.checkIsModifiable();
 		n.cache_nodeSRGs.remove (this);
 		nodes.remove (n);
+		netPlan.cache_topologyVersion ++;
 		if (ErrorHandling.isDebugEnabled()) netPlan.checkCachesConsistency();
 	}
 
@@ -328,6 +330,7 @@ public class SharedRiskGroup extends NetworkElement
         for (String tag : tags) netPlan.cache_taggedElements.get(tag).remove(this);
 		netPlan.cache_id2srgMap.remove (id);
 		NetPlan.removeNetworkElementAndShiftIndexes(netPlan.srgs , index);
+		netPlan.cache_topologyVersion ++;
 		if (ErrorHandling.isDebugEnabled()) netPlan.checkCachesConsistency();
 		removeId ();
 	}
@@ -344,6 +347,7 @@ public class SharedRiskGroup extends NetworkElement
 		if (this.links.contains(link)) return;
 		link.cache_srgs.add(this);
 		this.links.add(link);
+		netPlan.cache_topologyVersion ++;
 		if (ErrorHandling.isDebugEnabled()) netPlan.checkCachesConsistency();
 	}
 
@@ -359,6 +363,7 @@ public class SharedRiskGroup extends NetworkElement
 		if (this.nodes.contains(node)) return;
 		node.cache_nodeSRGs.add(this);
 		this.nodes.add(node);
+		netPlan.cache_topologyVersion ++;
 		if (ErrorHandling.isDebugEnabled()) netPlan.checkCachesConsistency();
 	}
 
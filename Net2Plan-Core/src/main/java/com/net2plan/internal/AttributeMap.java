@@ -22,7 +22,8 @@ import java.util.Map;
 import java.util.TreeMap;
 
 /**
- * Extends {@code TreeMap} to forbid 'null or empty' keys.
+ * Extends {@code TreeMap} to forbid 'null or empty' keys. Keys are interned, since the same few attribute names are repeated in 
+ * many network elements.
  * 
  * @author Pablo Pavon-Marino, Jose-Luis Izquierdo-Zaragoza
  * @since 0.3.0
@@ -52,14 +53,14 @@ public class AttributeMap extends TreeMap<String, String>
 		this();
 
 		if (m == null) return;
-		for (Map.Entry<String, String> entry : m.entrySet()) put(new String (entry.getKey()), new String (entry.getValue()));
+		for (Map.Entry<String, String> entry : m.entrySet()) put(entry.getKey(), entry.getValue());
 	}
 
 	@Override
 	public String put(String key, String value)
 	{
 		if (key == null || key.isEmpty()) throw new RuntimeException("Key cannot be null or empty");
-		return super.put(key, value);
+		return super.put(key.intern(), value);
 	}
 	
 	@Override
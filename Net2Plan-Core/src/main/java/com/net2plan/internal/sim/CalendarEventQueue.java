@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pablo Pavon Mariño.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     Pablo Pavon Mariño - initial API and implementation
+ ******************************************************************************/
+
+package com.net2plan.internal.sim;
+
+import com.net2plan.interfaces.simulation.SimEvent;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Calendar queue (R. Brown, "Calendar queues: a fast O(1) priority queue implementation for the
+ * simulation event set problem", Communications of the ACM, 1988) used as future event list.</p>
+ *
+ * <p>Events are hashed by its time into an array of buckets (the days of the calendar), each one covering a time interval
+ * of the same width, and kept sorted inside each bucket. The next event is searched from the current bucket onwards.
+ * The number of buckets is doubled (halved) when the number of events is twice (half) the number of buckets, and the
+ * bucket width is then recomputed from the separation between the next events, so that enqueuing and dequeuing take
+ * an amortized constant time. Events are removed in constant time, since each event keeps its node in the bucket list.</p>
+ *
+ * <p>Events are ordered by time, then by priority (the higher value, the first), and then in insertion order.</p>
+ */
+final class CalendarEventQueue
+{
+	private final static int MIN_NUMBER_OF_BUCKETS = 16;
+	private final static int NUMBER_OF_EVENTS_TO_SAMPLE_WIDTH = 25;
+
+	private static final class Node
+	{
+		private final SimEvent event;
+		private final double time;
+		private final int priority;
+		private final long insertionOrder;
+		private long virtualBucket;
+		private Node previous, next;
+
+		private Node (SimEvent event , long insertionOrder)
+		{
+			this.event = event;
+			this.time = event.getEventTime();
+			this.priority = event.getEventPriority();
+			this.insertionOrder = insertionOrder;
+		}
+
+		private boolean isBefore (Node node)
+		{
+			if (time != node.time) return time < node.time;
+			if (priority != node.priority) return priority > node.priority;
+			return insertionOrder < node.insertionOrder;
+		}
+	}
+
+	private final Map<SimEvent,Node> nodes;
+	private Node [] buckets;
+	private double bucketWidth;
+	private long currentVirtualBucket;
+	private long insertionCounter;
+	private int size;
+	private boolean resizeEnabled;
+
+	CalendarEventQueue ()
+	{
+		this.nodes = new IdentityHashMap<SimEvent,Node> ();
+		clear ();
+	}
+
+	/* Returns false (and the event is not added) if the event was already in the queue */
+	boolean add (SimEvent event)
+	{
+		if (nodes.containsKey(event)) return false;
+		final Node node = new Node (event , insertionCounter ++);
+		nodes.put(event , node);
+		insert (node);
+		if (resizeEnabled && size > 2 * buckets.length) resize (2 * buckets.length);
+		return true;
+	}
+
+	void clear ()
+	{
+		this.nodes.clear();
+		this.buckets = new Node [MIN_NUMBER_OF_BUCKETS];
+		this.bucketWidth = 1;
+		this.currentVirtualBucket = 0;
+		this.insertionCounter = 0;
+		this.size = 0;
+		this.resizeEnabled = true;
+	}
+
+	boolean isEmpty () { return size == 0; }
+
+	SimEvent peek ()
+	{
+		final Node node = findFirst ();
+		return node == null? null : node.event;
+	}
+
+	SimEvent poll ()
+	{
+		final Node node = findFirst ();
+		if (node == null) return null;
+		currentVirtualBucket = node.virtualBucket;
+		unlink (node);
+		nodes.remove(node.event);
+		if (resizeEnabled && buckets.length > MIN_NUMBER_OF_BUCKETS && size < buckets.length / 2) resize (buckets.length / 2);
+		return node.event;
+	}
+
+	boolean remove (SimEvent event)
+	{
+		final Node node = nodes.remove(event);
+		if (node == null) return false;
+		unlink (node);
+		return true;
+	}
+
+	int size () { return size; }
+
+	/* The pending events, in no particular order */
+	List<SimEvent> toList ()
+	{
+		final List<SimEvent> res = new ArrayList<SimEvent> (size);
+		for (Node head : buckets) for (Node node = head ; node != null ; node = node.next) res.add(node.event);
+		return res;
+	}
+
+	private long getVirtualBucket (double time)
+	{
+		final double virtualBucket = Math.floor(time / bucketWidth);
+		return virtualBucket >= Long.MAX_VALUE? Long.MAX_VALUE : (long) virtualBucket;
+	}
+
+	private int getBucketIndex (long virtualBucket) { return (int) (virtualBucket & (buckets.length - 1)); }
+
+	/* Inserts the node keeping the bucket list sorted */
+	private void insert (Node node)
+	{
+		node.virtualBucket = getVirtualBucket(node.time);
+		final int bucketIndex = getBucketIndex(node.virtualBucket);
+		Node previous = null;
+		Node current = buckets [bucketIndex];
+		while (current != null && !node.isBefore(current)) { previous = current; current = current.next; }
+		node.previous = previous;
+		node.next = current;
+		if (previous == null) buckets [bucketIndex] = node; else previous.next = node;
+		if (current != null) current.previous = node;
+		if (node.virtualBucket < currentVirtualBucket) currentVirtualBucket = node.virtualBucket;
+		size ++;
+	}
+
+	private void unlink (Node node)
+	{
+		if (node.previous == null) buckets [getBucketIndex(node.virtualBucket)] = node.next; else node.previous.next = node.next;
+		if (node.next != null) node.next.previous = node.previous;
+		node.previous = null;
+		node.next = null;
+		size --;
+	}
+
+	/* The first event is the head of the bucket of the current day, if it belongs to that day. If no event is found in a whole year,
+	 * the first event is searched among the bucket heads */
+	private Node findFirst ()
+	{
+		if (size == 0) return null;
+		for (int cont = 0 ; cont < buckets.length ; cont ++)
+		{
+			final long virtualBucket = currentVirtualBucket + cont;
+			final Node head = buckets [getBucketIndex(virtualBucket)];
+			if (head != null && head.virtualBucket == virtualBucket) { currentVirtualBucket = virtualBucket; return head; }
+		}
+		Node first = null;
+		for (Node head : buckets) if (head != null && (first == null || head.isBefore(first))) first = head;
+		currentVirtualBucket = first.virtualBucket;
+		return first;
+	}
+
+	/* Rebuilds the calendar with the given number of buckets, and a bucket width three times the average separation between the next events */
+	private void resize (int newNumberOfBuckets)
+	{
+		final double newBucketWidth = computeBucketWidth ();
+		final List<Node> allNodes = new ArrayList<Node> (size);
+		for (Node head : buckets) for (Node node = head ; node != null ; node = node.next) allNodes.add(node);
+		this.buckets = new Node [newNumberOfBuckets];
+		this.bucketWidth = newBucketWidth;
+		this.size = 0;
+		this.currentVirtualBucket = Long.MAX_VALUE;
+		for (Node node : allNodes) { node.previous = null; node.next = null; insert (node); }
+	}
+
+	private double computeBucketWidth ()
+	{
+		final int numEventsToSample = Math.min(size , NUMBER_OF_EVENTS_TO_SAMPLE_WIDTH);
+		if (numEventsToSample < 2) return bucketWidth;
+
+		/* The next events are taken from the calendar, and then inserted again */
+		resizeEnabled = false;
+		final long initialVirtualBucket = currentVirtualBucket;
+		final List<Node> sample = new ArrayList<Node> (numEventsToSample);
+		for (int cont = 0 ; cont < numEventsToSample ; cont ++) { final Node node = findFirst (); unlink (node); sample.add(node); }
+		for (Node node : sample) insert (node);
+		currentVirtualBucket = initialVirtualBucket;
+		resizeEnabled = true;
+
+		final double averageSeparation = (sample.get(numEventsToSample - 1).time - sample.get(0).time) / (numEventsToSample - 1);
+		double sumSeparations = 0;
+		int numSeparations = 0;
+		for (int cont = 1 ; cont < numEventsToSample ; cont ++)
+		{
+			final double separation = sample.get(cont).time - sample.get(cont - 1).time;
+			if (separation <= 2 * averageSeparation) { sumSeparations += separation; numSeparations ++; }
+		}
+		final double width = numSeparations == 0? 0 : 3 * sumSeparations / numSeparations;
+		return width > 0 && !Double.isInfinite(width)? width : bucketWidth;
+	}
+}
@@ -23,7 +23,6 @@ import com.net2plan.interfaces.simulation.SimEvent;
 import com.net2plan.utils.StringUtils;
 
 import java.util.Collection;
-import java.util.Iterator;
 import java.util.PriorityQueue;
 
 /**
@@ -37,23 +36,56 @@ import java.util.PriorityQueue;
  * <li>3. Insertion order (first in, first out)</li>
  * </ul>
  *
+ * <p>The events can be kept in a binary heap (the default), or in a calendar queue, 
+ * where adding, getting and removing an event take an amortized constant time, which is 
+ * faster when many events are pending. In the binary heap, the insertion order of events with the 
+ * same time and priority is not guaranteed.</p>
+ *
  * @author Pablo Pavon-Marino, Jose-Luis Izquierdo-Zaragoza
  * @since 0.2.0
  */
 public final class FutureEventList
 {
-	private final PriorityQueue<SimEvent> futureEventList;
+	/**
+	 * Data structures to keep the pending events.
+	 */
+	public enum QueueType
+	{
+		/**
+		 * Binary heap ({@code java.util.PriorityQueue}).
+		 */
+		BINARY_HEAP,
+
+		/**
+		 * Calendar queue.
+		 */
+		CALENDAR_QUEUE
+	};
+
+	private QueueType queueType;
+	private PriorityQueue<SimEvent> futureEventList;
+	private CalendarEventQueue calendarQueue;
 	private double currentTime;
 	private long eventsProcessed;
 
 	/**
-	 * Default constructor.
+	 * Default constructor. Events are kept in a binary heap.
 	 *
 	 * @since 0.2.0
 	 */
 	public FutureEventList()
 	{
-		futureEventList = new PriorityQueue<SimEvent>();
+		this(QueueType.BINARY_HEAP);
+	}
+	
+	/**
+	 * Constructor to select the data structure used to keep the events.
+	 *
+	 * @param queueType Type of queue
+	 */
+	public FutureEventList(QueueType queueType)
+	{
+		setQueueType(queueType);
 		reset();
 	}
 	
@@ -62,12 +94,38 @@ public final class FutureEventList
 	{
 		StringBuilder out = new StringBuilder();
 		
-		Iterator<SimEvent> it = futureEventList.iterator();
-		while(it.hasNext()) out.append(it.next());
+		for (SimEvent event : queueType == QueueType.BINARY_HEAP ? futureEventList : calendarQueue.toList()) out.append(event);
 		
 		return out.toString();
 	}
 
+	/**
+	 * Returns the type of queue used to keep the events.
+	 *
+	 * @return Type of queue
+	 */
+	public QueueType getQueueType()
+	{
+		return queueType;
+	}
+
+	/**
+	 * Sets the type of queue used to keep the events. The pending events are moved to the new queue.
+	 *
+	 * @param queueType Type of queue
+	 */
+	public void setQueueType(QueueType queueType)
+	{
+		if (queueType == null) throw new Net2PlanException("The type of future event list cannot be null");
+		if (queueType == this.queueType) return;
+		
+		final Collection<SimEvent> pendingEvents = this.queueType == null ? null : getPendingEventsCollection();
+		this.queueType = queueType;
+		this.futureEventList = queueType == QueueType.BINARY_HEAP ? new PriorityQueue<SimEvent>() : null;
+		this.calendarQueue = queueType == QueueType.CALENDAR_QUEUE ? new CalendarEventQueue() : null;
+		if (pendingEvents != null) for (SimEvent event : pendingEvents) addToQueue(event);
+	}
+
 	/**
 	 * <p>Adds an event to the future event list.</p>
 	 *
@@ -90,7 +148,18 @@ public final class FutureEventList
 			throw new Net2PlanException(String.format("Event cannot be scheduled before the current simulation time (sim. time = %s, event time = %s)", StringUtils.secondsToYearsDaysHoursMinutesSeconds(currentTime), StringUtils.secondsToYearsDaysHoursMinutesSeconds(event.getEventTime())));
 		}
 
-		futureEventList.add(event);
+		addToQueue(event);
+	}
+	
+	private void addToQueue(SimEvent event)
+	{
+		if (queueType == QueueType.BINARY_HEAP) futureEventList.add(event);
+		else if (!calendarQueue.add(event)) throw new Net2PlanException("Event is already in the future event list");
+	}
+	
+	private Collection<SimEvent> getPendingEventsCollection()
+	{
+		return queueType == QueueType.BINARY_HEAP ? futureEventList : calendarQueue.toList();
 	}
 
 	/**
@@ -115,7 +184,8 @@ public final class FutureEventList
 	 */
 	public void clear()
 	{
-		futureEventList.clear();
+		if (queueType == QueueType.BINARY_HEAP) futureEventList.clear();
+		else calendarQueue.clear();
 	}
 
 	/**
@@ -142,7 +212,7 @@ public final class FutureEventList
 			return -1;
 		}
 
-		return futureEventList.peek().getEventTime();
+		return (queueType == QueueType.BINARY_HEAP ? futureEventList.peek() : calendarQueue.peek()).getEventTime();
 	}
 
 	/**
@@ -154,9 +224,9 @@ public final class FutureEventList
 	 */
 	public SimEvent getNextEvent()
 	{
-		if (futureEventList.isEmpty()) return null;
+		if (!hasMoreEvents()) return null;
 
-		SimEvent nextEvent = futureEventList.poll();
+		SimEvent nextEvent = queueType == QueueType.BINARY_HEAP ? futureEventList.poll() : calendarQueue.poll();
 		currentTime = nextEvent.getEventTime();
 		eventsProcessed++;
 
@@ -171,7 +241,7 @@ public final class FutureEventList
 	 */
 	public int getNumberOfPendingEvents()
 	{
-		return futureEventList.size();
+		return queueType == QueueType.BINARY_HEAP ? futureEventList.size() : calendarQueue.size();
 	}
 
 	/**
@@ -188,15 +258,15 @@ public final class FutureEventList
 	/**
 	 * <p>Returns the whole future event list.</p>
 	 *
-	 * <p><b>Important</b>: It is the original future event list, changes by user
-	 * are not checked, so it is discouraged at all.</p>
+	 * <p><b>Important</b>: If the events are kept in a binary heap, it is the original future event list, changes by user
+	 * are not checked, so it is discouraged at all. If they are kept in a calendar queue, a copy is returned.</p>
 	 *
 	 * @return Future event list
 	 * @since 0.2.0
 	 */
 	public PriorityQueue<SimEvent> getPendingEvents()
 	{
-		return futureEventList;
+		return queueType == QueueType.BINARY_HEAP ? futureEventList : new PriorityQueue<SimEvent>(calendarQueue.toList());
 	}
 
 	/**
@@ -207,18 +277,19 @@ public final class FutureEventList
 	 */
 	public boolean hasMoreEvents()
 	{
-		return !futureEventList.isEmpty();
+		return queueType == QueueType.BINARY_HEAP ? !futureEventList.isEmpty() : !calendarQueue.isEmpty();
 	}
 
 	/**
-	 * <p>Removes an event from the future event list.</p>
+	 * <p>Removes an event from the future event list. It takes linear time in the binary heap, and constant time in the calendar queue.</p>
 	 *
 	 * @param event Event to be removed
 	 * @since 0.2.0
 	 */
 	public void remove(SimEvent event)
 	{
-		futureEventList.remove(event);
+		if (queueType == QueueType.BINARY_HEAP) futureEventList.remove(event);
+		else calendarQueue.remove(event);
 	}
 
 	/**
@@ -89,6 +89,8 @@ public final class SimCore implements Runnable
 		}
 	};
 	
+	private final static int EVENTS_PER_BATCH = 1024;
+
 	private final IEventCallback callback;
 	private final FutureEventList futureEventList;
 	private double cpuTime;
@@ -99,8 +101,10 @@ public final class SimCore implements Runnable
 	private double totalSimTime;
 	private double totalTransitoryTime;
 	private boolean isInTransitory;
-	private SimState simulationState;
-	private boolean processingEvent;
+	private boolean batchMode;
+	private volatile SimState simulationState;
+	private volatile boolean processingEvent;
+	private final Object stateMonitor;
 
 	/**
 	 * Default constructor.
@@ -112,6 +116,7 @@ public final class SimCore implements Runnable
 	{
 		this.callback = callback;
 		futureEventList = new FutureEventList();
+		stateMonitor = new Object();
 
 		reset();
 	}
@@ -123,118 +128,143 @@ public final class SimCore implements Runnable
 
 		isInTransitory = true;
 		if (totalTransitoryEvents == -1 && totalTransitoryTime == -1) isInTransitory = false;
+		final int maxEventsPerLock = batchMode ? EVENTS_PER_BATCH : 1;
 		while (simulationState != SimState.STOPPED)
 		{
 			while (futureEventList.hasMoreEvents())
 			{
-				synchronized (callback)
-				{
-					double nextEventTime = futureEventList.getNextEventSimulationTime();
-					if (nextEventTime == -1) throw new RuntimeException("Bad");
-
-					if (isInTransitory)
-					{
-						if (totalTransitoryTime != -1 && nextEventTime >= totalTransitoryTime)
-						{
-							finishTransitory(totalTransitoryTime);
-						}
-						else if (totalTransitoryEvents != -1 && futureEventList.getNumberOfProcessedEvents() == totalTransitoryEvents)
-						{
-							finishTransitory(futureEventList.getCurrentSimulationTime());
-						}
-					}
+				if (processEvents(maxEventsPerLock)) return; // this kills the thread
+				if (simulationState != SimState.RUNNING) break;
+			}
 
-					if (totalSimTime != -1 && nextEventTime >= totalSimTime)
-					{
-						setSimulationState(SimState.STOPPED, new EndSimulationException());
-						return; // this kills the thread
-					}
-					else if (totalSimEvents != -1 && futureEventList.getNumberOfProcessedEvents() == totalSimEvents)
-					{
-						setSimulationState(SimState.STOPPED, new EndSimulationException());
-						return;  // this kills the thread
-					}
+			callback.refresh(true);
+			timeSinceLastRefresh = cpuTime;
 
-					/* Process next event in the future event list */
-					long start = System.nanoTime();
+			if (!futureEventList.hasMoreEvents())
+			{
+				setSimulationState(SimState.STOPPED, new EndSimulationException());
+				return;  // this kills the thread
+			}
+			
+			if (SystemUtils.getUserInterface() == UserInterface.CLI)
+			{
+				setSimulationState(SimState.STOPPED, new EndSimulationException());
+			}
 
-					SimEvent event = futureEventList.getNextEvent();
-					processingEvent = true;
-					
+			/* A stop or resume requested while the events were processed is not overwritten */
+			synchronized (stateMonitor)
+			{
+				if (simulationState == SimState.STEP) simulationState = SimState.PAUSED;
+				while (simulationState == SimState.PAUSED)
+				{
 					try
 					{
-						if (event == null) throw new RuntimeException("Event is a null object");
-						callback.processEvent(event);
+						stateMonitor.wait();
 					}
-					catch (Throwable e)
+					catch (InterruptedException ex)
 					{
-						processingEvent = false;
-						setSimulationState(SimCore.SimState.STOPPED, e);
-
-						long end = System.nanoTime();
-						cpuTime += ((double) (end - start)) / 1e9;
-						callback.refresh(true);
-
-						return;  // this kills the thread
+						setSimulationState(SimState.STOPPED);
+						break;
 					}
+				}
+			}
+		}
+	}
 
-					processingEvent = false;
-					long end = System.nanoTime();
-
-					cpuTime += ((double) (end - start)) / 1e9;
+	/* Processes up to maxEvents events from the future event list, holding the callback lock and measuring the CPU time once 
+	 * for all of them. Returns true if the simulation finished (then, the thread must be killed) */
+	private boolean processEvents(int maxEvents)
+	{
+		synchronized (callback)
+		{
+			final long start = System.nanoTime();
+			boolean simulationFinished = false;
+			Throwable failure = null;
+			for (int numEvents = 0 ; numEvents < maxEvents && futureEventList.hasMoreEvents() ; numEvents ++)
+			{
+				double nextEventTime = futureEventList.getNextEventSimulationTime();
+				if (nextEventTime == -1) throw new RuntimeException("Bad");
 
-					if (cpuTime - timeSinceLastRefresh >= refreshTimeInSeconds)
+				if (isInTransitory)
+				{
+					if (totalTransitoryTime != -1 && nextEventTime >= totalTransitoryTime)
 					{
-						callback.refresh(false);
-						timeSinceLastRefresh = cpuTime;
+						finishTransitory(totalTransitoryTime);
 					}
-
-					if (futureEventList.getNumberOfProcessedEvents() == Long.MAX_VALUE)
+					else if (totalTransitoryEvents != -1 && futureEventList.getNumberOfProcessedEvents() == totalTransitoryEvents)
 					{
-						setSimulationState(SimState.STOPPED);
-						return;  // this kills the thread
+						finishTransitory(futureEventList.getCurrentSimulationTime());
 					}
+				}
 
-					if (simulationState == SimState.STEP)
-					{
-						setSimulationState(SimState.PAUSED);
-					}
+				if (totalSimTime != -1 && nextEventTime >= totalSimTime)
+				{
+					setSimulationState(SimState.STOPPED, new EndSimulationException());
+					simulationFinished = true;
+					break;
+				}
+				else if (totalSimEvents != -1 && futureEventList.getNumberOfProcessedEvents() == totalSimEvents)
+				{
+					setSimulationState(SimState.STOPPED, new EndSimulationException());
+					simulationFinished = true;
+					break;
+				}
 
-					if (simulationState != SimState.RUNNING)
-					{
-						break;
-					}
+				/* Process next event in the future event list */
+				SimEvent event = futureEventList.getNextEvent();
+				processingEvent = true;
+				
+				try
+				{
+					if (event == null) throw new RuntimeException("Event is a null object");
+					callback.processEvent(event);
+				}
+				catch (Throwable e)
+				{
+					failure = e;
 				}
-			}
 
-			callback.refresh(true);
-			timeSinceLastRefresh = cpuTime;
+				processingEvent = false;
 
-			if (!futureEventList.hasMoreEvents())
-			{
-				setSimulationState(SimState.STOPPED, new EndSimulationException());
-				return;  // this kills the thread
-			}
-			
-			if (SystemUtils.getUserInterface() == UserInterface.CLI)
-			{
-				setSimulationState(SimState.STOPPED, new EndSimulationException());
-			}
+				if (failure != null)
+				{
+					setSimulationState(SimCore.SimState.STOPPED, failure);
+					simulationFinished = true;
+					break;
+				}
 
-			simulationState = SimState.PAUSED;
+				if (futureEventList.getNumberOfProcessedEvents() == Long.MAX_VALUE)
+				{
+					setSimulationState(SimState.STOPPED);
+					simulationFinished = true;
+					break;
+				}
 
-			while (simulationState == SimState.PAUSED)
-			{
-				try
+				if (simulationState == SimState.STEP)
 				{
-					Thread.sleep(1);
+					setSimulationState(SimState.PAUSED);
 				}
-				catch (InterruptedException ex)
+
+				if (simulationState != SimState.RUNNING)
 				{
-					setSimulationState(SimState.STOPPED);
 					break;
 				}
 			}
+
+			long end = System.nanoTime();
+			cpuTime += ((double) (end - start)) / 1e9;
+
+			if (failure != null)
+			{
+				callback.refresh(true);
+			}
+			else if (!simulationFinished && cpuTime - timeSinceLastRefresh >= refreshTimeInSeconds)
+			{
+				callback.refresh(false);
+				timeSinceLastRefresh = cpuTime;
+			}
+
+			return simulationFinished;
 		}
 	}
 	
@@ -306,17 +336,49 @@ public final class SimCore implements Runnable
 		futureEventList.reset();
 		timeSinceLastRefresh = 0;
 
+		futureEventList.setQueueType(FutureEventList.QueueType.BINARY_HEAP);
 		refreshTimeInSeconds = 60;
 		totalSimEvents = -1;
 		totalTransitoryEvents = -1;
 		totalSimTime = -1;
 		totalTransitoryTime = -1;
 		isInTransitory = true;
+		batchMode = false;
 
 		processingEvent = false;
 		setSimulationState(SimState.NOT_STARTED);
 	}
 	
+	/**
+	 * <p>Enables or disables the batch mode. In batch mode, the simulation core keeps the lock on the 
+	 * callback, and measures the CPU time, once per batch of events, instead of once per event. This 
+	 * speeds up simulations with many cheap events, at the cost that other threads accessing the 
+	 * callback (i.e. the user interface) may wait for a whole batch to be processed. Requests to pause 
+	 * or stop the simulation are still attended after the current event. Intended for headless simulations.</p>
+	 *
+	 * <p><b>Important</b>: This method only can be executed before the simulation starts.</p>
+	 * 
+	 * @param batchMode {@code true} to process events in batches, {@code false} to process them one by one
+	 */
+	public void setBatchMode(boolean batchMode)
+	{
+		checkSimulationNotStartedYet();
+		this.batchMode = batchMode;
+	}
+
+	/**
+	 * <p>Sets the data structure used to keep the pending events in the future event list.</p>
+	 *
+	 * <p><b>Important</b>: This method only can be executed before the simulation starts.</p>
+	 * 
+	 * @param queueType Type of queue
+	 */
+	public void setFutureEventListType(FutureEventList.QueueType queueType)
+	{
+		checkSimulationNotStartedYet();
+		futureEventList.setQueueType(queueType);
+	}
+	
 	/**
 	 * <p>Sets the time to refresh the simulation log.</p>
 	 *
@@ -437,6 +499,7 @@ public final class SimCore implements Runnable
 			catch (Throwable e) { }
 		}
 
+		synchronized (stateMonitor) { stateMonitor.notifyAll(); }
 		callback.simulationStateChanged(simulationState, reason);
 	}
 }
@@ -180,6 +180,14 @@ public class SimKernel implements IEventCallback
 		double simTime = Double.parseDouble(simulationParameters.get("simTime"));
 		simCore.setTotalSimulationTime(simTime);
 		
+		if (simulationParameters.containsKey("futureEventListType"))
+		{
+			final String futureEventListType = simulationParameters.get("futureEventListType");
+			if (futureEventListType.equals("binaryHeap")) simCore.setFutureEventListType(FutureEventList.QueueType.BINARY_HEAP);
+			else if (futureEventListType.equals("calendarQueue")) simCore.setFutureEventListType(FutureEventList.QueueType.CALENDAR_QUEUE);
+			else throw new Net2PlanException("'futureEventListType' must be 'binaryHeap' or 'calendarQueue'");
+		}
+		
 		if (!getEventGeneratorClass().isAssignableFrom(eventGenerator.getClass())) throw new RuntimeException("Bad - Event generator is not an instance of " + getEventGeneratorClass().getName());
 		if (!getEventProcessorClass().isAssignableFrom(eventProcessor.getClass())) throw new RuntimeException("Bad - Event processor is not an instance of " + getEventProcessorClass().getName());
 
@@ -326,10 +334,31 @@ public class SimKernel implements IEventCallback
 		parameters.add(Triple.of("transitoryEvents", "-1", "Number of events for transitory period (-1 means no transitory period). In case that 'transitoryTime' and 'transitoryEvents' are specified, the transitory period will finish when one of the previous values is reached"));
 		parameters.add(Triple.of("simTime", "-1", "Total simulation time (in seconds, including transitory period) (-1 means no limit). In case that 'simTime' and 'simEvents' are specified, the transitory period will finish when one of the previous values is reached"));
 		parameters.add(Triple.of("transitoryTime", "-1", "Transitory time (in seconds) (-1 means no transitory period). In case that 'transitoryTime' and 'transitoryEvents' are specified, the transitory period will finish when one of the previous values is reached"));
+		parameters.add(Triple.of("futureEventListType", "#select# binaryHeap calendarQueue", "Data structure keeping the pending events. A calendar queue adds and gets events in amortized constant time, which is faster when many events are pending"));
 
 		return parameters;
 	}
 
+	/**
+	 * Returns the simulation statistics ({@code null} if statistics are disabled, or the simulation was not initialized).
+	 * 
+	 * @return Simulation statistics
+	 */
+	SimStats getSimulationStatistics()
+	{
+		return stats;
+	}
+
+	/**
+	 * Returns the reason why the simulation was last stopped ({@code null} if none).
+	 * 
+	 * @return Reason why the simulation was last stopped
+	 */
+	Throwable getLastReason()
+	{
+		return lastReason;
+	}
+
 	/**
 	 * Returns the simulation report.
 	 * 
@@ -501,6 +530,7 @@ public class SimKernel implements IEventCallback
 		System.out.println();
 		
 		simKernel.configureSimulation(simulationParameters, net2planParameters, eventGenerator, eventGeneratorParameters, eventProcessor, eventProcessorParameters);
+		simKernel.getSimCore().setBatchMode(true);
 		simKernel.initialize();
 		System.out.println("Simulation started...");
 		System.out.println();
@@ -0,0 +1,353 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Pablo Pavon Mariño.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     Pablo Pavon Mariño - initial API and implementation
+ ******************************************************************************/
+
+package com.net2plan.internal.sim;
+
+import cern.jet.stat.tdouble.Probability;
+import com.net2plan.interfaces.networkDesign.Net2PlanException;
+import com.net2plan.interfaces.networkDesign.NetPlan;
+import com.net2plan.internal.ErrorHandling;
+import com.net2plan.internal.IExternal;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * <p>Runs independent replications of the same online simulation, and aggregates their statistics with confidence intervals.</p>
+ *
+ * <p>Each replication owns its {@link SimKernel}, {@link SimCore}, a copy of the initial network design, and new instances of the
+ * event generator and event processor classes (created with their no-argument constructor). Replications differ in their random
+ * seeds: each event generator and event processor parameter whose name ends with {@code seed} (case insensitive) keeps its value in the
+ * first replication, and in the replication {@code r} takes a value obtained mixing the original seed and {@code r} with the SplitMix64
+ * function. Seeds equal to -1 (meaning a random seed) are left unchanged.</p>
+ *
+ * <p>Replications can be executed in parallel in a {@code ForkJoinPool}. Then, the event generator and event processor must not share
+ * mutable state between instances (i.e. in static fields). Optionally, the replications are launched in rounds until the confidence
+ * interval of a given metric is narrow enough.</p>
+ *
+ * <p>Some {@code NetPlan} methods save, disable and restore the global debug flag of {@link ErrorHandling}. To avoid replications
+ * in different threads racing on it, the debug mode is disabled once before a parallel run starts, and restored when all its
+ * replications finish.</p>
+ *
+ * @see SimStats#getSummaryResults(double)
+ */
+public class SimReplicationRunner
+{
+	private final NetPlan netPlan;
+	private final IExternal eventGenerator, eventProcessor;
+	private final Map<String, String> eventGeneratorParameters, eventProcessorParameters, simulationParameters, net2planParameters;
+	private final List<Map<String, Double>> replicationResults;
+	private double confidenceLevel;
+	private String stopMetric;
+	private double stopMaxRelativeHalfWidth;
+
+	/**
+	 * Confidence interval of the mean of a metric, computed from the values obtained in independent replications, assuming a Student's t-distribution.
+	 */
+	public static class ConfidenceInterval
+	{
+		private final double mean, standardDeviation, halfWidth;
+		private final int numSamples;
+
+		private ConfidenceInterval(List<Double> samples, double confidenceLevel)
+		{
+			this.numSamples = samples.size();
+			double sum = 0; for (double sample : samples) sum += sample;
+			this.mean = numSamples == 0 ? 0 : sum / numSamples;
+			double sumSquaredDeviations = 0; for (double sample : samples) sumSquaredDeviations += (sample - mean) * (sample - mean);
+			this.standardDeviation = numSamples < 2 ? 0 : Math.sqrt(sumSquaredDeviations / (numSamples - 1));
+			this.halfWidth = numSamples < 2 ? Double.POSITIVE_INFINITY : Probability.studentTInverse(1 - confidenceLevel, numSamples - 1) * standardDeviation / Math.sqrt(numSamples);
+		}
+
+		/**
+		 * Returns the sample mean.
+		 * @return The mean
+		 */
+		public double getMean() { return mean; }
+
+		/**
+		 * Returns the sample standard deviation.
+		 * @return The standard deviation
+		 */
+		public double getStandardDeviation() { return standardDeviation; }
+
+		/**
+		 * Returns the half width of the interval (infinite if there are less than two samples).
+		 * @return The half width
+		 */
+		public double getHalfWidth() { return halfWidth; }
+
+		/**
+		 * Returns the half width of the interval, divided by the absolute value of the mean (zero if both are zero, infinite if only the mean is zero).
+		 * @return The relative half width
+		 */
+		public double getRelativeHalfWidth() { return halfWidth == 0 ? 0 : halfWidth / Math.abs(mean); }
+
+		/**
+		 * Returns the lower bound of the interval.
+		 * @return The lower bound
+		 */
+		public double getLowerBound() { return mean - halfWidth; }
+
+		/**
+		 * Returns the upper bound of the interval.
+		 * @return The upper bound
+		 */
+		public double getUpperBound() { return mean + halfWidth; }
+
+		/**
+		 * Returns the number of replications the interval was computed from.
+		 * @return The number of samples
+		 */
+		public int getNumSamples() { return numSamples; }
+	}
+
+	/**
+	 * Default constructor.
+	 *
+	 * @param netPlan Initial network design (each replication works on its own copy)
+	 * @param eventGenerator Event generator (its class is instantiated once per replication)
+	 * @param eventGeneratorParameters Event generator parameters
+	 * @param eventProcessor Event processor (its class is instantiated once per replication)
+	 * @param eventProcessorParameters Event processor parameters
+	 * @param simulationParameters Simulation parameters (statistics must not be disabled)
+	 * @param net2planParameters Net2Plan parameters
+	 */
+	public SimReplicationRunner(NetPlan netPlan, IExternal eventGenerator, Map<String, String> eventGeneratorParameters, IExternal eventProcessor, Map<String, String> eventProcessorParameters, Map<String, String> simulationParameters, Map<String, String> net2planParameters)
+	{
+		if (Boolean.parseBoolean(simulationParameters.get("disableStatistics"))) throw new Net2PlanException("Statistics must be enabled to aggregate the results of the replications");
+
+		this.netPlan = netPlan.copy();
+		this.eventGenerator = eventGenerator;
+		this.eventGeneratorParameters = new LinkedHashMap<String, String>(eventGeneratorParameters);
+		this.eventProcessor = eventProcessor;
+		this.eventProcessorParameters = new LinkedHashMap<String, String>(eventProcessorParameters);
+		this.simulationParameters = new LinkedHashMap<String, String>(simulationParameters);
+		this.net2planParameters = new LinkedHashMap<String, String>(net2planParameters);
+		this.replicationResults = new ArrayList<Map<String, Double>>();
+		this.confidenceLevel = 0.95;
+		this.stopMetric = null;
+	}
+
+	/**
+	 * Sets the confidence level of the intervals (0.95 by default).
+	 *
+	 * @param confidenceLevel Confidence level, in range (0, 1)
+	 */
+	public void setConfidenceLevel(double confidenceLevel)
+	{
+		if (confidenceLevel <= 0 || confidenceLevel >= 1) throw new Net2PlanException("The confidence level must be in range (0, 1)");
+		this.confidenceLevel = confidenceLevel;
+	}
+
+	/**
+	 * Makes {@link #run(int, int, ForkJoinPool) run} stop launching replications when the relative half width of the confidence
+	 * interval of the given metric is equal or below the given threshold.
+	 *
+	 * @param metric Metric name, as returned by {@link SimStats#getSummaryResults(double)} (e.g. {@code layer0.blockedTrafficRatio}). If {@code null}, all the replications are run
+	 * @param maxRelativeHalfWidth Maximum relative half width (e.g. 0.05 for an interval of +-5% around the mean)
+	 */
+	public void setStopCriterion(String metric, double maxRelativeHalfWidth)
+	{
+		if (metric != null && maxRelativeHalfWidth <= 0) throw new Net2PlanException("The maximum relative half width of the confidence interval must be positive");
+		this.stopMetric = metric;
+		this.stopMaxRelativeHalfWidth = maxRelativeHalfWidth;
+	}
+
+	/**
+	 * <p>Runs the replications, and returns the confidence interval of each metric. If a stop criterion was set, the replications are
+	 * launched in rounds (of {@code minReplications} replications the first one, and as many replications as threads in the pool the rest)
+	 * until the criterion is met, or {@code maxReplications} replications were run. Otherwise, {@code maxReplications} replications are run.</p>
+	 *
+	 * <p>The results are the same for any number of threads, except for the number of replications run when a stop criterion was set.</p>
+	 *
+	 * @param minReplications Minimum number of replications (at least 2)
+	 * @param maxReplications Maximum number of replications
+	 * @param pool Pool where the replications are executed in parallel ({@code null} means sequentially, in the current thread)
+	 * @return Confidence interval of each metric
+	 */
+	public Map<String, ConfidenceInterval> run(int minReplications, int maxReplications, ForkJoinPool pool)
+	{
+		if (minReplications < 2) throw new Net2PlanException("At least two replications are needed to compute confidence intervals");
+		if (maxReplications < minReplications) throw new Net2PlanException("The maximum number of replications cannot be lower than the minimum");
+
+		replicationResults.clear();
+		final int roundSize = pool == null ? 1 : pool.getParallelism();
+		final boolean previousErrorHandling = ErrorHandling.DEBUG;
+		if (pool != null) ErrorHandling.DEBUG = false;
+		try
+		{
+			int numReplicationsToLaunch = stopMetric == null ? maxReplications : minReplications;
+			while (numReplicationsToLaunch > 0)
+			{
+				final int firstReplication = replicationResults.size();
+				if (pool == null)
+				{
+					for (int replication = firstReplication; replication < firstReplication + numReplicationsToLaunch; replication++)
+						replicationResults.add(runReplication(replication));
+				}
+				else
+				{
+					final List<ForkJoinTask<Map<String, Double>>> tasks = new ArrayList<ForkJoinTask<Map<String, Double>>>(numReplicationsToLaunch);
+					for (int replication = firstReplication; replication < firstReplication + numReplicationsToLaunch; replication++)
+					{
+						final int thisReplication = replication;
+						tasks.add(pool.submit(() -> runReplication(thisReplication)));
+					}
+					for (ForkJoinTask<Map<String, Double>> task : tasks) replicationResults.add(task.join());
+				}
+
+				if (stopMetric == null || isStopCriterionMet()) break;
+				numReplicationsToLaunch = Math.min(roundSize, maxReplications - replicationResults.size());
+			}
+		}
+		finally { ErrorHandling.DEBUG = previousErrorHandling; }
+
+		return getConfidenceIntervals();
+	}
+
+	/**
+	 * Returns the confidence interval of each metric, from the replications run in the last call to {@link #run(int, int, ForkJoinPool) run}.
+	 * Metrics not available in some replication (e.g. a layer removed during the simulation) are computed from the replications where they are.
+	 *
+	 * @return Confidence interval of each metric
+	 */
+	public Map<String, ConfidenceInterval> getConfidenceIntervals()
+	{
+		final Map<String, List<Double>> samples = new LinkedHashMap<String, List<Double>>();
+		for (Map<String, Double> results : replicationResults)
+			for (Map.Entry<String, Double> entry : results.entrySet())
+			{
+				List<Double> samples_thisMetric = samples.get(entry.getKey());
+				if (samples_thisMetric == null) { samples_thisMetric = new ArrayList<Double>(replicationResults.size()); samples.put(entry.getKey(), samples_thisMetric); }
+				samples_thisMetric.add(entry.getValue());
+			}
+
+		final Map<String, ConfidenceInterval> res = new LinkedHashMap<String, ConfidenceInterval>();
+		for (Map.Entry<String, List<Double>> entry : samples.entrySet())
+			res.put(entry.getKey(), new ConfidenceInterval(entry.getValue(), confidenceLevel));
+		return res;
+	}
+
+	/**
+	 * Returns the metrics obtained in each replication, in replication order.
+	 *
+	 * @return Metrics of each replication
+	 */
+	public List<Map<String, Double>> getReplicationResults()
+	{
+		return Collections.unmodifiableList(replicationResults);
+	}
+
+	/**
+	 * Returns a HTML report with the confidence intervals of the metrics.
+	 *
+	 * @return Simulation report
+	 */
+	public String getReport()
+	{
+		StringBuilder info = new StringBuilder();
+		info.append("<html><head><title>Simulation report</title></head>");
+		info.append("<body>");
+		info.append("<h1>Replication information</h1>");
+		info.append("<center><table border='1'><tr><th>Parameter</th><th>Value</th></tr>");
+		info.append(String.format("<tr><td>Number of replications</td><td>%d</td></tr>", replicationResults.size()));
+		info.append(String.format("<tr><td>Confidence level</td><td>%.3f</td></tr>", confidenceLevel));
+		if (stopMetric != null) info.append(String.format("<tr><td>Stop criterion</td><td>Relative half width of '%s' below %.3g</td></tr>", stopMetric, stopMaxRelativeHalfWidth));
+		info.append("</table></center>");
+
+		info.append("<h1>General results</h1>");
+		info.append("<center><table border='1'><tr><th>Metric</th><th>Mean</th><th>Standard deviation</th><th>Lower bound</th><th>Upper bound</th><th>Relative half width</th><th>Replications</th></tr>");
+		for (Map.Entry<String, ConfidenceInterval> entry : getConfidenceIntervals().entrySet())
+		{
+			ConfidenceInterval interval = entry.getValue();
+			info.append(String.format("<tr><td>%s</td><td>%.6g</td><td>%.6g</td><td>%.6g</td><td>%.6g</td><td>%.3g</td><td>%d</td></tr>", entry.getKey(), interval.getMean(), interval.getStandardDeviation(), interval.getLowerBound(), interval.getUpperBound(), interval.getRelativeHalfWidth(), interval.getNumSamples()));
+		}
+		info.append("</table></center>");
+		info.append("</body></html>");
+
+		return info.toString();
+	}
+
+	private boolean isStopCriterionMet()
+	{
+		final ConfidenceInterval interval = getConfidenceIntervals().get(stopMetric);
+		if (interval == null) throw new Net2PlanException("Unknown metric '" + stopMetric + "'. Available metrics: " + getConfidenceIntervals().keySet());
+		return interval.getRelativeHalfWidth() <= stopMaxRelativeHalfWidth;
+	}
+
+	private Map<String, Double> runReplication(int replication)
+	{
+		final SimKernel simKernel = new SimKernel();
+		simKernel.setGUIListener(new IGUISimulationListener()
+		{
+			@Override
+			public void refresh(boolean forceRefresh) { }
+
+			@Override
+			public void simulationStateChanged(SimCore.SimState simulationState, Throwable reason) { }
+		});
+		simKernel.setNetPlan(netPlan.copy());
+		simKernel.configureSimulation(simulationParameters, net2planParameters, newInstance(eventGenerator), getReplicationParameters(eventGeneratorParameters, replication), newInstance(eventProcessor), getReplicationParameters(eventProcessorParameters, replication));
+		simKernel.getSimCore().setBatchMode(true);
+		simKernel.initialize();
+		simKernel.getSimCore().setSimulationState(SimCore.SimState.RUNNING);
+		simKernel.getSimCore().run();
+
+		final Throwable reason = simKernel.getLastReason();
+		if (reason instanceof Net2PlanException) throw new Net2PlanException("Replication " + replication + ": " + reason.getMessage());
+		if (reason != null && !(reason instanceof EndSimulationException)) throw new RuntimeException(reason);
+
+		return simKernel.getSimulationStatistics().getSummaryResults(simKernel.getSimCore().getFutureEventList().getCurrentSimulationTime());
+	}
+
+	static Map<String, String> getReplicationParameters(Map<String, String> parameters, int replication)
+	{
+		final Map<String, String> res = new LinkedHashMap<String, String>(parameters);
+		for (Map.Entry<String, String> entry : res.entrySet())
+		{
+			if (!entry.getKey().toLowerCase(Locale.getDefault()).endsWith("seed")) continue;
+			final long seed = Long.parseLong(entry.getValue());
+			if (seed != -1) entry.setValue(Long.toString(getReplicationSeed(seed, replication)));
+		}
+		return res;
+	}
+
+	/**
+	 * Returns the seed used in the given replication, for a parameter with the given seed. The first replication uses the original seed. 
+	 * The rest use the SplitMix64 finalizer (the one of {@code java.util.SplittableRandom}) applied to the original seed advanced {@code r} 
+	 * times by the golden ratio increment, so that the seeds of the replications are spread over the 64 bits, and do not coincide with 
+	 * the seeds of other replications of a simulation started with a close seed (as {@code seed + r} would do). The value -1 is never returned.
+	 *
+	 * @param seed Original seed
+	 * @param replication Replication number (starting from 0)
+	 * @return The seed of the replication
+	 */
+	static long getReplicationSeed(long seed, int replication)
+	{
+		if (replication == 0) return seed;
+		long z = seed + replication * 0x9E3779B97F4A7C15L;
+		do
+		{
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			z = z ^ (z >>> 31);
+		} while (z == -1);
+		return z;
+	}
+
+	private static IExternal newInstance(IExternal prototype)
+	{
+		try { return prototype.getClass().getDeclaredConstructor().newInstance(); }
+		catch (Exception e) { throw new Net2PlanException("Unable to instantiate class " + prototype.getClass().getName() + " for a new replication: " + e.getMessage()); }
+	}
+}
@@ -0,0 +1,370 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pablo Pavon-Marino.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     Pablo Pavon-Marino - from version 0.4.0 onwards
+ ******************************************************************************/
+
+package com.net2plan.libraries;
+
+import cern.colt.matrix.tdouble.DoubleFactory1D;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import com.net2plan.interfaces.networkDesign.*;
+import com.net2plan.interfaces.simulation.IEventProcessor;
+import com.net2plan.interfaces.simulation.SimEvent;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+
+/**
+ * <p>Evaluates the network in a list of failure states (each one given by the set of SRGs going down), e.g. the ones returned by
+ * {@link SRGUtils#enumerateFailureStates(Collection, boolean, boolean)}, or in the failure states of a {@link SRGUtils.FailureStateEnumeration}.</p>
+ *
+ * <p>The failure states are evaluated on replicas of the design (copies made once, not once per state). In each failure state, the nodes and
+ * links of the failing SRGs are set as down, either directly or through the event processor reacting to the failures (e.g. a recovery
+ * algorithm), the resulting {@link FailureStateResult result vectors} are obtained, and then the failure is rolled back by repairing the
+ * same nodes and links (without event processor, the previous state is directly restored with a {@link FailureStateJournal}). Each replica owns a new instance of the event processor, initialized with the replica.</p>
+ *
+ * <p>The result vectors of each failure state are not kept: they are passed to a {@code Collector}, so only its accumulated result
+ * is in memory. The failure states are split into consecutive blocks, which can be evaluated in parallel in a {@code ForkJoinPool}. The
+ * result vectors of each block are accumulated in a separate container, and the containers are combined in the order of the blocks.</p>
+ *
+ * <p>The event processor is expected to bring the design back to its initial state when the failure is repaired (e.g. as with protection
+ * schemes). Otherwise (e.g. restored routes are not moved back to their original paths), the result of a failure state depends on the
+ * states evaluated before in the same replica, as it happens when the states are evaluated one after the other on a single design. If it does,
+ * the result does not depend on the number of threads.</p>
+ *
+ * @author Pablo Pavon-Marino
+ */
+public class FailureStateAnalysis
+{
+	private final static int MAX_NUMBER_OF_BLOCKS = 256;
+
+	private final NetPlan netPlan;
+	private final Supplier<? extends IEventProcessor> eventProcessorFactory;
+	private final Map<String, String> algorithmParameters, simulationParameters, net2planParameters;
+	private BiConsumer<Integer, NetPlan> failureStateListener;
+
+	/**
+	 * Result vectors of the network in a failure state. Vectors are indexed as the elements of the design the analysis was created with.
+	 */
+	public static class FailureStateResult
+	{
+		private final int failureStateIndex;
+		private final List<DoubleMatrix1D> blockedTraffic_ld, traversingOversubscribedLinks_ld, worstCasePropagationTimeInMs_ld;
+		private final List<DoubleMatrix1D> blockedTraffic_lmd, traversingOversubscribedLinks_lmd, worstCasePropagationTimeInMs_lmd;
+		private final List<DoubleMatrix1D> utilization_le;
+
+		private FailureStateResult(int failureStateIndex, NetPlan np)
+		{
+			this.failureStateIndex = failureStateIndex;
+			final int L = np.getNumberOfLayers();
+			this.blockedTraffic_ld = new ArrayList<DoubleMatrix1D>(L);
+			this.traversingOversubscribedLinks_ld = new ArrayList<DoubleMatrix1D>(L);
+			this.worstCasePropagationTimeInMs_ld = new ArrayList<DoubleMatrix1D>(L);
+			this.blockedTraffic_lmd = new ArrayList<DoubleMatrix1D>(L);
+			this.traversingOversubscribedLinks_lmd = new ArrayList<DoubleMatrix1D>(L);
+			this.worstCasePropagationTimeInMs_lmd = new ArrayList<DoubleMatrix1D>(L);
+			this.utilization_le = new ArrayList<DoubleMatrix1D>(L);
+			for (NetworkLayer layer : np.getNetworkLayers())
+			{
+				final List<Demand> demands = np.getDemands(layer);
+				final DoubleMatrix1D blockedTraffic_d = DoubleFactory1D.dense.make(demands.size());
+				final DoubleMatrix1D traversingOversubscribedLinks_d = DoubleFactory1D.dense.make(demands.size());
+				final DoubleMatrix1D worstCasePropagationTimeInMs_d = DoubleFactory1D.dense.make(demands.size());
+				for (Demand d : demands)
+				{
+					blockedTraffic_d.setQuick(d.getIndex(), d.getBlockedTraffic());
+					traversingOversubscribedLinks_d.setQuick(d.getIndex(), d.isTraversingOversubscribedLinks() ? 1 : 0);
+					worstCasePropagationTimeInMs_d.setQuick(d.getIndex(), d.getWorstCasePropagationTimeInMs());
+				}
+				blockedTraffic_ld.add(blockedTraffic_d);
+				traversingOversubscribedLinks_ld.add(traversingOversubscribedLinks_d);
+				worstCasePropagationTimeInMs_ld.add(worstCasePropagationTimeInMs_d);
+
+				final List<MulticastDemand> multicastDemands = np.getMulticastDemands(layer);
+				final DoubleMatrix1D blockedTraffic_md = DoubleFactory1D.dense.make(multicastDemands.size());
+				final DoubleMatrix1D traversingOversubscribedLinks_md = DoubleFactory1D.dense.make(multicastDemands.size());
+				final DoubleMatrix1D worstCasePropagationTimeInMs_md = DoubleFactory1D.dense.make(multicastDemands.size());
+				for (MulticastDemand d : multicastDemands)
+				{
+					blockedTraffic_md.setQuick(d.getIndex(), d.getBlockedTraffic());
+					traversingOversubscribedLinks_md.setQuick(d.getIndex(), d.isTraversingOversubscribedLinks() ? 1 : 0);
+					worstCasePropagationTimeInMs_md.setQuick(d.getIndex(), d.getWorseCasePropagationTimeInMs());
+				}
+				blockedTraffic_lmd.add(blockedTraffic_md);
+				traversingOversubscribedLinks_lmd.add(traversingOversubscribedLinks_md);
+				worstCasePropagationTimeInMs_lmd.add(worstCasePropagationTimeInMs_md);
+
+				final List<Link> links = np.getLinks(layer);
+				final DoubleMatrix1D utilization_e = DoubleFactory1D.dense.make(links.size());
+				for (Link e : links) utilization_e.setQuick(e.getIndex(), e.getUtilization());
+				utilization_le.add(utilization_e);
+			}
+		}
+
+		/**
+		 * Returns the index of the failure state in the list of failure states analyzed, or its position in the enumeration of failure states (-1 if the result was obtained with {@link FailureStateAnalysis#evaluateCurrentState(NetPlan)}).
+		 * @return The index
+		 */
+		public int getFailureStateIndex() { return failureStateIndex; }
+
+		/**
+		 * Returns the blocked traffic of each unicast demand of the given layer.
+		 * @param layer Layer (of the analyzed design)
+		 * @return The blocked traffic per demand
+		 */
+		public DoubleMatrix1D getVectorDemandBlockedTraffic(NetworkLayer layer) { return blockedTraffic_ld.get(layer.getIndex()); }
+
+		/**
+		 * Returns a vector with one element per unicast demand of the given layer, equal to 1 if the demand traverses oversubscribed links, and 0 otherwise.
+		 * @param layer Layer (of the analyzed design)
+		 * @return The vector
+		 */
+		public DoubleMatrix1D getVectorDemandTraversingOversubscribedLinks(NetworkLayer layer) { return traversingOversubscribedLinks_ld.get(layer.getIndex()); }
+
+		/**
+		 * Returns the worst case end-to-end propagation time (in ms) of each unicast demand of the given layer.
+		 * @param layer Layer (of the analyzed design)
+		 * @return The worst case propagation time per demand
+		 */
+		public DoubleMatrix1D getVectorDemandWorstCasePropagationTimeInMs(NetworkLayer layer) { return worstCasePropagationTimeInMs_ld.get(layer.getIndex()); }
+
+		/**
+		 * Returns the blocked traffic of each multicast demand of the given layer.
+		 * @param layer Layer (of the analyzed design)
+		 * @return The blocked traffic per multicast demand
+		 */
+		public DoubleMatrix1D getVectorMulticastDemandBlockedTraffic(NetworkLayer layer) { return blockedTraffic_lmd.get(layer.getIndex()); }
+
+		/**
+		 * Returns a vector with one element per multicast demand of the given layer, equal to 1 if the demand traverses oversubscribed links, and 0 otherwise.
+		 * @param layer Layer (of the analyzed design)
+		 * @return The vector
+		 */
+		public DoubleMatrix1D getVectorMulticastDemandTraversingOversubscribedLinks(NetworkLayer layer) { return traversingOversubscribedLinks_lmd.get(layer.getIndex()); }
+
+		/**
+		 * Returns the worst case end-to-end propagation time (in ms) of each multicast demand of the given layer.
+		 * @param layer Layer (of the analyzed design)
+		 * @return The worst case propagation time per multicast demand
+		 */
+		public DoubleMatrix1D getVectorMulticastDemandWorstCasePropagationTimeInMs(NetworkLayer layer) { return worstCasePropagationTimeInMs_lmd.get(layer.getIndex()); }
+
+		/**
+		 * Returns the utilization of each link of the given layer.
+		 * @param layer Layer (of the analyzed design)
+		 * @return The utilization per link
+		 * @see Link#getUtilization()
+		 */
+		public DoubleMatrix1D getVectorLinkUtilization(NetworkLayer layer) { return utilization_le.get(layer.getIndex()); }
+	}
+
+	/* Consecutive failure states, evaluated in the same replica */
+	private interface FailureStateBlock
+	{
+		void forEachFailureState(ObjIntConsumer<Collection<SharedRiskGroup>> action);
+	}
+
+	/* A copy of the design, with its own event processor, where the failure states are applied and rolled back */
+	private class Replica
+	{
+		private final NetPlan np;
+		private final IEventProcessor eventProcessor;
+		private final int initialNumberOfNodesDown, initialNumberOfLinksDown;
+
+		private Replica()
+		{
+			this.np = netPlan.copy();
+			this.eventProcessor = eventProcessorFactory == null ? null : eventProcessorFactory.get();
+			if (eventProcessor != null) eventProcessor.initialize(np, algorithmParameters, simulationParameters, net2planParameters);
+			this.initialNumberOfNodesDown = np.getNodesDown().size();
+			this.initialNumberOfLinksDown = np.getLinksDownAllLayers().size();
+		}
+
+		private FailureStateResult evaluate(int failureStateIndex, Collection<SharedRiskGroup> failingSRGs)
+		{
+			/* The nodes and links already down are not affected by the failure, nor repaired when it is rolled back */
+			final Set<Node> nodesToSetAsDown = new HashSet<Node>();
+			final Set<Link> linksToSetAsDown = new HashSet<Link>();
+			for (SharedRiskGroup srg : failingSRGs)
+			{
+				if (srg.getIndex() >= np.getNumberOfSRGs() || srg.getId() != np.getSRG(srg.getIndex()).getId())
+					throw new Net2PlanException("The SRG " + srg + " does not belong to the analyzed design");
+				final SharedRiskGroup replicaSRG = np.getSRG(srg.getIndex());
+				for (Node n : replicaSRG.getNodes()) if (n.isUp()) nodesToSetAsDown.add(n);
+				for (Link e : replicaSRG.getLinksAllLayers()) if (e.isUp()) linksToSetAsDown.add(e);
+			}
+
+			final boolean changesState = !nodesToSetAsDown.isEmpty() || !linksToSetAsDown.isEmpty();
+			if (changesState && eventProcessor == null)
+			{
+				/* Without event processor, the failure is undone through the journal, instead of repairing the elements and recomputing the routing */
+				final FailureStateJournal journal = np.setLinksAndNodesFailureStateWithJournal(null, linksToSetAsDown, null, nodesToSetAsDown);
+				final FailureStateResult result = new FailureStateResult(failureStateIndex, np);
+				if (failureStateListener != null) failureStateListener.accept(failureStateIndex, np);
+				journal.rollback();
+				return result;
+			}
+			if (changesState) changeFailureState(null, nodesToSetAsDown, null, linksToSetAsDown);
+			final FailureStateResult result = new FailureStateResult(failureStateIndex, np);
+			if (failureStateListener != null) failureStateListener.accept(failureStateIndex, np);
+			if (changesState)
+			{
+				changeFailureState(nodesToSetAsDown, null, linksToSetAsDown, null);
+				if (np.getNodesDown().size() != initialNumberOfNodesDown || np.getLinksDownAllLayers().size() != initialNumberOfLinksDown)
+					throw new Net2PlanException("The network elements down in failure state " + failureStateIndex + " were not repaired when the failure was rolled back");
+			}
+			return result;
+		}
+
+		private void changeFailureState(Collection<Node> nodesToUp, Collection<Node> nodesToDown, Collection<Link> linksToUp, Collection<Link> linksToDown)
+		{
+			final SimEvent.NodesAndLinksChangeFailureState failureInfo = new SimEvent.NodesAndLinksChangeFailureState(nodesToUp, nodesToDown, linksToUp, linksToDown);
+			eventProcessor.processEvent(np, new SimEvent(0, SimEvent.DestinationModule.EVENT_PROCESSOR, -1, failureInfo));
+		}
+	}
+
+	/**
+	 * Default constructor.
+	 *
+	 * @param netPlan Network design (it is not modified: the failure states are evaluated on copies)
+	 * @param eventProcessorFactory Creates the event processor that reacts to the failures and repairs (one instance per replica of the design). If {@code null}, nodes and links are directly set as down and up
+	 * @param algorithmParameters Event processor parameters
+	 * @param simulationParameters Simulation parameters (passed to the event processor)
+	 * @param net2planParameters Net2Plan parameters
+	 */
+	public FailureStateAnalysis(NetPlan netPlan, Supplier<? extends IEventProcessor> eventProcessorFactory, Map<String, String> algorithmParameters, Map<String, String> simulationParameters, Map<String, String> net2planParameters)
+	{
+		this.netPlan = netPlan.copy();
+		this.eventProcessorFactory = eventProcessorFactory;
+		this.algorithmParameters = algorithmParameters == null ? new HashMap<String, String>() : new HashMap<String, String>(algorithmParameters);
+		this.simulationParameters = simulationParameters == null ? new HashMap<String, String>() : new HashMap<String, String>(simulationParameters);
+		this.net2planParameters = net2planParameters == null ? new HashMap<String, String>() : new HashMap<String, String>(net2planParameters);
+	}
+
+	/**
+	 * Sets a listener which is called in each failure state, with the state index and the replica of the design in that state, before the failure
+	 * is rolled back (e.g. to save the design in a file). The listener must not modify the design, and may be called from several threads at the same time.
+	 *
+	 * @param failureStateListener Listener ({@code null} means no listener)
+	 */
+	public void setFailureStateListener(BiConsumer<Integer, NetPlan> failureStateListener)
+	{
+		this.failureStateListener = failureStateListener;
+	}
+
+	/**
+	 * Evaluates the given failure states, and returns the result of the collector applied to the result vectors of each state.
+	 *
+	 * @param <A> Type of the accumulation container of the collector
+	 * @param <R> Type of the result of the collector
+	 * @param failureStates Failure states, each one given by the SRGs (of the design this analysis was created with) going down
+	 * @param collector Collector of the result vectors. Its containers are used from one thread at a time
+	 * @param pool Pool where the failure states are evaluated in parallel ({@code null} means sequentially, in the current thread)
+	 * @return The collector result
+	 */
+	public <A, R> R run(List<? extends Collection<SharedRiskGroup>> failureStates, Collector<FailureStateResult, A, R> collector, ForkJoinPool pool)
+	{
+		final List<Collection<SharedRiskGroup>> states = new ArrayList<Collection<SharedRiskGroup>>(failureStates);
+		final int numBlocks = Math.min(states.size(), MAX_NUMBER_OF_BLOCKS);
+		final List<FailureStateBlock> blocks = new ArrayList<FailureStateBlock>(numBlocks);
+		for (int block = 0; block < numBlocks; block++)
+		{
+			final int firstState = (int) ((long) states.size() * block / numBlocks);
+			final int lastState = (int) ((long) states.size() * (block + 1) / numBlocks);
+			blocks.add(action -> { for (int state = firstState; state < lastState; state++) action.accept(states.get(state), state); });
+		}
+		return runBlocks(blocks, collector, pool);
+	}
+
+	/**
+	 * Evaluates the failure states of the given spliterator (e.g. obtained from a {@link SRGUtils.FailureStateEnumeration}), and returns the result
+	 * of the collector applied to the result vectors of each state. The index of each result is the position of the state in the enumeration. The
+	 * spliterator is split into blocks, so the states are enumerated as they are evaluated, and are not kept in memory.
+	 *
+	 * @param <A> Type of the accumulation container of the collector
+	 * @param <R> Type of the result of the collector
+	 * @param failureStates Failure states, with the SRGs of the design this analysis was created with
+	 * @param collector Collector of the result vectors. Its containers are used from one thread at a time
+	 * @param pool Pool where the failure states are evaluated in parallel ({@code null} means sequentially, in the current thread)
+	 * @return The collector result
+	 */
+	public <A, R> R run(Spliterator<SRGUtils.FailureState> failureStates, Collector<FailureStateResult, A, R> collector, ForkJoinPool pool)
+	{
+		List<Spliterator<SRGUtils.FailureState>> spliterators = Collections.singletonList(failureStates);
+		boolean splitted = true;
+		while (splitted && spliterators.size() < MAX_NUMBER_OF_BLOCKS)
+		{
+			splitted = false;
+			final List<Spliterator<SRGUtils.FailureState>> nextSpliterators = new ArrayList<Spliterator<SRGUtils.FailureState>>(2 * spliterators.size());
+			for (Spliterator<SRGUtils.FailureState> spliterator : spliterators)
+			{
+				final Spliterator<SRGUtils.FailureState> prefix = nextSpliterators.size() + 1 < MAX_NUMBER_OF_BLOCKS ? spliterator.trySplit() : null;
+				if (prefix != null) { nextSpliterators.add(prefix); splitted = true; }
+				nextSpliterators.add(spliterator);
+			}
+			spliterators = nextSpliterators;
+		}
+		final List<FailureStateBlock> blocks = new ArrayList<FailureStateBlock>(spliterators.size());
+		for (Spliterator<SRGUtils.FailureState> spliterator : spliterators)
+			blocks.add(action -> spliterator.forEachRemaining(state -> action.accept(state, state.getIndex())));
+		return runBlocks(blocks, collector, pool);
+	}
+
+	/**
+	 * Returns the result vectors of the given design in its current state (e.g. the no-failure state).
+	 *
+	 * @param netPlan Network design
+	 * @return The result vectors (with failure state index -1)
+	 */
+	public static FailureStateResult evaluateCurrentState(NetPlan netPlan)
+	{
+		return new FailureStateResult(-1, netPlan);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <A, R> R runBlocks(List<FailureStateBlock> blocks, Collector<FailureStateResult, A, R> collector, ForkJoinPool pool)
+	{
+		final Queue<Replica> idleReplicas = new ConcurrentLinkedQueue<Replica>();
+		final List<A> containers = new ArrayList<A>(blocks.size());
+		if (pool == null)
+		{
+			for (FailureStateBlock block : blocks) containers.add(evaluateBlock(block, collector, idleReplicas));
+		}
+		else
+		{
+			final List<ForkJoinTask<A>> tasks = new ArrayList<ForkJoinTask<A>>(blocks.size());
+			for (FailureStateBlock block : blocks) tasks.add(pool.submit(() -> evaluateBlock(block, collector, idleReplicas)));
+			for (ForkJoinTask<A> task : tasks) containers.add(task.join());
+		}
+
+		final BinaryOperator<A> combiner = collector.combiner();
+		A container = containers.isEmpty() ? collector.supplier().get() : containers.get(0);
+		for (int block = 1; block < containers.size(); block++) container = combiner.apply(container, containers.get(block));
+		return collector.characteristics().contains(Collector.Characteristics.IDENTITY_FINISH) ? (R) container : collector.finisher().apply(container);
+	}
+
+	/* Evaluates the failure states of the block in an idle replica (a new one is created if none is available), so there are at most as many replicas as threads */
+	private <A> A evaluateBlock(FailureStateBlock block, Collector<FailureStateResult, A, ?> collector, Queue<Replica> idleReplicas)
+	{
+		final A container = collector.supplier().get();
+		final BiConsumer<A, FailureStateResult> accumulator = collector.accumulator();
+		final Replica idleReplica = idleReplicas.poll();
+		final Replica replica = idleReplica == null ? new Replica() : idleReplica;
+		block.forEachFailureState((failingSRGs, failureStateIndex) -> accumulator.accept(container, replica.evaluate(failureStateIndex, failingSRGs)));
+		idleReplicas.add(replica);
+		return container;
+	}
+}
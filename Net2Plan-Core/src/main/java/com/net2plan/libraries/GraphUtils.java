@@ -926,60 +926,11 @@ public class GraphUtils
 	 * @param maxRouteCost Maximum route cost. If non-positive, no maximum limit is assumed
 	 * @param maxRouteCostFactorRespectToShortestPath Maximum route cost factor respect to the shortest path. If non-positive, no maximum limit is assumed
 	 * @param maxRouteCostRespectToShortestPath Maximum route cost respect to the shortest path. If non-positive, no maximum limit is assumed
-	 * @return K-shortest paths */
+	 * @return K-shortest paths
+	 * @see CSRGraph#getKLooplessShortestPaths(Node, Node, int, double, int, double, double, double, double) CSRGraph.getKLooplessShortestPaths, to reuse the same graph for several node pairs */
 	public static List<List<Link>> getKLooplessShortestPaths(List<Node> nodes, List<Link> links, Node originNode, Node destinationNode, Map<Link, Double> linkCostMap, int K, double maxLengthInKm, int maxNumHops, double maxPropDelayInMs, double maxRouteCost, double maxRouteCostFactorRespectToShortestPath, double maxRouteCostRespectToShortestPath)
 	{
-		if (maxLengthInKm <= 0) maxLengthInKm = Double.MAX_VALUE;
-		if (maxNumHops <= 0) maxNumHops = Integer.MAX_VALUE;
-		if (maxPropDelayInMs <= 0) maxPropDelayInMs = Double.MAX_VALUE;
-		if (maxRouteCost <= 0) maxRouteCost = Double.MAX_VALUE;
-		if (maxRouteCostFactorRespectToShortestPath <= 0) maxRouteCostFactorRespectToShortestPath = Double.MAX_VALUE;
-		if (maxRouteCostRespectToShortestPath <= 0) maxRouteCostRespectToShortestPath = Double.MAX_VALUE;
-
-		if (linkCostMap == null)
-		{
-			linkCostMap = new HashMap<Link, Double>();
-			for (Link e : links)
-				linkCostMap.put(e, 1.0);
-		}
-
-		Graph<Node, Link> g = JUNGUtils.getGraphFromLinkMap(nodes, links);
-
-		YenAlgorithm<Node, Link> paths = new YenAlgorithm<Node, Link>(g, (Transformer<Link, Double>) JUNGUtils.getEdgeWeightTransformer(linkCostMap), K, maxNumHops, maxLengthInKm, maxPropDelayInMs, maxRouteCost, maxRouteCostFactorRespectToShortestPath, maxRouteCostRespectToShortestPath)
-		{
-			@Override
-			public boolean acceptPath(GraphPath<Link> candidate)
-			{
-				if (maxNumHops != Integer.MAX_VALUE && candidate.getPathLength() > maxNumHops) return false;
-
-				if (maxLengthInKm == Double.MAX_VALUE && maxPropDelayInMs == Double.MAX_VALUE) return true;
-
-				double pathLengthInKm = 0;
-				double pathPropDelayInMs = 0;
-				for (Link link : candidate.getPath())
-				{
-					pathLengthInKm += link.getLengthInKm();
-					pathPropDelayInMs += link.getPropagationDelayInMs();
-				}
-
-				return pathLengthInKm <= maxLengthInKm && pathPropDelayInMs <= maxPropDelayInMs;
-			}
-
-			@Override
-			public boolean compareCandidateToShortestPath(GraphPath<Link> candidate, GraphPath<Link> shortestPath)
-			{
-				if (maxRouteCost != Double.MAX_VALUE && candidate.getPathWeight() > maxRouteCost) { return false; }
-
-				if (maxRouteCostFactorRespectToShortestPath != Double.MAX_VALUE && candidate.getPathWeight() > shortestPath.getPathWeight() * maxRouteCostFactorRespectToShortestPath) { return false; }
-
-				return !(maxRouteCostRespectToShortestPath != Double.MAX_VALUE && candidate.getPathWeight() > shortestPath.getPathWeight() + maxRouteCostRespectToShortestPath);
-			}
-		};
-		return paths.getPaths(originNode, destinationNode, K);
-		//		////////////////////////////////////
-		//		Graph<Node, Link> graph = JUNGUtils.getGraphFromLinkMap(nodes , linkMap);
-		//		final Transformer<Link, Double> nev = JUNGUtils.getEdgeWeightTransformer(linkCostMap);
-		//		return JUNGUtils.getKLooplessShortestPaths(graph, nev, originNode, destinationNode , K);
+		return new CSRGraph(nodes, links, linkCostMap).getKLooplessShortestPaths(originNode, destinationNode, K, maxLengthInKm, maxNumHops, maxPropDelayInMs, maxRouteCost, maxRouteCostFactorRespectToShortestPath, maxRouteCostRespectToShortestPath);
 	}
 
 	/** Returns the K minimum cost service chains between two nodes (summing costs of links and resources traversed), traversing a given set of resource types, satisfying some user-defined constraints.
@@ -1007,6 +958,32 @@ public class GraphUtils
 			Node originNode, Node destinationNode, List<String> sequenceOfResourceTypesToTraverse , DoubleMatrix1D linkCost, Map<Resource,Double> resourceCost , 
 			int K, double maxCostServiceChain , double maxLengthInKmPerSubpath, int maxNumHopsPerSubpath, double maxPropDelayInMsPerSubpath, 
 			Map<Pair<Node,Node>,List<Pair<List<Link>,Double>>> cacheSubpathLists)
+	{
+		return getKMinimumCostServiceChains(links, originNode, destinationNode, sequenceOfResourceTypesToTraverse, linkCost, resourceCost, K, maxCostServiceChain, 
+				maxLengthInKmPerSubpath, maxNumHopsPerSubpath, maxPropDelayInMsPerSubpath, cacheSubpathLists, null);
+	}
+
+	/** Returns the K minimum cost service chains between two nodes, as in {@link #getKMinimumCostServiceChains(List, Node, Node, List, DoubleMatrix1D, Map, int, double, double, int, double, Map)}, 
+	 * computing the subpaths not in the cache in the given graph, so it can be shared by the calls for several node pairs.
+	 * @param links The set of links which can be used for the chain
+	 * @param originNode The origin node of the chain
+	 * @param destinationNode The destination node of the chain (could be the same as the origin node)
+	 * @param sequenceOfResourceTypesToTraverse the types of the sequence of resources to traverse
+	 * @param linkCost the cost of each link (if null, all links have cost one), all numbers must be strictly positive
+	 * @param resourceCost a map with the cost of each resource (if null, all resources have cost zero)
+	 * @param K The maximum number of service chains to return (less than K may be returned if there are no different paths).
+	 * @param maxCostServiceChain Service chains with a cost higher than this are not enumerated
+	 * @param maxLengthInKmPerSubpath The maximum length in km in each subpath. Service chains not satisfying this are not enumerated
+	 * @param maxNumHopsPerSubpath The maximum number of traversed links in each subpath. Service chains not satisfying this are not enumerated
+	 * @param maxPropDelayInMsPerSubpath The propagation delay summing the links in each subpath. Service chains not satisfying this are not enumerated
+	 * @param cacheSubpathLists A map with the k-shortest subpaths already computed per node pair (see the other method). If null, no entries are precomputed nor returned
+	 * @param graph The graph built with all the nodes of the design, the given links and their costs. If null, it is built here if some subpath is not in the cache
+	 * @return the (at most) K minimum cost service chains.
+	 */
+	public static List<Pair<List<NetworkElement>,Double>> getKMinimumCostServiceChains(List<Link> links ,  
+			Node originNode, Node destinationNode, List<String> sequenceOfResourceTypesToTraverse , DoubleMatrix1D linkCost, Map<Resource,Double> resourceCost , 
+			int K, double maxCostServiceChain , double maxLengthInKmPerSubpath, int maxNumHopsPerSubpath, double maxPropDelayInMsPerSubpath, 
+			Map<Pair<Node,Node>,List<Pair<List<Link>,Double>>> cacheSubpathLists , CSRGraph graph)
 	{
 		if (maxLengthInKmPerSubpath <= 0) maxLengthInKmPerSubpath = Double.MAX_VALUE;
 		if (maxNumHopsPerSubpath <= 0) maxNumHopsPerSubpath = Integer.MAX_VALUE;
@@ -1032,13 +1009,14 @@ public class GraphUtils
 			if (resourceCost != null) resourcesNotInfiniteCostThisType.removeIf(e-> resourceCost.get(e) == Double.MAX_VALUE); 
 			if (resourcesNotInfiniteCostThisType.isEmpty()) return new LinkedList<Pair<List<NetworkElement>,Double>> ();
 			final Set<Node> nodesWithResourcesNotInfiniteCostThisType = resourcesNotInfiniteCostThisType.stream().map(e -> e.getHostNode()).
-					collect(Collectors.toCollection(HashSet::new));
+					sorted(Comparator.comparingInt(Node::getIndex)).collect(Collectors.toCollection(LinkedHashSet::new)); // node index order, so ties are always resolved the same way
 			nodesPerPhase.add(nodesWithResourcesNotInfiniteCostThisType);
 		}
 		nodesPerPhase.add(Collections.singleton(destinationNode));
 
 		/* initialize the path lists. This includes (n,n) pairs with one path of empty seq links and zero cost */
 		if (cacheSubpathLists == null) cacheSubpathLists = new HashMap<Pair<Node,Node>,List<Pair<List<Link>,Double>>> ();
+		// if not given, the graph is built only if some subpath list is not in the cache, and shared by all of them
 		for (int contPhase = 0; contPhase < nodesPerPhase.size() ; contPhase ++)
 		{
 			final Set<Node> outputNodes = nodesPerPhase.get(contPhase);
@@ -1048,7 +1026,8 @@ public class GraphUtils
 					if (!cacheSubpathLists.containsKey(Pair.of(nIn, nOut)))
 						if (nIn != nOut)
 						{
-							List<List<Link>> kPaths = getKLooplessShortestPaths(netPlan.getNodes(), links , nIn, nOut, linkCostMap, K, maxLengthInKmPerSubpath, maxNumHopsPerSubpath, maxPropDelayInMsPerSubpath, -1, -1, -1);
+							if (graph == null) graph = new CSRGraph(netPlan.getNodes(), links, linkCostMap);
+							List<List<Link>> kPaths = graph.getKLooplessShortestPaths(nIn, nOut, K, maxLengthInKmPerSubpath, maxNumHopsPerSubpath, maxPropDelayInMsPerSubpath, -1, -1, -1);
 							List<Pair<List<Link> , Double>> pathsInfo = new ArrayList<Pair<List<Link> , Double>> ();
 							double previousCost = 0;
 							for (List<Link> path : kPaths)
@@ -1094,6 +1073,8 @@ public class GraphUtils
 				List<Pair<List<NetworkElement>,Double>> kSCsToThisOutNode = new ArrayList<Pair<List<NetworkElement>,Double>> (); 
 				for (Node intermediateNode : thisPhaseNodes)
 				{
+					final List<Resource> intermediateResources = new ArrayList<Resource> (intermediateNode.getResources(intermediateNodeResourceType));
+					Collections.sort(intermediateResources, Comparator.comparingInt(Resource::getIndex)); // index order, so ties are always resolved the same way
 					for (Pair<List<NetworkElement>,Double> scOriginToIntermediateInfo : outNodeToKSCsMap.get(intermediateNode))
 					{
 						final List<NetworkElement> scOriginToIntermediate = scOriginToIntermediateInfo.getFirst();
@@ -1107,7 +1088,7 @@ public class GraphUtils
 								if (kSCsToThisOutNode.get(K-1).getSecond() <= scOriginToIntermediateCost + scIntermediateToOutCost)
 									break; // do not add this SC (already full), and no more interm->out paths: all are worse
 							/* Add as many concatenated SCs as resources here, but do not exceed maximum size k of total list. Resource costs may not be ordered  */
-							for (Resource intermediateResource : intermediateNode.getResources(intermediateNodeResourceType))
+							for (Resource intermediateResource : intermediateResources)
 							{
 								final Double intermediateResourceCost = resourceCost == null? 0.0 : resourceCost.get(intermediateResource);
 								if (intermediateResourceCost == Double.MAX_VALUE) continue; // resources with infinite cost cannot be used
@@ -1369,6 +1350,8 @@ public class GraphUtils
 	 *     <li>the type of routing of the demand (loopless, or close cycles. Open cycles are not detected)</li>
 	 *     <li>the fraction of demand traffic that arrives to the destination node and is absorbed there (it may be less than one if the routing has cycles that involve the destination node)</li>
 	 * </ol>
+	 * <p>If the links with forwarding rules form an acyclic graph, the row is computed propagating the traffic from the ingress node in topological
+	 * order, in a time proportional to the number of forwarding rules. Otherwise, it is computed solving the linear system with the matrix I-Q.</p>
 	 * @param frs the forwarding rules applicable
 	 * @param outFrs output forwarding rule
 	 * @param ingressNode the ingress node
@@ -1379,25 +1362,14 @@ public class GraphUtils
 	{
 //		System.out.println("---------------------");
 		final int N = ingressNode.getNetPlan ().getNumberOfNodes();
-		DoubleMatrix2D eyeMinusQ_nn = new SparseCCDoubleMatrix2D (N,N);
-		for (Entry<Link,Double> frInfo : frs.entrySet())
-		{
-			final int n1 = frInfo.getKey().getOriginNode().getIndex ();
-			final int n2 = frInfo.getKey().getDestinationNode().getIndex ();
-			final double splitFactor = frInfo.getValue();
-			eyeMinusQ_nn.setQuick(n2, n1 , eyeMinusQ_nn.getQuick(n2,n1) - splitFactor);
-		}
-		final double s_n = egressNode == null? -1 : 1 + eyeMinusQ_nn.viewColumn(egressNode.getIndex ()).zSum();
-		for (int n = 0; n < N ; n ++) eyeMinusQ_nn.setQuick(n, n, 1+eyeMinusQ_nn.getQuick(n,n));
-		DoubleMatrix1D Mv;
-		try 
-		{
-			DoubleMatrix1D e_k = DoubleFactory1D.sparse.make(N); e_k.set(ingressNode.getIndex (), 1.0);
-//			System.out.println(eyeMinusQ_nn);
-			Mv = new SparseDoubleAlgebra().solve(eyeMinusQ_nn, e_k);
-		}
-		catch(IllegalArgumentException e) { return Quintuple.of (null , RoutingCycleType.CLOSED_CYCLES , s_n , Double.MAX_VALUE , Double.MAX_VALUE) ; }
-		
+		double s_n = egressNode == null? -1 : 1;
+		if (egressNode != null) for (Entry<Link,Double> frInfo : frs.entrySet()) if (frInfo.getKey().getOriginNode() == egressNode) s_n -= frInfo.getValue();
+
+		/* Propagate the traffic in topological order, and if the forwarding rules have cycles: solve (I-Q)^T M = e_k */
+		DoubleMatrix1D Mv = computeRoutingFundamentalVectorIfAcyclic (frs , ingressNode , N);
+		if (Mv == null) Mv = computeRoutingFundamentalVectorSolvingLinearSystem (frs , ingressNode , N);
+		if (Mv == null) return Quintuple.of (null , RoutingCycleType.CLOSED_CYCLES , s_n , Double.MAX_VALUE , Double.MAX_VALUE);
+
 		Pair<Double,Double> wcPropAndLength = computeWorstCasePropagationDelayAndLengthInKmMsForLoopLess(frs, outFrs, ingressNode, egressNode);
 		final RoutingCycleType routingCycleType = wcPropAndLength.getFirst() == Double.MAX_VALUE? RoutingCycleType.OPEN_CYCLES : RoutingCycleType.LOOPLESS;
 		return Quintuple.of(Mv, routingCycleType , s_n , wcPropAndLength.getFirst() , wcPropAndLength.getSecond());
@@ -1424,6 +1396,64 @@ public class GraphUtils
 //
 	}
 
+	/* Returns the row of the fundamental matrix for the ingress node, solving the linear system (I-Q)^T M = e_k, or null if the matrix is
+	 * singular (the forwarding rules have closed cycles). Valid for any forwarding rules, with or without cycles */
+	static DoubleMatrix1D computeRoutingFundamentalVectorSolvingLinearSystem (Map<Link,Double> frs , Node ingressNode , int N)
+	{
+		DoubleMatrix2D eyeMinusQ_nn = new SparseCCDoubleMatrix2D (N,N);
+		for (Entry<Link,Double> frInfo : frs.entrySet())
+		{
+			final int n1 = frInfo.getKey().getOriginNode().getIndex ();
+			final int n2 = frInfo.getKey().getDestinationNode().getIndex ();
+			final double splitFactor = frInfo.getValue();
+			eyeMinusQ_nn.setQuick(n2, n1 , eyeMinusQ_nn.getQuick(n2,n1) - splitFactor);
+		}
+		for (int n = 0; n < N ; n ++) eyeMinusQ_nn.setQuick(n, n, 1+eyeMinusQ_nn.getQuick(n,n));
+		try 
+		{
+			DoubleMatrix1D e_k = DoubleFactory1D.sparse.make(N); e_k.set(ingressNode.getIndex (), 1.0);
+			return new SparseDoubleAlgebra().solve(eyeMinusQ_nn, e_k);
+		}
+		catch(IllegalArgumentException e) { return null; }
+	}
+
+	/* Returns the row of the fundamental matrix for the ingress node, propagating the traffic in topological order (Kahn's algorithm), or null
+	 * if the links with forwarding rules have a cycle. Then, M(n) = [n == ingress] + sum_{e in in(n)} f_e M(a(e)) */
+	static DoubleMatrix1D computeRoutingFundamentalVectorIfAcyclic (Map<Link,Double> frs , Node ingressNode , int N)
+	{
+		final Map<Node,List<Link>> outLinks = new HashMap<> ();
+		final Map<Node,Integer> numInLinksNotProcessed = new HashMap<> ();
+		for (Link e : frs.keySet())
+		{
+			List<Link> list = outLinks.get(e.getOriginNode()); if (list == null) { list = new ArrayList<> (); outLinks.put(e.getOriginNode(), list); }
+			list.add(e);
+			final Integer numIn = numInLinksNotProcessed.get(e.getDestinationNode());
+			numInLinksNotProcessed.put(e.getDestinationNode(), numIn == null? 1 : numIn + 1);
+		}
+		final ArrayDeque<Node> nodesToProcess = new ArrayDeque<> ();
+		for (Node n : outLinks.keySet()) if (!numInLinksNotProcessed.containsKey(n)) nodesToProcess.add(n);
+
+		final DoubleMatrix1D M = DoubleFactory1D.sparse.make(N);
+		M.set(ingressNode.getIndex (), 1.0);
+		int numLinksProcessed = 0;
+		while (!nodesToProcess.isEmpty())
+		{
+			final Node n = nodesToProcess.poll();
+			final List<Link> outLinksThisNode = outLinks.get(n);
+			if (outLinksThisNode == null) continue;
+			final double M_n = M.getQuick(n.getIndex ());
+			for (Link e : outLinksThisNode)
+			{
+				numLinksProcessed ++;
+				final Node b_e = e.getDestinationNode();
+				if (M_n != 0) M.setQuick(b_e.getIndex (), M.getQuick(b_e.getIndex ()) + M_n * frs.get(e));
+				final int numIn = numInLinksNotProcessed.get(b_e) - 1;
+				if (numIn == 0) { numInLinksNotProcessed.remove(b_e); nodesToProcess.add(b_e); } else numInLinksNotProcessed.put(b_e, numIn);
+			}
+		}
+		return numLinksProcessed == frs.size()? M : null;
+	}
+
 	
 	/** <p>Given a list of Network Element, it computes the node-network element incoming incidence matrix. This is a matrix with as many rows as nodes, and as many columns as network elements. Position (<i>n</i>, <i>e</i>) has a 1 if element <i>e</i> (<i>e = 0</i> refers to the first element n {@code elements}, <i>e = 1</i> refers to the second one, and so on) is terminated in node <i>n</i> (<i>n = 0</i> refers to the first node in {@code nodes}, <i>n = 1</i> refers to the second one, and so on), and 0 otherwise.</p>
 	 * 
@@ -3157,6 +3187,342 @@ public class GraphUtils
 		}
 	}
 
+	/** <p>Immutable compressed sparse row (CSR) representation of a directed multigraph, intended to be built once and shared by many shortest path queries on the
+	 * same topology and link costs (e.g. when computing the candidate path list of all the node pairs in a layer). Nodes and links are mapped to consecutive
+	 * integers, and the outgoing links of each node, together with their cost, length and propagation delay, are stored in primitive arrays. Links with cost
+	 * {@code Double.MAX_VALUE} are not included.</p>
+	 * 
+	 * <p>The object keeps no search state, so the same instance can be queried concurrently from several threads.</p> */
+	public static class CSRGraph
+	{
+		private final Map<Node, Integer> nodeToIndex;
+		private final Link[] links;
+		private final int[] outStart;
+		private final int[] outLinks;
+		private final int[] linkOrigin;
+		private final int[] linkDestination;
+		private final double[] linkCost;
+		private final double[] linkLengthInKm;
+		private final double[] linkPropDelayInMs;
+
+		/** Builds the graph from the given nodes and links.
+		 * 
+		 * @param nodes List of nodes
+		 * @param links List of links. The end nodes of each link must be in {@code nodes}
+		 * @param linkCostMap Cost per link. If {@code null}, all links have cost one. Links not in the map also have cost one */
+		public CSRGraph(List<Node> nodes, List<Link> links, Map<Link, Double> linkCostMap)
+		{
+			this.nodeToIndex = new HashMap<Node, Integer>(2 * nodes.size());
+			for (Node n : nodes) nodeToIndex.put(n, nodeToIndex.size());
+			final int N = nodeToIndex.size();
+
+			final List<Link> validLinks = new ArrayList<Link>(links.size());
+			final double[] validCosts = new double[links.size()];
+			for (Link e : links)
+			{
+				final Double cost = linkCostMap == null ? null : linkCostMap.get(e);
+				final double c = cost == null ? 1.0 : cost;
+				if (c == Double.MAX_VALUE) continue;
+				if (!nodeToIndex.containsKey(e.getOriginNode()) || !nodeToIndex.containsKey(e.getDestinationNode())) throw new RuntimeException("Bad");
+				validCosts[validLinks.size()] = c;
+				validLinks.add(e);
+			}
+
+			final int E = validLinks.size();
+			this.links = validLinks.toArray(new Link[E]);
+			this.linkOrigin = new int[E];
+			this.linkDestination = new int[E];
+			this.linkCost = Arrays.copyOf(validCosts, E);
+			this.linkLengthInKm = new double[E];
+			this.linkPropDelayInMs = new double[E];
+			this.outStart = new int[N + 1];
+			for (int e = 0; e < E; e++)
+			{
+				final Link link = this.links[e];
+				linkOrigin[e] = nodeToIndex.get(link.getOriginNode());
+				linkDestination[e] = nodeToIndex.get(link.getDestinationNode());
+				linkLengthInKm[e] = link.getLengthInKm();
+				linkPropDelayInMs[e] = link.getPropagationDelayInMs();
+				outStart[linkOrigin[e] + 1]++;
+			}
+			for (int n = 0; n < N; n++) outStart[n + 1] += outStart[n];
+
+			/* Outgoing links of each node keep the order in which they appear in the input list */
+			this.outLinks = new int[E];
+			final int[] nextPosition = Arrays.copyOf(outStart, N);
+			for (int e = 0; e < E; e++) outLinks[nextPosition[linkOrigin[e]]++] = e;
+		}
+
+		/** Returns the number of nodes in the graph.
+		 * 
+		 * @return The number of nodes */
+		public int getNumberOfNodes()
+		{
+			return outStart.length - 1;
+		}
+
+		/** Returns the number of links in the graph (links with cost {@code Double.MAX_VALUE} are not counted).
+		 * 
+		 * @return The number of links */
+		public int getNumberOfLinks()
+		{
+			return links.length;
+		}
+
+		/** Returns the K-loopless shortest paths between two nodes, satisfying some user-defined constraints, using Yen's algorithm. If only <i>n</i> shortest path are found (n&lt;K), those are returned.
+		 * The constraints are applied as in {@link GraphUtils#getKLooplessShortestPaths(List, List, Node, Node, Map, int, double, int, double, double, double, double) getKLooplessShortestPaths}.
+		 * 
+		 * @param originNode Origin node
+		 * @param destinationNode Destination node
+		 * @param K Desired nummber of paths (a lower number of paths may be returned if there are less than {@code K} loop-less paths admissible)
+		 * @param maxLengthInKm Maximum length of the path. If non-positive, no maximum limit is assumed
+		 * @param maxNumHops Maximum number of hops. If non-positive, no maximum limit is assumed
+		 * @param maxPropDelayInMs Maximum propagation delay of the path. If non-positive, no maximum limit is assumed
+		 * @param maxRouteCost Maximum route cost. If non-positive, no maximum limit is assumed
+		 * @param maxRouteCostFactorRespectToShortestPath Maximum route cost factor respect to the shortest path. If non-positive, no maximum limit is assumed
+		 * @param maxRouteCostRespectToShortestPath Maximum route cost respect to the shortest path. If non-positive, no maximum limit is assumed
+		 * @return K-shortest paths */
+		public List<List<Link>> getKLooplessShortestPaths(Node originNode, Node destinationNode, int K, double maxLengthInKm, int maxNumHops, double maxPropDelayInMs, double maxRouteCost, double maxRouteCostFactorRespectToShortestPath, double maxRouteCostRespectToShortestPath)
+		{
+			final Integer origin = nodeToIndex.get(originNode);
+			final Integer destination = nodeToIndex.get(destinationNode);
+			if (origin == null || destination == null || origin.intValue() == destination.intValue()) return new LinkedList<List<Link>>();
+
+			final CSRYenAlgorithm yen = new CSRYenAlgorithm(this, maxLengthInKm <= 0 ? Double.MAX_VALUE : maxLengthInKm, maxNumHops <= 0 ? Integer.MAX_VALUE : maxNumHops, maxPropDelayInMs <= 0 ? Double.MAX_VALUE : maxPropDelayInMs, maxRouteCost <= 0 ? Double.MAX_VALUE : maxRouteCost, maxRouteCostFactorRespectToShortestPath <= 0 ? Double.MAX_VALUE : maxRouteCostFactorRespectToShortestPath, maxRouteCostRespectToShortestPath <= 0 ? Double.MAX_VALUE : maxRouteCostRespectToShortestPath);
+			final List<int[]> paths = yen.getPaths(origin, destination, K);
+			final List<List<Link>> res = new LinkedList<List<Link>>();
+			for (int[] path : paths)
+			{
+				final List<Link> seqLinks = new ArrayList<Link>(path.length);
+				for (int e : path) seqLinks.add(links[e]);
+				res.add(seqLinks);
+			}
+			return res;
+		}
+	}
+
+	/** <p>Yen's k-shortest path algorithm running on a {@link CSRGraph CSRGraph}. It follows the same scheme as {@link YenAlgorithm YenAlgorithm}, but the nodes in the
+	 * root path and the deviation links are blocked using per-query masks, instead of creating a filtered copy of the graph for each deviation.
+	 * An instance holds the search state of a single query, and must not be shared among threads.</p> */
+	private static class CSRYenAlgorithm
+	{
+		private final CSRGraph g;
+		private final double maxLengthInKm;
+		private final int maxNumHops;
+		private final double maxPropDelayInMs;
+		private final double maxRouteCost;
+		private final double maxRouteCostFactorRespectToShortestPath;
+		private final double maxRouteCostRespectToShortestPath;
+
+		/* Dijkstra work arrays, reused between the searches of the same query */
+		private final double[] dist;
+		private final int[] predecessorLink;
+		private final boolean[] settled;
+		private final boolean[] blockedNode;
+		private final boolean[] blockedLink;
+		private final IndexedMinHeap heap;
+
+		private CSRYenAlgorithm(CSRGraph g, double maxLengthInKm, int maxNumHops, double maxPropDelayInMs, double maxRouteCost, double maxRouteCostFactorRespectToShortestPath, double maxRouteCostRespectToShortestPath)
+		{
+			this.g = g;
+			this.maxLengthInKm = maxLengthInKm;
+			this.maxNumHops = maxNumHops;
+			this.maxPropDelayInMs = maxPropDelayInMs;
+			this.maxRouteCost = maxRouteCost;
+			this.maxRouteCostFactorRespectToShortestPath = maxRouteCostFactorRespectToShortestPath;
+			this.maxRouteCostRespectToShortestPath = maxRouteCostRespectToShortestPath;
+			final int N = g.getNumberOfNodes();
+			this.dist = new double[N];
+			this.predecessorLink = new int[N];
+			this.settled = new boolean[N];
+			this.blockedNode = new boolean[N];
+			this.blockedLink = new boolean[g.getNumberOfLinks()];
+			this.heap = new IndexedMinHeap(N);
+		}
+
+		private List<int[]> getPaths(int origin, int destination, int k)
+		{
+			final List<int[]> paths = new ArrayList<int[]>();
+
+			final int[] shortestPath = shortestPath(origin, destination);
+			if (shortestPath == null) return paths;
+			final double shortestPathCost = cost(shortestPath);
+			if (!acceptPath(shortestPath)) return paths;
+			paths.add(shortestPath);
+
+			/* Candidates in increasing order of cost; among equal costs, longer paths first (as in GraphPath), then in order of discovery */
+			final PriorityQueue<Candidate> priorityQueue = new PriorityQueue<Candidate>();
+			final Set<IntArrayKey> candidatesInQueue = new HashSet<IntArrayKey>();
+			long discoveryOrder = 0;
+
+			while (paths.size() < k)
+			{
+				final int[] curShortestPath = paths.get(paths.size() - 1);
+
+				/* Split path into head and next link */
+				for (int deviationId = 0; deviationId < curShortestPath.length; deviationId++)
+				{
+					final int deviationNode = deviationId == 0 ? origin : g.linkDestination[curShortestPath[deviationId - 1]];
+
+					/* 1. Block the nodes in the head, and the links leaving the deviation node in already found paths with the same head */
+					for (int cont = 0; cont < deviationId; cont++) blockedNode[g.linkOrigin[curShortestPath[cont]]] = true;
+					for (int[] path : paths)
+						if (path.length > deviationId && samePrefix(path, curShortestPath, deviationId)) blockedLink[path[deviationId]] = true;
+
+					/* 2. Get shortest path from the deviation node in the graph with blocked elements */
+					final int[] tail = shortestPath(deviationNode, destination);
+
+					for (int cont = 0; cont < deviationId; cont++) blockedNode[g.linkOrigin[curShortestPath[cont]]] = false;
+					for (int[] path : paths)
+						if (path.length > deviationId) blockedLink[path[deviationId]] = false;
+
+					if (tail == null) continue;
+
+					/* 3. Combine head and tail into new path */
+					final int[] candidatePath = Arrays.copyOf(curShortestPath, deviationId + tail.length);
+					System.arraycopy(tail, 0, candidatePath, deviationId, tail.length);
+					final double candidateCost = cost(candidatePath);
+
+					/* Check if we already found this solution */
+					final IntArrayKey key = new IntArrayKey(candidatePath);
+					if (candidatesInQueue.contains(key)) continue;
+
+					if (!acceptPath(candidatePath) || !compareCandidateToShortestPath(candidateCost, shortestPathCost)) continue;
+
+					candidatesInQueue.add(key);
+					priorityQueue.add(new Candidate(candidatePath, candidateCost, discoveryOrder++));
+				}
+
+				if (priorityQueue.isEmpty()) break; /* No more candidate paths */
+				final Candidate best = priorityQueue.poll();
+				candidatesInQueue.remove(new IntArrayKey(best.path));
+				paths.add(best.path);
+			}
+
+			return paths;
+		}
+
+		private boolean acceptPath(int[] path)
+		{
+			if (maxNumHops != Integer.MAX_VALUE && path.length > maxNumHops) return false;
+			if (maxLengthInKm == Double.MAX_VALUE && maxPropDelayInMs == Double.MAX_VALUE) return true;
+
+			double pathLengthInKm = 0;
+			double pathPropDelayInMs = 0;
+			for (int e : path)
+			{
+				pathLengthInKm += g.linkLengthInKm[e];
+				pathPropDelayInMs += g.linkPropDelayInMs[e];
+			}
+			return pathLengthInKm <= maxLengthInKm && pathPropDelayInMs <= maxPropDelayInMs;
+		}
+
+		private boolean compareCandidateToShortestPath(double candidateCost, double shortestPathCost)
+		{
+			if (maxRouteCost != Double.MAX_VALUE && candidateCost > maxRouteCost) return false;
+			if (maxRouteCostFactorRespectToShortestPath != Double.MAX_VALUE && candidateCost > shortestPathCost * maxRouteCostFactorRespectToShortestPath) return false;
+			return !(maxRouteCostRespectToShortestPath != Double.MAX_VALUE && candidateCost > shortestPathCost + maxRouteCostRespectToShortestPath);
+		}
+
+		private double cost(int[] path)
+		{
+			double cost = 0;
+			for (int e : path) cost += g.linkCost[e];
+			return cost;
+		}
+
+		private static boolean samePrefix(int[] p1, int[] p2, int length)
+		{
+			for (int cont = 0; cont < length; cont++)
+				if (p1[cont] != p2[cont]) return false;
+			return true;
+		}
+
+		/* Dijkstra from origin to destination skipping blocked nodes and links. Returns null if the destination is not reachable */
+		private int[] shortestPath(int origin, int destination)
+		{
+			Arrays.fill(dist, Double.MAX_VALUE);
+			Arrays.fill(predecessorLink, -1);
+			Arrays.fill(settled, false);
+			heap.clear();
+
+			dist[origin] = 0;
+			heap.insertOrDecreaseKey(origin, 0);
+			while (!heap.isEmpty())
+			{
+				final int n = heap.pollMin();
+				settled[n] = true;
+				if (n == destination) break;
+				for (int pos = g.outStart[n]; pos < g.outStart[n + 1]; pos++)
+				{
+					final int e = g.outLinks[pos];
+					if (blockedLink[e]) continue;
+					final int m = g.linkDestination[e];
+					if (settled[m] || blockedNode[m]) continue;
+					final double newDist = dist[n] + g.linkCost[e];
+					if (newDist >= dist[m]) continue;
+					dist[m] = newDist;
+					predecessorLink[m] = e;
+					heap.insertOrDecreaseKey(m, newDist);
+				}
+			}
+			if (!settled[destination]) return null;
+
+			int numHops = 0;
+			for (int n = destination; n != origin; n = g.linkOrigin[predecessorLink[n]]) numHops++;
+			final int[] path = new int[numHops];
+			for (int n = destination; n != origin; n = g.linkOrigin[predecessorLink[n]]) path[--numHops] = predecessorLink[n];
+			return path;
+		}
+
+		private static class Candidate implements Comparable<Candidate>
+		{
+			private final int[] path;
+			private final double cost;
+			private final long discoveryOrder;
+
+			private Candidate(int[] path, double cost, long discoveryOrder)
+			{
+				this.path = path;
+				this.cost = cost;
+				this.discoveryOrder = discoveryOrder;
+			}
+
+			@Override
+			public int compareTo(Candidate o)
+			{
+				if (cost < o.cost) return -1;
+				if (cost > o.cost) return 1;
+				if (path.length != o.path.length) return path.length > o.path.length ? -1 : 1;
+				return Long.compare(discoveryOrder, o.discoveryOrder);
+			}
+		}
+
+		private static class IntArrayKey
+		{
+			private final int[] array;
+			private final int hash;
+
+			private IntArrayKey(int[] array)
+			{
+				this.array = array;
+				this.hash = Arrays.hashCode(array);
+			}
+
+			@Override
+			public boolean equals(Object o)
+			{
+				return (o instanceof IntArrayKey) && Arrays.equals(array, ((IntArrayKey) o).array);
+			}
+
+			@Override
+			public int hashCode()
+			{
+				return hash;
+			}
+		}
+	}
+
 	/** <p>Class to calculate the (loopless) <i>k</i>-shortest paths between a node pair using Yen's algorithm.</p>
 	 * 
 	 * <p>Reference: {@code J.Y. Yen, "Finding the K Shortest Loopless Paths in a Network," <i>Management Science</i>, vol. 17, no. 11, pp. 712-716, Jul. 1971}</p>
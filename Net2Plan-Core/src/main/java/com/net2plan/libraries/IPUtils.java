@@ -17,14 +17,12 @@ import cern.colt.matrix.tdouble.DoubleFactory2D;
 import cern.colt.matrix.tdouble.DoubleMatrix1D;
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
 import com.net2plan.interfaces.networkDesign.*;
-import com.net2plan.libraries.GraphUtils.JUNGUtils;
-import com.net2plan.utils.CollectionUtils;
 import com.net2plan.utils.Constants;
-import com.net2plan.utils.Pair;
 import com.net2plan.utils.Quadruple;
-import org.apache.commons.collections15.Transformer;
 
 import java.util.*;
+import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Class for destination-based routing (IP-like).
@@ -179,101 +177,229 @@ public class IPUtils
 	}
 
 	/**
+	 * <p>Computes the traffic carried by each link with OSPF/ECMP routing for a given link weight setting, as {@link #computeCarriedTrafficFromIGPWeights(NetPlan, DoubleMatrix1D, NetworkLayer...) computeCarriedTrafficFromIGPWeights}
+	 * does (up to the precision factor used there to neglect tiny amounts of traffic of a demand in a link), but keeping the distances and the traffic per link towards each destination. When the link weights are changed, only the destinations whose shortest
+	 * path DAG may be affected by the change are recomputed, and only the carried traffic of the links whose traffic to those destinations changed is updated. A destination is affected
+	 * if a link of its DAG increases its weight, or if a link decreases its weight so that it is in a path at least as short as the current ones (or in the first path of a node 
+	 * that did not reach the destination). This makes the evaluation
+	 * of neighbor solutions in link weight optimization heuristics (e.g. changing the weight of one link) much faster than a full recomputation.</p>
 	 *
-	 * @param nodes List of nodes
-	 * @param links List of links
-	 * @param demands List of demands
-	 * @param linkWeightVector Cost per link vector
-	 * @return Forwarding rule mapping, where key is the demand-outgoing link pair and the value is the splitting ratio
+	 * <p>The nodes, links, link capacities and offered traffic are read from the design when the object is created, so later changes in the design are not reflected.</p>
 	 */
-	public static DoubleMatrix2D computeECMPForwardingRules_fde (List<Node> nodes , List<Link> links , List<Demand> demands , DoubleMatrix1D linkWeightVector)
+	public static class IncrementalECMPCarriedTraffic
 	{
-		final int N = nodes.size();
-		DoubleMatrix2D splittingRatioMap = DoubleFactory2D.sparse.make (demands.size() , links.size());
-		
-		double[][] costMatrix = new double[N][N];
-		for(int n = 0; n < N; n++)
+		private final ECMPGraph graph;
+		private final int[] destinations;
+		private final double[][] trafficPerNodeToDestination;
+		private final double[][] distToDestination;
+		private final double[][] y_te;
+		private final double[] y_e;
+		private final double[] u_e;
+		private final double[] auxY_e;
+		private final boolean[] isLinkUpdated;
+		private int numDestinationsRecomputedLastUpdate;
+
+		/**
+		 * Creates the object, computing the OSPF/ECMP routing for the given link weights.
+		 *
+		 * @param netPlan Network design
+		 * @param linkWeightVector Cost per link. If {@code null}, the current link weights are used
+		 * @param optionalLayer Network layer (optional)
+		 */
+		public IncrementalECMPCarriedTraffic(NetPlan netPlan, DoubleMatrix1D linkWeightVector, NetworkLayer... optionalLayer)
 		{
-			Arrays.fill(costMatrix[n], Double.MAX_VALUE);
-			costMatrix[n][n] = 0;
-		}
-		Map<Link,Double> linkWeightMap = CollectionUtils.toMap (links , linkWeightVector);
-		Transformer<Link, Double> nev = JUNGUtils.getEdgeWeightTransformer(linkWeightMap);
-		
-		Map<Pair<Node, Node>, Set<Link>> linksPerNodePair = new LinkedHashMap<Pair<Node, Node>, Set<Link>>();
-		for(Link link : links)
-		{
-			Pair<Node, Node> nodePair_thisLink = Pair.of (link.getOriginNode() , link.getDestinationNode());
-			final int a_e = link.getOriginNode().getIndex();
-			final int b_e = link.getDestinationNode().getIndex();
-			costMatrix[a_e][b_e] = Math.min(costMatrix[a_e][b_e], nev.transform(link));
-			
-			Set<Link> links_thisNodePair = linksPerNodePair.get(nodePair_thisLink);
-			if (links_thisNodePair == null)
+			final NetworkLayer layer = netPlan.checkInThisNetPlanOptionalLayerParameter(optionalLayer);
+			if (linkWeightVector == null) linkWeightVector = IPUtils.getLinkWeightVector(netPlan, layer);
+			final List<Node> nodes = netPlan.getNodes();
+			final List<Link> links = netPlan.getLinks(layer);
+			final int N = nodes.size();
+			final int E = links.size();
+			if (linkWeightVector.size() != E) throw new Net2PlanException("Wrong size of the link weight vector");
+
+			this.graph = new ECMPGraph(nodes, links, linkWeightVector);
+			final int[] destinationPosition = new int[N];
+			Arrays.fill(destinationPosition, -1);
+			final List<double[]> trafficPerNodeToDestinationList = new ArrayList<double[]>();
+			final List<Integer> destinationsList = new ArrayList<Integer>();
+			for (Demand d : netPlan.getDemands(layer))
 			{
-				links_thisNodePair = new LinkedHashSet<Link>();
-				linksPerNodePair.put(nodePair_thisLink, links_thisNodePair);
+				final double h_d = d.getOfferedTraffic();
+				if (h_d == 0) continue;
+				final int t = d.getEgressNode().getIndex();
+				if (destinationPosition[t] == -1)
+				{
+					destinationPosition[t] = destinationsList.size();
+					destinationsList.add(t);
+					trafficPerNodeToDestinationList.add(new double[N]);
+				}
+				trafficPerNodeToDestinationList.get(destinationPosition[t])[d.getIngressNode().getIndex()] += h_d;
 			}
-			
-			links_thisNodePair.add(link);
+			final int D = destinationsList.size();
+			this.destinations = new int[D];
+			for (int cont = 0; cont < D; cont++) destinations[cont] = destinationsList.get(cont);
+			this.trafficPerNodeToDestination = trafficPerNodeToDestinationList.toArray(new double[D][]);
+			this.distToDestination = new double[D][N];
+			this.y_te = new double[D][E];
+			this.y_e = new double[E];
+			this.u_e = new double[E];
+			for (int e = 0; e < E; e++) u_e[e] = links.get(e).getCapacity();
+			this.auxY_e = new double[E];
+			this.isLinkUpdated = new boolean[E];
+
+			for (int dPos = 0; dPos < D; dPos++) recomputeDestination(dPos);
+			for (int e = 0; e < E; e++) updateCarriedTraffic(e);
+			this.numDestinationsRecomputedLastUpdate = D;
 		}
 
-		for(int k = 0; k < N; k++)
+		/**
+		 * Changes the link weights, and updates the routing and the carried traffic.
+		 *
+		 * @param linkWeightVector Cost per link
+		 * @return The carried traffic per link, {@code y_e}, after the change
+		 */
+		public DoubleMatrix1D setLinkWeights(DoubleMatrix1D linkWeightVector)
 		{
-			for(int i = 0; i < N; i++)
-			{
-				if (i == k) continue;
-				
-				for(int j = 0; j < N; j++)
-				{
-					if (j == k || j == i) continue;
-					
-					double newValue = costMatrix[i][k] + costMatrix[k][j];
-					if (newValue < costMatrix[i][j]) costMatrix[i][j] = newValue;
-				}
-			}
+			if (linkWeightVector.size() != graph.linkWeight.length) throw new Net2PlanException("Wrong size of the link weight vector");
+			for (int e = 0; e < graph.linkWeight.length; e++) checkIPWeight(linkWeightVector.get(e));
+			final List<Integer> changedLinks = new ArrayList<Integer>();
+			for (int e = 0; e < graph.linkWeight.length; e++)
+				if (linkWeightVector.get(e) != graph.linkWeight[e]) changedLinks.add(e);
+			if (changedLinks.isEmpty()) { numDestinationsRecomputedLastUpdate = 0; return getCarriedTrafficPerLink(); }
+
+			/* The affected destinations are decided with the old weights and distances */
+			final boolean[] isDestinationAffected = new boolean[destinations.length];
+			for (int dPos = 0; dPos < destinations.length; dPos++)
+				for (int e : changedLinks)
+					if (isDAGAffectedByWeightChange(dPos, e, linkWeightVector.get(e))) { isDestinationAffected[dPos] = true; break; }
+
+			for (int e : changedLinks) graph.linkWeight[e] = linkWeightVector.get(e);
+
+			numDestinationsRecomputedLastUpdate = 0;
+			for (int dPos = 0; dPos < destinations.length; dPos++)
+				if (isDestinationAffected[dPos]) { recomputeDestination(dPos); numDestinationsRecomputedLastUpdate++; }
+			for (int e = 0; e < isLinkUpdated.length; e++)
+				if (isLinkUpdated[e]) updateCarriedTraffic(e);
+			return getCarriedTrafficPerLink();
 		}
-		
-		for(Demand demand : demands)
+
+		/**
+		 * Changes the weight of one link, and updates the routing and the carried traffic.
+		 *
+		 * @param link The link
+		 * @param linkWeight The new weight of the link
+		 * @return The carried traffic per link, {@code y_e}, after the change
+		 */
+		public DoubleMatrix1D setLinkWeight(Link link, double linkWeight)
 		{
-			final int b_d = demand.getEgressNode().getIndex ();
-			for (Node node : nodes)
-			{
-				final int n = node.getIndex ();
-				if (n == b_d) continue;
+			final DoubleMatrix1D linkWeightVector = getLinkWeightVector();
+			linkWeightVector.set(link.getIndex(), linkWeight);
+			return setLinkWeights(linkWeightVector);
+		}
 
-				double distNodeToEgress = costMatrix[n][b_d];
-				if (distNodeToEgress == Double.MAX_VALUE) continue;
+		/**
+		 * Returns the current link weights.
+		 *
+		 * @return The cost per link
+		 */
+		public DoubleMatrix1D getLinkWeightVector()
+		{
+			return DoubleFactory1D.dense.make(graph.linkWeight);
+		}
 
-				Set<Link> A_t = new LinkedHashSet<Link>();
-				for (Node intermediateNode : nodes)
-				{
-					if (node.equals (intermediateNode)) continue;
+		/**
+		 * Returns the traffic carried by each link for the current link weights.
+		 *
+		 * @return The carried traffic per link, {@code y_e}
+		 */
+		public DoubleMatrix1D getCarriedTrafficPerLink()
+		{
+			return DoubleFactory1D.dense.make(y_e);
+		}
 
-					final int m = intermediateNode.getIndex();
+		/**
+		 * Returns the utilization of each link for the current link weights. The utilization of a link not carrying traffic is zero, and
+		 * the one of a link with zero capacity carrying traffic is {@code Double.MAX_VALUE}.
+		 *
+		 * @return The utilization per link
+		 */
+		public DoubleMatrix1D getLinkUtilization()
+		{
+			final DoubleMatrix1D res = DoubleFactory1D.dense.make(y_e.length);
+			for (int e = 0; e < y_e.length; e++)
+				res.set(e, y_e[e] == 0 ? 0 : (u_e[e] == 0 ? Double.MAX_VALUE : y_e[e] / u_e[e]));
+			return res;
+		}
 
-					double distIntermediateToEgress = costMatrix[m][b_d];
-					if (distIntermediateToEgress == Double.MAX_VALUE) continue;
+		/**
+		 * Returns the number of destinations whose routing was recomputed in the last change of the link weights (or in the creation of the object).
+		 *
+		 * @return The number of destinations recomputed
+		 */
+		public int getNumberOfDestinationsRecomputedInLastUpdate()
+		{
+			return numDestinationsRecomputedLastUpdate;
+		}
 
-					Collection<Link> linksFromNodeToIntermediate = linksPerNodePair.get(Pair.of(node, intermediateNode));
-					if (linksFromNodeToIntermediate == null) continue;
+		private boolean isDAGAffectedByWeightChange(int dPos, int e, double newWeight)
+		{
+			final double[] dist = distToDestination[dPos];
+			final double oldWeight = graph.linkWeight[e];
+			final double distOrigin = dist[graph.linkOrigin[e]];
+			final double distDestination = dist[graph.linkDestination[e]];
+			if (graph.linkOrigin[e] == destinations[dPos]) return false;
+			if (distDestination == Double.MAX_VALUE) return false;
+			if (distOrigin == Double.MAX_VALUE) return newWeight != Double.MAX_VALUE; // the origin node reaches the destination through this link now
+			if (newWeight > oldWeight) return Math.abs(oldWeight - (distOrigin - distDestination)) < 1E-10;
+			return newWeight + distDestination < distOrigin + 1E-10;
+		}
 
-					for (Link link : linksFromNodeToIntermediate)
-					{
-						double weight_thisLink = linkWeightMap.get(link);
-						checkIPWeight(weight_thisLink);
+		private void recomputeDestination(int dPos)
+		{
+			graph.computeShortestPathDAG(destinations[dPos]);
+			System.arraycopy(graph.distToDestination, 0, distToDestination[dPos], 0, graph.distToDestination.length);
+			graph.routeTrafficThroughDAG(trafficPerNodeToDestination[dPos], auxY_e);
+			final double[] y_e_thisDestination = y_te[dPos];
+			for (int e = 0; e < auxY_e.length; e++)
+				if (y_e_thisDestination[e] != auxY_e[e]) { y_e_thisDestination[e] = auxY_e[e]; isLinkUpdated[e] = true; }
+		}
 
-						if (Math.abs(weight_thisLink - (distNodeToEgress - distIntermediateToEgress)) < 1E-10)
-							A_t.add(link);
-					}
-				}
+		/* Sums the traffic to all the destinations, always in the same order, so the result does not depend on the sequence of updates */
+		private void updateCarriedTraffic(int e)
+		{
+			double traffic = 0;
+			for (int dPos = 0; dPos < destinations.length; dPos++) traffic += y_te[dPos][e];
+			y_e[e] = traffic;
+			isLinkUpdated[e] = false;
+		}
+	}
 
-				int outdegree = A_t.size();
+	/**
+	 *
+	 * @param nodes List of nodes
+	 * @param links List of links
+	 * @param demands List of demands
+	 * @param linkWeightVector Cost per link vector
+	 * @return Forwarding rule mapping, where key is the demand-outgoing link pair and the value is the splitting ratio
+	 */
+	public static DoubleMatrix2D computeECMPForwardingRules_fde (List<Node> nodes , List<Link> links , List<Demand> demands , DoubleMatrix1D linkWeightVector)
+	{
+		DoubleMatrix2D splittingRatioMap = DoubleFactory2D.sparse.make (demands.size() , links.size());
+		
+		/* The forwarding rules only depend on the egress node: compute the shortest path DAG once per egress node with demands */
+		final Map<Node, List<Demand>> demandsPerEgressNode = new LinkedHashMap<Node, List<Demand>>();
+		for (Demand demand : demands)
+		{
+			List<Demand> demands_thisEgress = demandsPerEgressNode.get(demand.getEgressNode());
+			if (demands_thisEgress == null) { demands_thisEgress = new ArrayList<Demand>(); demandsPerEgressNode.put(demand.getEgressNode(), demands_thisEgress); }
+			demands_thisEgress.add(demand);
+		}
 
-				if (outdegree > 0)
-					for (Link link : A_t)
-						splittingRatioMap.set (demand.getIndex () , link.getIndex () , 1.0 / outdegree);
-			}
+		final ECMPGraph graph = new ECMPGraph(nodes, links, linkWeightVector);
+		for (Entry<Node, List<Demand>> entry : demandsPerEgressNode.entrySet())
+		{
+			graph.computeShortestPathDAG(entry.getKey().getIndex());
+			for (Demand demand : entry.getValue())
+				graph.setSplittingRatios(splittingRatioMap, demand.getIndex());
 		}
 
 		return splittingRatioMap;
@@ -300,94 +426,152 @@ public class IPUtils
 		final int E = links.size();
 		DoubleMatrix2D f_te = DoubleFactory2D.sparse.make(N,E);
 		
-		double[][] costMatrix = new double[N][N];
-		for(int n = 0; n < N; n++)
+		final ECMPGraph graph = new ECMPGraph(nodes, links, linkWeightVector);
+		for (Node egressNode : nodes)
 		{
-			Arrays.fill(costMatrix[n], Double.MAX_VALUE);
-			costMatrix[n][n] = 0;
+			final int t = egressNode.getIndex();
+			graph.computeShortestPathDAG(t);
+			graph.setSplittingRatios(f_te, t);
 		}
-		Map<Link,Double> linkWeightMap = CollectionUtils.toMap(links, linkWeightVector);
-		
-		Transformer<Link, Double> nev = JUNGUtils.getEdgeWeightTransformer(linkWeightMap);
-		
-		Map<Pair<Node, Node>, Set<Link>> linksPerNodePair = new LinkedHashMap<Pair<Node, Node>, Set<Link>>();
-		for(Link link : links)
+
+		return f_te;
+	}
+
+	/* Links stored as the incoming and outgoing links of each node in primitive arrays (node positions are the node indexes), used to compute the ECMP shortest
+	 * path DAG towards each destination with a reverse Dijkstra search, in O(E log N) per destination. Links with weight Double.MAX_VALUE are not used. All the
+	 * weights are checked to be at least one before any search, since the search (settling each node once) and the DAG traversal rely on it */
+	private static final class ECMPGraph
+	{
+		private final int[] inStart;
+		private final int[] inLinks;
+		private final int[] outStart;
+		private final int[] outLinks;
+		private final int[] linkOrigin;
+		private final int[] linkDestination;
+		private final int[] linkIndex;
+		private final double[] linkWeight;
+
+		/* Results of the last call to computeShortestPathDAG. The nodes reaching the destination are in settleOrder, in increasing distance */
+		private final double[] distToDestination;
+		private final boolean[] isSettled;
+		private final boolean[] isDAGLink;
+		private final int[] numDAGOutLinks;
+		private final int[] settleOrder;
+		private int numSettled;
+		private final IndexedMinHeap heap;
+
+		private ECMPGraph(List<Node> nodes, List<Link> links, DoubleMatrix1D linkWeightVector)
 		{
-			final int a_e = link.getOriginNode().getIndex();
-			final int b_e = link.getDestinationNode().getIndex();
-			costMatrix[a_e][b_e] = Math.min(costMatrix[a_e][b_e], nev.transform(link));
-			
-			Pair<Node,Node> nodePair_thisLink = Pair.of(link.getOriginNode() , link.getDestinationNode());
-			
-			Set<Link> links_thisNodePair = linksPerNodePair.get(nodePair_thisLink);
-			if (links_thisNodePair == null)
+			final int N = nodes.size();
+			final int E = links.size();
+			this.linkOrigin = new int[E];
+			this.linkDestination = new int[E];
+			this.linkIndex = new int[E];
+			this.linkWeight = new double[E];
+			this.inStart = new int[N + 1];
+			this.outStart = new int[N + 1];
+			for (int e = 0; e < E; e++)
 			{
-				links_thisNodePair = new LinkedHashSet<Link>();
-				linksPerNodePair.put(nodePair_thisLink, links_thisNodePair);
+				final Link link = links.get(e);
+				linkOrigin[e] = link.getOriginNode().getIndex();
+				linkDestination[e] = link.getDestinationNode().getIndex();
+				linkIndex[e] = link.getIndex();
+				linkWeight[e] = linkWeightVector.get(e);
+				checkIPWeight(linkWeight[e]);
+				inStart[linkDestination[e] + 1]++;
+				outStart[linkOrigin[e] + 1]++;
 			}
-			
-			links_thisNodePair.add(link);
+			for (int n = 0; n < N; n++) { inStart[n + 1] += inStart[n]; outStart[n + 1] += outStart[n]; }
+			this.inLinks = new int[E];
+			this.outLinks = new int[E];
+			final int[] nextInPosition = Arrays.copyOf(inStart, N);
+			final int[] nextOutPosition = Arrays.copyOf(outStart, N);
+			for (int e = 0; e < E; e++)
+			{
+				inLinks[nextInPosition[linkDestination[e]]++] = e;
+				outLinks[nextOutPosition[linkOrigin[e]]++] = e;
+			}
+
+			this.distToDestination = new double[N];
+			this.isSettled = new boolean[N];
+			this.isDAGLink = new boolean[E];
+			this.numDAGOutLinks = new int[N];
+			this.settleOrder = new int[N];
+			this.heap = new IndexedMinHeap(N);
 		}
 
-		for(int k = 0; k < N; k++)
+		/* Computes the distance of each node to the destination, and the links in any shortest path to it (those which are in the ECMP DAG) */
+		private void computeShortestPathDAG(int t)
 		{
-			for(int i = 0; i < N; i++)
+			Arrays.fill(distToDestination, Double.MAX_VALUE);
+			Arrays.fill(isSettled, false);
+			heap.clear();
+			numSettled = 0;
+			distToDestination[t] = 0;
+			heap.insertOrDecreaseKey(t, 0);
+			while (!heap.isEmpty())
 			{
-				if (i == k) continue;
-				
-				for(int j = 0; j < N; j++)
+				final int m = heap.pollMin();
+				if (isSettled[m]) continue;
+				isSettled[m] = true;
+				settleOrder[numSettled++] = m;
+				for (int pos = inStart[m]; pos < inStart[m + 1]; pos++)
 				{
-					if (j == k || j == i) continue;
-					
-					double newValue = costMatrix[i][k] + costMatrix[k][j];
-					if (newValue < costMatrix[i][j]) costMatrix[i][j] = newValue;
+					final int e = inLinks[pos];
+					if (linkWeight[e] == Double.MAX_VALUE) continue;
+					final int n = linkOrigin[e];
+					if (isSettled[n]) continue;
+					final double newDist = distToDestination[m] + linkWeight[e];
+					if (newDist < distToDestination[n])
+					{
+						distToDestination[n] = newDist;
+						heap.insertOrDecreaseKey(n, newDist);
+					}
 				}
 			}
-		}
-		
-		for (Node egressNode : nodes)
-		{
-			final int t = egressNode.getIndex();
-			for (Node node : nodes)
+
+			Arrays.fill(numDAGOutLinks, 0);
+			for (int e = 0; e < linkOrigin.length; e++)
 			{
-				final int n = node.getIndex ();
+				isDAGLink[e] = false;
+				final int n = linkOrigin[e];
+				final int m = linkDestination[e];
 				if (n == t) continue;
-
-				double distNodeToEgress = costMatrix[n][t];
-				if (distNodeToEgress == Double.MAX_VALUE) continue;
-
-				Set<Link> A_t = new LinkedHashSet<Link>();
-				for (Node intermediateNode : nodes)
+				if (distToDestination[n] == Double.MAX_VALUE || distToDestination[m] == Double.MAX_VALUE) continue;
+				if (Math.abs(linkWeight[e] - (distToDestination[n] - distToDestination[m])) < 1E-10)
 				{
-					if (nodes.equals (intermediateNode)) continue;
-
-					final int m = intermediateNode.getIndex ();
-
-					double distIntermediateToEgress = costMatrix[m][t];
-					if (distIntermediateToEgress == Double.MAX_VALUE) continue;
-
-					Collection<Link> linksFromNodeToIntermediate = linksPerNodePair.get(Pair.of(node, intermediateNode));
-					if (linksFromNodeToIntermediate == null) continue;
-
-					for (Link link : linksFromNodeToIntermediate)
-					{
-						double weight_thisLink = linkWeightMap.get(link);
-						checkIPWeight(weight_thisLink);
-
-						if (Math.abs(weight_thisLink - (distNodeToEgress - distIntermediateToEgress)) < 1E-10)
-							A_t.add(link);
-					}
+					isDAGLink[e] = true;
+					numDAGOutLinks[n]++;
 				}
+			}
+		}
 
-				int outdegree = A_t.size();
+		/* Sets in the given row the ECMP splitting ratio of each link in the last computed DAG */
+		private void setSplittingRatios(DoubleMatrix2D f, int row)
+		{
+			for (int e = 0; e < linkOrigin.length; e++)
+				if (isDAGLink[e]) f.set(row, linkIndex[e], 1.0 / numDAGOutLinks[linkOrigin[e]]);
+		}
 
-				if (outdegree > 0)
-					for (Link link : A_t)
-						f_te.set (t , link.getIndex () , 1.0 / outdegree);
+		/* Routes through the last computed DAG the traffic that each node injects towards the destination, and stores the traffic in each link in y_e
+		 * (indexed by link position). Link weights are at least one, so visiting the nodes in decreasing distance is a topological order of the DAG. The traffic
+		 * entering each node is summed in the order of its incoming links, so the result does not depend on how the ties in the distances were settled.
+		 * The traffic of the nodes not reaching the destination is dropped */
+		private void routeTrafficThroughDAG(double[] trafficPerNode, double[] y_e)
+		{
+			Arrays.fill(y_e, 0);
+			for (int cont = numSettled - 1; cont > 0; cont--)
+			{
+				final int n = settleOrder[cont];
+				double traffic = trafficPerNode[n];
+				for (int pos = inStart[n]; pos < inStart[n + 1]; pos++)
+					if (isDAGLink[inLinks[pos]]) traffic += y_e[inLinks[pos]];
+				if (traffic == 0) continue;
+				final double trafficPerLink = traffic / numDAGOutLinks[n];
+				for (int pos = outStart[n]; pos < outStart[n + 1]; pos++)
+					if (isDAGLink[outLinks[pos]]) y_e[outLinks[pos]] = trafficPerLink;
 			}
 		}
-
-		return f_te;
 	}
 
 	/**
@@ -517,10 +701,7 @@ public class IPUtils
 	public static double getLinkWeight(Link link)
 	{
 		if (link.isDown()) return Double.MAX_VALUE;
-		double linkWeight = 1;
-		String str_linkWeight = link.getAttribute(IP_WEIGHT_ATTRIBUTE_NAME);
-		try	{ linkWeight = Double.parseDouble(str_linkWeight); }
-		catch(Throwable e) { }
+		double linkWeight = link.getAttributeAsDouble(IP_WEIGHT_ATTRIBUTE_NAME , 1);
 		
 		checkIPWeight(linkWeight);
 		
@@ -644,6 +825,24 @@ public class IPUtils
 		DoubleMatrix2D f_de = q.getFirst ();
 		netPlan.setForwardingRules(f_de , layer);
 	}
+
+	/**
+	 * Sets the OSPF/ECMP forwarding rules in the given design, as {@link #setECMPForwardingRulesFromLinkWeights(NetPlan, DoubleMatrix1D, NetworkLayer...)}, 
+	 * computing the routing of the demands in parallel in the given pool. Then, the occupation of the links is updated once, 
+	 * which speeds up the algorithms that evaluate many IGP weight settings.
+	 * 
+	 * @param netPlan Network design
+	 * @param linkWeightMap Cost per link vector
+	 * @param pool The pool where the routing of the demands is computed ({@code null} for computing it in the calling thread)
+	 * @param optionalLayer Network layer (optional)
+	 * @since 0.5.1
+	 */
+	public static void setECMPForwardingRulesFromLinkWeights(NetPlan netPlan, DoubleMatrix1D linkWeightMap , ForkJoinPool pool , NetworkLayer ... optionalLayer)
+	{
+		NetworkLayer layer = netPlan.checkInThisNetPlanOptionalLayerParameter(optionalLayer);
+		Quadruple<DoubleMatrix2D, DoubleMatrix2D, DoubleMatrix1D, DoubleMatrix1D> q = computeCarriedTrafficFromIGPWeights(netPlan, linkWeightMap , layer);
+		netPlan.setForwardingRules(q.getFirst () , pool , layer);
+	}
 	
 	/**
 	 * Sets the weight associated to the link.
@@ -654,7 +853,7 @@ public class IPUtils
 	public static void setLinkWeight(Link link , double linkWeight)
 	{
 		checkIPWeight(linkWeight);
-		link.setAttribute (IP_WEIGHT_ATTRIBUTE_NAME, Double.toString(linkWeight));
+		link.setAttributeAsDouble (IP_WEIGHT_ATTRIBUTE_NAME, linkWeight);
 	}
 	
 	/**
@@ -669,7 +868,7 @@ public class IPUtils
 		NetworkLayer layer = netPlan.checkInThisNetPlanOptionalLayerParameter(optionalLayer);
 		checkIPWeight(linkWeight);
 		for (Link link : netPlan.getLinks (layer))
-			link.setAttribute (IP_WEIGHT_ATTRIBUTE_NAME, Double.toString(linkWeight));
+			link.setAttributeAsDouble (IP_WEIGHT_ATTRIBUTE_NAME, linkWeight);
 	}
 
 	/**
@@ -688,7 +887,7 @@ public class IPUtils
 		for (int cont = 0 ; cont < linkWeightVector.size () ; cont ++)
 		{
 			Link link = netPlan.getLink (cont , layer);
-			link.setAttribute (IP_WEIGHT_ATTRIBUTE_NAME, Double.toString(linkWeightVector.get (cont)));
+			link.setAttributeAsDouble (IP_WEIGHT_ATTRIBUTE_NAME, linkWeightVector.get (cont));
 		}
 	}
 }
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2016 Pablo Pavon-Marino.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the GNU Lesser Public License v2.1
+ * which accompanies this distribution, and is available at
+ * http://www.gnu.org/licenses/lgpl.html
+ *
+ * Contributors:
+ *     Pablo Pavon-Marino - Jose-Luis Izquierdo-Zaragoza, up to version 0.3.1
+ *     Pablo Pavon-Marino - from version 0.4.0 onwards
+ ******************************************************************************/
+
+
+package com.net2plan.libraries;
+
+import java.util.Arrays;
+
+/* Binary min-heap of the integers 0..n-1 keyed by a double, with decrease-key. Used by the array-based Dijkstra searches in this package, where
+ * the items are node indexes and the keys the tentative distances. Not thread safe */
+final class IndexedMinHeap
+{
+	private final int[] heap;
+	private final int[] position;
+	private final double[] key;
+	private int size;
+
+	IndexedMinHeap(int n)
+	{
+		this.heap = new int[n];
+		this.position = new int[n];
+		this.key = new double[n];
+		Arrays.fill(position, -1);
+	}
+
+	boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	void clear()
+	{
+		for (int cont = 0; cont < size; cont++) position[heap[cont]] = -1;
+		size = 0;
+	}
+
+	/* Adds the item with the given key, or decreases its key if it is already in the heap with a higher one */
+	void insertOrDecreaseKey(int item, double newKey)
+	{
+		if (position[item] == -1)
+		{
+			heap[size] = item;
+			position[item] = size;
+			key[item] = newKey;
+			siftUp(size++);
+		} else if (newKey < key[item])
+		{
+			key[item] = newKey;
+			siftUp(position[item]);
+		}
+	}
+
+	int pollMin()
+	{
+		final int top = heap[0];
+		position[top] = -1;
+		if (--size > 0)
+		{
+			heap[0] = heap[size];
+			position[heap[0]] = 0;
+			siftDown(0);
+		}
+		return top;
+	}
+
+	private void siftUp(int pos)
+	{
+		final int item = heap[pos];
+		while (pos > 0)
+		{
+			final int parent = (pos - 1) >>> 1;
+			if (key[heap[parent]] <= key[item]) break;
+			heap[pos] = heap[parent];
+			position[heap[pos]] = pos;
+			pos = parent;
+		}
+		heap[pos] = item;
+		position[item] = pos;
+	}
+
+	private void siftDown(int pos)
+	{
+		final int item = heap[pos];
+		while (true)
+		{
+			int child = 2 * pos + 1;
+			if (child >= size) break;
+			if (child + 1 < size && key[heap[child + 1]] < key[heap[child]]) child++;
+			if (key[item] <= key[heap[child]]) break;
+			heap[pos] = heap[child];
+			position[heap[pos]] = pos;
+			pos = child;
+		}
+		heap[pos] = item;
+		position[item] = pos;
+	}
+}
@@ -22,7 +22,10 @@ import com.net2plan.utils.CollectionUtils;
 import com.net2plan.utils.Pair;
 
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Provides a set of static methods which can be useful when dealing with network resilience.
@@ -60,6 +63,230 @@ public class SRGUtils
 		 */
 		PER_BIDIRECTIONAL_LINK_BUNDLE
 	};
+
+	/**
+	 * <p>Failure state with no SRG, one SRG or two SRGs going down, as enumerated by a {@link FailureStateEnumeration}. The state is a
+	 * (read-only) list of the SRGs going down, and keeps its position in the enumeration, and its probability.</p>
+	 */
+	public static final class FailureState extends AbstractList<SharedRiskGroup>
+	{
+		private final FailureStateEnumeration enumeration;
+		private final int index, firstSRG, secondSRG;
+		private final double probability;
+
+		private FailureState(FailureStateEnumeration enumeration, int index, int firstSRG, int secondSRG)
+		{
+			this.enumeration = enumeration;
+			this.index = index;
+			this.firstSRG = firstSRG;
+			this.secondSRG = secondSRG;
+			this.probability = enumeration.getProbability(firstSRG, secondSRG);
+		}
+
+		/**
+		 * Returns the position of the state in the enumeration.
+		 * @return The index
+		 */
+		public int getIndex() { return index; }
+
+		/**
+		 * Returns the probability to find the network in this state (the SRGs in the state are down, and the rest are up).
+		 * @return The probability
+		 */
+		public double getProbability() { return probability; }
+
+		@Override
+		public SharedRiskGroup get(int position)
+		{
+			if (position < 0 || position >= size()) throw new IndexOutOfBoundsException("Position " + position + ", size " + size());
+			return enumeration.srgs.get(position == 0 ? firstSRG : secondSRG);
+		}
+
+		@Override
+		public int size() { return firstSRG == -1 ? 0 : secondSRG == -1 ? 1 : 2; }
+	}
+
+	/**
+	 * <p>Enumeration of the failure states of a set of SRGs, in the same order as {@link #enumerateFailureStates(Collection, boolean, boolean)}: the no failure
+	 * state (optional), the single failure states, and the double failure states (optional). In contrast to it, the states are not kept in memory: each state
+	 * is decoded from its position in the enumeration, so the memory needed does not depend on the number of states.</p>
+	 *
+	 * <p>The states can be traversed with a {@code Spliterator} (or a {@code Stream}), optionally skipping the states with a probability below a given value.
+	 * The spliterator is split into ranges of positions, so the states can be consumed in parallel.</p>
+	 */
+	public static final class FailureStateEnumeration
+	{
+		private final List<SharedRiskGroup> srgs;
+		private final int numberOfFailureStates, firstSingleFailureState, firstDoubleFailureState;
+		private final double[] failureFactor, maxFailureFactorOfNextSRGs;
+		private final int numberOfSRGsAlwaysDown;
+		private final double probabilityNoFailure;
+
+		/**
+		 * Default constructor.
+		 * @param srgs SRGs (the positions of the SRGs in the enumeration follow the order in the collection)
+		 * @param considerNoFailureState Flag to indicate whether or not no failure state is included
+		 * @param considerDoubleFailureStates Flag to indicate whether or not double failure states are included
+		 */
+		public FailureStateEnumeration(Collection<SharedRiskGroup> srgs, boolean considerNoFailureState, boolean considerDoubleFailureStates)
+		{
+			this.srgs = new ArrayList<SharedRiskGroup>(srgs);
+			final int S = this.srgs.size();
+			final long numberOfFailureStates = (considerNoFailureState ? 1 : 0) + (long) S + (considerDoubleFailureStates ? (long) S * (S - 1) / 2 : 0);
+			if (numberOfFailureStates > Integer.MAX_VALUE) throw new Net2PlanException("Too many failure states");
+			this.numberOfFailureStates = (int) numberOfFailureStates;
+			this.firstSingleFailureState = considerNoFailureState ? 1 : 0;
+			this.firstDoubleFailureState = firstSingleFailureState + S;
+
+			/* The probability of a state is the one of the no failure state, multiplied by the factor (1-A)/A of each SRG down. SRGs with zero availability
+			 * are always down, so they are kept apart */
+			this.failureFactor = new double[S];
+			double probabilityNoFailure = 1;
+			int numberOfSRGsAlwaysDown = 0;
+			for (int srg = 0; srg < S; srg++)
+			{
+				final double availability = this.srgs.get(srg).getAvailability();
+				if (availability < 0 || availability > 1) throw new Net2PlanException("Availability must be in range [0, 1]");
+				if (availability == 0) { numberOfSRGsAlwaysDown++; failureFactor[srg] = Double.NaN; continue; }
+				probabilityNoFailure *= availability;
+				failureFactor[srg] = (1 - availability) / availability;
+			}
+			this.probabilityNoFailure = probabilityNoFailure;
+			this.numberOfSRGsAlwaysDown = numberOfSRGsAlwaysDown;
+			this.maxFailureFactorOfNextSRGs = new double[S];
+			for (int srg = S - 2; srg >= 0; srg--)
+				maxFailureFactorOfNextSRGs[srg] = Math.max(maxFailureFactorOfNextSRGs[srg + 1], Double.isNaN(failureFactor[srg + 1]) ? 0 : failureFactor[srg + 1]);
+		}
+
+		/**
+		 * Returns the number of failure states in the enumeration.
+		 * @return The number of failure states
+		 */
+		public int getNumberOfFailureStates() { return numberOfFailureStates; }
+
+		/**
+		 * Returns the probability of the no failure state (even if it is not included in the enumeration).
+		 * @return The probability
+		 */
+		public double getProbabilityNoFailureState() { return getProbability(-1, -1); }
+
+		/**
+		 * Returns the failure state at the given position of the enumeration.
+		 * @param index Position
+		 * @return The failure state
+		 */
+		public FailureState getFailureState(int index)
+		{
+			if (index < 0 || index >= numberOfFailureStates) throw new Net2PlanException("Wrong failure state index");
+			if (index < firstSingleFailureState) return new FailureState(this, index, -1, -1);
+			if (index < firstDoubleFailureState) return new FailureState(this, index, index - firstSingleFailureState, -1);
+			final int firstSRG = getFirstSRGOfDoubleFailureState(index);
+			return new FailureState(this, index, firstSRG, firstSRG + 1 + index - getFirstDoubleFailureStateOfSRG(firstSRG));
+		}
+
+		/**
+		 * Returns a spliterator of the failure states, in the order of the enumeration.
+		 * @param minimumProbability The states with a probability below this value are skipped (zero or a negative value means that no state is skipped)
+		 * @return The spliterator
+		 */
+		public Spliterator<FailureState> spliterator(double minimumProbability)
+		{
+			return new FailureStateSpliterator(this, 0, numberOfFailureStates, minimumProbability);
+		}
+
+		/**
+		 * Returns a stream of the failure states, in the order of the enumeration.
+		 * @param minimumProbability The states with a probability below this value are skipped (zero or a negative value means that no state is skipped)
+		 * @param parallel If true, the stream is parallel
+		 * @return The stream
+		 */
+		public Stream<FailureState> stream(double minimumProbability, boolean parallel)
+		{
+			return StreamSupport.stream(spliterator(minimumProbability), parallel);
+		}
+
+		private double getProbability(int firstSRG, int secondSRG)
+		{
+			int numberOfSRGsAlwaysDownInState = 0;
+			double probability = probabilityNoFailure;
+			if (firstSRG != -1) { if (Double.isNaN(failureFactor[firstSRG])) numberOfSRGsAlwaysDownInState++; else probability *= failureFactor[firstSRG]; }
+			if (secondSRG != -1) { if (Double.isNaN(failureFactor[secondSRG])) numberOfSRGsAlwaysDownInState++; else probability *= failureFactor[secondSRG]; }
+			return numberOfSRGsAlwaysDownInState == numberOfSRGsAlwaysDown ? probability : 0;
+		}
+
+		/* Position of the first double failure state where the given SRG is the first one (the second one is the next SRG) */
+		private int getFirstDoubleFailureStateOfSRG(int srg)
+		{
+			final long S = srgs.size();
+			return firstDoubleFailureState + (int) (srg * (2 * S - srg - 1) / 2);
+		}
+
+		/* The first SRG of the double failure state is estimated solving the second degree equation, and then corrected for rounding errors */
+		private int getFirstSRGOfDoubleFailureState(int index)
+		{
+			final double b = 2.0 * srgs.size() - 1;
+			int srg = (int) Math.floor((b - Math.sqrt(b * b - 8.0 * (index - firstDoubleFailureState))) / 2);
+			srg = Math.max(0, Math.min(srg, srgs.size() - 2));
+			while (srg > 0 && getFirstDoubleFailureStateOfSRG(srg) > index) srg--;
+			while (srg < srgs.size() - 2 && getFirstDoubleFailureStateOfSRG(srg + 1) <= index) srg++;
+			return srg;
+		}
+	}
+
+	/* Spliterator over a range of positions of a failure state enumeration. Double failure states of the same first SRG are skipped at once, when none of them can reach the minimum probability */
+	private static final class FailureStateSpliterator implements Spliterator<FailureState>
+	{
+		private final FailureStateEnumeration enumeration;
+		private final double minimumProbability;
+		private int index;
+		private final int endIndex;
+
+		private FailureStateSpliterator(FailureStateEnumeration enumeration, int index, int endIndex, double minimumProbability)
+		{
+			this.enumeration = enumeration;
+			this.index = index;
+			this.endIndex = endIndex;
+			this.minimumProbability = minimumProbability;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super FailureState> action)
+		{
+			while (index < endIndex)
+			{
+				if (minimumProbability > 0 && enumeration.numberOfSRGsAlwaysDown == 0 && index >= enumeration.firstDoubleFailureState)
+				{
+					final int firstSRG = enumeration.getFirstSRGOfDoubleFailureState(index);
+					if (enumeration.probabilityNoFailure * enumeration.failureFactor[firstSRG] * enumeration.maxFailureFactorOfNextSRGs[firstSRG] < minimumProbability)
+					{
+						index = firstSRG + 1 < enumeration.srgs.size() ? enumeration.getFirstDoubleFailureStateOfSRG(firstSRG + 1) : endIndex;
+						continue;
+					}
+				}
+				final FailureState state = enumeration.getFailureState(index++);
+				if (minimumProbability > 0 && state.getProbability() < minimumProbability) continue;
+				action.accept(state);
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public Spliterator<FailureState> trySplit()
+		{
+			if (endIndex - index < 2) return null;
+			final int middleIndex = (index + endIndex) >>> 1;
+			final Spliterator<FailureState> prefix = new FailureStateSpliterator(enumeration, index, middleIndex, minimumProbability);
+			this.index = middleIndex;
+			return prefix;
+		}
+
+		@Override
+		public long estimateSize() { return Math.max(0, endIndex - index); }
+
+		@Override
+		public int characteristics() { return ORDERED | DISTINCT | NONNULL | IMMUTABLE | (minimumProbability > 0 ? 0 : SIZED | SUBSIZED); }
+	}
 	
 	
 	/**
@@ -226,16 +453,11 @@ public class SRGUtils
 	 */
 	public static DoubleMatrix2D getMatrixFailureState2SRG (Collection<SharedRiskGroup> srgs, boolean considerNoFailureState, boolean considerDoubleFailureStates)
 	{
-		List<Set<SharedRiskGroup>> F_s = SRGUtils.enumerateFailureStates(srgs, considerNoFailureState, considerDoubleFailureStates);
-		final int F = F_s.size ();
+		final FailureStateEnumeration F_s = new FailureStateEnumeration(srgs, considerNoFailureState, considerDoubleFailureStates);
+		final int F = F_s.getNumberOfFailureStates ();
 		final int S = srgs.size ();
 		DoubleMatrix2D A_fs = DoubleFactory2D.sparse.make (F,S);
-		int f = 0;
-		for (Set<SharedRiskGroup> failingSRGs : F_s)
-		{
-			for (SharedRiskGroup srg : failingSRGs) A_fs.set (f , srg.getIndex () , 1.0);
-			f ++;
-		}
+		F_s.spliterator(0).forEachRemaining(failingSRGs -> { for (SharedRiskGroup srg : failingSRGs) A_fs.set (failingSRGs.getIndex () , srg.getIndex () , 1.0); });
 		return A_fs;		
 	}
 
@@ -506,6 +506,465 @@ public class WDMUtils
 		}
 	}
 	
+	/**
+	 * Frequency slot occupancy of the fibers of a WDM layer, stored as one bitset ({@code long[]}) per fiber, where bit {@code s} of fiber {@code e} 
+	 * is set if the slot {@code s} is occupied in the fiber with index {@code e}. It holds the same information as the slot-fiber occupancy matrices 
+	 * {@code frequencySlot2FiberOccupancy_se} used in other methods of this class, but it uses 64 times less memory, and the first-fit spectrum assignment 
+	 * methods check the slots in blocks of 64, combining the bitsets of all the fibers in a path.
+	 */
+	public static class SpectrumOccupancy
+	{
+		private final int numSlots;
+		private final int numWords;
+		private final long [][] occupancy_e;
+
+		/** Creates an occupancy object where all the slots are idle
+		 * @param numFibers the number of fibers (the fiber with index {@code e} corresponds to the link with index {@code e} in the WDM layer)
+		 * @param numSlots the number of slots per fiber
+		 */
+		public SpectrumOccupancy (int numFibers , int numSlots)
+		{
+			if (numFibers < 0 || numSlots < 0) throw new WDMException ("Wrong number of fibers or slots");
+			this.numSlots = numSlots;
+			this.numWords = (numSlots + 63) >>> 6;
+			this.occupancy_e = new long [numFibers][numWords];
+		}
+
+		/** Creates an occupancy object from a slot-fiber occupancy matrix, where a non-zero in position (s,e) means that slot s is occupied in fiber e
+		 * @param frequencySlot2FiberOccupancy_se the slot-fiber occupancy matrix
+		 */
+		public SpectrumOccupancy (DoubleMatrix2D frequencySlot2FiberOccupancy_se)
+		{
+			this (frequencySlot2FiberOccupancy_se.columns() , frequencySlot2FiberOccupancy_se.rows());
+			for (int e = 0; e < occupancy_e.length ; e ++)
+				for (int s = 0; s < numSlots ; s ++)
+					if (frequencySlot2FiberOccupancy_se.getQuick(s, e) != 0) setOccupied(s, e, true);
+		}
+
+		private SpectrumOccupancy (SpectrumOccupancy origin)
+		{
+			this.numSlots = origin.numSlots;
+			this.numWords = origin.numWords;
+			this.occupancy_e = new long [origin.occupancy_e.length][];
+			for (int e = 0; e < occupancy_e.length ; e ++) occupancy_e [e] = Arrays.copyOf(origin.occupancy_e [e] , numWords);
+		}
+
+		/** Returns a deep copy of this object
+		 * @return the copy
+		 */
+		public SpectrumOccupancy copy () { return new SpectrumOccupancy(this); }
+
+		/** Returns the number of slots per fiber
+		 * @return see above
+		 */
+		public int getNumSlots () { return numSlots; }
+
+		/** Returns the number of fibers
+		 * @return see above
+		 */
+		public int getNumFibers () { return occupancy_e.length; }
+
+		/** Returns {@code true} if the given slot is occupied in the fiber
+		 * @param slotId the slot
+		 * @param fiber the fiber
+		 * @return see above
+		 */
+		public boolean isOccupied (int slotId , Link fiber) { return isOccupied(slotId , fiber.getIndex()); }
+
+		/** Returns {@code true} if the given slot is occupied in the fiber with the given index
+		 * @param slotId the slot
+		 * @param fiberIndex the index of the fiber
+		 * @return see above
+		 */
+		public boolean isOccupied (int slotId , int fiberIndex)
+		{
+			if (slotId < 0 || slotId >= numSlots) throw new WDMException ("Wrong slot identifier");
+			return (occupancy_e [fiberIndex][slotId >>> 6] & (1L << slotId)) != 0;
+		}
+
+		/** Sets the slot in the fiber with the given index as occupied or idle
+		 * @param slotId the slot
+		 * @param fiberIndex the index of the fiber
+		 * @param occupied {@code true} if the slot is to be occupied, {@code false} if it is released
+		 */
+		public void setOccupied (int slotId , int fiberIndex , boolean occupied)
+		{
+			if (slotId < 0 || slotId >= numSlots) throw new WDMException ("Wrong slot identifier");
+			if (occupied) occupancy_e [fiberIndex][slotId >>> 6] |= (1L << slotId); else occupancy_e [fiberIndex][slotId >>> 6] &= ~(1L << slotId);
+		}
+
+		/** Returns the number of occupied slots in the fiber
+		 * @param fiber the fiber
+		 * @return see above
+		 */
+		public int getNumOccupiedSlots (Link fiber)
+		{
+			int res = 0; for (long word : occupancy_e [fiber.getIndex()]) res += Long.bitCount(word);
+			return res;
+		}
+
+		/** Returns the slots occupied in the fiber, as a bitset where the bit {@code s} is set if the slot {@code s} is occupied
+		 * @param fiber the fiber
+		 * @return a new {@code BitSet}, not backed by this object
+		 */
+		public BitSet getOccupiedSlots (Link fiber) { return BitSet.valueOf(occupancy_e [fiber.getIndex()]); }
+
+		/** Returns the equivalent slot-fiber occupancy matrix, with a 1 in the position (s,e) if the slot s is occupied in the fiber e, and 0 otherwise
+		 * @return see above
+		 */
+		public DoubleMatrix2D toDoubleMatrix2D ()
+		{
+			final DoubleMatrix2D res = DoubleFactory2D.dense.make (numSlots , occupancy_e.length);
+			for (int e = 0; e < occupancy_e.length ; e ++)
+				for (int s = nextSetBit(occupancy_e [e] , 0) ; s < numSlots ; s = nextSetBit(occupancy_e [e] , s + 1))
+					res.setQuick(s, e, 1.0);
+			return res;
+		}
+
+		@Override
+		public boolean equals (Object o)
+		{
+			if (o == this) return true;
+			if (!(o instanceof SpectrumOccupancy)) return false;
+			final SpectrumOccupancy other = (SpectrumOccupancy) o;
+			return numSlots == other.numSlots && Arrays.deepEquals(occupancy_e , other.occupancy_e);
+		}
+
+		@Override
+		public int hashCode () { return 31 * numSlots + Arrays.deepHashCode(occupancy_e); }
+
+		/* The OR of the occupancy bitsets of the fibers of the path: a slot is set if it is occupied in at least one fiber */
+		private long [] getPathOccupancy (List<Link> seqFibers)
+		{
+			final long [] res = new long [numWords];
+			for (Link fiber : seqFibers)
+			{
+				final long [] occupancyThisFiber = occupancy_e [fiber.getIndex()];
+				for (int w = 0; w < numWords ; w ++) res [w] |= occupancyThisFiber [w];
+			}
+			return res;
+		}
+
+		/* Lowest slot s >= fromSlot so that the slots s, ..., s+numContiguousSlots-1 are all idle in the given bitset, or -1 if none */
+		private int firstFit (long [] pathOccupancy , int numContiguousSlots , int fromSlot)
+		{
+			if (numContiguousSlots <= 0) return fromSlot <= numSlots? fromSlot : -1;
+			int initialSlot = nextClearBit(pathOccupancy , fromSlot);
+			while (initialSlot + numContiguousSlots <= numSlots)
+			{
+				final int nextOccupiedSlot = nextSetBit(pathOccupancy , initialSlot);
+				if (nextOccupiedSlot - initialSlot >= numContiguousSlots) return initialSlot;
+				initialSlot = nextClearBit(pathOccupancy , nextOccupiedSlot);
+			}
+			return -1;
+		}
+
+		/* Index of the first set bit at or after fromIndex, or numSlots if none */
+		private int nextSetBit (long [] bits , int fromIndex)
+		{
+			if (fromIndex >= numSlots) return numSlots;
+			int w = fromIndex >>> 6;
+			long word = bits [w] & (-1L << fromIndex);
+			while (true)
+			{
+				if (word != 0) return Math.min(numSlots , (w << 6) + Long.numberOfTrailingZeros(word));
+				if (++ w == numWords) return numSlots;
+				word = bits [w];
+			}
+		}
+
+		/* Index of the first clear bit at or after fromIndex, or numSlots if none */
+		private int nextClearBit (long [] bits , int fromIndex)
+		{
+			if (fromIndex >= numSlots) return numSlots;
+			int w = fromIndex >>> 6;
+			long word = ~bits [w] & (-1L << fromIndex);
+			while (true)
+			{
+				if (word != 0) return Math.min(numSlots , (w << 6) + Long.numberOfTrailingZeros(word));
+				if (++ w == numWords) return numSlots;
+				word = ~bits [w];
+			}
+		}
+	}
+	
+	/**
+	 * <p>Frequency slot and regenerator occupancy of the lightpaths in a WDM layer, attached to the layer (see {@link #getOccupancyIndex(NetPlan, NetworkLayer...)}) 
+	 * and updated incrementally. The layer notifies the index when a lightpath is added, removed, rerouted, its RSA attributes change, or its failure 
+	 * state changes. The index records the modified lightpaths, and when a query is made, just those lightpaths are re-read: their previous occupancy 
+	 * is released and the new one allocated. A change in the fibers of the layer (a fiber is added or removed, or its number of slots changes) makes 
+	 * the index to be rebuilt from all the lightpaths in the next query.</p>
+	 * <p>The index keeps the occupancy counting and not counting the lightpaths that are down. As in {@link #getNetworkSlotAndRegeneratorOcupancy(NetPlan, boolean, NetworkLayer...)}, 
+	 * the slots above the number of slots of a fiber are considered occupied, and then a lightpath occupying them produces a clash. The number of 
+	 * clashing slots is also maintained incrementally.</p>
+	 */
+	public static class OccupancyIndex implements NetworkLayer.ILayerChangeListener
+	{
+		private final NetPlan netPlan;
+		private final NetworkLayer layer;
+		private final Set<Route> modifiedLightpaths;
+		private final Map<Route,Pair<RSA,Boolean>> accountedLightpaths; // the RSA of the lightpath, and if it is down
+		private boolean rebuildNeeded;
+		private int [] numSlots_e;
+		private List<Route> [][] lightpaths_es;
+		private int [][] numNotFailedLightpaths_es;
+		private SpectrumOccupancy occupancyAll;
+		private SpectrumOccupancy occupancyNotFailed;
+		private int numClashingSlotsAll;
+		private int numClashingSlotsNotFailed;
+		private final Map<Node,List<Route>> lightpathsWithRegenerator_n;
+		private final Map<Node,Integer> numNotFailedRegenerators_n;
+
+		private OccupancyIndex (NetPlan netPlan , NetworkLayer layer)
+		{
+			this.netPlan = netPlan;
+			this.layer = layer;
+			this.modifiedLightpaths = new HashSet<Route> ();
+			this.accountedLightpaths = new HashMap<Route,Pair<RSA,Boolean>> ();
+			this.lightpathsWithRegenerator_n = new HashMap<Node,List<Route>> ();
+			this.numNotFailedRegenerators_n = new HashMap<Node,Integer> ();
+			this.rebuildNeeded = true;
+		}
+
+		@Override
+		public void routeChanged (Route route) { if (!rebuildNeeded) modifiedLightpaths.add(route); }
+
+		@Override
+		public void linkChanged (Link link) { if (!rebuildNeeded && (link.getIndex() >= numSlots_e.length || link.getCapacity() != numSlots_e [link.getIndex()])) layerChanged (); }
+
+		@Override
+		public void demandChanged (Demand demand) { }
+
+		@Override
+		public void nodeChanged (Node node) { }
+
+		@Override
+		public void layerChanged () { rebuildNeeded = true; modifiedLightpaths.clear(); }
+
+		/** Returns the WDM layer of this index
+		 * @return see above
+		 */
+		public NetworkLayer getLayer () { return layer; }
+
+		/** Returns the number of slots considered in the index: the maximum number of slots among the fibers
+		 * @return see above
+		 */
+		public int getNumSlots () { update (); return occupancyAll.getNumSlots(); }
+
+		/** Returns {@code true} if the given slot is occupied in the given fiber (or is above the number of slots of the fiber)
+		 * @param fiber the fiber
+		 * @param slotId the slot
+		 * @param countFailedLightpaths if {@code false}, the lightpaths that are down are not considered
+		 * @return see above
+		 */
+		public boolean isSlotOccupied (Link fiber , int slotId , boolean countFailedLightpaths)
+		{
+			update ();
+			return (countFailedLightpaths? occupancyAll : occupancyNotFailed).isOccupied(slotId, fiber.getIndex());
+		}
+
+		/** Returns the slots occupied in the given fiber (including the ones above the number of slots of the fiber), as a bitset where 
+		 * the bit {@code s} is set if the slot {@code s} is occupied. Only the occupancy of this fiber is copied
+		 * @param fiber the fiber
+		 * @param countFailedLightpaths if {@code false}, the lightpaths that are down are not considered
+		 * @return a new {@code BitSet}, not backed by the index
+		 */
+		public BitSet getOccupiedSlots (Link fiber , boolean countFailedLightpaths)
+		{
+			update ();
+			return (countFailedLightpaths? occupancyAll : occupancyNotFailed).getOccupiedSlots(fiber);
+		}
+
+		/** Returns the number of slots occupied in the given fiber (including the ones above the number of slots of the fiber)
+		 * @param fiber the fiber
+		 * @param countFailedLightpaths if {@code false}, the lightpaths that are down are not considered
+		 * @return see above
+		 */
+		public int getNumOccupiedSlots (Link fiber , boolean countFailedLightpaths)
+		{
+			update ();
+			return (countFailedLightpaths? occupancyAll : occupancyNotFailed).getNumOccupiedSlots(fiber);
+		}
+
+		/** Returns the lightpaths occupying the given slot in the given fiber (including the ones that are down)
+		 * @param fiber the fiber
+		 * @param slotId the slot
+		 * @return an unmodifiable list with the lightpaths (as {@code Route} objects)
+		 */
+		public List<Route> getLightpathsOccupyingSlot (Link fiber , int slotId)
+		{
+			update ();
+			if (slotId < 0 || slotId >= occupancyAll.getNumSlots()) throw new WDMException ("Wrong slot identifier");
+			final List<Route> res = lightpaths_es [fiber.getIndex()][slotId];
+			return res == null? Collections.<Route>emptyList() : Collections.unmodifiableList(res);
+		}
+
+		/** Returns the lightpaths with a regenerator in the given node. A lightpath appears once per regenerator it occupies in the node 
+		 * @param node the node
+		 * @return an unmodifiable list with the lightpaths (as {@code Route} objects)
+		 */
+		public List<Route> getLightpathsWithRegenerator (Node node)
+		{
+			update ();
+			final List<Route> res = lightpathsWithRegenerator_n.get(node);
+			return res == null? Collections.<Route>emptyList() : Collections.unmodifiableList(res);
+		}
+
+		/** Returns the number of regenerators occupied in the node 
+		 * @param node the node
+		 * @param countFailedLightpaths if {@code false}, the lightpaths that are down are not considered
+		 * @return see above
+		 */
+		public int getNumRegeneratorsOccupied (Node node , boolean countFailedLightpaths)
+		{
+			update ();
+			if (countFailedLightpaths) { final List<Route> res = lightpathsWithRegenerator_n.get(node); return res == null? 0 : res.size(); }
+			final Integer res = numNotFailedRegenerators_n.get(node);
+			return res == null? 0 : res;
+		}
+
+		/** Returns the number of (fiber,slot) pairs where more than one lightpath is allocated, or where a lightpath is occupying a slot above the number of slots of the fiber 
+		 * @param countFailedLightpaths if {@code false}, the lightpaths that are down are not considered
+		 * @return see above
+		 */
+		public int getNumClashingSlots (boolean countFailedLightpaths)
+		{
+			update ();
+			return countFailedLightpaths? numClashingSlotsAll : numClashingSlotsNotFailed;
+		}
+
+		/* If the lightpath was down when it was last read */
+		private boolean isAccountedAsDown (Route lp)
+		{
+			final Pair<RSA,Boolean> info = accountedLightpaths.get(lp);
+			return info != null && info.getSecond();
+		}
+
+		/** Returns a copy of the current slot occupancy. An exception is raised if there is any clashing slot
+		 * @param countFailedLightpaths if {@code false}, the lightpaths that are down are not considered
+		 * @return see above
+		 */
+		public SpectrumOccupancy getSpectrumOccupancy (boolean countFailedLightpaths)
+		{
+			if (getNumClashingSlots(countFailedLightpaths) > 0) throw new WDMException ("Frequency slot clashing");
+			return (countFailedLightpaths? occupancyAll : occupancyNotFailed).copy();
+		}
+
+		/** Returns a vector with the number of regenerators occupied in each node
+		 * @param countFailedLightpaths if {@code false}, the lightpaths that are down are not considered
+		 * @return see above
+		 */
+		public DoubleMatrix1D getNodeRegeneratorOccupancy (boolean countFailedLightpaths)
+		{
+			update ();
+			DoubleMatrix1D res = DoubleFactory1D.dense.make (netPlan.getNumberOfNodes());
+			if (countFailedLightpaths) 
+				for (Map.Entry<Node,List<Route>> entry : lightpathsWithRegenerator_n.entrySet()) res.set(entry.getKey().getIndex() , entry.getValue().size());
+			else
+				for (Map.Entry<Node,Integer> entry : numNotFailedRegenerators_n.entrySet()) res.set(entry.getKey().getIndex() , entry.getValue());
+			return res;
+		}
+
+		private void update ()
+		{
+			if (layer.wasRemoved() || layer.getNetPlan() != netPlan) throw new WDMException ("The layer of the occupancy index is not in the design");
+			try
+			{
+				if (rebuildNeeded) { rebuild (); return; }
+				if (modifiedLightpaths.isEmpty()) return;
+				for (Route lp : modifiedLightpaths)
+				{
+					final Pair<RSA,Boolean> previousInfo = accountedLightpaths.remove(lp);
+					if (previousInfo != null) updateOccupancy (lp , previousInfo.getFirst() , previousInfo.getSecond() , false);
+					if (lp.getNetPlan() == netPlan) allocate (lp);
+				}
+				modifiedLightpaths.clear();
+			} catch (RuntimeException e) { layerChanged (); throw e; }
+		}
+
+		private void rebuild ()
+		{
+			final int E = netPlan.getNumberOfLinks(layer);
+			this.numSlots_e = new int [E];
+			int W = 0;
+			for (Link fiber : netPlan.getLinks(layer)) { numSlots_e [fiber.getIndex()] = getFiberNumFrequencySlots(fiber); W = Math.max(W , numSlots_e [fiber.getIndex()]); }
+			this.lightpaths_es = newLightpathsPerFiberAndSlot (E , W);
+			this.numNotFailedLightpaths_es = new int [E][W];
+			this.occupancyAll = new SpectrumOccupancy (E , W);
+			this.occupancyNotFailed = new SpectrumOccupancy (E , W);
+			this.numClashingSlotsAll = 0;
+			this.numClashingSlotsNotFailed = 0;
+			this.accountedLightpaths.clear();
+			this.lightpathsWithRegenerator_n.clear();
+			this.numNotFailedRegenerators_n.clear();
+			this.modifiedLightpaths.clear();
+
+			/* The slots above the number of slots of a fiber, are set as occupied */
+			for (int e = 0 ; e < E ; e ++) 
+				for (int s = numSlots_e [e] ; s < W ; s ++) { occupancyAll.setOccupied(s, e, true); occupancyNotFailed.setOccupied(s, e, true); }
+
+			for (Route lp : netPlan.getRoutes(layer)) allocate (lp);
+			this.rebuildNeeded = false;
+		}
+
+		@SuppressWarnings("unchecked")
+		private static List<Route> [][] newLightpathsPerFiberAndSlot (int E , int W)
+		{
+			return (List<Route> [][]) new List<?> [E][W];
+		}
+
+		private void allocate (Route lp)
+		{
+			final RSA rsa = new RSA (lp , false);
+			final boolean isDown = rsa.isDown();
+			final int W = occupancyAll.getNumSlots();
+			for (int hopId = 0 ; hopId < rsa.seqFrequencySlots_se.columns() ; hopId ++)
+				for (int cont = 0 ; cont < rsa.seqFrequencySlots_se.rows() ; cont ++)
+					if (rsa.seqFrequencySlots_se.get(cont , hopId) >= W) throw new WDMException ("The slot id is higher than the number of slots available");
+			updateOccupancy (lp , rsa , isDown , true);
+			accountedLightpaths.put(lp , Pair.of(rsa , isDown));
+		}
+
+		private void updateOccupancy (Route lp , RSA rsa , boolean isDown , boolean allocate)
+		{
+			for (int hopId = 0 ; hopId < rsa.seqLinks.size() ; hopId ++)
+			{
+				final Link fiber = rsa.seqLinks.get(hopId);
+				final int e = fiber.getIndex();
+				for (int cont = 0 ; cont < rsa.seqFrequencySlots_se.rows() ; cont ++)
+				{
+					final int s = rsa.seqFrequencySlots_se.get(cont , hopId);
+					final int aboveCapacity = s >= numSlots_e [e]? 1 : 0;
+					List<Route> lps = lightpaths_es [e][s];
+					if (lps == null) { lps = new ArrayList<Route> (2); lightpaths_es [e][s] = lps; }
+					final int previousAll = lps.size() + aboveCapacity;
+					final int previousNotFailed = numNotFailedLightpaths_es [e][s] + aboveCapacity;
+					if (allocate) lps.add(lp); else lps.remove(lp);
+					if (!isDown) numNotFailedLightpaths_es [e][s] += allocate? 1 : -1;
+					final int currentAll = lps.size() + aboveCapacity;
+					final int currentNotFailed = numNotFailedLightpaths_es [e][s] + aboveCapacity;
+					numClashingSlotsAll += (currentAll > 1? 1 : 0) - (previousAll > 1? 1 : 0);
+					numClashingSlotsNotFailed += (currentNotFailed > 1? 1 : 0) - (previousNotFailed > 1? 1 : 0);
+					occupancyAll.setOccupied(s, e, currentAll > 0);
+					occupancyNotFailed.setOccupied(s, e, currentNotFailed > 0);
+				}
+				if ((rsa.seqRegeneratorsOccupancy_e != null) && (rsa.seqRegeneratorsOccupancy_e [hopId] == 1))
+				{
+					final Node node = fiber.getOriginNode();
+					List<Route> lps = lightpathsWithRegenerator_n.get(node);
+					if (lps == null) { lps = new ArrayList<Route> (2); lightpathsWithRegenerator_n.put(node , lps); }
+					if (allocate) lps.add(lp); else lps.remove(lp);
+					if (lps.isEmpty()) lightpathsWithRegenerator_n.remove(node);
+					if (!isDown)
+					{
+						final int numNotFailed = (numNotFailedRegenerators_n.containsKey(node)? numNotFailedRegenerators_n.get(node) : 0) + (allocate? 1 : -1);
+						if (numNotFailed == 0) numNotFailedRegenerators_n.remove(node); else numNotFailedRegenerators_n.put(node , numNotFailed);
+					}
+				}
+			}
+		}
+	}
+	
 	/**
 	 * This class represents the request to add a new lightpath. It is used in online algorithms related to WDM networks, inside {@code SimEvent} objects.
 	 */
@@ -709,6 +1168,8 @@ public class WDMUtils
 				rsa.checkFrequencySlotConversionOccupiesARegenerator();
 			}
 		}
+		final OccupancyIndex index = getAttachedOccupancyIndex(layer);
+		if (index != null) { if (index.getNumClashingSlots(countFailedLightpaths) > 0) throw new WDMException ("Frequency slot clashing"); return; }
 		getNetworkSlotAndRegeneratorOcupancy(netPlan , countFailedLightpaths , layer); // serves as check
 	}
 	
@@ -867,6 +1328,36 @@ public class WDMUtils
 		return true;
 	}
 
+	/**
+	 * Same as {@link #isAllocatableRSASet(DoubleMatrix2D, RSA...)}, but the slot-fiber occupancy is given as a {@link SpectrumOccupancy} object. 
+	 * @param occupancy Current slot-fiber occupancy 
+	 * @param rsas one or more RSAs to check, see {@link #isAllocatableRSASet(DoubleMatrix2D, RSA...)}
+	 * @return See description above
+	 */
+	public static boolean isAllocatableRSASet (SpectrumOccupancy occupancy , RSA ... rsas)
+	{
+		final Map<Integer,long []> slotsAlreadyChecked_e = new HashMap<Integer,long []> ();
+		for (RSA rsa : rsas)
+		{
+			int orderTravLink = 0; 
+			for (Link e : rsa.seqLinks)
+			{
+				final int linkIndex = e.getIndex();
+				long [] checked = slotsAlreadyChecked_e.get(linkIndex);
+				if (checked == null) { checked = new long [occupancy.numWords]; slotsAlreadyChecked_e.put(linkIndex , checked); }
+				for (int s = 0; s < rsa.seqFrequencySlots_se.rows() ; s ++)
+				{
+					final int slotIndex = rsa.seqFrequencySlots_se.get(s,orderTravLink);
+					if (occupancy.isOccupied(slotIndex , linkIndex)) return false;
+					if ((checked [slotIndex >>> 6] & (1L << slotIndex)) != 0) return false;
+					checked [slotIndex >>> 6] |= (1L << slotIndex);
+				}
+				orderTravLink ++;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Returns the fiber occupied (columns) in each wavelength (rows), and an array with the number of occupied regenerators in each node.
 	 * The lightpaths with occupied capacity equal to zero (as Route objects) are not counted. 
@@ -874,12 +1365,16 @@ public class WDMUtils
 	 * @param netPlan Current design
 	 * @param countFailedLightpaths Include paths (current, primary or backup) that are down
 	 * @param optionalLayerParameter WDM network layer. If not present, the default layer is assumed
+	 * The matrix is created in each call, also if an occupancy index is attached to the layer: the slots occupied in a fiber can be queried 
+	 * with {@link OccupancyIndex#isSlotOccupied(Link, int, boolean)} and {@link OccupancyIndex#getOccupiedSlots(Link, boolean)} instead.
 	 * @return Frequency slot - links occupation matrix, and per node regenerator occupation vector
 	 */
 	public static Pair<DoubleMatrix2D,DoubleMatrix1D> getNetworkSlotAndRegeneratorOcupancy(NetPlan netPlan, 
 			boolean countFailedLightpaths , NetworkLayer ... optionalLayerParameter)
 	{
 		NetworkLayer layer = netPlan.checkInThisNetPlanOptionalLayerParameter(optionalLayerParameter);
+		final OccupancyIndex index = getAttachedOccupancyIndex(layer);
+		if (index != null) return Pair.of(index.getSpectrumOccupancy(countFailedLightpaths).toDoubleMatrix2D() , index.getNodeRegeneratorOccupancy(countFailedLightpaths));
 		final int E = netPlan.getNumberOfLinks (layer);
 		final int N = netPlan.getNumberOfNodes ();
 		DoubleMatrix1D w_f = getVectorFiberNumFrequencySlots (netPlan, layer);
@@ -900,6 +1395,77 @@ public class WDMUtils
 		return Pair.of(frequencySlot2FiberOccupancy_se,nodeRegeneratorOccupancy);
 	}
 
+	/**
+	 * Same as {@link #getNetworkSlotAndRegeneratorOcupancy(NetPlan, boolean, NetworkLayer...)}, but the slot-fiber occupancy is returned as 
+	 * a {@link SpectrumOccupancy} object. The number of slots is the maximum number of slots among the fibers, and the slots above the 
+	 * number of slots of a fiber are set as occupied in it. 
+	 * @param netPlan Current design
+	 * @param countFailedLightpaths Include paths (current, primary or backup) that are down
+	 * @param optionalLayerParameter WDM network layer. If not present, the default layer is assumed
+	 * @return Frequency slot - links occupation, and per node regenerator occupation vector
+	 */
+	public static Pair<SpectrumOccupancy,DoubleMatrix1D> getNetworkSpectrumAndRegeneratorOccupancy(NetPlan netPlan, 
+			boolean countFailedLightpaths , NetworkLayer ... optionalLayerParameter)
+	{
+		NetworkLayer layer = netPlan.checkInThisNetPlanOptionalLayerParameter(optionalLayerParameter);
+		final OccupancyIndex index = getAttachedOccupancyIndex(layer);
+		if (index != null) return Pair.of(index.getSpectrumOccupancy(countFailedLightpaths) , index.getNodeRegeneratorOccupancy(countFailedLightpaths));
+		final int E = netPlan.getNumberOfLinks (layer);
+		final int N = netPlan.getNumberOfNodes ();
+		DoubleMatrix1D w_f = getVectorFiberNumFrequencySlots (netPlan, layer);
+		final int W = w_f.size () == 0? 0 : (int) w_f.getMaxLocation() [0];
+		SpectrumOccupancy occupancy = new SpectrumOccupancy (E , W);
+		DoubleMatrix1D nodeRegeneratorOccupancy = DoubleFactory1D.dense.make (N);
+	
+		/* The wavelengths above the maximum number of wavelengths of a fiber, are set as occupied */
+		for (int e = 0 ; e < E ; e ++) for (int w = (int) w_f.get(e) ; w < W ; w ++) occupancy.setOccupied (w , e , true);
+		
+		/* Wavlengths occupied by the lightpaths as routes */
+		for (Route lpRoute : netPlan.getRoutes(layer))
+		{
+			final RSA rsa = new RSA (lpRoute , false);
+			if (!countFailedLightpaths && rsa.isDown()) continue;
+			allocateResources(rsa , occupancy , nodeRegeneratorOccupancy);
+		}
+		return Pair.of(occupancy,nodeRegeneratorOccupancy);
+	}
+
+	/**
+	 * Returns the occupancy index attached to the WDM layer, creating it and attaching it to the layer if it did not exist. 
+	 * Once attached, the index is updated incrementally when the lightpaths change, and the methods 
+	 * {@link #getNetworkSlotAndRegeneratorOcupancy(NetPlan, boolean, NetworkLayer...)}, {@link #getNetworkSpectrumAndRegeneratorOccupancy(NetPlan, boolean, NetworkLayer...)} 
+	 * and {@link #getNetworkSlotOccupancyMap(NetPlan, boolean, NetworkLayer...)} use it, instead of reading the RSA of all the lightpaths.
+	 * @param netPlan Current design
+	 * @param optionalLayerParameter WDM network layer. If not present, the default layer is assumed
+	 * @return the occupancy index
+	 */
+	public static OccupancyIndex getOccupancyIndex (NetPlan netPlan, NetworkLayer ... optionalLayerParameter)
+	{
+		NetworkLayer layer = netPlan.checkInThisNetPlanOptionalLayerParameter(optionalLayerParameter);
+		OccupancyIndex index = getAttachedOccupancyIndex(layer);
+		if (index == null) { index = new OccupancyIndex (netPlan , layer); layer.addChangeListener(index); }
+		return index;
+	}
+
+	/**
+	 * Detaches the occupancy index from the WDM layer, if any. Then, the layer lightpath changes are not tracked any more.
+	 * @param netPlan Current design
+	 * @param optionalLayerParameter WDM network layer. If not present, the default layer is assumed
+	 */
+	public static void removeOccupancyIndex (NetPlan netPlan, NetworkLayer ... optionalLayerParameter)
+	{
+		NetworkLayer layer = netPlan.checkInThisNetPlanOptionalLayerParameter(optionalLayerParameter);
+		final OccupancyIndex index = getAttachedOccupancyIndex(layer);
+		if (index != null) layer.removeChangeListener(index);
+	}
+
+	private static OccupancyIndex getAttachedOccupancyIndex (NetworkLayer layer)
+	{
+		for (NetworkLayer.ILayerChangeListener listener : layer.getChangeListeners())
+			if (listener instanceof OccupancyIndex) return (OccupancyIndex) listener;
+		return null;
+	}
+
 	/**
 	 * Returns two maps, showing the frequency slots in the links and signal regenerator in the nodes occupancies. 
 	 * The slot occupancy is a map where the keys are the pairs (fiber,slot) occupied by at least one lightpath, and the 
@@ -921,10 +1487,36 @@ public class WDMUtils
 		NetworkLayer layer = netPlan.checkInThisNetPlanOptionalLayerParameter(optionalLayerParameter);
 		Map<Pair<Link,Integer>,List<Route>> lpOccup = new HashMap<Pair<Link,Integer>,List<Route>> (); 
 		Map<Node,List<Route>> regeneratorOccup = new HashMap<Node,List<Route>> (); 
+		final OccupancyIndex index = getAttachedOccupancyIndex(layer);
+		if (index != null)
+		{
+			for (Link e : netPlan.getLinks(layer))
+			{
+				final BitSet occupiedSlots = index.getOccupiedSlots(e , true);
+				for (int s = occupiedSlots.nextSetBit(0); s >= 0 ; s = occupiedSlots.nextSetBit(s + 1))
+					for (Route r : index.getLightpathsOccupyingSlot(e , s))
+					{
+						if (!countFailedLightpaths && index.isAccountedAsDown(r)) continue;
+						Pair<Link,Integer> key = Pair.of(e , s);
+						List<Route> lists = lpOccup.get(key); 
+						if (lists == null) { lists = new LinkedList<Route> (); lpOccup.put(key,lists); }
+						lists.add(r);
+					}
+			}
+			for (Node n : netPlan.getNodes())
+				for (Route r : index.getLightpathsWithRegenerator(n))
+				{
+					if (!countFailedLightpaths && index.isAccountedAsDown(r)) continue;
+					List<Route> lists = regeneratorOccup.get(n); 
+					if (lists == null) { lists = new LinkedList<Route> (); regeneratorOccup.put(n,lists); }
+					lists.add(r);
+				}
+			return Pair.of(lpOccup,regeneratorOccup);
+		}
 		for (Route r : netPlan.getRoutes(layer))
 		{
  			final RSA rsa = new RSA(r , false);
-			if (rsa.isDown() && countFailedLightpaths) continue;
+			if (rsa.isDown() && !countFailedLightpaths) continue;
  			
 			for (int contLink = 0; contLink < rsa.seqLinks.size() ; contLink ++)
 			{
@@ -964,7 +1556,7 @@ public class WDMUtils
 			final Link fiber = fiberIt.next();
 			for (int s = 0; s < S ; s ++)
 			{
-				final int slotId = (int) rsa.seqFrequencySlots_se.get(s,hopId);
+				final int slotId = rsa.seqFrequencySlots_se.get(s,hopId);
 				final boolean wasOccupied = frequencySlot2FiberOccupancy_se.get(slotId, fiber.getIndex ()) != 0;
 				if (!wasOccupied) throw new WDMException("Wavelength " + slotId + " was unused in fiber " + fiber.getId ());
 				frequencySlot2FiberOccupancy_se.set(slotId, fiber.getIndex () , 0.0);
@@ -977,6 +1569,35 @@ public class WDMUtils
 				}
 		}
 	}
+
+	/**
+	 * Same as {@link #releaseResources(RSA, DoubleMatrix2D, DoubleMatrix1D)}, but the slot-fiber occupancy is given as a {@link SpectrumOccupancy} object
+	 * @param rsa The RSA to release
+	 * @param occupancy Current slot-fiber occupancy (updated inside the method)
+	 * @param nodeRegeneratorOccupancy Current node regenerator occupancy (updated inside the method). If {@code null} regenerator information is not updated
+	 */
+	public static void releaseResources(RSA rsa , SpectrumOccupancy occupancy, DoubleMatrix1D nodeRegeneratorOccupancy)
+	{
+		final int S = rsa.getNumSlots();
+		ListIterator<Link> fiberIt = rsa.seqLinks.listIterator();
+		while(fiberIt.hasNext())
+		{
+			final int hopId = fiberIt.nextIndex();
+			final Link fiber = fiberIt.next();
+			for (int s = 0; s < S ; s ++)
+			{
+				final int slotId = rsa.seqFrequencySlots_se.get(s,hopId);
+				if (!occupancy.isOccupied(slotId, fiber.getIndex ())) throw new WDMException("Wavelength " + slotId + " was unused in fiber " + fiber.getId ());
+				occupancy.setOccupied(slotId, fiber.getIndex () , false);
+			}
+			if ((nodeRegeneratorOccupancy != null) && (rsa.seqRegeneratorsOccupancy_e != null))
+				if (rsa.seqRegeneratorsOccupancy_e[hopId] == 1)
+				{
+					Node node = fiber.getOriginNode();
+					nodeRegeneratorOccupancy.set(node.getIndex (), nodeRegeneratorOccupancy.get(node.getIndex()) - 1);
+				}
+		}
+	}
 	
 	/**
 	 * Sets the number of frequency slots available on the given fiber.
@@ -1069,6 +1690,22 @@ public class WDMUtils
 		return -1;
 	}
 
+	/**
+	 * <p>Same as {@link #spectrumAssignment_firstFit(List, DoubleMatrix2D, int)}, but the slot-fiber occupancy is given as a {@link SpectrumOccupancy} object. 
+	 * The occupancy bitsets of the traversed fibers are merged, and the idle blocks are searched 64 slots at a time</p>
+	 * <p><b>Important</b>: {@code occupancy} is not updated by this method
+	 *
+	 * @param seqFibers Sequence of traversed fibers
+	 * @param occupancy Current slot-fiber occupancy 
+	 * @param numContiguousSlotsRequired Number of slots of the block (in fixed-grid WDM, this is 1)
+	 * @return The id of the initial slot of the contiguous block, or -1 if there is no such block of contigous slots with free resources in all the links
+	 */
+	public static int spectrumAssignment_firstFit(List<Link> seqFibers, SpectrumOccupancy occupancy , int numContiguousSlotsRequired)
+	{
+		GraphUtils.checkRouteContinuity(seqFibers, Constants.CheckRoutingCycleType.NO_REPEAT_LINK);
+		return occupancy.firstFit(occupancy.getPathOccupancy(seqFibers) , numContiguousSlotsRequired , 0);
+	}
+
 	/**
 	 * <p>Frequency slot assignment algorithm based on a first-fit fashion for two different paths. 
 	 * It tries to find the lowest {@code (s1,s2)} pair, so that a contiguous block of the needed slots, starting in s1, are free in the first path,
@@ -1117,6 +1754,43 @@ public class WDMUtils
 		return null;
 	}
 
+	/**
+	 * <p>Same as {@link #spectrumAssignment_firstFitTwoRoutes(List, List, DoubleMatrix2D, int)}, but the slot-fiber occupancy is given as a {@link SpectrumOccupancy} object.</p>
+	 * <p><b>Important</b>: {@code occupancy} is not updated by this method
+	 *
+	 * @param seqFibers_1 First sequence of traversed fibers
+	 * @param seqFibers_2 Second sequence of traversed fibers
+	 * @param occupancy Current slot-fiber occupancy 
+	 * @param numContiguousSlotsRequired Number of slots of the block (in fixed-grid WDM, this is 1)
+	 * @return Pair of sequences of wavelengths traversed by each lightpath
+	 */
+	public static Pair<Integer,Integer> spectrumAssignment_firstFitTwoRoutes(List<Link> seqFibers_1, List<Link> seqFibers_2 , SpectrumOccupancy occupancy , int numContiguousSlotsRequired)
+	{
+		GraphUtils.checkRouteContinuity(seqFibers_1, Constants.CheckRoutingCycleType.NO_REPEAT_LINK);
+		GraphUtils.checkRouteContinuity(seqFibers_2, Constants.CheckRoutingCycleType.NO_REPEAT_LINK);
+		final boolean haveLinksInCommon = !Sets.intersection(new HashSet<>(seqFibers_1)  , new HashSet<>(seqFibers_2)).isEmpty();
+		final long [] pathOccupancy_1 = occupancy.getPathOccupancy(seqFibers_1);
+		final long [] pathOccupancy_2 = occupancy.getPathOccupancy(seqFibers_2);
+		if (!haveLinksInCommon)
+		{
+			final int initialSlot_1 = occupancy.firstFit(pathOccupancy_1 , numContiguousSlotsRequired , 0);
+			if (initialSlot_1 == -1) return null;
+			final int initialSlot_2 = occupancy.firstFit(pathOccupancy_2 , numContiguousSlotsRequired , 0);
+			if (initialSlot_2 == -1) return null;
+			return Pair.of(initialSlot_1, initialSlot_2);
+		}
+		/* The block of the second path cannot overlap the block of the first one: the slots of the first block are set as occupied in the second path */
+		final long [] pathOccupancy_2_withBlock1 = new long [pathOccupancy_2.length];
+		for (int initialSlot_1 = occupancy.firstFit(pathOccupancy_1 , numContiguousSlotsRequired , 0) ; initialSlot_1 != -1 ; initialSlot_1 = occupancy.firstFit(pathOccupancy_1 , numContiguousSlotsRequired , initialSlot_1 + 1))
+		{
+			System.arraycopy(pathOccupancy_2, 0, pathOccupancy_2_withBlock1, 0, pathOccupancy_2.length);
+			for (int s = initialSlot_1 ; s < initialSlot_1 + numContiguousSlotsRequired ; s ++) pathOccupancy_2_withBlock1 [s >>> 6] |= (1L << s);
+			final int initialSlot_2 = occupancy.firstFit(pathOccupancy_2_withBlock1 , numContiguousSlotsRequired , 0);
+			if (initialSlot_2 != -1) return Pair.of(initialSlot_1, initialSlot_2);
+		}
+		return null;
+	}
+
 	/**
 	 * <p>Wavelength assignment algorithm based on a first-fit fashion assuming
 	 * full wavelength conversion and regeneration capabilities. This algorithm is targeted for fixed-frid WDM networks, where all 
@@ -1270,7 +1944,7 @@ public class WDMUtils
 			IntMatrix1D slotIds = rsa.seqFrequencySlots_se.viewColumn(hopId);
 			for (int cont = 0 ; cont < slotIds.size() ; cont ++)
 			{
-				final int slotId = (int) slotIds.get(cont);
+				final int slotId = slotIds.get(cont);
 				if (slotId >= W) throw new WDMException ("The slot id is higher than the number of slots available");
 				if (frequencySlot2FiberOccupancy_se.get(slotId , fiber.getIndex ()) != 0) throw new WDMException ("Frequency slot clashing: slot " + slotIds.get(cont) + ", fiber: " + fiber.getId ());
 				frequencySlot2FiberOccupancy_se.set(slotId , fiber.getIndex () , 1.0);
@@ -1285,6 +1959,39 @@ public class WDMUtils
 		}
 	}
 
+	/**
+	 * Same as {@link #allocateResources(RSA, DoubleMatrix2D, DoubleMatrix1D)}, but the slot-fiber occupancy is given as a {@link SpectrumOccupancy} object
+	 * 
+	 * @param rsa The rsa
+	 * @param occupancy Current slot-fiber occupancy (updated inside the method)
+	 * @param nodeRegeneratorOccupancy Current number of regenerators occupied per node
+	 */
+	public static void allocateResources(RSA rsa, SpectrumOccupancy occupancy, DoubleMatrix1D nodeRegeneratorOccupancy)
+	{
+		final int W = occupancy.getNumSlots();
+		ListIterator<Link> fiberIt = rsa.seqLinks.listIterator();
+		while(fiberIt.hasNext())
+		{
+			final int hopId = fiberIt.nextIndex();
+			final Link fiber = fiberIt.next();
+			IntMatrix1D slotIds = rsa.seqFrequencySlots_se.viewColumn(hopId);
+			for (int cont = 0 ; cont < slotIds.size() ; cont ++)
+			{
+				final int slotId = slotIds.get(cont);
+				if (slotId >= W) throw new WDMException ("The slot id is higher than the number of slots available");
+				if (occupancy.isOccupied(slotId , fiber.getIndex ())) throw new WDMException ("Frequency slot clashing: slot " + slotIds.get(cont) + ", fiber: " + fiber.getId ());
+				occupancy.setOccupied(slotId , fiber.getIndex () , true);
+			}
+
+			if (rsa.seqRegeneratorsOccupancy_e != null)
+				if (rsa.seqRegeneratorsOccupancy_e[hopId] == 1)
+				{
+					Node node = fiber.getOriginNode();
+					nodeRegeneratorOccupancy.set (node.getIndex (), nodeRegeneratorOccupancy.get(node.getIndex ()) + 1);
+				}
+		}
+	}
+
 	/**
 	 * <p>Computes the list of spectral voids (list of available contiguous slots) 
 	 * from a slot availability vector (of a fiber or of a path).</p>
@@ -230,6 +230,25 @@ public class LinkTest
 		assertEquals(link23.getOccupiedCapacity() , 0 , 0.0001);
 	}
 
+	@Test
+	public void testCarriedTrafficAndOccupiedCapacityAfterManyChanges()
+	{
+		for (int cont = 0 ; cont < 1000 ; cont ++)
+		{
+			segm13.setCarriedTraffic(0.1 * cont , 0.3 * cont);
+			if (cont % 100 == 0) link13.setFailureState(!link13.isUp());
+			if (cont % 100 == 50) segm13.setPath(segm13.getCarriedTraffic() + 0.1 , path13 , Arrays.asList(0.7 , 0.7));
+			if (cont % 100 == 75) segm13.setPath(0.1 , Collections.singletonList(link13) , Collections.singletonList(0.2));
+		}
+		assertTrue(link13.isUp());
+		assertEquals(link13.getCarriedTraffic() , 99.9 + 10 , 1e-12);
+		assertEquals(link13.getOccupiedCapacity() , 299.7 + 15 , 1e-12);
+		link13.updateLinkTrafficAndOccupation();
+		assertEquals(link13.getCarriedTraffic() , 99.9 + 10 , 1e-12);
+		assertEquals(link13.getOccupiedCapacity() , 299.7 + 15 , 1e-12);
+		np.checkCachesConsistency();
+	}
+
 	@Test
 	public void testGetOccupiedCapacityOnlyBackupRoutes() 
 	{
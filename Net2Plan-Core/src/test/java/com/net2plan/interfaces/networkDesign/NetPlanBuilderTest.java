@@ -0,0 +1,51 @@
+package com.net2plan.interfaces.networkDesign;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.net2plan.utils.Constants.RoutingCycleType;
+
+import cern.colt.matrix.tdouble.DoubleFactory2D;
+
+public class NetPlanBuilderTest
+{
+	@Test
+	public void testNetPlanBuilder()
+	{
+		final double [][] trafficMatrix = new double [][] { { 0 , 1 , 2 } , { 3 , 0 , 4 } , { 5 , 6 , 0 } };
+		NetPlanBuilder builder = new NetPlanBuilder ()
+				.setNodes(new double [] { 0 , 1 , 2 } , new double [] { 0 , 0 , 1 } , new String [] { "n0" , "n1" , "n2" })
+				.setLinks(new int [] { 0 , 1 , 2 , 1 } , new int [] { 1 , 2 , 0 , 0 } , new double [] { 10 , 20 , 30 , 40 } , new double [] { 1 , 2 , 3 , 4 } , new double [] { 200000 , 200000 , 200000 , 1 })
+				.setDemandsFromTrafficMatrix(DoubleFactory2D.dense.make(trafficMatrix))
+				.setRoutes(new int [] { 0 , 1 , 1 , 3 } , new int [][] { { 0 } , { 0 , 1 } , { 0 , 1 } , { 3 , 0 , 1 } } , new double [] { 1 , 2 , 0.5 , 4 } , new double [] { 1 , 2 , 3 , 4 });
+		NetPlan np1 = builder.build();
+		np1.checkCachesConsistency();
+
+		/* the same design, built element by element */
+		NetPlan np2 = new NetPlan ();
+		for (int n = 0; n < 3 ; n ++) np2.addNode(n , n == 2? 1 : 0 , "n" + n , null);
+		np2.addLink(np2.getNode(0) , np2.getNode(1) , 10 , 1 , 200000 , null);
+		np2.addLink(np2.getNode(1) , np2.getNode(2) , 20 , 2 , 200000 , null);
+		np2.addLink(np2.getNode(2) , np2.getNode(0) , 30 , 3 , 200000 , null);
+		np2.addLink(np2.getNode(1) , np2.getNode(0) , 40 , 4 , 1 , null);
+		np2.addDemandsFromTrafficMatrix(DoubleFactory2D.dense.make(trafficMatrix));
+		np2.addRoute(np2.getDemand(0) , 1 , 1 , Arrays.asList(np2.getLink(0)) , null);
+		np2.addRoute(np2.getDemand(1) , 2 , 2 , Arrays.asList(np2.getLink(0) , np2.getLink(1)) , null);
+		np2.addRoute(np2.getDemand(1) , 0.5 , 3 , Arrays.asList(np2.getLink(0) , np2.getLink(1)) , null);
+		np2.addRoute(np2.getDemand(3) , 4 , 4 , Arrays.asList(np2.getLink(3) , np2.getLink(0) , np2.getLink(1)) , null);
+		assertTrue(np1.isDeepCopy(np2));
+		assertTrue(np2.isDeepCopy(np1));
+		assertEquals(np1.getLink(0).getCarriedTraffic() , 7.5 , 0);
+		assertEquals(np1.getDemand(3).getRoutingCycleType() , RoutingCycleType.OPEN_CYCLES);
+
+		/* the input is validated */
+		try { builder.setRoutes(new int [] { 0 } , new int [][] { { 1 } } , new double [] { 1 } , new double [] { 1 }).build(); fail ("Not a path of the demand"); } catch (Net2PlanException e) {}
+		try { builder.setRoutes(new int [] { 6 } , new int [][] { { 0 } } , new double [] { 1 } , new double [] { 1 }).build(); fail ("Wrong demand index"); } catch (Net2PlanException e) {}
+		try { builder.setLinks(new int [] { 0 } , new int [] { 0 } , new double [] { 1 } , new double [] { 1 } , new double [] { 1 }).build(); fail ("Self-link"); } catch (Net2PlanException e) {}
+	}
+}
@@ -9,11 +9,14 @@ import java.io.File;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.After;
 import org.junit.AfterClass;
@@ -24,10 +27,12 @@ import org.junit.Test;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Sets;
 import com.net2plan.interfaces.TestConstants;
+import com.net2plan.libraries.GraphUtils;
 import com.net2plan.utils.Constants.RoutingType;
 import com.net2plan.utils.Pair;
 
 import cern.colt.matrix.tdouble.DoubleFactory2D;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
 import cern.colt.matrix.tdouble.DoubleMatrix2D;
 
 public class NetPlanTest
@@ -212,6 +217,107 @@ public class NetPlanTest
 		assertTrue (np2.isDeepCopy(np1));
 	}
 
+	@Test
+	public void testNetPlanFileChangedRoutesAndHopByHopRouting()
+	{
+		File f = new File (TestConstants.TEST_FILE_DIRECTORY, TestConstants.TEST_FILE_NAME);
+		r12.setCarriedTraffic(2 , 2.5); // the current state is not the initial one
+		lowerLayer.setAttribute("key" , "value");
+		np.saveToFile(f);
+		NetPlan readNp = new NetPlan (f);
+		readNp.checkCachesConsistency();
+		assertTrue(readNp.isDeepCopy(np));
+		assertTrue(np.isDeepCopy(readNp));
+		assertEquals(readNp.getLinkFromId(link12.getId()).getCarriedTraffic() , link12.getCarriedTraffic() , 0);
+		assertEquals(readNp.getNetworkLayerFromId(lowerLayer.getId()).getAttribute("key") , "value");
+
+		netTriangle.setRoutingType(RoutingType.HOP_BY_HOP_ROUTING , netTriangle.getNetworkLayerDefault());
+		Map<Demand,Map<Link,Double>> frs = new HashMap<> ();
+		frs.put(netTriangle_d12 , ImmutableMap.of(netTriangle_e12 , 0.5 , netTriangle_e13 , 0.5 , netTriangle_e32 , 1.0));
+		netTriangle.setForwardingRules(frs , null);
+		netTriangle.saveToFile(f);
+		readNp = new NetPlan (f);
+		readNp.checkCachesConsistency();
+		assertTrue(readNp.isDeepCopy(netTriangle));
+		assertTrue(netTriangle.isDeepCopy(readNp));
+		assertEquals(readNp.getLinkFromId(netTriangle_e32.getId()).getCarriedTraffic() , 0.5 , 1e-9);
+	}
+
+	@Test
+	public void testNetPlanFileManyElements()
+	{
+		/* a full mesh with more links, demands and routes than the elements of one type parsed at once */
+		final int N = 70;
+		final DoubleMatrix2D trafficMatrix = DoubleFactory2D.dense.make(N , N , 1.0);
+		final int [] originNodeIndexes = new int [N * (N - 1)];
+		final int [] destinationNodeIndexes = new int [N * (N - 1)];
+		final int [][] routeLinkIndexes = new int [N * (N - 1)][];
+		int e = 0;
+		for (int n1 = 0; n1 < N ; n1 ++)
+			for (int n2 = 0; n2 < N ; n2 ++)
+				if (n1 != n2) { originNodeIndexes [e] = n1; destinationNodeIndexes [e] = n2; routeLinkIndexes [e] = new int [] { e }; e ++; }
+		final double [] values = new double [e];
+		Arrays.fill(values , 1.0);
+		final int [] demandIndexes = new int [e];
+		for (int d = 0; d < e ; d ++) demandIndexes [d] = d;
+		NetPlan np1 = new NetPlanBuilder ()
+				.setNodes(new double [N] , new double [N] , null)
+				.setLinks(originNodeIndexes , destinationNodeIndexes , values , values , values)
+				.setDemandsFromTrafficMatrix(trafficMatrix)
+				.setRoutes(demandIndexes , routeLinkIndexes , values , values)
+				.build();
+		np1.getLink(e - 1).addTag("last");
+		np1.getRoute(e - 1).setAttribute("key" , "value");
+		np1.getRoute(e - 1).setCarriedTraffic(0.5 , 0.5);
+		np1.getRoute(0).addBackupRoute(np1.addRoute(np1.getDemand(0) , 0 , 0 , Collections.singletonList(np1.getLink(0)) , null));
+
+		File f = new File (TestConstants.TEST_FILE_DIRECTORY, TestConstants.TEST_FILE_NAME);
+		np1.saveToFile(f);
+		NetPlan np2 = new NetPlan (f);
+		np2.checkCachesConsistency();
+		assertTrue(np2.isDeepCopy(np1));
+		assertTrue(np1.isDeepCopy(np2));
+	}
+
+	@Test
+	public void testNetPlanBinaryFile()
+	{
+		File f = new File (TestConstants.TEST_FILE_DIRECTORY, "testBinaryFile.n2pb");
+		this.np.saveToBinaryFile(f);
+		NetPlan readNp = NetPlan.loadFromBinaryFile(f);
+		readNp.checkCachesConsistency();
+		assertTrue(readNp.isDeepCopy(np));
+		assertTrue(np.isDeepCopy(readNp));
+
+		/* routes whose current state is not the initial one, and failing links and nodes */
+		r12.setCarriedTraffic(2 , 2.5);
+		r123b.setPath(1 , Collections.singletonList(link13) , Collections.singletonList(1.5));
+		link23.setFailureState(false);
+		np.addRoute(d12 , 1 , 1 , Collections.singletonList(link12) , null);
+		n3.setFailureState(false);
+		np.saveToBinaryFile(f);
+		readNp = NetPlan.loadFromBinaryFile(f);
+		readNp.checkCachesConsistency();
+		assertTrue(readNp.isDeepCopy(np));
+		assertTrue(np.isDeepCopy(readNp));
+
+		/* the same design is read from the .n2p and the .n2pb files */
+		NetPlan np1 = new NetPlan (new File ("src/main/resources/data/networkTopologies/example7nodes_ipOverWDM.n2p"));
+		np1.setRoutingType(RoutingType.HOP_BY_HOP_ROUTING , np1.getNetworkLayerDefault());
+		np1.getNode(0).setSiteName("site");
+		np1.addTag("tag");
+		np1.saveToBinaryFile(f);
+		NetPlan np2 = NetPlan.loadFromBinaryFile(f);
+		np2.checkCachesConsistency();
+		assertTrue (np1.isDeepCopy(np2));
+		assertTrue (np2.isDeepCopy(np1));
+		assertEquals (np2.getNode(0).getSiteName() , "site");
+		assertEquals (np2.getTags() , np1.getTags());
+		np1.saveToFile(new File (TestConstants.TEST_FILE_DIRECTORY, TestConstants.TEST_FILE_NAME));
+		assertTrue (np2.isDeepCopy(new NetPlan (new File (TestConstants.TEST_FILE_DIRECTORY, TestConstants.TEST_FILE_NAME))));
+		f.delete();
+	}
+
 	@Test
 	public void testGetIds()
 	{
@@ -422,6 +528,47 @@ public class NetPlanTest
 			assertEquals(cpl.get(Pair.of(d.getIngressNode(),d.getEgressNode())) , Arrays.asList(Arrays.asList(netTriangle.getNodePairLinks(d.getIngressNode() , d.getEgressNode() , false).iterator().next())));
 	}
 
+	@Test
+	public void testComputeUnicastCandidatePathListParallel()
+	{
+		final NetPlan np = new NetPlan();
+		final Random rng = new Random(2L);
+		for (int n = 0; n < 8; n++) np.addNode(rng.nextDouble(), rng.nextDouble(), "n" + n, null);
+		for (Node n1 : np.getNodes())
+			for (Node n2 : np.getNodes())
+				if (n1.getIndex() < n2.getIndex() && rng.nextDouble() < 0.5) np.addLinkBidirectional(n1, n2, 1, 1 + 100 * rng.nextDouble(), 200000, null);
+		final ForkJoinPool pool = new ForkJoinPool(4);
+		try
+		{
+			final Map<Pair<Node,Node>,List<List<Link>>> cpl = np.computeUnicastCandidatePathList(null, 5, -1, -1, -1, -1, -1, -1, null);
+			final Map<Pair<Node,Node>,List<List<Link>>> cplParallel = np.computeUnicastCandidatePathList(null, 5, -1, -1, -1, -1, -1, -1, null, pool);
+			assertEquals(cpl, cplParallel);
+			assertEquals(new LinkedList<>(cpl.keySet()), new LinkedList<>(cplParallel.keySet()));
+			for (int disjointType = 0; disjointType < 3; disjointType++)
+			{
+				final Map<Pair<Node,Node>,List<Pair<List<Link>,List<Link>>>> cpl11 = NetPlan.computeUnicastCandidate11PathList(cpl, disjointType);
+				final Map<Pair<Node,Node>,List<Pair<List<Link>,List<Link>>>> cpl11Parallel = NetPlan.computeUnicastCandidate11PathList(cpl, disjointType, pool);
+				assertEquals(cpl11, cpl11Parallel);
+				assertEquals(new LinkedList<>(cpl11.keySet()), new LinkedList<>(cpl11Parallel.keySet()));
+			}
+
+			/* node pairs given in a hash set are returned in node index order */
+			final Set<Pair<Node,Node>> nodePairs = new HashSet<>(cpl.keySet());
+			final Map<Pair<Node,Node>,List<List<Link>>> cplSomePairs = np.computeUnicastCandidatePathList(null, 5, -1, -1, -1, -1, -1, -1, nodePairs, pool);
+			assertEquals(new LinkedList<>(cpl.keySet()), new LinkedList<>(cplSomePairs.keySet()));
+
+			/* service chains traversing resources of hash-ordered nodes */
+			for (Node n : np.getNodes()) if (n.getIndex() % 2 == 0) np.addResource("type", "r" + n.getIndex(), n, 10, "Mbps", null, 1, null);
+			for (Node n1 : np.getNodes())
+				for (Node n2 : np.getNodes())
+					if (n1 != n2) np.addDemand(n1, n2, 1, null).setServiceChainSequenceOfTraversedResourceTypes(Collections.singletonList("type"));
+			final Map<Demand,List<List<NetworkElement>>> scs = np.computeUnicastCandidateServiceChainList(null, null, 4, -1, -1, -1, -1);
+			final Map<Demand,List<List<NetworkElement>>> scsParallel = np.computeUnicastCandidateServiceChainList(null, null, 4, -1, -1, -1, -1, pool);
+			assertEquals(scs, scsParallel);
+			assertEquals(new LinkedList<>(scs.keySet()), new LinkedList<>(scsParallel.keySet()));
+		} finally { pool.shutdown(); }
+	}
+
 	@Test
 	public void testComputeUnicastCandidate11PathList()
 	{
@@ -596,6 +743,21 @@ public class NetPlanTest
 		assertTrue (np2.isDeepCopy(np));
 	}
 
+	@Test
+	public void testCopyAttributesCopyOnWrite()
+	{
+		NetPlan np2 = np.copy();
+		final Node n1Copy = np2.getNodeFromId(n1.getId());
+		n1Copy.setAttribute("att" , "2");
+		assertEquals (n1.getAttribute("att") , "1");
+		assertEquals (n1Copy.getAttribute("att") , "2");
+		link12.setAttribute("att" , "3");
+		assertEquals (np2.getLinkFromId(link12.getId()).getAttribute("att") , null);
+		r12.removeAllAttributes();
+		np2.getRouteFromId(r12.getId()).setAttribute("att" , "4");
+		assertTrue (r12.getAttributes().isEmpty());
+	}
+
 	@Test
 	public void testCopyFrom()
 	{
@@ -621,6 +783,54 @@ public class NetPlanTest
 		assertTrue (Arrays.equals(NetPlan.getAttributeValues(Arrays.asList(n1,n2,n3) , "att" , 7).toArray() , new double [] {1.0 , 2.0 , 7.0}));
 	}
 
+	@Test
+	public void testGetAttributeAsDouble()
+	{
+		n2.setAttribute("att" , "2.5");
+		n3.setAttribute("att" , "no number");
+		assertEquals (n2.getAttributeAsDouble("att" , 7) , 2.5 , 0);
+		assertEquals (n2.getAttributeAsDouble("att" , 7) , 2.5 , 0);
+		assertEquals (n3.getAttributeAsDouble("att" , 7) , 7 , 0);
+		assertEquals (n2.getAttributeAsDouble("other" , 7) , 7 , 0);
+		np.setAttribute("other" , "3");
+		assertEquals (n2.getAttributeAsDouble("other" , 7) , 3 , 0);
+
+		/* the value follows the changes of the attribute */
+		n2.setAttribute("att" , "4");
+		assertEquals (n2.getAttributeAsDouble("att" , 7) , 4 , 0);
+		n2.setAttributeAsDouble("att" , 0.1);
+		assertEquals (n2.getAttribute("att") , "0.1");
+		assertEquals (n2.getAttributeAsDouble("att" , 7) , 0.1 , 0);
+		n2.removeAttribute("att");
+		assertEquals (n2.getAttributeAsDouble("att" , 7) , 7 , 0);
+		n2.setAttributeMap(ImmutableMap.of("att" , "8" , "att2" , "9"));
+		assertEquals (n2.getAttributeAsDouble("att" , 7) , 8 , 0);
+		assertEquals (n2.getAttributeAsDouble("att2" , 7) , 9 , 0);
+		assertEquals (n2.getAttributeAsDouble("att" , 7) , 8 , 0);
+		n2.removeAllAttributes();
+		assertEquals (n2.getAttributeAsDouble("att" , 7) , 7 , 0);
+
+		/* copies share the attribute maps until they are modified */
+		n2.setAttributeAsDouble("att" , 5);
+		NetPlan np2 = np.copy();
+		final Node n2Copy = np2.getNodeFromId(n2.getId());
+		n2Copy.setAttributeAsDouble("att" , 6);
+		assertEquals (n2.getAttributeAsDouble("att" , 7) , 5 , 0);
+		assertEquals (n2Copy.getAttributeAsDouble("att" , 7) , 6 , 0);
+		n2.setAttribute("att" , "11");
+		assertEquals (n2.getAttributeAsDouble("att" , 7) , 11 , 0);
+		assertEquals (n2Copy.getAttributeAsDouble("att" , 7) , 6 , 0);
+
+		/* the attributes of the design are replaced in copyFrom and assignFrom */
+		assertEquals (np.getAttributeAsDouble("other" , 7) , 3 , 0);
+		final NetPlan npOther = new NetPlan ();
+		npOther.setAttribute("other" , "10");
+		np.copyFrom(npOther);
+		assertEquals (np.getAttributeAsDouble("other" , 7) , 10 , 0);
+		np.assignFrom(new NetPlan ());
+		assertEquals (np.getAttributeAsDouble("other" , 7) , 7 , 0);
+	}
+
 	@Test
 	public void testGetDemandTrafficUnitsName()
 	{
@@ -825,6 +1035,103 @@ public class NetPlanTest
 		assertEquals(np.getNumberOfResources() , 0);
 	}
 
+	@Test
+	public void testRemoveRoutesDemandsAndLinks()
+	{
+		/* removing in one call gives the same design as removing one by one */
+		NetPlan np2 = np.copy();
+		np.removeRoutes(Arrays.asList(r12 , segm13 , r12));
+		np2.getRouteFromId(r12.getId()).remove();
+		np2.getRouteFromId(segm13.getId()).remove();
+		assertTrue(np.isDeepCopy(np2));
+		assertEquals(r123a.getIndex() , 0);
+		assertEquals(np.getRoute(1 , lowerLayer) , r123b);
+
+		np.removeDemands(Arrays.asList(d12 , scd123));
+		np2.getDemandFromId(d12.getId()).remove();
+		np2.getDemandFromId(scd123.getId()).remove();
+		assertTrue(np.isDeepCopy(np2));
+		assertEquals(np.getNumberOfDemands(lowerLayer) , 1);
+		assertEquals(d13.getIndex() , 0);
+
+		np.removeLinks(Arrays.asList(link23 , upperLink12));
+		np2.getLinkFromId(link23.getId()).remove();
+		np2.getLinkFromId(upperLink12.getId()).remove();
+		assertTrue(np.isDeepCopy(np2));
+		assertEquals(np.getNumberOfRoutes(lowerLayer) , 0);
+		assertEquals(link13.getIndex() , 1);
+
+		np.removeRoutes(Collections.emptyList());
+		np.checkCachesConsistency();
+	}
+
+	@Test
+	public void testNodeNameAndNodePairIndexes()
+	{
+		final Node n4 = np.addNode(0 , 0 , "node2" , null);
+		assertEquals(np.getNodeByName("node2") , n2);
+		n2.setName("other");
+		assertEquals(np.getNodeByName("node2") , n4);
+		assertEquals(np.getNodeByName("other") , n2);
+		n4.remove();
+		assertEquals(np.getNodeByName("node2") , null);
+
+		final Link link12b = np.addLink(n1,n2,100,100,1,null,lowerLayer);
+		final Link link21 = np.addLink(n2,n1,100,100,1,null,lowerLayer);
+		assertEquals(np.getNodePairLinks(n1 , n2 , false , lowerLayer) , new HashSet<Link> (Arrays.asList(link12 , link12b)));
+		assertEquals(np.getNodePairLinks(n1 , n2 , true , lowerLayer) , new HashSet<Link> (Arrays.asList(link12 , link12b , link21)));
+		assertEquals(np.getNodePairLinks(n1 , n2 , false , upperLayer) , new HashSet<Link> (Arrays.asList(upperLink12 , upperMdLink12)));
+		assertEquals(np.getNodePairDemands(n1 , n3 , false , lowerLayer) , new HashSet<Demand> (Arrays.asList(d13 , scd123)));
+		assertEquals(np.getNodePairRoutes(n1 , n3 , false , lowerLayer) , new HashSet<Route> (Arrays.asList(r123a , r123b , segm13 , sc123)));
+		link12.remove();
+		d13.remove();
+		assertEquals(np.getNodePairLinks(n1 , n2 , false , lowerLayer) , Collections.singleton(link12b));
+		assertEquals(np.getNodePairDemands(n1 , n3 , false , lowerLayer) , Collections.singleton(scd123));
+		assertTrue(np.getNodePairLinks(n2 , n3 , false , upperLayer).isEmpty());
+
+		NetPlan np2 = np.copy();
+		assertEquals(np2.getNodeByName("other") , np2.getNodeFromId(n2.getId()));
+		assertEquals(np2.getNodePairLinks(np2.getNodeFromId(n1.getId()) , np2.getNodeFromId(n2.getId()) , true , np2.getNetworkLayerFromId(lowerLayer.getId())).size() , 2);
+		np.checkCachesConsistency();
+		np2.checkCachesConsistency();
+	}
+
+	@Test
+	public void testAttributeIndexes()
+	{
+		try { np.getNetworkElementsByIndexedAttribute("att" , "1"); fail (); } catch (Net2PlanException e) {}
+		link12.setAttribute("att" , "1");
+		d13.setAttribute("att" , "2");
+		np.addAttributeIndex("att");
+		assertEquals(np.getIndexedAttributes() , Collections.singleton("att"));
+		assertEquals(np.getNetworkElementsByIndexedAttribute("att" , "1") , new HashSet<NetworkElement> (Arrays.asList(n1 , link12)));
+		assertEquals(np.getNetworkElementsByIndexedAttribute("att" , "2") , Collections.singleton(d13));
+
+		final Map<String,String> attributes = new HashMap<String,String> (); attributes.put("att" , "2");
+		final Link link21 = np.addLink(n2,n1,100,100,1,attributes,lowerLayer);
+		link12.setAttribute("att" , "2");
+		n1.removeAttribute("att");
+		d13.setAttributeMap(Collections.singletonMap("att" , "3"));
+		assertEquals(np.getNetworkElementsByIndexedAttribute("att" , "1") , Collections.emptySet());
+		assertEquals(np.getNetworkElementsByIndexedAttribute("att" , "2") , new HashSet<NetworkElement> (Arrays.asList(link12 , link21)));
+		assertEquals(np.getNetworkElementsByIndexedAttribute("att" , "3") , Collections.singleton(d13));
+		np.checkCachesConsistency();
+
+		NetPlan np2 = np.copy();
+		assertEquals(np2.getIndexedAttributes() , Collections.singleton("att"));
+		assertEquals(np2.getNetworkElementsByIndexedAttribute("att" , "3") , Collections.singleton(np2.getDemandFromId(d13.getId())));
+		np2.getDemandFromId(d13.getId()).removeAllAttributes();
+		assertEquals(np2.getNetworkElementsByIndexedAttribute("att" , "3") , Collections.emptySet());
+		assertEquals(np.getNetworkElementsByIndexedAttribute("att" , "3") , Collections.singleton(d13));
+
+		n1.remove();
+		assertEquals(np.getNetworkElementsByIndexedAttribute("att" , "2") , Collections.emptySet());
+		np.removeAttributeIndex("att");
+		assertTrue(np.getIndexedAttributes().isEmpty());
+		np.checkCachesConsistency();
+		np2.checkCachesConsistency();
+	}
+
 	@Test
 	public void testReset()
 	{
@@ -882,6 +1189,126 @@ public class NetPlanTest
 		assertTrue (upperLink12.isUp());
 	}
 
+	@Test
+	public void testSetLinksAndNodesFailureStateWithJournal()
+	{
+		NetPlan npInitial = np.copy();
+		FailureStateJournal journal = np.setLinksAndNodesFailureStateWithJournal(null , Arrays.asList(link12 , upperLink12), null, Arrays.asList(n3));
+		assertTrue (!link12.isUp());
+		assertTrue (!n3.isUp());
+		assertTrue (r12.isDown());
+		assertEquals (link12.getCarriedTraffic() , 0 , 0);
+		assertEquals (journal.getNumberOfLinksAndNodesChanged() , 3);
+		journal.rollback();
+		np.checkCachesConsistency();
+		assertTrue (journal.isRolledBack());
+		assertTrue (np.isDeepCopy(npInitial));
+		try { journal.rollback(); fail (); } catch (Exception e) {}
+
+		sc123.remove();
+		scd123.setServiceChainSequenceOfTraversedResourceTypes(null);
+		np.setRoutingType(RoutingType.HOP_BY_HOP_ROUTING , lowerLayer);
+		np.setForwardingRule(d13, link12 , 0.5);
+		np.setForwardingRule(d13, link13 , 0.5);
+		np.setForwardingRule(d13, link23 , 1);
+		final DoubleMatrix1D initialCarriedTraffic = np.getVectorLinkCarriedTraffic(lowerLayer);
+		final DoubleMatrix2D initialForwardingRules = np.getMatrixDemandBasedForwardingRules(lowerLayer);
+		journal = np.setLinksAndNodesFailureStateWithJournal(null , Arrays.asList(link13), null, null);
+		assertEquals (d13.getCarriedTraffic() , 1.5 , 1e-8);
+		assertEquals (link13.getCarriedTraffic() , 0 , 0);
+		journal.rollback();
+		np.checkCachesConsistency();
+		assertEquals (d13.getCarriedTraffic() , 3 , 1e-8);
+		assertEquals (np.getVectorLinkCarriedTraffic(lowerLayer) , initialCarriedTraffic);
+		assertEquals (np.getMatrixDemandBasedForwardingRules(lowerLayer) , initialForwardingRules);
+	}
+
+	@Test
+	public void testGetMatrixCache()
+	{
+		final long initialHits = np.getMatrixCacheHits();
+		final long initialMisses = np.getMatrixCacheMisses();
+		final DoubleMatrix2D A_ne = np.getMatrixNodeLinkIncidence(lowerLayer);
+		assertEquals (np.getMatrixCacheMisses() , initialMisses + 1);
+		A_ne.set(0 , 0 , 100);
+		assertEquals (np.getMatrixNodeLinkIncidence(lowerLayer).get(0 , 0) , 1 , 0);
+		assertEquals (np.getMatrixCacheHits() , initialHits + 1);
+
+		/* routing changes do not invalidate the topology matrices */
+		assertEquals (np.getMatrixDemand2LinkTrafficCarried(lowerLayer).get(d12.getIndex() , link12.getIndex()) , 1 , 0);
+		r12.setCarriedTraffic(2 , 2);
+		assertEquals (np.getMatrixDemand2LinkTrafficCarried(lowerLayer).get(d12.getIndex() , link12.getIndex()) , 2 , 0);
+		assertEquals (np.getMatrixNodeLinkIncidence(lowerLayer).columns() , 3);
+		assertEquals (np.getMatrixCacheHits() , initialHits + 2);
+		assertEquals (np.getMatrixCacheMisses() , initialMisses + 3);
+
+		/* topology changes do */
+		final Link link31 = np.addLink(n3 , n1 , 100 , 100 , 1 , null , lowerLayer);
+		assertEquals (np.getMatrixNodeLinkIncidence(lowerLayer).get(n3.getIndex() , link31.getIndex()) , 1 , 0);
+		assertEquals (np.getMatrixLink2SRGAssignment(lowerLayer).zSum() , 0 , 0);
+		SharedRiskGroup srg = np.addSRG(1 , 1 , null);
+		srg.addLink(link31);
+		assertEquals (np.getMatrixLink2SRGAssignment(lowerLayer).get(link31.getIndex() , srg.getIndex()) , 1 , 0);
+		link31.remove();
+		assertEquals (np.getMatrixNodeLinkIncidence(lowerLayer).columns() , 3);
+		assertEquals (np.getMatrixCacheHits() , initialHits + 2);
+		assertEquals (np.getMatrixCacheMisses() , initialMisses + 7);
+
+		/* attribute changes do not invalidate any matrix */
+		np.getMatrixDemand2LinkTrafficCarried(lowerLayer);
+		final long hitsBeforeAttributeChanges = np.getMatrixCacheHits();
+		link12.setAttribute("key" , "value");
+		d12.setAttributeAsDouble("key" , 1);
+		link12.removeAttribute("key");
+		assertEquals (np.getMatrixDemand2LinkTrafficCarried(lowerLayer).get(d12.getIndex() , link12.getIndex()) , 2 , 0);
+		assertEquals (np.getMatrixCacheHits() , hitsBeforeAttributeChanges + 1);
+	}
+
+	@Test
+	public void testGetMatrixCacheFromListener()
+	{
+		/* a listener reading the matrices in the middle of each change: what it computes is not reused after the change */
+		lowerLayer.addChangeListener(new NetworkLayer.ILayerChangeListener()
+		{
+			public void routeChanged(Route route) { readMatrices(); }
+			public void linkChanged(Link link) { readMatrices(); }
+			public void demandChanged(Demand demand) { readMatrices(); }
+			public void nodeChanged(Node node) { readMatrices(); }
+			public void layerChanged() { readMatrices(); }
+			private void readMatrices()
+			{
+				np.getMatrixDemand2LinkTrafficCarried(lowerLayer);
+				np.getMatrixDemand2RouteAssignment(lowerLayer);
+				np.getMatrixLink2RouteAssignment(lowerLayer);
+			}
+		});
+		checkMatricesAsInCopy(lowerLayer);
+		final Route r12b = np.addRoute(d12 , 1 , 1 , Collections.singletonList(link12) , null);
+		checkMatricesAsInCopy(lowerLayer);
+		r12.setCarriedTraffic(2 , 2);
+		checkMatricesAsInCopy(lowerLayer);
+		r123a.setPath(1 , Collections.singletonList(link13) , Collections.singletonList(1.0));
+		checkMatricesAsInCopy(lowerLayer);
+		link12.setFailureState(false);
+		checkMatricesAsInCopy(lowerLayer);
+		link12.setFailureState(true);
+		r12b.remove();
+		checkMatricesAsInCopy(lowerLayer);
+		np.removeRoutes(Arrays.asList(r12 , r123b));
+		checkMatricesAsInCopy(lowerLayer);
+		np.addLink(n2 , n1 , 100 , 100 , 1 , null , lowerLayer);
+		checkMatricesAsInCopy(lowerLayer);
+	}
+
+	private void checkMatricesAsInCopy (NetworkLayer layer)
+	{
+		final NetPlan copy = np.copy();
+		final NetworkLayer copyLayer = copy.getNetworkLayerFromId(layer.getId());
+		assertEquals (copy.getMatrixDemand2LinkTrafficCarried(copyLayer) , np.getMatrixDemand2LinkTrafficCarried(layer));
+		assertEquals (copy.getMatrixDemand2RouteAssignment(copyLayer) , np.getMatrixDemand2RouteAssignment(layer));
+		assertEquals (copy.getMatrixLink2RouteAssignment(copyLayer) , np.getMatrixLink2RouteAssignment(layer));
+	}
+
 	@Test
 	public void testSetDemandTrafficUnitsName()
 	{
@@ -926,6 +1353,155 @@ public class NetPlanTest
 		assertEquals(np.getForwardingRuleSplittingFactor(d12,   link12) , 0.7 , 0);
 	}
 
+	@Test
+	public void testSetForwardingRulesMapOfDemandMapOfLinkDoubleForkJoinPool()
+	{
+		sc123.remove();
+		scd123.setServiceChainSequenceOfTraversedResourceTypes(null);
+		np.setRoutingType(RoutingType.HOP_BY_HOP_ROUTING , lowerLayer);
+		final Link link21 = np.addLink(n2 , n1 , 100 , 100 , 1 , null , lowerLayer);
+		NetPlan npSequential = np.copy();
+		Map<Demand,Map<Link,Double>> frs = new HashMap<> ();
+		frs.put(d13 , ImmutableMap.of(link12 , 0.5 , link13 , 0.5 , link23 , 1.0));
+		frs.put(d12 , ImmutableMap.of(link12 , 0.6));
+		ForkJoinPool pool = new ForkJoinPool (2);
+		try { np.setForwardingRules(frs , pool); } finally { pool.shutdown(); }
+		for (Demand d : frs.keySet())
+			for (Link e : np.getLinks(lowerLayer))
+			{
+				final Double fr = frs.get(d).get(e);
+				npSequential.setForwardingRule(npSequential.getDemandFromId(d.getId()) , npSequential.getLinkFromId(e.getId()) , fr == null? 0 : fr);
+			}
+		np.checkCachesConsistency();
+		assertEquals (np.getVectorLinkCarriedTraffic(lowerLayer) , npSequential.getVectorLinkCarriedTraffic(npSequential.getNetworkLayer(lowerLayer.getIndex())));
+		assertEquals (d13.getCarriedTraffic() , 3 , 1e-8);
+		assertEquals (d12.getCarriedTraffic() , 1.8 , 1e-8);
+		assertEquals (upperLink12.getCapacity() , d12.getCarriedTraffic() , 0);
+
+		/* a closed cycle does not change the design */
+		final DoubleMatrix1D carriedTraffic = np.getVectorLinkCarriedTraffic(lowerLayer);
+		frs.put(d12 , ImmutableMap.of(link12 , 1.0 , link21 , 1.0));
+		try { np.setForwardingRules(frs , null); fail (); } catch (GraphUtils.ClosedCycleRoutingException e) {}
+		assertEquals (np.getVectorLinkCarriedTraffic(lowerLayer) , carriedTraffic);
+		assertEquals (np.getForwardingRuleSplittingFactor(d12 , link12) , 0.6 , 0);
+	}
+
+	@Test
+	public void testSetForwardingRulesInParallelMatchesCallingThread()
+	{
+		/* A hop-by-hop layer in a bidirectional ring with chords, with demands between most node pairs */
+		final Random rng = new Random(1L);
+		final int N = 10;
+		final NetPlan npCallingThread = new NetPlan();
+		for (int n = 0; n < N; n++) npCallingThread.addNode(n, n, "n" + n, null);
+		for (int n = 0; n < N; n++)
+		{
+			npCallingThread.addLink(npCallingThread.getNode(n), npCallingThread.getNode((n + 1) % N), 100, 1 + rng.nextInt(100), 200000, null);
+			npCallingThread.addLink(npCallingThread.getNode((n + 1) % N), npCallingThread.getNode(n), 100, 1 + rng.nextInt(100), 200000, null);
+		}
+		for (int n = 0; n < N / 2; n += 2)
+		{
+			npCallingThread.addLink(npCallingThread.getNode(n), npCallingThread.getNode(n + N / 2), 100, 1 + rng.nextInt(100), 200000, null);
+			npCallingThread.addLink(npCallingThread.getNode(n + N / 2), npCallingThread.getNode(n), 100, 1 + rng.nextInt(100), 200000, null);
+		}
+		npCallingThread.setRoutingType(RoutingType.HOP_BY_HOP_ROUTING);
+		for (Node a : npCallingThread.getNodes())
+			for (Node b : npCallingThread.getNodes())
+				if (a != b && rng.nextInt(4) != 0) npCallingThread.addDemand(a, b, 1 + rng.nextInt(10), null);
+		final NetPlan npParallel = npCallingThread.copy();
+
+		/* All the demands first, and then the rules of some of them are replaced, a few times */
+		final ForkJoinPool pool = new ForkJoinPool(4);
+		try
+		{
+			for (int it = 0; it < 4; it++)
+			{
+				final Map<Demand, Map<Link, Double>> frsCallingThread = new HashMap<>();
+				final Map<Demand, Map<Link, Double>> frsParallel = new HashMap<>();
+				for (Demand d : npCallingThread.getDemands())
+				{
+					if (it > 0 && rng.nextBoolean()) continue;
+					final Map<Link, Double> frs = randomAcyclicForwardingRules(d, rng);
+					final Map<Link, Double> frsOtherDesign = new HashMap<>();
+					for (Map.Entry<Link, Double> fr : frs.entrySet()) frsOtherDesign.put(npParallel.getLinkFromId(fr.getKey().getId()), fr.getValue());
+					frsCallingThread.put(d, frs);
+					frsParallel.put(npParallel.getDemandFromId(d.getId()), frsOtherDesign);
+				}
+				npCallingThread.setForwardingRules(frsCallingThread, null);
+				npParallel.setForwardingRules(frsParallel, pool);
+				npCallingThread.checkCachesConsistency();
+				npParallel.checkCachesConsistency();
+				checkSameHopByHopRouting(npCallingThread, npParallel);
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		assertTrue(npCallingThread.getVectorLinkCarriedTraffic().zSum() > 0);
+	}
+
+	/* Splitting factors for the demand that only forward the traffic from a node to the nodes after it in a random order that starts in the ingress node
+	 * and ends in the egress node. Each node forwards to one or two later nodes (half of the traffic to each), so that every traversed fraction is above
+	 * the precision factor (at most nine hops of one half). The nodes without links to later nodes drop the traffic */
+	private static Map<Link, Double> randomAcyclicForwardingRules(Demand d, Random rng)
+	{
+		final List<Node> order = new LinkedList<>(d.getNetPlan().getNodes());
+		Collections.shuffle(order, rng);
+		order.remove(d.getIngressNode()); order.add(0, d.getIngressNode());
+		order.remove(d.getEgressNode()); order.add(d.getEgressNode());
+		final Map<Link, Double> frs = new HashMap<>();
+		for (int pos = 0; pos < order.size() - 1; pos++)
+		{
+			final List<Link> linksToLaterNodes = new LinkedList<>();
+			for (Link e : order.get(pos).getOutgoingLinks()) if (order.indexOf(e.getDestinationNode()) > pos) linksToLaterNodes.add(e);
+			Collections.shuffle(linksToLaterNodes, rng);
+			final int numLinks = Math.min(linksToLaterNodes.size(), 1 + rng.nextInt(2));
+			for (Link e : linksToLaterNodes.subList(0, numLinks)) frs.put(e, 1.0 / numLinks);
+		}
+		return frs;
+	}
+
+	/* Checks that the link loads, the carried traffic of the demands and the hop-by-hop routing caches of two copies of a design are the same */
+	private static void checkSameHopByHopRouting(NetPlan np1, NetPlan np2)
+	{
+		assertEquals(np1.getVectorLinkCarriedTraffic(), np2.getVectorLinkCarriedTraffic());
+		assertEquals(np1.getVectorLinkOccupiedCapacity(), np2.getVectorLinkOccupiedCapacity());
+		for (Link e1 : np1.getLinks())
+		{
+			final Link e2 = np2.getLinkFromId(e1.getId());
+			assertEquals(toIds(e1.cacheHbH_frs), toIds(e2.cacheHbH_frs));
+			assertEquals(toIds(e1.cacheHbH_normCarriedOccupiedPerTraversingDemandCurrentState), toIds(e2.cacheHbH_normCarriedOccupiedPerTraversingDemandCurrentState));
+		}
+		for (Demand d1 : np1.getDemands())
+		{
+			final Demand d2 = np2.getDemandFromId(d1.getId());
+			assertEquals(d1.getCarriedTraffic(), d2.getCarriedTraffic(), 0);
+			assertEquals(d1.getWorstCasePropagationTimeInMs(), d2.getWorstCasePropagationTimeInMs(), 0);
+			assertEquals(toIds(d1.cacheHbH_frs), toIds(d2.cacheHbH_frs));
+			assertEquals(toIds(d1.cacheHbH_normCarriedOccupiedPerLinkCurrentState), toIds(d2.cacheHbH_normCarriedOccupiedPerLinkCurrentState));
+			final Map<Long, Set<Long>> linksPerNode1 = new HashMap<>();
+			final Map<Long, Set<Long>> linksPerNode2 = new HashMap<>();
+			for (Map.Entry<Node, Set<Link>> entry : d1.cacheHbH_linksPerNodeWithNonZeroFr.entrySet()) linksPerNode1.put(entry.getKey().getId(), toIds(entry.getValue()));
+			for (Map.Entry<Node, Set<Link>> entry : d2.cacheHbH_linksPerNodeWithNonZeroFr.entrySet()) linksPerNode2.put(entry.getKey().getId(), toIds(entry.getValue()));
+			assertEquals(linksPerNode1, linksPerNode2);
+		}
+	}
+
+	private static <V> Map<Long, V> toIds(Map<? extends NetworkElement, V> map)
+	{
+		final Map<Long, V> res = new HashMap<>();
+		for (Map.Entry<? extends NetworkElement, V> entry : map.entrySet()) res.put(entry.getKey().getId(), entry.getValue());
+		return res;
+	}
+
+	private static Set<Long> toIds(Set<? extends NetworkElement> set)
+	{
+		final Set<Long> res = new HashSet<>();
+		for (NetworkElement e : set) res.add(e.getId());
+		return res;
+	}
+
 	@Test
 	public void testSetLinkCapacityUnitsName()
 	{
@@ -966,11 +1542,18 @@ public class NetPlanTest
 		d13.setOfferedTraffic(5);
 		d12.setOfferedTraffic(1);
 		NetPlan npSR = np.copy();
+		np.getMatrixDemand2LinkTrafficCarried(lowerLayer);
 		np.setRoutingType(RoutingType.HOP_BY_HOP_ROUTING , lowerLayer);
 		NetPlan npHR = np.copy ();
 		assertEquals (np.getRoutingType(lowerLayer) , RoutingType.HOP_BY_HOP_ROUTING);
+		assertEquals (npHR.getMatrixDemand2LinkTrafficCarried(npHR.getNetworkLayer(lowerLayer.getIndex())) , np.getMatrixDemand2LinkTrafficCarried(lowerLayer));
 		np.setRoutingType(RoutingType.SOURCE_ROUTING , lowerLayer);
 		assertEquals (np.getRoutingType(lowerLayer) , RoutingType.SOURCE_ROUTING);
+
+		/* the matrices computed during the conversion are not kept */
+		final NetPlan npCopy = np.copy();
+		assertEquals (npCopy.getMatrixDemand2LinkTrafficCarried(npCopy.getNetworkLayer(lowerLayer.getIndex())) , np.getMatrixDemand2LinkTrafficCarried(lowerLayer));
+		assertEquals (npCopy.getMatrixDemand2RouteAssignment(npCopy.getNetworkLayer(lowerLayer.getIndex())) , np.getMatrixDemand2RouteAssignment(lowerLayer));
 		assertTrue (npSR.getVectorLinkCarriedTraffic(npSR.getNetworkLayer(lowerLayer.getIndex())).equals(np.getVectorLinkCarriedTraffic(lowerLayer)));
 		assertTrue (npSR.getVectorLinkCarriedTraffic(npSR.getNetworkLayer(upperLayer.getIndex())).equals(np.getVectorLinkCarriedTraffic(upperLayer)));
 		assertTrue (npHR.getVectorLinkCarriedTraffic(npHR.getNetworkLayer(lowerLayer.getIndex())).equals(np.getVectorLinkCarriedTraffic(lowerLayer)));
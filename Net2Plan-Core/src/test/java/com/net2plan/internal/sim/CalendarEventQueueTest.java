@@ -0,0 +1,183 @@
+package com.net2plan.internal.sim;
+
+import com.net2plan.interfaces.simulation.SimEvent;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CalendarEventQueueTest
+{
+	/* The order of the future event list: by time, then by priority (the higher value, the first), and then in insertion order */
+	private static final Comparator<Object []> EVENT_ORDER = new Comparator<Object []> ()
+	{
+		@Override
+		public int compare(Object [] o1, Object [] o2)
+		{
+			final SimEvent e1 = (SimEvent) o1 [0];
+			final SimEvent e2 = (SimEvent) o2 [0];
+			if (e1.getEventTime() != e2.getEventTime()) return Double.compare(e1.getEventTime(), e2.getEventTime());
+			if (e1.getEventPriority() != e2.getEventPriority()) return Integer.compare(e2.getEventPriority(), e1.getEventPriority());
+			return Long.compare((Long) o1 [1], (Long) o2 [1]);
+		}
+	};
+
+	@Test
+	public void testMatchesPriorityQueue()
+	{
+		final Random rng = new Random(1L);
+		for (int it = 0; it < 10; it++)
+		{
+			final CalendarEventQueue queue = new CalendarEventQueue();
+			final Reference reference = new Reference();
+			double currentTime = 0;
+			/* Several phases growing and shrinking the queue, so the calendar is resized many times and with different bucket widths */
+			for (int phase = 0; phase < 6; phase++)
+			{
+				final int targetSize = phase % 2 == 0 ? 1 + rng.nextInt(5000) : rng.nextInt(10);
+				final int timeDistribution = rng.nextInt(4);
+				int numOperations = 0;
+				while ((phase % 2 == 0 ? reference.size() < targetSize : reference.size() > targetSize) || numOperations < 200)
+				{
+					numOperations++;
+					final double r = rng.nextDouble();
+					final boolean grow = phase % 2 == 0;
+					if (r < (grow ? 0.6 : 0.3))
+					{
+						final SimEvent event = new SimEvent(currentTime + randomDelay(rng, timeDistribution), SimEvent.DestinationModule.EVENT_PROCESSOR, 0, rng.nextInt(3), null);
+						assertTrue(queue.add(event));
+						reference.add(event);
+						assertFalse(queue.add(event)); // already in the queue
+					}
+					else if (r < (grow ? 0.85 : 0.8))
+					{
+						final SimEvent expected = reference.poll();
+						assertSame(expected, queue.peek());
+						assertSame(expected, queue.poll());
+						if (expected != null) currentTime = expected.getEventTime();
+					}
+					else if (!reference.isEmpty())
+					{
+						final SimEvent toRemove = reference.getRandomEvent(rng);
+						assertTrue(queue.remove(toRemove));
+						assertFalse(queue.remove(toRemove));
+						reference.remove(toRemove);
+					}
+					assertEquals(reference.size(), queue.size());
+					assertEquals(reference.isEmpty(), queue.isEmpty());
+				}
+				checkSameEvents(reference, queue);
+			}
+
+			/* Empty the queue */
+			while (!reference.isEmpty()) assertSame(reference.poll(), queue.poll());
+			assertTrue(queue.isEmpty());
+			assertNull(queue.peek());
+			assertNull(queue.poll());
+			queue.clear();
+			assertEquals(0, queue.size());
+		}
+	}
+
+	@Test
+	public void testTiesAreInInsertionOrder()
+	{
+		final Random rng = new Random(2L);
+		final CalendarEventQueue queue = new CalendarEventQueue();
+		final List<SimEvent> events = new ArrayList<SimEvent>();
+		for (int cont = 0; cont < 3000; cont++)
+		{
+			final SimEvent event = new SimEvent(rng.nextInt(3), SimEvent.DestinationModule.EVENT_PROCESSOR, 0, 0, null);
+			events.add(event);
+			queue.add(event);
+		}
+		final List<SimEvent> expected = new ArrayList<SimEvent>(events);
+		Collections.sort(expected, new Comparator<SimEvent>()
+		{
+			@Override
+			public int compare(SimEvent e1, SimEvent e2) { return Double.compare(e1.getEventTime(), e2.getEventTime()); } // stable sort, keeps the insertion order
+		});
+		for (SimEvent event : expected) assertSame(event, queue.poll());
+		assertTrue(queue.isEmpty());
+	}
+
+	private static double randomDelay(Random rng, int timeDistribution)
+	{
+		switch (timeDistribution)
+		{
+			case 0: return -Math.log(1 - rng.nextDouble()); // exponential
+			case 1: return rng.nextInt(5); // many ties, also with the current time
+			case 2: return rng.nextDouble() < 0.01 ? 1E6 * rng.nextDouble() : 1E-3 * rng.nextDouble(); // clustered, with some far events
+			default: return rng.nextDouble() < 0.001 ? Double.MAX_VALUE : 100 * rng.nextDouble();
+		}
+	}
+
+	private static void checkSameEvents(Reference reference, CalendarEventQueue queue)
+	{
+		final List<SimEvent> pending = queue.toList();
+		assertEquals(reference.size(), pending.size());
+		for (SimEvent event : pending) assertTrue(reference.insertionOrder.containsKey(event));
+	}
+
+	/* The future event list as a PriorityQueue, where each event is stored with its insertion order and its position in the list of pending events */
+	private static final class Reference
+	{
+		private final PriorityQueue<Object []> queue = new PriorityQueue<Object []>(11, EVENT_ORDER);
+		private final Map<SimEvent, Object []> insertionOrder = new IdentityHashMap<SimEvent, Object []>();
+		private final List<SimEvent> pendingEvents = new ArrayList<SimEvent>();
+		private long insertionCounter = 0;
+
+		void add(SimEvent event)
+		{
+			final Object [] entry = new Object [] { event, insertionCounter++, pendingEvents.size() };
+			queue.add(entry);
+			insertionOrder.put(event, entry);
+			pendingEvents.add(event);
+		}
+
+		SimEvent poll()
+		{
+			final Object [] entry = queue.poll();
+			if (entry == null) return null;
+			final SimEvent event = (SimEvent) entry [0];
+			insertionOrder.remove(event);
+			removeFromPendingEvents(entry);
+			return event;
+		}
+
+		void remove(SimEvent event)
+		{
+			final Object [] entry = insertionOrder.remove(event);
+			assertTrue(queue.remove(entry));
+			removeFromPendingEvents(entry);
+		}
+
+		SimEvent getRandomEvent(Random rng) { return pendingEvents.get(rng.nextInt(pendingEvents.size())); }
+
+		int size() { return queue.size(); }
+
+		boolean isEmpty() { return queue.isEmpty(); }
+
+		/* The last pending event takes the position of the removed one */
+		private void removeFromPendingEvents(Object [] entry)
+		{
+			final int position = (Integer) entry [2];
+			final SimEvent last = pendingEvents.remove(pendingEvents.size() - 1);
+			if (last == entry [0]) return;
+			pendingEvents.set(position, last);
+			insertionOrder.get(last) [2] = position;
+		}
+	}
+}
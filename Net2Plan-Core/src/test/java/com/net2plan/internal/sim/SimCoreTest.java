@@ -0,0 +1,149 @@
+package com.net2plan.internal.sim;
+
+import com.net2plan.interfaces.simulation.SimEvent;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SimCoreTest
+{
+	private static final long TIMEOUT_IN_MILLISECONDS = 10000;
+
+	@Test
+	public void testPauseStepAndStopWhileProcessingEvents() throws Exception
+	{
+		for (boolean batchMode : new boolean [] { true , false })
+		{
+			/* The pause is requested in the middle of a batch, and the stop several batches later */
+			final long pauseAt = 100;
+			final long stopAt = 5000;
+			final Callback callback = new Callback(pauseAt, stopAt);
+			final SimCore simCore = new SimCore(callback);
+			callback.simCore = simCore;
+			simCore.setBatchMode(batchMode);
+			simCore.setRefreshTimeInSeconds(Double.MAX_VALUE);
+			simCore.getFutureEventList().addEvent(new SimEvent(0, SimEvent.DestinationModule.EVENT_PROCESSOR, 0, null));
+			simCore.setSimulationState(SimCore.SimState.RUNNING);
+			final Thread simThread = new Thread(simCore);
+			simThread.start();
+
+			/* The event being processed finishes, and no more events of the batch are processed */
+			assertTrue(callback.pauseReached.await(TIMEOUT_IN_MILLISECONDS, TimeUnit.MILLISECONDS));
+			simCore.setSimulationState(SimCore.SimState.PAUSED);
+			waitUntilWaiting(simThread);
+			assertEquals(pauseAt, callback.numProcessedEvents);
+			assertEquals(pauseAt, simCore.getFutureEventList().getNumberOfProcessedEvents());
+			Thread.sleep(50);
+			assertEquals(pauseAt, callback.numProcessedEvents);
+			assertEquals(SimCore.SimState.PAUSED, simCore.getSimulationState());
+
+			/* One step processes one event, and pauses again */
+			simCore.setSimulationState(SimCore.SimState.STEP);
+			final long start = System.currentTimeMillis();
+			while (callback.numProcessedEvents == pauseAt && System.currentTimeMillis() - start < TIMEOUT_IN_MILLISECONDS) Thread.sleep(1);
+			waitUntilWaiting(simThread);
+			assertEquals(pauseAt + 1, callback.numProcessedEvents);
+			assertEquals(SimCore.SimState.PAUSED, simCore.getSimulationState());
+
+			/* The stop kills the simulation thread after the current event */
+			simCore.setSimulationState(SimCore.SimState.RUNNING);
+			assertTrue(callback.stopReached.await(TIMEOUT_IN_MILLISECONDS, TimeUnit.MILLISECONDS));
+			simCore.setSimulationState(SimCore.SimState.STOPPED);
+			simThread.join(TIMEOUT_IN_MILLISECONDS);
+			assertFalse(simThread.isAlive());
+			assertEquals(stopAt, callback.numProcessedEvents);
+			assertEquals(SimCore.SimState.STOPPED, simCore.getSimulationState());
+			assertEquals(SimCore.SimState.STOPPED, callback.lastState);
+			assertNull(callback.lastReason);
+		}
+	}
+
+	@Test
+	public void testSimulationEndsExactlyAtTheEventLimit()
+	{
+		for (boolean batchMode : new boolean [] { true , false })
+		{
+			for (long totalSimEvents : new long [] { 1 , 1023 , 1024 , 1025 , 5000 })
+			{
+				final Callback callback = new Callback(-1, -1);
+				final SimCore simCore = new SimCore(callback);
+				callback.simCore = simCore;
+				simCore.setBatchMode(batchMode);
+				simCore.setTotalSimulationEvents(totalSimEvents);
+				simCore.getFutureEventList().addEvent(new SimEvent(0, SimEvent.DestinationModule.EVENT_PROCESSOR, 0, null));
+				simCore.setSimulationState(SimCore.SimState.RUNNING);
+				simCore.run();
+				assertEquals(totalSimEvents, callback.numProcessedEvents);
+				assertEquals(SimCore.SimState.STOPPED, callback.lastState);
+				assertTrue(callback.lastReason instanceof EndSimulationException);
+			}
+		}
+	}
+
+	private static void waitUntilWaiting(Thread simThread) throws InterruptedException
+	{
+		final long start = System.currentTimeMillis();
+		while (simThread.getState() != Thread.State.WAITING && System.currentTimeMillis() - start < TIMEOUT_IN_MILLISECONDS) Thread.sleep(1);
+		assertEquals(Thread.State.WAITING, simThread.getState());
+	}
+
+	/* Each event schedules the next one. When the given event numbers are reached, the event is not finished until the simulation state changes */
+	private static final class Callback implements IEventCallback
+	{
+		private final long pauseAt;
+		private final long stopAt;
+		private final CountDownLatch pauseReached = new CountDownLatch(1);
+		private final CountDownLatch stopReached = new CountDownLatch(1);
+		private SimCore simCore;
+		private volatile long numProcessedEvents;
+		private volatile SimCore.SimState lastState;
+		private volatile Throwable lastReason;
+
+		private Callback(long pauseAt, long stopAt)
+		{
+			this.pauseAt = pauseAt;
+			this.stopAt = stopAt;
+		}
+
+		@Override
+		public void processEvent(SimEvent event)
+		{
+			numProcessedEvents++;
+			scheduleEvent(new SimEvent(event.getEventTime() + 1, SimEvent.DestinationModule.EVENT_PROCESSOR, 0, null));
+			if (numProcessedEvents == pauseAt) waitForStateChange(pauseReached);
+			if (numProcessedEvents == stopAt) waitForStateChange(stopReached);
+		}
+
+		private void waitForStateChange(CountDownLatch latch)
+		{
+			latch.countDown();
+			final long start = System.currentTimeMillis();
+			while (simCore.getSimulationState() == SimCore.SimState.RUNNING && System.currentTimeMillis() - start < TIMEOUT_IN_MILLISECONDS) Thread.yield();
+		}
+
+		@Override
+		public void scheduleEvent(SimEvent event) { simCore.getFutureEventList().addEvent(event); }
+
+		@Override
+		public void endTransitory() { }
+
+		@Override
+		public void finishTransitory(double currentSimTime) { }
+
+		@Override
+		public void refresh(boolean forceRefresh) { }
+
+		@Override
+		public void simulationStateChanged(SimCore.SimState simulationState, Throwable reason)
+		{
+			this.lastState = simulationState;
+			this.lastReason = reason;
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package com.net2plan.internal.sim;
+
+import com.net2plan.interfaces.networkDesign.Net2PlanException;
+import com.net2plan.interfaces.networkDesign.NetPlan;
+import com.net2plan.interfaces.simulation.IEventGenerator;
+import com.net2plan.interfaces.simulation.IEventProcessor;
+import com.net2plan.interfaces.simulation.SimEvent;
+import com.net2plan.internal.ErrorHandling;
+import com.net2plan.utils.Triple;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SimReplicationRunnerTest
+{
+	private NetPlan np;
+	private String metric;
+	private Map<String, String> simulationParameters;
+	private Map<String, String> net2planParameters;
+
+	@Before
+	public void setUp()
+	{
+		this.np = new NetPlan();
+		np.addDemand(np.addNode(0, 0, "n1", null), np.addNode(1, 1, "n2", null), 0, null);
+		this.metric = "layer" + np.getNetworkLayerDefault().getId() + ".avgOfferedTraffic";
+		this.simulationParameters = new LinkedHashMap<String, String>();
+		simulationParameters.put("disableStatistics", "false");
+		simulationParameters.put("refreshTime", "1000");
+		simulationParameters.put("simEvents", "50");
+		simulationParameters.put("transitoryEvents", "-1");
+		simulationParameters.put("transitoryTime", "-1");
+		simulationParameters.put("simTime", "-1");
+		this.net2planParameters = new LinkedHashMap<String, String>();
+		net2planParameters.put("precisionFactor", "1e-3");
+	}
+
+	@Test
+	public void testReplicationSeeds()
+	{
+		final Set<Long> seeds = new HashSet<Long>();
+		for (long seed : new long [] { 0, 1, 2, 3, Long.MAX_VALUE, Long.MIN_VALUE })
+		{
+			assertEquals(seed, SimReplicationRunner.getReplicationSeed(seed, 0));
+			for (int replication = 0; replication < 1000; replication++)
+			{
+				final long replicationSeed = SimReplicationRunner.getReplicationSeed(seed, replication);
+				assertNotEquals(-1, replicationSeed);
+				assertEquals(replicationSeed, SimReplicationRunner.getReplicationSeed(seed, replication));
+				seeds.add(replicationSeed);
+			}
+		}
+		/* The replications of simulations started with consecutive seeds do not share seeds */
+		assertEquals(6 * 1000, seeds.size());
+
+		final Map<String, String> parameters = new LinkedHashMap<String, String>();
+		parameters.put("randomSeed", "7");
+		parameters.put("otherRandomSEED", "-1");
+		parameters.put("seedsUsed", "7");
+		final Map<String, String> replicationParameters = SimReplicationRunner.getReplicationParameters(parameters, 3);
+		assertEquals(Long.toString(SimReplicationRunner.getReplicationSeed(7, 3)), replicationParameters.get("randomSeed"));
+		assertEquals("-1", replicationParameters.get("otherRandomSEED"));
+		assertEquals("7", replicationParameters.get("seedsUsed"));
+	}
+
+	@Test
+	public void testNumberOfReplications()
+	{
+		final SimReplicationRunner runner = newRunner(1);
+		try { runner.run(1, 5, null); fail(); } catch (Net2PlanException e) { }
+		try { runner.run(5, 4, null); fail(); } catch (Net2PlanException e) { }
+
+		/* Without stop criterion, the maximum number of replications are run */
+		runner.run(2, 7, null);
+		assertEquals(7, runner.getReplicationResults().size());
+		assertEquals(7, runner.getConfidenceIntervals().get(metric).getNumSamples());
+
+		/* A criterion met from the beginning runs the minimum; one never met runs the maximum */
+		runner.setStopCriterion(metric, 1E9);
+		runner.run(3, 7, null);
+		assertEquals(3, runner.getReplicationResults().size());
+		runner.setStopCriterion(metric, 1E-12);
+		runner.run(3, 7, null);
+		assertEquals(7, runner.getReplicationResults().size());
+
+		/* In parallel, the rounds after the first have as many replications as threads, without exceeding the maximum */
+		final ForkJoinPool pool = new ForkJoinPool(3);
+		final boolean previousErrorHandling = ErrorHandling.DEBUG;
+		try
+		{
+			final List<Map<String, Double>> sequentialResults = runner.getReplicationResults();
+			final SimReplicationRunner parallelRunner = newRunner(1);
+			parallelRunner.setStopCriterion(metric, 1E-12);
+			ErrorHandling.DEBUG = true;
+			parallelRunner.run(3, 7, pool);
+			assertTrue(ErrorHandling.DEBUG);
+			assertEquals(sequentialResults, parallelRunner.getReplicationResults());
+		} finally { ErrorHandling.DEBUG = previousErrorHandling; pool.shutdown(); }
+
+		runner.setStopCriterion("unknownMetric", 0.1);
+		try { runner.run(2, 4, null); fail(); } catch (Net2PlanException e) { }
+	}
+
+	@Test
+	public void testStudentTConfidenceInterval()
+	{
+		final SimReplicationRunner runner = newRunner(1);
+		runner.run(2, 10, null);
+		final double [] samples = new double [10];
+		for (int replication = 0; replication < 10; replication++) samples [replication] = runner.getReplicationResults().get(replication).get(metric);
+		double mean = 0; for (double sample : samples) mean += sample / 10;
+		double variance = 0; for (double sample : samples) variance += (sample - mean) * (sample - mean) / 9;
+		assertTrue(variance > 0);
+
+		/* Quantiles of the Student's t-distribution with 9 degrees of freedom */
+		for (double [] confidenceLevelAndQuantile : new double [][] { { 0.95, 2.262157 }, { 0.99, 3.249836 }, { 0.90, 1.833113 } })
+		{
+			runner.setConfidenceLevel(confidenceLevelAndQuantile [0]);
+			final SimReplicationRunner.ConfidenceInterval interval = runner.getConfidenceIntervals().get(metric);
+			final double halfWidth = confidenceLevelAndQuantile [1] * Math.sqrt(variance / 10);
+			assertEquals(10, interval.getNumSamples());
+			assertEquals(mean, interval.getMean(), 1E-12);
+			assertEquals(Math.sqrt(variance), interval.getStandardDeviation(), 1E-12);
+			assertEquals(halfWidth, interval.getHalfWidth(), 1E-5 * halfWidth);
+			assertEquals(mean - halfWidth, interval.getLowerBound(), 1E-5 * halfWidth);
+			assertEquals(mean + halfWidth, interval.getUpperBound(), 1E-5 * halfWidth);
+			assertEquals(halfWidth / mean, interval.getRelativeHalfWidth(), 1E-5 * halfWidth / mean);
+		}
+		try { runner.setConfidenceLevel(1); fail(); } catch (Net2PlanException e) { }
+	}
+
+	private SimReplicationRunner newRunner(long seed)
+	{
+		final Map<String, String> eventGeneratorParameters = new LinkedHashMap<String, String>();
+		eventGeneratorParameters.put("randomSeed", Long.toString(seed));
+		return new SimReplicationRunner(np, new TrafficChangeGenerator(), eventGeneratorParameters, new NoActionProcessor(), new LinkedHashMap<String, String>(), simulationParameters, net2planParameters);
+	}
+
+	/* Every time unit, the offered traffic of the first demand takes a random value */
+	public static class TrafficChangeGenerator extends IEventGenerator
+	{
+		private Random rng;
+
+		@Override
+		public String getDescription() { return null; }
+
+		@Override
+		public List<Triple<String, String, String>> getParameters() { return null; }
+
+		@Override
+		public void initialize(NetPlan initialNetPlan, Map<String, String> algorithmParameters, Map<String, String> simulationParameters, Map<String, String> net2planParameters)
+		{
+			this.rng = new Random(Long.parseLong(algorithmParameters.get("randomSeed")));
+			scheduleEvent(new SimEvent(0, SimEvent.DestinationModule.EVENT_GENERATOR, 0, null));
+		}
+
+		@Override
+		public void processEvent(NetPlan currentNetPlan, SimEvent event)
+		{
+			currentNetPlan.getDemand(0).setOfferedTraffic(10 * rng.nextDouble());
+			scheduleEvent(new SimEvent(event.getEventTime() + 1, SimEvent.DestinationModule.EVENT_GENERATOR, 0, null));
+		}
+	}
+
+	public static class NoActionProcessor extends IEventProcessor
+	{
+		@Override
+		public String getDescription() { return null; }
+
+		@Override
+		public List<Triple<String, String, String>> getParameters() { return null; }
+
+		@Override
+		public void initialize(NetPlan initialNetPlan, Map<String, String> algorithmParameters, Map<String, String> simulationParameters, Map<String, String> net2planParameters) { }
+
+		@Override
+		public void processEvent(NetPlan currentNetPlan, SimEvent event) { }
+	}
+}
@@ -0,0 +1,261 @@
+package com.net2plan.internal.sim;
+
+import com.net2plan.interfaces.networkDesign.Demand;
+import com.net2plan.interfaces.networkDesign.Link;
+import com.net2plan.interfaces.networkDesign.NetPlan;
+import com.net2plan.interfaces.networkDesign.NetworkLayer;
+import com.net2plan.interfaces.networkDesign.Node;
+import com.net2plan.interfaces.networkDesign.Route;
+import com.net2plan.utils.Constants.RoutingType;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.function.DoubleConsumer;
+
+import static org.junit.Assert.assertEquals;
+
+public class SimStatsTest
+{
+	private static final int N = 6;
+
+	private Locale defaultFormatLocale;
+
+	@Before
+	public void setUp()
+	{
+		/* The metrics in the report are formatted with the default locale */
+		this.defaultFormatLocale = Locale.getDefault(Locale.Category.FORMAT);
+		Locale.setDefault(Locale.Category.FORMAT, Locale.US);
+	}
+
+	@After
+	public void tearDown()
+	{
+		Locale.setDefault(Locale.Category.FORMAT, defaultFormatLocale);
+	}
+
+	@Test
+	public void testReportMatchesFullRecomputationReport() throws Exception
+	{
+		final NetPlan np = createNetwork();
+		final Map<String, String> net2planParameters = new HashMap<String, String>();
+		net2planParameters.put("precisionFactor", "1e-3");
+		final SimStats stats = new SimStats(np, new HashMap<String, String>(), net2planParameters);
+		final double endTime = runScenario(np, stats::computeNextState);
+
+		/* The report computed from scratch at every event by the statistics used before only the changed elements were updated */
+		final String expected;
+		try (InputStream is = SimStatsTest.class.getResourceAsStream("/com/net2plan/internal/sim/SimStatsTest_report.xml"))
+		{
+			expected = new Scanner(is, StandardCharsets.UTF_8.name()).useDelimiter("\\A").next();
+		}
+		assertEquals(expected.trim(), stats.getResultsXML(endTime).trim());
+	}
+
+	@Test
+	public void testResetDetachesTheStatisticsFromTheLayers()
+	{
+		final NetPlan np = createNetwork();
+		final Map<String, String> net2planParameters = new HashMap<String, String>();
+		net2planParameters.put("precisionFactor", "1e-3");
+		final SimStats stats = new SimStats(np, new HashMap<String, String>(), net2planParameters);
+		for (NetworkLayer layer : np.getNetworkLayers()) assertEquals(1, layer.getChangeListeners().size());
+		stats.reset(0);
+		stats.reset(0);
+		for (NetworkLayer layer : np.getNetworkLayers()) assertEquals(1, layer.getChangeListeners().size());
+	}
+
+	/* A bidirectional ring in a source routing layer, and a hop-by-hop routing layer on top of it, whose links are coupled to demands of the lower layer */
+	static NetPlan createNetwork()
+	{
+		final NetPlan np = new NetPlan();
+		final NetworkLayer lowerLayer = np.getNetworkLayerDefault();
+		for (int n = 0; n < N; n++) np.addNode(n, n, "n" + n, null);
+		for (int n = 0; n < N; n++)
+		{
+			np.addLink(np.getNode(n), np.getNode((n + 1) % N), 100, 10 + n, 200000, Collections.singletonMap("ring", "clockwise"), lowerLayer);
+			np.addLink(np.getNode((n + 1) % N), np.getNode(n), 100, 10 + n, 200000, Collections.singletonMap("ring", "counterclockwise"), lowerLayer);
+		}
+		for (int n = 0; n < N; n++)
+		{
+			final Demand d = np.addDemand(np.getNode(n), np.getNode((n + 2) % N), 5 + n, null, lowerLayer);
+			np.addRoute(d, 5 + n, 5 + n, clockwisePath(np, lowerLayer, d), null);
+		}
+
+		final NetworkLayer upperLayer = np.addLayer("upper", null, null, null, null, null);
+		np.setRoutingType(RoutingType.HOP_BY_HOP_ROUTING, upperLayer);
+		for (int n = 0; n < N; n += 2)
+		{
+			final Demand lowerLayerDemand = np.addDemand(np.getNode(n), np.getNode((n + 1) % N), 20, null, lowerLayer);
+			np.addRoute(lowerLayerDemand, 20, 20, clockwisePath(np, lowerLayer, lowerLayerDemand), null);
+			lowerLayerDemand.coupleToNewLinkCreated(upperLayer);
+		}
+		final Map<Demand, Map<Link, Double>> forwardingRules = new LinkedHashMap<Demand, Map<Link, Double>>();
+		for (Link e : np.getLinks(upperLayer))
+		{
+			final Demand d = np.addDemand(e.getOriginNode(), e.getDestinationNode(), 3, null, upperLayer);
+			forwardingRules.put(d, Collections.singletonMap(e, 1.0));
+		}
+		np.setForwardingRules(forwardingRules, null);
+		return np;
+	}
+
+	/* Applies a sequence of random changes to the network, calling the given method after each one with the simulation time of the change (some
+	 * consecutive changes happen at the same time). Returns the time at the end of the simulation */
+	static double runScenario(NetPlan np, DoubleConsumer computeNextState)
+	{
+		final Random rng = new Random(1L);
+		final NetworkLayer lowerLayer = np.getNetworkLayer(0);
+		final NetworkLayer upperLayer = np.getNetworkLayer(1);
+		final List<Node> ringNodes = new ArrayList<Node>(np.getNodes());
+		NetworkLayer extraLayer = null;
+		double simTime = 0;
+		computeNextState.accept(simTime);
+		for (int it = 0; it < 600; it++)
+		{
+			if (rng.nextInt(4) != 0) simTime += 0.5 + rng.nextInt(20);
+
+			final List<Demand> lowerLayerDemands = new ArrayList<Demand>();
+			for (Demand d : np.getDemands(lowerLayer)) if (!d.isCoupled()) lowerLayerDemands.add(d);
+			final List<Link> chords = new ArrayList<Link>();
+			for (Link e : np.getLinks(lowerLayer)) if (e.getAttribute("ring") == null) chords.add(e);
+			final List<Route> routes = np.getRoutes(lowerLayer);
+			final int event = rng.nextInt(14);
+			switch (event)
+			{
+				case 0:
+					if (!lowerLayerDemands.isEmpty()) lowerLayerDemands.get(rng.nextInt(lowerLayerDemands.size())).setOfferedTraffic(rng.nextInt(30));
+					break;
+				case 1:
+					if (!routes.isEmpty())
+					{
+						final double carriedTraffic = rng.nextInt(30);
+						routes.get(rng.nextInt(routes.size())).setCarriedTraffic(carriedTraffic, carriedTraffic * (1 + rng.nextInt(2)));
+					}
+					break;
+				case 2:
+				{
+					final List<Demand> demands = np.getDemands(lowerLayer);
+					final Demand d = demands.get(rng.nextInt(demands.size()));
+					if (ringNodes.contains(d.getIngressNode()) && ringNodes.contains(d.getEgressNode()))
+						np.addRoute(d, rng.nextInt(20), rng.nextInt(20), clockwisePath(np, lowerLayer, d), null);
+					break;
+				}
+				case 3:
+					if (!routes.isEmpty()) routes.get(rng.nextInt(routes.size())).remove();
+					break;
+				case 4:
+				{
+					final Link e = np.getLink(rng.nextInt(np.getNumberOfLinks(lowerLayer)), lowerLayer);
+					e.setCapacity(rng.nextInt(4) == 0 ? 0 : 10 + rng.nextInt(200));
+					break;
+				}
+				case 5:
+				{
+					final Link e = np.getLink(rng.nextInt(np.getNumberOfLinks(lowerLayer)), lowerLayer);
+					if (e.isUp()) np.setLinksAndNodesFailureState(null, Collections.singleton(e), null, null);
+					else np.setLinksAndNodesFailureState(Collections.singleton(e), null, null, null);
+					break;
+				}
+				case 6:
+				{
+					final Node n = np.getNode(rng.nextInt(np.getNumberOfNodes()));
+					if (n.isUp()) np.setLinksAndNodesFailureState(null, null, null, Collections.singleton(n));
+					else np.setLinksAndNodesFailureState(null, null, Collections.singleton(n), null);
+					break;
+				}
+				case 7:
+				{
+					final Node a = ringNodes.get(rng.nextInt(N));
+					final Node b = ringNodes.get(rng.nextInt(N));
+					if (a != b) np.addDemand(a, b, rng.nextInt(30), null, lowerLayer);
+					break;
+				}
+				case 8:
+					if (!lowerLayerDemands.isEmpty()) lowerLayerDemands.get(rng.nextInt(lowerLayerDemands.size())).remove();
+					break;
+				case 9:
+				{
+					final List<Node> nodes = np.getNodes();
+					final Node a = nodes.get(rng.nextInt(nodes.size()));
+					final Node b = nodes.get(rng.nextInt(nodes.size()));
+					if (a != b) np.addLink(a, b, rng.nextInt(100), rng.nextInt(100), 200000, null, lowerLayer);
+					break;
+				}
+				case 10:
+					if (!chords.isEmpty()) chords.get(rng.nextInt(chords.size())).remove();
+					break;
+				case 11:
+					if (np.getNumberOfNodes() == N || rng.nextBoolean())
+					{
+						final Node n = np.addNode(0, 0, rng.nextBoolean() ? "" : "added" + it, null);
+						np.addLink(ringNodes.get(rng.nextInt(N)), n, 50, 5, 200000, null, lowerLayer);
+					}
+					else
+					{
+						np.getNode(N + rng.nextInt(np.getNumberOfNodes() - N)).remove();
+					}
+					break;
+				case 12:
+				{
+					final Link e = np.getLink(rng.nextInt(np.getNumberOfLinks(lowerLayer)), lowerLayer);
+					e.setLengthInKm(1 + rng.nextInt(100));
+					break;
+				}
+				default:
+				{
+					final double r = rng.nextDouble();
+					if (r < 0.7)
+					{
+						final List<Demand> upperLayerDemands = np.getDemands(upperLayer);
+						upperLayerDemands.get(rng.nextInt(upperLayerDemands.size())).setOfferedTraffic(rng.nextInt(30));
+					}
+					else if (extraLayer == null)
+					{
+						extraLayer = np.addLayer("extra" + it, null, null, null, null, null);
+						final Link e = np.addLink(ringNodes.get(0), ringNodes.get(1), 10, 10, 200000, null, extraLayer);
+						final Demand d = np.addDemand(ringNodes.get(0), ringNodes.get(1), 4, null, extraLayer);
+						np.addRoute(d, 4, 4, Collections.singletonList(e), null);
+					}
+					else
+					{
+						np.removeNetworkLayer(extraLayer);
+						extraLayer = null;
+					}
+					break;
+				}
+			}
+
+			computeNextState.accept(simTime);
+		}
+
+		return simTime + 3;
+	}
+
+	/* The sequence of ring links from the ingress to the egress node of the demand, in the clockwise direction */
+	private static List<Link> clockwisePath(NetPlan np, NetworkLayer layer, Demand d)
+	{
+		final List<Link> path = new ArrayList<Link>();
+		Node n = d.getIngressNode();
+		while (n != d.getEgressNode())
+		{
+			for (Link e : n.getOutgoingLinks(layer))
+			{
+				if ("clockwise".equals(e.getAttribute("ring"))) { path.add(e); n = e.getDestinationNode(); break; }
+			}
+		}
+		return path;
+	}
+}
@@ -0,0 +1,144 @@
+package com.net2plan.libraries;
+
+import com.net2plan.interfaces.networkDesign.Demand;
+import com.net2plan.interfaces.networkDesign.Link;
+import com.net2plan.interfaces.networkDesign.NetPlan;
+import com.net2plan.interfaces.networkDesign.NetworkLayer;
+import com.net2plan.interfaces.networkDesign.Node;
+import com.net2plan.interfaces.networkDesign.SharedRiskGroup;
+import com.net2plan.interfaces.simulation.IEventProcessor;
+import com.net2plan.interfaces.simulation.SimEvent;
+import com.net2plan.utils.Triple;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collector;
+
+import static org.junit.Assert.assertEquals;
+
+public class FailureStateAnalysisTest
+{
+	private static final int N = 8;
+
+	private NetPlan np;
+
+	@Before
+	public void setUp()
+	{
+		/* A bidirectional ring with chords, and demands routed over up to two paths, so single and double failures block different amounts of traffic */
+		final Random rng = new Random(1L);
+		this.np = new NetPlan();
+		for (int n = 0; n < N; n++) np.addNode(n, n, "n" + n, null);
+		for (int n = 0; n < N; n++)
+		{
+			np.addLink(np.getNode(n), np.getNode((n + 1) % N), 100, 10, 200000, null);
+			np.addLink(np.getNode((n + 1) % N), np.getNode(n), 100, 10, 200000, null);
+		}
+		np.addLink(np.getNode(0), np.getNode(N / 2), 100, 10, 200000, null);
+		np.addLink(np.getNode(N / 2), np.getNode(0), 100, 10, 200000, null);
+		for (Node a : np.getNodes())
+			for (Node b : np.getNodes())
+			{
+				if (a == b || rng.nextDouble() < 0.5) continue;
+				final Demand d = np.addDemand(a, b, 1 + rng.nextInt(20), null);
+				final List<List<Link>> paths = GraphUtils.getKLooplessShortestPaths(np.getNodes(), np.getLinks(), a, b, null, 2, -1, -1, -1, -1, -1, -1);
+				for (List<Link> path : paths) np.addRoute(d, d.getOfferedTraffic() / paths.size(), d.getOfferedTraffic() / paths.size(), path, null);
+			}
+		SRGUtils.configureSRGs(np, 1000, 10, SRGUtils.SharedRiskModel.PER_BIDIRECTIONAL_LINK_BUNDLE, true);
+		for (int n = 0; n < N; n += 3) np.addSRG(1000, 10, null).addNode(np.getNode(n));
+	}
+
+	@Test
+	public void testParallelAnalysisMatchesSequentialAnalysis()
+	{
+		final List<Set<SharedRiskGroup>> failureStates = SRGUtils.enumerateFailureStates(np.getSRGs(), false, true);
+		final List<FailureStateAnalysis.FailureStateResult> expected = evaluateOneByOne(failureStates);
+
+		/* Without event processor, and with an event processor that just changes the failure state of the elements */
+		final ForkJoinPool pool = new ForkJoinPool(4);
+		try
+		{
+			for (boolean withEventProcessor : new boolean [] { false , true })
+			{
+				final FailureStateAnalysis analysis = new FailureStateAnalysis(np, withEventProcessor ? () -> new FailureStateChangeProcessor() : null, null, null, null);
+				checkEquals(expected, analysis.run(failureStates, toList(), null));
+				checkEquals(expected, analysis.run(failureStates, toList(), pool));
+
+				/* The lazily enumerated failure states, in the same order */
+				final SRGUtils.FailureStateEnumeration enumeration = new SRGUtils.FailureStateEnumeration(np.getSRGs(), false, true);
+				checkEquals(expected, analysis.run(enumeration.spliterator(0), toList(), null));
+				checkEquals(expected, analysis.run(enumeration.spliterator(0), toList(), pool));
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	/* The results of evaluating each failure state on a new copy of the design */
+	private List<FailureStateAnalysis.FailureStateResult> evaluateOneByOne(List<Set<SharedRiskGroup>> failureStates)
+	{
+		final List<FailureStateAnalysis.FailureStateResult> res = new ArrayList<FailureStateAnalysis.FailureStateResult>();
+		for (Set<SharedRiskGroup> failureState : failureStates)
+		{
+			final NetPlan copy = np.copy();
+			final List<Link> linksToSetAsDown = new ArrayList<Link>();
+			final List<Node> nodesToSetAsDown = new ArrayList<Node>();
+			for (SharedRiskGroup srg : failureState)
+			{
+				for (Link e : srg.getLinksAllLayers()) linksToSetAsDown.add(copy.getLink(e.getIndex()));
+				for (Node n : srg.getNodes()) nodesToSetAsDown.add(copy.getNode(n.getIndex()));
+			}
+			copy.setLinksAndNodesFailureState(null, linksToSetAsDown, null, nodesToSetAsDown);
+			res.add(FailureStateAnalysis.evaluateCurrentState(copy));
+		}
+		return res;
+	}
+
+	private void checkEquals(List<FailureStateAnalysis.FailureStateResult> expected, List<FailureStateAnalysis.FailureStateResult> actual)
+	{
+		assertEquals(expected.size(), actual.size());
+		final NetworkLayer layer = np.getNetworkLayerDefault();
+		for (int index = 0; index < expected.size(); index++)
+		{
+			assertEquals(index, actual.get(index).getFailureStateIndex());
+			assertEquals(expected.get(index).getVectorDemandBlockedTraffic(layer), actual.get(index).getVectorDemandBlockedTraffic(layer));
+			assertEquals(expected.get(index).getVectorDemandTraversingOversubscribedLinks(layer), actual.get(index).getVectorDemandTraversingOversubscribedLinks(layer));
+			assertEquals(expected.get(index).getVectorDemandWorstCasePropagationTimeInMs(layer), actual.get(index).getVectorDemandWorstCasePropagationTimeInMs(layer));
+			assertEquals(expected.get(index).getVectorLinkUtilization(layer), actual.get(index).getVectorLinkUtilization(layer));
+		}
+	}
+
+	private static Collector<FailureStateAnalysis.FailureStateResult, ?, List<FailureStateAnalysis.FailureStateResult>> toList()
+	{
+		return Collector.of(ArrayList::new, List::add, (list1, list2) -> { list1.addAll(list2); return list1; });
+	}
+
+	/* Sets the nodes and links as up or down, as a recovery algorithm without any recovery action */
+	public static class FailureStateChangeProcessor extends IEventProcessor
+	{
+		@Override
+		public String getDescription() { return null; }
+
+		@Override
+		public List<Triple<String, String, String>> getParameters() { return Collections.emptyList(); }
+
+		@Override
+		public void initialize(NetPlan initialNetPlan, Map<String, String> algorithmParameters, Map<String, String> simulationParameters, Map<String, String> net2planParameters) { }
+
+		@Override
+		public void processEvent(NetPlan currentNetPlan, SimEvent event)
+		{
+			final SimEvent.NodesAndLinksChangeFailureState failureInfo = (SimEvent.NodesAndLinksChangeFailureState) event.getEventObject();
+			currentNetPlan.setLinksAndNodesFailureState(failureInfo.linksToUp, failureInfo.linksToDown, failureInfo.nodesToUp, failureInfo.nodesToDown);
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package com.net2plan.libraries;
+
+import cern.colt.matrix.tdouble.DoubleFactory1D;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import com.net2plan.interfaces.networkDesign.Link;
+import com.net2plan.interfaces.networkDesign.NetPlan;
+import com.net2plan.interfaces.networkDesign.Node;
+import com.net2plan.utils.Constants.CheckRoutingCycleType;
+import com.net2plan.utils.Constants.RoutingCycleType;
+import com.net2plan.utils.Pair;
+import com.net2plan.utils.Quintuple;
+import edu.uci.ics.jung.graph.Graph;
+import org.apache.commons.collections15.Transformer;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class GraphUtilsTest
+{
+	private static final int N = 9;
+
+	private NetPlan np;
+
+	@Before
+	public void setUp()
+	{
+		/* A full mesh, with two parallel links between some node pairs */
+		final Random rng = new Random(1L);
+		this.np = new NetPlan();
+		for (int n = 0; n < N; n++) np.addNode(n, n, "n" + n, null);
+		for (Node a : np.getNodes())
+			for (Node b : np.getNodes())
+			{
+				if (a == b) continue;
+				np.addLink(a, b, 100, 1 + rng.nextInt(100), 200000, null);
+				if (rng.nextInt(5) == 0) np.addLink(a, b, 100, 1 + rng.nextInt(100), 200000, null);
+			}
+	}
+
+	@Test
+	public void testRoutingFundamentalVectorOfAcyclicForwardingRules()
+	{
+		final Random rng = new Random(1L);
+		for (int it = 0; it < 500; it++)
+		{
+			/* Forwarding rules only from each node to the nodes after it in a random order, so they are acyclic */
+			final List<Node> order = new ArrayList<Node>(np.getNodes());
+			Collections.shuffle(order, rng);
+			final Node ingressNode = order.get(rng.nextInt(N / 2));
+			final Node egressNode = order.get(N / 2 + rng.nextInt(N - N / 2));
+			final Map<Link, Double> frs = new HashMap<Link, Double>();
+			for (int pos = 0; pos < N - 1; pos++)
+			{
+				final Node n = order.get(pos);
+				if (n == egressNode && rng.nextBoolean()) continue;
+				final List<Link> candidateLinks = new ArrayList<Link>();
+				for (Link e : n.getOutgoingLinks()) if (order.indexOf(e.getDestinationNode()) > pos && rng.nextInt(3) == 0) candidateLinks.add(e);
+				if (candidateLinks.isEmpty()) continue;
+
+				/* Some nodes drop part of the traffic */
+				double remainingFraction = rng.nextInt(4) == 0 ? rng.nextDouble() : 1.0;
+				for (int cont = 0; cont < candidateLinks.size(); cont++)
+				{
+					final double splittingFactor = cont == candidateLinks.size() - 1 ? remainingFraction : remainingFraction * rng.nextDouble();
+					frs.put(candidateLinks.get(cont), splittingFactor);
+					remainingFraction -= splittingFactor;
+				}
+			}
+
+			final DoubleMatrix1D kahnMv = GraphUtils.computeRoutingFundamentalVectorIfAcyclic(frs, ingressNode, N);
+			final DoubleMatrix1D luMv = GraphUtils.computeRoutingFundamentalVectorSolvingLinearSystem(frs, ingressNode, N);
+			assertNotNull(kahnMv);
+			assertNotNull(luMv);
+			for (int n = 0; n < N; n++) assertEquals(luMv.get(n), kahnMv.get(n), 1e-9);
+			assertEquals(1.0, kahnMv.get(ingressNode.getIndex()), 0);
+
+			final Quintuple<DoubleMatrix1D, RoutingCycleType, Double, Double, Double> res = GraphUtils.computeRoutingFundamentalVector(frs, outForwardingRules(frs), ingressNode, egressNode);
+			assertEquals(kahnMv, res.getFirst());
+		}
+	}
+
+	@Test
+	public void testRoutingFundamentalVectorOfCyclicForwardingRules()
+	{
+		/* 0 -> 1 -> 2 -> 3, and part of the traffic in 2 goes back to 1: the topological order does not exist, so the linear system is solved */
+		final Node n0 = np.getNode(0);
+		final Node n1 = np.getNode(1);
+		final Node n2 = np.getNode(2);
+		final Node n3 = np.getNode(3);
+		final Map<Link, Double> frs = new HashMap<Link, Double>();
+		frs.put(np.getNodePairLinks(n0, n1, false).iterator().next(), 1.0);
+		frs.put(np.getNodePairLinks(n1, n2, false).iterator().next(), 1.0);
+		frs.put(np.getNodePairLinks(n2, n1, false).iterator().next(), 0.25);
+		frs.put(np.getNodePairLinks(n2, n3, false).iterator().next(), 0.75);
+		assertNull(GraphUtils.computeRoutingFundamentalVectorIfAcyclic(frs, n0, N));
+		final Quintuple<DoubleMatrix1D, RoutingCycleType, Double, Double, Double> res = GraphUtils.computeRoutingFundamentalVector(frs, outForwardingRules(frs), n0, n3);
+		assertEquals(GraphUtils.computeRoutingFundamentalVectorSolvingLinearSystem(frs, n0, N), res.getFirst());
+		assertEquals(RoutingCycleType.OPEN_CYCLES, res.getSecond());
+
+		/* The traffic visits 1 and 2 once, plus the expected number of returns (geometric with ratio 1/4), and all of it reaches 3 */
+		assertEquals(1.0, res.getFirst().get(n0.getIndex()), 1e-9);
+		assertEquals(4.0 / 3, res.getFirst().get(n1.getIndex()), 1e-9);
+		assertEquals(4.0 / 3, res.getFirst().get(n2.getIndex()), 1e-9);
+		assertEquals(1.0, res.getFirst().get(n3.getIndex()), 1e-9);
+	}
+
+	@Test
+	public void testKLooplessShortestPathsSameCostsAsJUNG()
+	{
+		final NetPlan netPlan = new NetPlan();
+		final Random rng = new Random(1L);
+		final int N = 10;
+		for (int n = 0; n < N; n++) netPlan.addNode(rng.nextDouble(), rng.nextDouble(), "n" + n, null);
+		for (Node n1 : netPlan.getNodes())
+			for (Node n2 : netPlan.getNodes())
+				if (n1 != n2 && rng.nextDouble() < 0.4) netPlan.addLink(n1, n2, 1, 1 + 100 * rng.nextDouble(), 200000, null);
+		final DoubleMatrix1D linkCosts = DoubleFactory1D.dense.make(netPlan.getNumberOfLinks());
+		final Map<Link, Double> linkCostMap = new HashMap<Link, Double>();
+		for (Link e : netPlan.getLinks()) { linkCosts.set(e.getIndex(), 1 + rng.nextInt(5)); linkCostMap.put(e, linkCosts.get(e.getIndex())); }
+
+		final int K = 6;
+		final Map<Pair<Node,Node>,List<List<Link>>> cpl = netPlan.computeUnicastCandidatePathList(linkCosts, K, -1, -1, -1, -1, -1, -1, null);
+		final Graph<Node, Link> graph = GraphUtils.JUNGUtils.getGraphFromLinkMap(netPlan.getNodes(), netPlan.getLinks());
+		final Transformer<Link, Double> nev = GraphUtils.JUNGUtils.getEdgeWeightTransformer(linkCostMap);
+		for (Node n1 : netPlan.getNodes())
+			for (Node n2 : netPlan.getNodes())
+			{
+				if (n1 == n2) continue;
+				final List<List<Link>> paths = cpl.get(Pair.of(n1, n2));
+				final List<List<Link>> jungPaths = GraphUtils.JUNGUtils.getKLooplessShortestPaths(graph, nev, n1, n2, K);
+				assertEquals(jungPaths.size(), paths.size());
+				for (int k = 0; k < paths.size(); k++)
+				{
+					GraphUtils.checkRouteContinuity(paths.get(k), CheckRoutingCycleType.NO_REPEAT_NODE);
+					assertEquals(GraphUtils.JUNGUtils.getPathWeight(jungPaths.get(k), nev), GraphUtils.JUNGUtils.getPathWeight(paths.get(k), nev), 1e-9);
+				}
+				assertEquals(paths.size(), new HashSet<List<Link>>(paths).size());
+			}
+	}
+
+	private static Map<Node, Set<Link>> outForwardingRules(Map<Link, Double> frs)
+	{
+		final Map<Node, Set<Link>> outFrs = new HashMap<Node, Set<Link>>();
+		for (Link e : frs.keySet())
+		{
+			Set<Link> links = outFrs.get(e.getOriginNode());
+			if (links == null) { links = new HashSet<Link>(); outFrs.put(e.getOriginNode(), links); }
+			links.add(e);
+		}
+		return outFrs;
+	}
+}
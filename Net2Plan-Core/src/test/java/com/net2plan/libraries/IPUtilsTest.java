@@ -0,0 +1,259 @@
+package com.net2plan.libraries;
+
+import cern.colt.matrix.tdouble.DoubleFactory1D;
+import cern.colt.matrix.tdouble.DoubleFactory2D;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import com.net2plan.interfaces.networkDesign.Demand;
+import com.net2plan.interfaces.networkDesign.Link;
+import com.net2plan.interfaces.networkDesign.Net2PlanException;
+import com.net2plan.interfaces.networkDesign.NetPlan;
+import com.net2plan.interfaces.networkDesign.Node;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IPUtilsTest
+{
+	@Test
+	public void testECMPRoutingMatchesAllPairsShortestPaths()
+	{
+		final Random rng = new Random(1L);
+		for (int it = 0; it < 20; it++)
+		{
+			final NetPlan np = createRandomNetwork(rng, 4 + rng.nextInt(12));
+			final List<Node> nodes = np.getNodes();
+			final List<Link> links = np.getLinks();
+			final List<Demand> demands = np.getDemands();
+			final DoubleMatrix1D w_e = DoubleFactory1D.dense.make(links.size());
+			for (int e = 0; e < links.size(); e++)
+			{
+				/* Small integer weights so that there are many equal cost paths, and some links not usable */
+				final double r = rng.nextDouble();
+				w_e.set(e, r < 0.1 ? Double.MAX_VALUE : (r < 0.6 ? 1 + rng.nextInt(3) : 1 + 10 * rng.nextDouble()));
+			}
+
+			final DoubleMatrix2D f_te = IPUtils.computeECMPRoutingTableMatrix_fte(nodes, links, w_e);
+			final DoubleMatrix2D f_te_reference = computeReferenceECMPRoutingTableMatrix_fte(nodes, links, w_e);
+			checkEquals(f_te_reference, f_te);
+
+			final DoubleMatrix2D f_de = IPUtils.computeECMPForwardingRules_fde(nodes, links, demands, w_e);
+			final DoubleMatrix2D f_de_reference = DoubleFactory2D.dense.make(demands.size(), links.size());
+			for (Demand d : demands)
+				f_de_reference.viewRow(d.getIndex()).assign(f_te_reference.viewRow(d.getEgressNode().getIndex()));
+			checkEquals(f_de_reference, f_de);
+		}
+	}
+
+	@Test
+	public void testECMPRoutingRejectsWeightsLowerThanOne()
+	{
+		final NetPlan np = createRandomNetwork(new Random(2L), 6);
+		final DoubleMatrix1D w_e = DoubleFactory1D.dense.make(np.getNumberOfLinks(), 1.0);
+
+		/* Also in links that do not reach any destination with demands, and with weights that would make the search revisit nodes */
+		final Node isolatedOrigin = np.addNode(0, 0, "isolated", null);
+		final Link outOfAnyPath = np.addLink(isolatedOrigin, np.getNode(0), 10, 1, 200000, null);
+		final DoubleMatrix1D w_e_negative = DoubleFactory1D.dense.make(np.getNumberOfLinks(), 1.0);
+		w_e_negative.set(outOfAnyPath.getIndex(), 0.5);
+		try { IPUtils.computeECMPRoutingTableMatrix_fte(np.getNodes(), np.getLinks(), w_e_negative); fail(); } catch (Net2PlanException e) {}
+		w_e_negative.set(outOfAnyPath.getIndex(), 1);
+		w_e_negative.set(0, -5);
+		try { IPUtils.computeECMPRoutingTableMatrix_fte(np.getNodes(), np.getLinks(), w_e_negative); fail(); } catch (Net2PlanException e) {}
+		try { IPUtils.computeECMPForwardingRules_fde(np.getNodes(), np.getLinks(), np.getDemands(), w_e_negative); fail(); } catch (Net2PlanException e) {}
+		try { new IPUtils.IncrementalECMPCarriedTraffic(np, w_e_negative); fail(); } catch (Net2PlanException e) {}
+
+		final IPUtils.IncrementalECMPCarriedTraffic incremental = new IPUtils.IncrementalECMPCarriedTraffic(np, null);
+		try { incremental.setLinkWeight(np.getLink(0), -5); fail(); } catch (Net2PlanException e) {}
+		assertEquals(1.0, incremental.getLinkWeightVector().get(0), 0);
+		assertEquals(w_e.size() + 1, incremental.getLinkWeightVector().size());
+	}
+
+	@Test
+	public void testIncrementalECMPCarriedTrafficMatchesFullRecomputation()
+	{
+		final Random rng = new Random(3L);
+		final NetPlan np = createRandomNetwork(rng, 12);
+		for (Demand d : np.getDemands()) d.setOfferedTraffic(rng.nextDouble() * 10);
+		for (Link e : np.getLinks()) e.setCapacity(rng.nextDouble() * 50);
+		final int E = np.getNumberOfLinks();
+		final DoubleMatrix1D w_e = DoubleFactory1D.dense.make(E);
+		for (int e = 0; e < E; e++) w_e.set(e, 1 + rng.nextInt(5));
+
+		final IPUtils.IncrementalECMPCarriedTraffic incremental = new IPUtils.IncrementalECMPCarriedTraffic(np, w_e);
+		checkCarriedTraffic(np, w_e, incremental);
+		for (int it = 0; it < 200; it++)
+		{
+			if (rng.nextDouble() < 0.8)
+			{
+				final Link e = np.getLink(rng.nextInt(E));
+				final double w = rng.nextDouble() < 0.05 ? Double.MAX_VALUE : 1 + rng.nextInt(5);
+				w_e.set(e.getIndex(), w);
+				incremental.setLinkWeight(e, w);
+			}
+			else
+			{
+				for (int e = 0; e < E; e++) if (rng.nextDouble() < 0.2) w_e.set(e, 1 + rng.nextInt(5));
+				incremental.setLinkWeights(w_e);
+			}
+			assertTrue(incremental.getNumberOfDestinationsRecomputedInLastUpdate() <= np.getNumberOfNodes());
+			checkCarriedTraffic(np, w_e, incremental);
+
+			/* The result does not depend on the sequence of updates that led to these weights */
+			final IPUtils.IncrementalECMPCarriedTraffic fromScratch = new IPUtils.IncrementalECMPCarriedTraffic(np, w_e);
+			assertEquals(fromScratch.getCarriedTrafficPerLink(), incremental.getCarriedTrafficPerLink());
+		}
+
+		/* Setting the same weights recomputes nothing */
+		incremental.setLinkWeights(w_e);
+		assertEquals(0, incremental.getNumberOfDestinationsRecomputedInLastUpdate());
+
+		/* Changing the weight of a link to a node that reaches no destination with traffic recomputes nothing */
+		final Link toSink = np.addLink(np.getNode(0), np.addNode(0, 0, "sink", null), 10, 1, 200000, null);
+		final DoubleMatrix1D w_e_withSink = DoubleFactory1D.dense.make(E + 1);
+		w_e_withSink.viewPart(0, E).assign(w_e);
+		w_e_withSink.set(toSink.getIndex(), 1);
+		final IPUtils.IncrementalECMPCarriedTraffic incrementalWithSink = new IPUtils.IncrementalECMPCarriedTraffic(np, w_e_withSink);
+		for (double w : new double [] { 5 , 1 , Double.MAX_VALUE })
+		{
+			w_e_withSink.set(toSink.getIndex(), w);
+			incrementalWithSink.setLinkWeights(w_e_withSink);
+			assertEquals(0, incrementalWithSink.getNumberOfDestinationsRecomputedInLastUpdate());
+			checkCarriedTraffic(np, w_e_withSink, incrementalWithSink);
+		}
+	}
+
+	@Test
+	public void testIncrementalECMPCarriedTrafficNodeBecomesReachable()
+	{
+		/* n0 -> n1 -> n2 and n3 -> n2, with traffic from n0 and n3 to n2. The only link out of n0 is not usable at first, so n0 does not reach n2 */
+		final NetPlan np = new NetPlan();
+		for (int n = 0; n < 4; n++) np.addNode(n, 0, "n" + n, null);
+		final Link e01 = np.addLink(np.getNode(0), np.getNode(1), 10, 1, 200000, null);
+		final Link e12 = np.addLink(np.getNode(1), np.getNode(2), 10, 1, 200000, null);
+		np.addLink(np.getNode(3), np.getNode(2), 10, 1, 200000, null);
+		np.addDemand(np.getNode(0), np.getNode(2), 5, null);
+		np.addDemand(np.getNode(3), np.getNode(2), 2, null);
+		final DoubleMatrix1D w_e = DoubleFactory1D.dense.make(np.getNumberOfLinks(), 1.0);
+		w_e.set(e01.getIndex(), Double.MAX_VALUE);
+		final IPUtils.IncrementalECMPCarriedTraffic incremental = new IPUtils.IncrementalECMPCarriedTraffic(np, w_e);
+		checkCarriedTraffic(np, w_e, incremental);
+		assertEquals(0, incremental.getCarriedTrafficPerLink().get(e12.getIndex()), 0);
+
+		/* One weight change makes n0 reach n2 */
+		w_e.set(e01.getIndex(), 3);
+		incremental.setLinkWeight(e01, 3);
+		assertEquals(1, incremental.getNumberOfDestinationsRecomputedInLastUpdate());
+		checkCarriedTraffic(np, w_e, incremental);
+		assertEquals(5, incremental.getCarriedTrafficPerLink().get(e12.getIndex()), 0);
+
+		/* And back */
+		w_e.set(e01.getIndex(), Double.MAX_VALUE);
+		incremental.setLinkWeight(e01, Double.MAX_VALUE);
+		checkCarriedTraffic(np, w_e, incremental);
+
+		/* Also when the links of the new path change together: n1 does not reach n2 either at first */
+		w_e.set(e12.getIndex(), Double.MAX_VALUE);
+		incremental.setLinkWeights(w_e);
+		checkCarriedTraffic(np, w_e, incremental);
+		w_e.set(e01.getIndex(), 2);
+		w_e.set(e12.getIndex(), 4);
+		incremental.setLinkWeights(w_e);
+		checkCarriedTraffic(np, w_e, incremental);
+		assertEquals(5, incremental.getCarriedTrafficPerLink().get(e01.getIndex()), 0);
+	}
+
+	private static void checkCarriedTraffic(NetPlan np, DoubleMatrix1D w_e, IPUtils.IncrementalECMPCarriedTraffic incremental)
+	{
+		final DoubleMatrix1D y_e = IPUtils.computeCarriedTrafficFromIGPWeights(np, w_e).getFourth();
+		final DoubleMatrix1D y_e_incremental = incremental.getCarriedTrafficPerLink();
+		final DoubleMatrix1D utilization = incremental.getLinkUtilization();
+		assertEquals(w_e, incremental.getLinkWeightVector());
+		for (Link e : np.getLinks())
+		{
+			final int index = e.getIndex();
+			assertEquals(y_e.get(index), y_e_incremental.get(index), 1e-6);
+			final double expectedUtilization = y_e_incremental.get(index) == 0 ? 0 : (e.getCapacity() == 0 ? Double.MAX_VALUE : y_e_incremental.get(index) / e.getCapacity());
+			assertEquals(expectedUtilization, utilization.get(index), 0);
+		}
+	}
+
+	private static NetPlan createRandomNetwork(Random rng, int N)
+	{
+		final NetPlan np = new NetPlan();
+		for (int n = 0; n < N; n++) np.addNode(rng.nextDouble(), rng.nextDouble(), "n" + n, null);
+		for (Node n1 : np.getNodes())
+			for (Node n2 : np.getNodes())
+			{
+				if (n1 == n2) continue;
+				if (rng.nextDouble() < 0.3) np.addLink(n1, n2, 10, 1, 200000, null);
+				if (rng.nextDouble() < 0.05) np.addLink(n1, n2, 10, 1, 200000, null);
+				if (rng.nextDouble() < 0.5) np.addDemand(n1, n2, 1, null);
+			}
+		return np;
+	}
+
+	/* The implementation used before the shortest path DAGs were computed with Dijkstra: all-pairs distances with Floyd-Warshall, and a link is in the
+	 * DAG towards t if its weight equals the difference of the distances of its end nodes to t */
+	private static DoubleMatrix2D computeReferenceECMPRoutingTableMatrix_fte(List<Node> nodes, List<Link> links, DoubleMatrix1D linkWeightVector)
+	{
+		final int N = nodes.size();
+		final int E = links.size();
+		final DoubleMatrix2D f_te = DoubleFactory2D.dense.make(N, E);
+		final double[][] costMatrix = new double[N][N];
+		for (int n = 0; n < N; n++)
+		{
+			Arrays.fill(costMatrix[n], Double.MAX_VALUE);
+			costMatrix[n][n] = 0;
+		}
+		for (Link link : links)
+		{
+			final int a_e = link.getOriginNode().getIndex();
+			final int b_e = link.getDestinationNode().getIndex();
+			costMatrix[a_e][b_e] = Math.min(costMatrix[a_e][b_e], linkWeightVector.get(link.getIndex()));
+		}
+		for (int k = 0; k < N; k++)
+			for (int i = 0; i < N; i++)
+			{
+				if (i == k) continue;
+				for (int j = 0; j < N; j++)
+				{
+					if (j == k || j == i) continue;
+					final double newValue = costMatrix[i][k] + costMatrix[k][j];
+					if (newValue < costMatrix[i][j]) costMatrix[i][j] = newValue;
+				}
+			}
+
+		for (int t = 0; t < N; t++)
+		{
+			final int[] outdegree = new int[N];
+			final boolean[] isDAGLink = new boolean[E];
+			for (Link link : links)
+			{
+				final int n = link.getOriginNode().getIndex();
+				final int m = link.getDestinationNode().getIndex();
+				if (n == t) continue;
+				if (costMatrix[n][t] == Double.MAX_VALUE || costMatrix[m][t] == Double.MAX_VALUE) continue;
+				if (Math.abs(linkWeightVector.get(link.getIndex()) - (costMatrix[n][t] - costMatrix[m][t])) < 1E-10) { isDAGLink[link.getIndex()] = true; outdegree[n]++; }
+			}
+			for (Link link : links)
+				if (isDAGLink[link.getIndex()]) f_te.set(t, link.getIndex(), 1.0 / outdegree[link.getOriginNode().getIndex()]);
+		}
+		return f_te;
+	}
+
+	private static void checkEquals(DoubleMatrix2D expected, DoubleMatrix2D actual)
+	{
+		assertEquals(expected.rows(), actual.rows());
+		assertEquals(expected.columns(), actual.columns());
+		for (int i = 0; i < expected.rows(); i++)
+			for (int j = 0; j < expected.columns(); j++)
+				assertEquals(expected.get(i, j), actual.get(i, j), 1e-12);
+	}
+}
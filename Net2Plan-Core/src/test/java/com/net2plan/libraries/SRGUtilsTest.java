@@ -0,0 +1,102 @@
+package com.net2plan.libraries;
+
+import cern.colt.matrix.tdouble.DoubleFactory1D;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import com.net2plan.interfaces.networkDesign.NetPlan;
+import com.net2plan.interfaces.networkDesign.SharedRiskGroup;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.Spliterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SRGUtilsTest
+{
+	@Test
+	public void testFailureStateEnumerationMatchesEnumerateFailureStates()
+	{
+		final Random rng = new Random(1L);
+		for (int S = 0; S <= 44; S++)
+		{
+			final NetPlan np = new NetPlan();
+			for (int srg = 0; srg < S; srg++)
+				np.addSRG(rng.nextInt(10) == 0 ? Double.MAX_VALUE : 100 + rng.nextInt(10000), 1 + rng.nextInt(100), null);
+			final List<SharedRiskGroup> srgs = np.getSRGs();
+			final DoubleMatrix1D A_f = DoubleFactory1D.dense.make(S);
+			for (SharedRiskGroup srg : srgs) A_f.set(srg.getIndex(), srg.getAvailability());
+
+			for (boolean considerNoFailureState : new boolean [] { false , true })
+				for (boolean considerDoubleFailureStates : new boolean [] { false , true })
+				{
+					final List<Set<SharedRiskGroup>> expected = SRGUtils.enumerateFailureStates(srgs, considerNoFailureState, considerDoubleFailureStates);
+					final DoubleMatrix1D pi_s = computeStateProbabilities(srgs, considerNoFailureState, considerDoubleFailureStates, A_f);
+					final SRGUtils.FailureStateEnumeration enumeration = new SRGUtils.FailureStateEnumeration(srgs, considerNoFailureState, considerDoubleFailureStates);
+					assertEquals(expected.size(), enumeration.getNumberOfFailureStates());
+					assertEquals(computeStateProbabilities(srgs, true, false, A_f).get(0), enumeration.getProbabilityNoFailureState(), 1e-12);
+
+					/* Same states, in the same order, and with the same probabilities */
+					final List<SRGUtils.FailureState> states = new ArrayList<SRGUtils.FailureState>();
+					enumeration.spliterator(0).forEachRemaining(states::add);
+					assertEquals(expected.size(), states.size());
+					for (int index = 0; index < expected.size(); index++)
+					{
+						final SRGUtils.FailureState state = states.get(index);
+						assertEquals(index, state.getIndex());
+						assertEquals(expected.get(index), new HashSet<SharedRiskGroup>(state));
+						assertEquals(expected.get(index).size(), state.size());
+						assertEquals(pi_s.get(index), state.getProbability(), 1e-9 * pi_s.get(index));
+						assertEquals(new HashSet<SharedRiskGroup>(state), new HashSet<SharedRiskGroup>(enumeration.getFailureState(index)));
+					}
+
+					/* Any sequence of splits covers every state exactly once, in the order of the enumeration */
+					for (int it = 0; it < 5; it++)
+					{
+						final List<Integer> indexes = new ArrayList<Integer>();
+						collectAfterRandomSplits(enumeration.spliterator(0), rng, 0, indexes);
+						assertEquals(expected.size(), indexes.size());
+						for (int index = 0; index < indexes.size(); index++) assertEquals(index, (int) indexes.get(index));
+					}
+
+					/* The states below a minimum probability are skipped, also after splitting */
+					if (states.isEmpty()) continue;
+					final double minimumProbability = states.get(rng.nextInt(states.size())).getProbability();
+					final List<Integer> expectedIndexes = new ArrayList<Integer>();
+					for (SRGUtils.FailureState state : states) if (state.getProbability() >= minimumProbability) expectedIndexes.add(state.getIndex());
+					final List<Integer> indexes = new ArrayList<Integer>();
+					collectAfterRandomSplits(enumeration.spliterator(minimumProbability), rng, 0, indexes);
+					assertEquals(expectedIndexes, indexes);
+					assertFalse(indexes.isEmpty());
+				}
+		}
+	}
+
+	/* The state probabilities computed from the matrix of failure states. Without SRGs, the only state is the no-failure state, with probability one */
+	private static DoubleMatrix1D computeStateProbabilities(List<SharedRiskGroup> srgs, boolean considerNoFailureState, boolean considerDoubleFailureStates, DoubleMatrix1D A_f)
+	{
+		if (srgs.isEmpty()) return DoubleFactory1D.dense.make(considerNoFailureState ? 1 : 0, 1.0);
+		return SRGUtils.computeStateProbabilities(SRGUtils.getMatrixFailureStates2SRG(srgs, considerNoFailureState, considerDoubleFailureStates), A_f);
+	}
+
+	/* Splits the spliterator at random, and then traverses the parts in order (the prefix first), adding the state indexes to the list */
+	private static void collectAfterRandomSplits(Spliterator<SRGUtils.FailureState> spliterator, Random rng, int depth, List<Integer> indexes)
+	{
+		final long estimatedSize = spliterator.estimateSize();
+		final Spliterator<SRGUtils.FailureState> prefix = depth < 12 && rng.nextInt(4) != 0 ? spliterator.trySplit() : null;
+		if (prefix == null)
+		{
+			if (rng.nextBoolean()) { spliterator.forEachRemaining(state -> indexes.add(state.getIndex())); return; }
+			while (spliterator.tryAdvance(state -> indexes.add(state.getIndex()))) { }
+			return;
+		}
+		assertTrue(prefix.estimateSize() + spliterator.estimateSize() == estimatedSize);
+		collectAfterRandomSplits(prefix, rng, depth + 1, indexes);
+		collectAfterRandomSplits(spliterator, rng, depth + 1, indexes);
+	}
+}
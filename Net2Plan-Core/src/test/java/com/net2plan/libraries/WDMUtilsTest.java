@@ -0,0 +1,214 @@
+package com.net2plan.libraries;
+
+import cern.colt.matrix.tdouble.DoubleFactory1D;
+import cern.colt.matrix.tdouble.DoubleFactory2D;
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import com.net2plan.interfaces.networkDesign.Demand;
+import com.net2plan.interfaces.networkDesign.Link;
+import com.net2plan.interfaces.networkDesign.Net2PlanException;
+import com.net2plan.interfaces.networkDesign.NetPlan;
+import com.net2plan.interfaces.networkDesign.Node;
+import com.net2plan.interfaces.networkDesign.Route;
+import com.net2plan.utils.Pair;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WDMUtilsTest
+{
+	private static final int N = 6;
+	private static final int W = 150; // not a multiple of 64, so the last word of the bitsets is partially used
+
+	private NetPlan np;
+	private Link [] clockwise;
+	private Link [] counterClockwise;
+
+	@Before
+	public void setUp()
+	{
+		this.np = new NetPlan();
+		for (int n = 0; n < N; n++) np.addNode(n, n, "n" + n, null);
+		this.clockwise = new Link [N];
+		this.counterClockwise = new Link [N];
+		for (int n = 0; n < N; n++)
+		{
+			final Node a = np.getNode(n);
+			final Node b = np.getNode((n + 1) % N);
+			clockwise [n] = np.addLink(a, b, 100, 100, 200000, null);
+			counterClockwise [n] = np.addLink(b, a, 100, 100, 200000, null);
+		}
+	}
+
+	@Test
+	public void testSpectrumOccupancyMatchesMatrixVersions()
+	{
+		final Random rng = new Random(1L);
+		final int E = np.getNumberOfLinks();
+		final DoubleMatrix2D occupancyMatrix = DoubleFactory2D.dense.make(W, E);
+		for (int it = 0; it < 200; it++)
+		{
+			/* Random occupancy, more or less dense in different iterations */
+			final double density = rng.nextDouble();
+			for (int s = 0; s < W; s++)
+				for (int e = 0; e < E; e++)
+					occupancyMatrix.set(s, e, rng.nextDouble() < density * density ? 1 : 0);
+			final WDMUtils.SpectrumOccupancy occupancy = new WDMUtils.SpectrumOccupancy(occupancyMatrix);
+			assertEquals(W, occupancy.getNumSlots());
+			assertEquals(E, occupancy.getNumFibers());
+			assertEquals(occupancyMatrix, occupancy.toDoubleMatrix2D());
+			for (Link e : np.getLinks())
+				assertEquals((int) occupancyMatrix.viewColumn(e.getIndex()).zSum(), occupancy.getNumOccupiedSlots(e));
+
+			for (int numSlots = 1; numSlots <= 70; numSlots += 1 + rng.nextInt(10))
+			{
+				final List<Link> path_1 = randomPath(rng);
+				final List<Link> path_2 = randomPath(rng);
+				assertEquals(WDMUtils.spectrumAssignment_firstFit(path_1, occupancyMatrix, numSlots), WDMUtils.spectrumAssignment_firstFit(path_1, occupancy, numSlots));
+				assertEquals(WDMUtils.spectrumAssignment_firstFitTwoRoutes(path_1, path_2, occupancyMatrix, numSlots), WDMUtils.spectrumAssignment_firstFitTwoRoutes(path_1, path_2, occupancy, numSlots));
+
+				final WDMUtils.RSA rsa_1 = new WDMUtils.RSA(path_1, rng.nextInt(W - numSlots + 1), numSlots);
+				final WDMUtils.RSA rsa_2 = new WDMUtils.RSA(path_2, rng.nextInt(W - numSlots + 1), numSlots);
+				assertEquals(WDMUtils.isAllocatableRSASet(occupancyMatrix, rsa_1), WDMUtils.isAllocatableRSASet(occupancy, rsa_1));
+				assertEquals(WDMUtils.isAllocatableRSASet(occupancyMatrix, rsa_1, rsa_2), WDMUtils.isAllocatableRSASet(occupancy, rsa_1, rsa_2));
+			}
+		}
+	}
+
+	@Test
+	public void testAllocateAndReleaseResourcesMatchMatrixVersions()
+	{
+		final Random rng = new Random(2L);
+		final int E = np.getNumberOfLinks();
+		final DoubleMatrix2D occupancyMatrix = DoubleFactory2D.dense.make(W, E);
+		final WDMUtils.SpectrumOccupancy occupancy = new WDMUtils.SpectrumOccupancy(E, W);
+		final DoubleMatrix1D regeneratorsMatrixVersion = DoubleFactory1D.dense.make(N);
+		final DoubleMatrix1D regenerators = DoubleFactory1D.dense.make(N);
+		final List<WDMUtils.RSA> allocated = new ArrayList<WDMUtils.RSA>();
+		int numClashes = 0;
+		for (int it = 0; it < 2000; it++)
+		{
+			if (allocated.isEmpty() || rng.nextDouble() < 0.6)
+			{
+				final List<Link> path = randomPath(rng);
+				final int numSlots = 1 + rng.nextInt(8);
+				final int [] seqRegenerators_e = new int [path.size()];
+				for (int cont = 1; cont < path.size(); cont++) seqRegenerators_e [cont] = rng.nextDouble() < 0.2 ? 1 : 0;
+				final WDMUtils.RSA rsa = new WDMUtils.RSA(path, rng.nextInt(W - numSlots + 1), numSlots, seqRegenerators_e);
+				final boolean allocatable = WDMUtils.isAllocatableRSASet(occupancy, rsa);
+				assertEquals(WDMUtils.isAllocatableRSASet(occupancyMatrix, rsa), allocatable);
+				if (!allocatable)
+				{
+					/* Both versions reject a clashing allocation */
+					numClashes++;
+					try { WDMUtils.allocateResources(rsa, occupancy.copy(), regenerators.copy()); assertTrue(false); } catch (Net2PlanException e) {}
+					try { WDMUtils.allocateResources(rsa, occupancyMatrix.copy(), regeneratorsMatrixVersion.copy()); assertTrue(false); } catch (Net2PlanException e) {}
+					continue;
+				}
+				WDMUtils.allocateResources(rsa, occupancyMatrix, regeneratorsMatrixVersion);
+				WDMUtils.allocateResources(rsa, occupancy, regenerators);
+				allocated.add(rsa);
+			}
+			else
+			{
+				final WDMUtils.RSA rsa = allocated.remove(rng.nextInt(allocated.size()));
+				WDMUtils.releaseResources(rsa, occupancyMatrix, regeneratorsMatrixVersion);
+				WDMUtils.releaseResources(rsa, occupancy, regenerators);
+
+				/* Both versions reject releasing slots that are not occupied */
+				try { WDMUtils.releaseResources(rsa, occupancy.copy(), null); assertTrue(false); } catch (Net2PlanException e) {}
+				try { WDMUtils.releaseResources(rsa, occupancyMatrix.copy(), null); assertTrue(false); } catch (Net2PlanException e) {}
+			}
+			assertEquals(occupancyMatrix, occupancy.toDoubleMatrix2D());
+			assertEquals(new WDMUtils.SpectrumOccupancy(occupancyMatrix), occupancy);
+			assertEquals(regeneratorsMatrixVersion, regenerators);
+		}
+		assertTrue(numClashes > 0);
+	}
+
+	/* A sequence of 1 to N-1 contiguous fibers along the ring, in any of the two directions */
+	private List<Link> randomPath(Random rng)
+	{
+		final boolean isClockwise = rng.nextBoolean();
+		final int length = 1 + rng.nextInt(N - 1);
+		final int initialNode = rng.nextInt(N);
+		final List<Link> path = new ArrayList<Link>();
+		for (int cont = 0; cont < length; cont++)
+			path.add(isClockwise ? clockwise [(initialNode + cont) % N] : counterClockwise [(initialNode - cont - 1 + 2 * N) % N]);
+		return path;
+	}
+
+	@Test
+	public void testWDMOccupancyIndexIncrementalUpdate()
+	{
+		final NetPlan netPlan = new NetPlan();
+		for (int n = 0; n < 4; n++) netPlan.addNode(n, 0, "n" + n, null);
+		final List<Link> fibers = new LinkedList<Link> ();
+		for (int n = 0; n < 3; n++) fibers.add(netPlan.addLink(netPlan.getNode(n), netPlan.getNode(n+1), 8, 10, 200000, null));
+		final WDMUtils.OccupancyIndex index = WDMUtils.getOccupancyIndex(netPlan);
+		final Demand d03 = netPlan.addDemand(netPlan.getNode(0), netPlan.getNode(3), 0, null);
+		final Demand d12 = netPlan.addDemand(netPlan.getNode(1), netPlan.getNode(2), 0, null);
+		final Route lp1 = WDMUtils.addLightpath(d03, new WDMUtils.RSA(fibers, 0, 2), 10);
+		WDMUtils.addLightpath(d12, new WDMUtils.RSA(fibers.subList(1, 2), 2, 1), 10);
+		checkWDMOccupancyIndex(netPlan, index);
+		assertTrue (index.isSlotOccupied(fibers.get(1), 2, true));
+
+		fibers.get(0).setFailureState(false);
+		checkWDMOccupancyIndex(netPlan, index);
+		assertTrue (index.isSlotOccupied(fibers.get(1), 0, true));
+		assertTrue (!index.isSlotOccupied(fibers.get(1), 0, false));
+		fibers.get(0).setFailureState(true);
+
+		WDMUtils.setLightpathRSAAttributes(lp1, new WDMUtils.RSA(fibers, 4, 2), false);
+		checkWDMOccupancyIndex(netPlan, index);
+		assertTrue (!index.isSlotOccupied(fibers.get(1), 0, true));
+		assertEquals (index.getLightpathsOccupyingSlot(fibers.get(2), 5), Collections.singletonList(lp1));
+
+		final Route lp3 = WDMUtils.addLightpath(d12, new WDMUtils.RSA(fibers.subList(1, 2), 5, 1), 10);
+		assertEquals (index.getNumClashingSlots(true), 1);
+		try { WDMUtils.checkResourceAllocationClashing(netPlan, true, false); fail ("Clashing not detected"); } catch (Net2PlanException e) {}
+		lp3.remove();
+		WDMUtils.checkResourceAllocationClashing(netPlan, true, false);
+		assertEquals (index.getNumClashingSlots(true), 0);
+		checkWDMOccupancyIndex(netPlan, index);
+
+		lp1.remove();
+		fibers.get(2).setCapacity(6);
+		checkWDMOccupancyIndex(netPlan, index);
+		assertTrue (index.isSlotOccupied(fibers.get(2), 7, true));
+		assertTrue (index.getLightpathsOccupyingSlot(fibers.get(2), 5).isEmpty());
+	}
+
+	private static void checkWDMOccupancyIndex (NetPlan netPlan , WDMUtils.OccupancyIndex index)
+	{
+		final NetPlan npWithoutIndex = netPlan.copy();
+		for (boolean countFailedLightpaths : new boolean [] { true , false })
+		{
+			final Pair<DoubleMatrix2D,DoubleMatrix1D> fromIndex = WDMUtils.getNetworkSlotAndRegeneratorOcupancy(netPlan, countFailedLightpaths);
+			final Pair<DoubleMatrix2D,DoubleMatrix1D> fromScratch = WDMUtils.getNetworkSlotAndRegeneratorOcupancy(npWithoutIndex, countFailedLightpaths);
+			assertEquals (fromScratch.getFirst(), fromIndex.getFirst());
+			assertEquals (fromScratch.getSecond(), fromIndex.getSecond());
+			assertEquals (new WDMUtils.SpectrumOccupancy(fromScratch.getFirst()), index.getSpectrumOccupancy(countFailedLightpaths));
+			for (Link fiber : netPlan.getLinks())
+			{
+				final BitSet occupiedSlots = index.getOccupiedSlots(fiber, countFailedLightpaths);
+				for (int s = 0; s < fromScratch.getFirst().rows(); s++)
+				{
+					assertEquals (fromScratch.getFirst().get(s, fiber.getIndex()) != 0, occupiedSlots.get(s));
+					assertEquals (occupiedSlots.get(s), index.isSlotOccupied(fiber, s, countFailedLightpaths));
+				}
+				assertEquals (fromScratch.getFirst().viewColumn(fiber.getIndex()).zSum(), index.getNumOccupiedSlots(fiber, countFailedLightpaths), 0);
+			}
+		}
+	}
+}
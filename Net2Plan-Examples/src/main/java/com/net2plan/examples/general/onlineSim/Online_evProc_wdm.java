@@ -39,7 +39,6 @@ import com.net2plan.utils.Quadruple;
 import com.net2plan.utils.RandomUtils;
 import com.net2plan.utils.Triple;
 
-import cern.colt.matrix.tdouble.DoubleMatrix2D;
 import cern.jet.math.tdouble.DoubleFunctions;
 
 /** Implements the reactions of a WDM network carrying lightpaths in a fixed or flexi grid of wavelengths. 
@@ -89,7 +88,7 @@ public class Online_evProc_wdm extends IEventProcessor
 	//private Map<Route,Pair<WDMUtils.RSA,WDMUtils.RSA>> wdmRouteOriginalRwa;
 	private Map<Pair<Node,Node>,List<List<Link>>> cplWdm;
 	private Map<Pair<Node,Node>,List<Pair<List<Link>,List<Link>>>> cplWdm11;
-	private DoubleMatrix2D wavelengthFiberOccupancy;
+	private WDMUtils.SpectrumOccupancy wavelengthFiberOccupancy;
 	private TransponderTypesInfo tpInfo;
 	private Map<Route,Integer> transponderTypeOfNewLps;
 
@@ -154,7 +153,7 @@ public class Online_evProc_wdm extends IEventProcessor
 		this.protectionTypeCode = wdmDefaultAndNewRouteRevoveryType.getString ().equals("1+1-srg-disjoint") ? 0 : wdmDefaultAndNewRouteRevoveryType.getString ().equals("1+1-node-disjoint")? 1 : 2;
 		this.cplWdm11 = isProtectionRecovery? new HashMap<> () : null; 
 		
-		this.wavelengthFiberOccupancy = WDMUtils.getNetworkSlotAndRegeneratorOcupancy(initialNetPlan, true , wdmLayer).getFirst();
+		this.wavelengthFiberOccupancy = WDMUtils.getNetworkSpectrumAndRegeneratorOccupancy(initialNetPlan, true , wdmLayer).getFirst();
 		if (DEBUG) { checkWaveOccupEqualsNp(initialNetPlan); checkClashing (initialNetPlan); } 
 		initialNetPlan.setLinkCapacityUnitsName("Frequency slots" , wdmLayer);
 
@@ -647,10 +646,10 @@ public class Online_evProc_wdm extends IEventProcessor
 	private static double getLengthInKm (List<Link> p) { double res = 0; for (Link e : p) res += e.getLengthInKm(); return res; }
 	private void checkWaveOccupEqualsNp (NetPlan currentNetPlan)
 	{
-		DoubleMatrix2D freqNow_se = WDMUtils.getNetworkSlotAndRegeneratorOcupancy(currentNetPlan, true , wdmLayer).getFirst();
-		if (!freqNow_se.equals(wavelengthFiberOccupancy))
+		WDMUtils.SpectrumOccupancy freqNow = WDMUtils.getOccupancyIndex(currentNetPlan, wdmLayer).getSpectrumOccupancy(true);
+		if (!freqNow.equals(wavelengthFiberOccupancy))
 		{
-			System.out.println(freqNow_se.assign(wavelengthFiberOccupancy , DoubleFunctions.minusMult(1.0)));
+			System.out.println(freqNow.toDoubleMatrix2D().assign(wavelengthFiberOccupancy.toDoubleMatrix2D() , DoubleFunctions.minusMult(1.0)));
 			throw new RuntimeException ();
 		} 
 
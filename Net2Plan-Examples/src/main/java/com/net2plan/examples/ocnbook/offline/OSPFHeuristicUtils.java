@@ -10,13 +10,11 @@ package com.net2plan.examples.ocnbook.offline;
 
 import cern.colt.matrix.tdouble.DoubleFactory1D;
 import cern.colt.matrix.tdouble.DoubleMatrix1D;
-import cern.colt.matrix.tdouble.DoubleMatrix2D;
 import com.net2plan.interfaces.networkDesign.Link;
 import com.net2plan.interfaces.networkDesign.Net2PlanException;
 import com.net2plan.interfaces.networkDesign.NetPlan;
 import com.net2plan.libraries.IPUtils;
 import com.net2plan.utils.Pair;
-import com.net2plan.utils.Quadruple;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -29,6 +27,7 @@ class OSPFHeuristicUtils
 	final int maxLinkWeight;
 	final double weightOfMaxUtilizationInObjectiveFunction;
 	final Random rng;
+	private IPUtils.IncrementalECMPCarriedTraffic ecmpEvaluator; // keeps the routing of the last evaluated solution, to only recompute the destinations affected by the changes
 	
 	OSPFHeuristicUtils (NetPlan netPlan , int maxLinkWeight , double weightOfMaxUtilizationInObjectiveFunction , Random rng)
 	{
@@ -151,8 +150,8 @@ class OSPFHeuristicUtils
 	
 	Pair<Double,DoubleMatrix1D> computeObjectiveFunction (DoubleMatrix1D sol)
 	{
-		Quadruple<DoubleMatrix2D, DoubleMatrix2D, DoubleMatrix1D, DoubleMatrix1D> q = IPUtils.computeCarriedTrafficFromIGPWeights(netPlan, sol);
-		DoubleMatrix1D y_e = q.getFourth();
+		if (ecmpEvaluator == null) ecmpEvaluator = new IPUtils.IncrementalECMPCarriedTraffic(netPlan, sol);
+		DoubleMatrix1D y_e = ecmpEvaluator.setLinkWeights(sol);
 		double congestion = 0;
 		double accumUtilization = 0;
 		for (Link e : netPlan.getLinks ())
@@ -13,14 +13,12 @@ package com.net2plan.examples.ocnbook.reports;
 
 import cern.colt.function.tdouble.DoubleDoubleFunction;
 import cern.colt.function.tdouble.DoubleFunction;
-import cern.colt.list.tdouble.DoubleArrayList;
-import cern.colt.list.tint.IntArrayList;
 import cern.colt.matrix.tdouble.DoubleFactory1D;
 import cern.colt.matrix.tdouble.DoubleMatrix1D;
-import cern.colt.matrix.tdouble.DoubleMatrix2D;
+import cern.jet.math.tdouble.DoubleFunctions;
 import com.net2plan.interfaces.networkDesign.*;
 import com.net2plan.interfaces.simulation.IEventProcessor;
-import com.net2plan.interfaces.simulation.SimEvent;
+import com.net2plan.libraries.FailureStateAnalysis;
 import com.net2plan.libraries.SRGUtils;
 import com.net2plan.utils.ClassLoaderUtils;
 import com.net2plan.utils.InputParameter;
@@ -31,6 +29,8 @@ import java.io.Closeable;
 import java.io.File;
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collector;
 
 /**
  * This report receives as an input a network design, the network recovery scheme algorithm, and the network risks (SRGs), and estimates the availability of the 
@@ -45,17 +45,17 @@ public class Report_availability implements IReport
 {
 	private InputParameter provisioningAlgorithm = new InputParameter ("provisioningAlgorithm" , "#eventProcessor#" , "Algorithm to process failure events");
 	private InputParameter analyzeDoubleFailures = new InputParameter ("analyzeDoubleFailures" , true , "Indicates whether double failures are studied");
+	private InputParameter minimumFailureStateProbability = new InputParameter ("minimumFailureStateProbability" , (double) 0 , "The failure states with a probability below this value are not studied (their probability is added to the estimation error)" , 0 , true , 1 , true);
 	private InputParameter defaultMTTFInHours = new InputParameter ("defaultMTTFInHours" , (double) 8748 , "Default value for Mean Time To Fail (hours)" , 0 , false , Double.MAX_VALUE , true);
 	private InputParameter defaultMTTRInHours = new InputParameter ("defaultMTTRInHours" , (double) 12 , "Default value for Mean Time To Repair (hours)" , 0 , false , Double.MAX_VALUE , true);
 	private InputParameter failureModel = new InputParameter ("failureModel" , "#select# perBidirectionalLinkBundle SRGfromNetPlan perNode perLink perDirectionalLinkBundle" , "Failure model selection: SRGfromNetPlan, perNode, perLink, perDirectionalLinkBundle, perBidirectionalLinkBundle");
 	private InputParameter considerTrafficInOversubscribedLinksAsLost = new InputParameter ("considerTrafficInOversubscribedLinksAsLost" , true , "If true, all the demands whose traffic (even only a fraction of it) traverses an oversubscribed link, are considered that all its treaffic is blocked, as they are supposed to fail to satisfy QoS agreements");
 	private InputParameter maximumE2ELatencyMs = new InputParameter ("maximumE2ELatencyMs", (double) -1 , "Maximum end-to-end latency of the traffic of any demand (a non-positive value means no limit). All the traffic of demands where a fraction of its traffic can exceed this value, are considered as lost, as they are supposed to fail to satisfy QoS agreements");
+	private InputParameter numberOfThreads = new InputParameter ("numberOfThreads", (int) 1 , "Number of threads where the failure states are evaluated in parallel, each one with its own instance of the provisioning algorithm (then, the algorithm instances must not share information, e.g. in static fields)" , 1 , Integer.MAX_VALUE);
 	
 	private ArrayList<DoubleMatrix1D> availabilityClassicNoFailure_ld, availabilityWeightedNoFailure_ld, availabilityClassicNoFailure_lmd, availabilityWeightedNoFailure_lmd;
 	private ArrayList<DoubleMatrix1D> availabilityClassicTotal_ld, availabilityWeightedTotal_ld, availabilityClassicTotal_lmd, availabilityWeightedTotal_lmd;
 	private double pi_excess;
-
-	private IEventProcessor algorithm;
 	
 	@Override
 	public String executeReport(NetPlan netPlan, Map<String, String> reportParameters, Map<String, String> net2planParameters)
@@ -99,16 +99,11 @@ public class Report_availability implements IReport
 		netPlan.setAllNodesFailureState(true);
 		for (NetworkLayer layer : netPlan.getNetworkLayers ())
 			netPlan.setAllLinksFailureState(true , layer);
-		DoubleMatrix1D A_f = netPlan.getVectorSRGAvailability();
-		List<SharedRiskGroup> srgs = netPlan.getSRGs();
-		DoubleMatrix2D F_s = SRGUtils.getMatrixFailureState2SRG(srgs, true, analyzeDoubleFailures.getBoolean());
-		
-		/* Compute state probabilities (pi_s) */
-		DoubleMatrix1D pi_s = SRGUtils.computeStateProbabilities(F_s , A_f);
-		final double sum_pi_s = pi_s.zSum();
-		
-		final double pi_s0 = pi_s.get(0); 
-		
+		/* Enumerate the failure states, except the no failure state which is evaluated apart, and compute state probabilities (pi_s) */
+		final SRGUtils.FailureStateEnumeration F_s = new SRGUtils.FailureStateEnumeration(netPlan.getSRGs(), false, analyzeDoubleFailures.getBoolean());
+		final double pi_s0 = F_s.getProbabilityNoFailureState();
+		final double sum_pi_s = pi_s0 + F_s.stream(minimumFailureStateProbability.getDouble(), false).mapToDouble(state -> state.getProbability()).sum();
+
 		pi_excess = 1 - sum_pi_s;
 
 		/* Initialize statistics variables */
@@ -186,78 +181,42 @@ public class Report_availability implements IReport
 
 		if (!netPlan.getLinksDownAllLayers().isEmpty() || !netPlan.getNodesDown().isEmpty()) throw new RuntimeException ("Bad");
 
-		NetPlan auxNetPlan = netPlan.copy ();
-		this.algorithm = ClassLoaderUtils.getInstance(new File(algorithmFile), algorithmName, IEventProcessor.class , null);
-		this.algorithm.initialize(auxNetPlan , algorithmParameters , reportParameters , net2planParameters);
-		Set<Link> initialLinksDownAllLayers = auxNetPlan.getLinksDownAllLayers();
-		Set<Node> initialNodesDown = auxNetPlan.getNodesDown();
-		Set<Link> linksAllLayers = new HashSet<Link> (); for (NetworkLayer layer : auxNetPlan.getNetworkLayers()) linksAllLayers.addAll (auxNetPlan.getLinks (layer));
-
-		for (int failureState = 1 ; failureState < F_s.rows () ; failureState ++) // first failure state (no failure) was already considered
+		/* Evaluate the failure states. Each replica of the design has its own instance of the algorithm */
+		final List<IEventProcessor> algorithmInstances = Collections.synchronizedList(new ArrayList<IEventProcessor> ());
+		final FailureStateAnalysis analysis = new FailureStateAnalysis(netPlan , () -> 
 		{
-			if (!auxNetPlan.getLinksDownAllLayers().equals (initialLinksDownAllLayers) || !auxNetPlan.getNodesDown().equals(initialNodesDown)) throw new RuntimeException ("Bad");
-
-			IntArrayList srgs_thisState = new IntArrayList (); F_s.viewRow (failureState).getNonZeros (srgs_thisState , new DoubleArrayList ());
-			final double pi_s_thisState = pi_s.get (failureState);
-
-			Set<Link> linksToSetAsDown = new HashSet<Link> ();
-			Set<Node> nodesToSetAsDown = new HashSet<Node> ();
-			for (SharedRiskGroup srg : auxNetPlan.getSRGs())
-			{
-				if (F_s.get(failureState , srg.getIndex ()) != 1) continue;
-				nodesToSetAsDown.addAll (srg.getNodes ());
-				linksToSetAsDown.addAll (srg.getLinksAllLayers ());
-			}
-
-			/* Make the algorithm process the event of nodes and links down */
-			SimEvent.NodesAndLinksChangeFailureState failureInfo = new SimEvent.NodesAndLinksChangeFailureState(null , nodesToSetAsDown , null , linksToSetAsDown);
-			try
-			{
-				/* Apply the reaction algorithm */
-				algorithm.processEvent(auxNetPlan, new SimEvent(0, SimEvent.DestinationModule.EVENT_PROCESSOR , -1 , failureInfo));
-			}
-			catch (Throwable e)
-			{
-				try { ((Closeable) algorithm.getClass().getClassLoader()).close();  }
-				catch (Throwable e1) { e.printStackTrace();}					
+			final IEventProcessor algorithm = ClassLoaderUtils.getInstance(new File(algorithmFile), algorithmName, IEventProcessor.class , null);
+			algorithmInstances.add(algorithm);
+			return algorithm;
+		} , algorithmParameters , reportParameters , net2planParameters);
+		final ForkJoinPool pool = numberOfThreads.getInt() == 1? null : new ForkJoinPool (numberOfThreads.getInt());
+		final AvailabilitySum availabilityFailureStates;
+		try
+		{
+			availabilityFailureStates = analysis.run(F_s.spliterator(minimumFailureStateProbability.getDouble()) , Collector.of(() -> new AvailabilitySum (netPlan) , 
+					(sum , result) -> sum.add (netPlan , result , F_s.getFailureState(result.getFailureStateIndex()).getProbability() , PRECISION_FACTOR_hd , PRECISION_FACTOR_blocking) , 
+					(sum1 , sum2) -> sum1.addAll (sum2)) , pool);
+		}
+		finally
+		{
+			if (pool != null) pool.shutdown();
 
-				throw (e);
-			}
-			
 			/* Only close the class loader if it is a different one than this class. If problems: just do not close the class loader, and wait for garbage collection*/
-			if (!this.getClass().getClassLoader().equals(algorithm.getClass().getClassLoader()))
-			{
-				try { ((Closeable) algorithm.getClass().getClassLoader()).close();	} catch (Throwable e1) { }					
-			}
-			
-			for(NetworkLayer layer : auxNetPlan.getNetworkLayers ())
+			synchronized (algorithmInstances)
 			{
-				final DoubleMatrix1D h_d = auxNetPlan.getVectorDemandOfferedTraffic(layer);
-				final DoubleMatrix1D blocked_d = auxNetPlan.getVectorDemandBlockedTraffic(layer);
-				if (considerTrafficInOversubscribedLinksAsLost.getBoolean()) for (Demand d : auxNetPlan.getDemands (layer)) if (d.isTraversingOversubscribedLinks()) blocked_d.set (d.getIndex () , d.getOfferedTraffic());
-
-				if (maximumE2ELatencyMs.getDouble () > 0) for (Demand d : auxNetPlan.getDemands (layer)) if (d.getWorstCasePropagationTimeInMs() > maximumE2ELatencyMs.getDouble ()) blocked_d.set (d.getIndex () , d.getOfferedTraffic());
-				final DoubleMatrix1D h_md = auxNetPlan.getVectorMulticastDemandOfferedTraffic(layer);
-				final DoubleMatrix1D blocked_md = auxNetPlan.getVectorMulticastDemandBlockedTraffic(layer);
-				if (considerTrafficInOversubscribedLinksAsLost.getBoolean()) for (MulticastDemand d : auxNetPlan.getMulticastDemands (layer)) if (d.isTraversingOversubscribedLinks()) blocked_md.set (d.getIndex () , d.getOfferedTraffic());
-
-				if (maximumE2ELatencyMs.getDouble () > 0) for (MulticastDemand d : auxNetPlan.getMulticastDemands(layer)) if (d.getWorseCasePropagationTimeInMs() > maximumE2ELatencyMs.getDouble ()) blocked_md.set (d.getIndex () , d.getOfferedTraffic());
-
-				final DoubleMatrix1D availabilityClassic_d = blocked_d.copy ().assign (new DoubleFunction () { public double apply (double x) { return x > PRECISION_FACTOR_blocking? 0 : 1;  }  } );
-				final DoubleMatrix1D availabilityWeighted_d = blocked_d.copy ().assign (h_d , new DoubleDoubleFunction () { public double apply (double x , double y) { return y < PRECISION_FACTOR_hd? 1 : 1 - x/y; }  } );
-				final DoubleMatrix1D availabilityClassic_md = blocked_md.copy ().assign (new DoubleFunction () { public double apply (double x) { return x > PRECISION_FACTOR_blocking? 0 : 1;  }  } );
-				final DoubleMatrix1D availabilityWeighted_md = blocked_md.copy ().assign (h_md , new DoubleDoubleFunction () { public double apply (double x , double y) { return y < PRECISION_FACTOR_hd? 1 : 1 - x/y; }  } );
-
-				availabilityClassicTotal_ld.get(layer.getIndex ()).assign (availabilityClassic_d , new DoubleDoubleFunction () { public double apply (double x , double y) { return x + pi_s_thisState * y; } } );
-				availabilityWeightedTotal_ld.get(layer.getIndex ()).assign (availabilityWeighted_d , new DoubleDoubleFunction () { public double apply (double x , double y) { return x + pi_s_thisState * y; } } );
-				availabilityClassicTotal_lmd.get(layer.getIndex ()).assign (availabilityClassic_md , new DoubleDoubleFunction () { public double apply (double x , double y) { return x + pi_s_thisState * y; } } );
-				availabilityWeightedTotal_lmd.get(layer.getIndex ()).assign (availabilityWeighted_md , new DoubleDoubleFunction () { public double apply (double x , double y) { return x + pi_s_thisState * y; } } );
-				
-//				System.out.println ("Failure " + failureState + ", availabilityClassicTotal_ld: " + availabilityClassicTotal_ld);
+				for (IEventProcessor algorithm : algorithmInstances)
+					if (!this.getClass().getClassLoader().equals(algorithm.getClass().getClassLoader()))
+					{
+						try { ((Closeable) algorithm.getClass().getClassLoader()).close();	} catch (Throwable e1) { }
+					}
 			}
-			
-			failureInfo = new SimEvent.NodesAndLinksChangeFailureState(auxNetPlan.getNodes() , null , linksAllLayers , null);
-			algorithm.processEvent(auxNetPlan, new SimEvent(0, SimEvent.DestinationModule.EVENT_PROCESSOR , -1 , failureInfo));
+		}
+		for (NetworkLayer layer : netPlan.getNetworkLayers ())
+		{
+			availabilityClassicTotal_ld.get(layer.getIndex ()).assign (availabilityFailureStates.classic_ld.get(layer.getIndex ()) , DoubleFunctions.plus);
+			availabilityWeightedTotal_ld.get(layer.getIndex ()).assign (availabilityFailureStates.weighted_ld.get(layer.getIndex ()) , DoubleFunctions.plus);
+			availabilityClassicTotal_lmd.get(layer.getIndex ()).assign (availabilityFailureStates.classic_lmd.get(layer.getIndex ()) , DoubleFunctions.plus);
+			availabilityWeightedTotal_lmd.get(layer.getIndex ()).assign (availabilityFailureStates.weighted_lmd.get(layer.getIndex ()) , DoubleFunctions.plus);
 		}
 
 		return printReport(netPlan , reportParameters);
@@ -406,4 +365,59 @@ public class Report_availability implements IReport
 
 	
 	
+	/* Availabilities of each unicast and multicast demand, summed over failure states weighted by their probability */
+	private class AvailabilitySum
+	{
+		private final List<DoubleMatrix1D> classic_ld, weighted_ld, classic_lmd, weighted_lmd;
+
+		private AvailabilitySum (NetPlan np)
+		{
+			this.classic_ld = new ArrayList<DoubleMatrix1D> ();
+			this.weighted_ld = new ArrayList<DoubleMatrix1D> ();
+			this.classic_lmd = new ArrayList<DoubleMatrix1D> ();
+			this.weighted_lmd = new ArrayList<DoubleMatrix1D> ();
+			for (NetworkLayer layer : np.getNetworkLayers ())
+			{
+				classic_ld.add (DoubleFactory1D.dense.make (np.getNumberOfDemands(layer)));
+				weighted_ld.add (DoubleFactory1D.dense.make (np.getNumberOfDemands(layer)));
+				classic_lmd.add (DoubleFactory1D.dense.make (np.getNumberOfMulticastDemands(layer)));
+				weighted_lmd.add (DoubleFactory1D.dense.make (np.getNumberOfMulticastDemands(layer)));
+			}
+		}
+
+		private void add (NetPlan np , FailureStateAnalysis.FailureStateResult result , double pi_s_thisState , double PRECISION_FACTOR_hd , double PRECISION_FACTOR_blocking)
+		{
+			for (NetworkLayer layer : np.getNetworkLayers ())
+			{
+				add (classic_ld.get(layer.getIndex ()) , weighted_ld.get(layer.getIndex ()) , np.getVectorDemandOfferedTraffic(layer) , result.getVectorDemandBlockedTraffic(layer) , 
+						result.getVectorDemandTraversingOversubscribedLinks(layer) , result.getVectorDemandWorstCasePropagationTimeInMs(layer) , pi_s_thisState , PRECISION_FACTOR_hd , PRECISION_FACTOR_blocking);
+				add (classic_lmd.get(layer.getIndex ()) , weighted_lmd.get(layer.getIndex ()) , np.getVectorMulticastDemandOfferedTraffic(layer) , result.getVectorMulticastDemandBlockedTraffic(layer) , 
+						result.getVectorMulticastDemandTraversingOversubscribedLinks(layer) , result.getVectorMulticastDemandWorstCasePropagationTimeInMs(layer) , pi_s_thisState , PRECISION_FACTOR_hd , PRECISION_FACTOR_blocking);
+			}
+		}
+
+		private void add (DoubleMatrix1D classic , DoubleMatrix1D weighted , DoubleMatrix1D h , DoubleMatrix1D blocked , DoubleMatrix1D traversingOversubscribedLinks , DoubleMatrix1D worstCasePropagationTimeInMs , double pi_s_thisState , double PRECISION_FACTOR_hd , double PRECISION_FACTOR_blocking)
+		{
+			for (int index = 0 ; index < h.size () ; index ++)
+			{
+				double blockedThisDemand = blocked.get (index);
+				if (considerTrafficInOversubscribedLinksAsLost.getBoolean() && traversingOversubscribedLinks.get (index) == 1) blockedThisDemand = h.get (index);
+				if (maximumE2ELatencyMs.getDouble () > 0 && worstCasePropagationTimeInMs.get (index) > maximumE2ELatencyMs.getDouble ()) blockedThisDemand = h.get (index);
+				classic.set (index , classic.get (index) + pi_s_thisState * (blockedThisDemand > PRECISION_FACTOR_blocking? 0 : 1));
+				weighted.set (index , weighted.get (index) + pi_s_thisState * (h.get (index) < PRECISION_FACTOR_hd? 1 : 1 - blockedThisDemand / h.get (index)));
+			}
+		}
+
+		private AvailabilitySum addAll (AvailabilitySum other)
+		{
+			for (int indexLayer = 0 ; indexLayer < classic_ld.size () ; indexLayer ++)
+			{
+				classic_ld.get(indexLayer).assign (other.classic_ld.get(indexLayer) , DoubleFunctions.plus);
+				weighted_ld.get(indexLayer).assign (other.weighted_ld.get(indexLayer) , DoubleFunctions.plus);
+				classic_lmd.get(indexLayer).assign (other.classic_lmd.get(indexLayer) , DoubleFunctions.plus);
+				weighted_lmd.get(indexLayer).assign (other.weighted_lmd.get(indexLayer) , DoubleFunctions.plus);
+			}
+			return this;
+		}
+	}
 }
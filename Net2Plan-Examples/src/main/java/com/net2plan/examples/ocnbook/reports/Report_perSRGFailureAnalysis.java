@@ -16,9 +16,10 @@
 
 package com.net2plan.examples.ocnbook.reports;
 
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
 import com.net2plan.interfaces.networkDesign.*;
 import com.net2plan.interfaces.simulation.IEventProcessor;
-import com.net2plan.interfaces.simulation.SimEvent;
+import com.net2plan.libraries.FailureStateAnalysis;
 import com.net2plan.libraries.SRGUtils;
 import com.net2plan.utils.ClassLoaderUtils;
 import com.net2plan.utils.InputParameter;
@@ -28,6 +29,8 @@ import com.net2plan.utils.Triple;
 import java.io.File;
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 /**
  * This report receives as an input a network design, the network recovery scheme algorithm, and a set of network risks (SRGs), and computes 
@@ -44,9 +47,9 @@ public class Report_perSRGFailureAnalysis implements IReport
 	private InputParameter considerTrafficInOversubscribedLinksAsLost = new InputParameter ("considerTrafficInOversubscribedLinksAsLost" , true , "If true, all the demands whose traffic (even only a fraction of it) traverses an oversubscribed link, are considered that all its treaffic is blocked, as they are supposed to fail to satisfy QoS agreements");
 	private InputParameter maximumE2ELatencyMs = new InputParameter ("maximumE2ELatencyMs", (double) -1 , "Maximum end-to-end latency of the traffic of any demand (a non-positive value means no limit). All the traffic of demands where a fraction of its traffic can exceed this value, are considered as lost, as they are supposed to fail to satisfy QoS agreements");
 	private InputParameter failureModel = new InputParameter ("failureModel" , "#select# perBidirectionalLinkBundle SRGfromNetPlan perNode perLink perDirectionalLinkBundle" , "Failure model selection: SRGfromNetPlan, perNode, perLink, perDirectionalLinkBundle, perBidirectionalLinkBundle");
+	private InputParameter numberOfThreads = new InputParameter ("numberOfThreads", (int) 1 , "Number of threads where the failure states are evaluated in parallel, each one with its own instance of the provisioning algorithm (then, the algorithm instances must not share information, e.g. in static fields)" , 1 , Integer.MAX_VALUE);
 	private InputParameter rootNameOfOutFiles = new InputParameter ("rootNameOfOutFiles" , "./reportPerSRGFailure" , "For each single-SRG failure state and for the no-failure state, a n2p file is produced with the result of the network in that state. The file is named XXX_srgIndex.n2p, and XXX_noFailure.n2p, where XXX is this parameter");
 
-	private IEventProcessor algorithm;
 	private double PRECISION_FACTOR;
 	
 	@Override
@@ -95,40 +98,21 @@ public class Report_perSRGFailureAnalysis implements IReport
 		NetPlan npNoFailure = netPlan.copy ();
 		npNoFailure.saveToFile(new File (rootNameOfOutFiles.getString () + "_noFailure"));
 
-		/* Initialize the provisioning algorithm */
-		NetPlan npForProducingAllFailures = netPlan.copy ();
-		Set<Link> npForProducingAllFailures_linksAllLayers = new HashSet<Link> (); for (NetworkLayer layer : npForProducingAllFailures.getNetworkLayers()) npForProducingAllFailures_linksAllLayers.addAll (npForProducingAllFailures.getLinks (layer));
-
-		this.algorithm = ClassLoaderUtils.getInstance(new File(algorithmFile), algorithmName, IEventProcessor.class , null);
-		this.algorithm.initialize(npForProducingAllFailures , algorithmParameters , reportParameters , net2planParameters);
-
-		/* Compute the other network states */
-		List<NetPlan> npsFailureStates = new ArrayList<NetPlan> (netPlan.getNumberOfSRGs());
-		for (int srgIndex = 0 ; srgIndex < netPlan.getNumberOfSRGs() ; srgIndex ++)
+		/* Compute the other network states (one per SRG failing), saving the design in each of them */
+		final FailureStateAnalysis analysis = new FailureStateAnalysis(netPlan , () -> ClassLoaderUtils.getInstance(new File(algorithmFile), algorithmName, IEventProcessor.class , null) , algorithmParameters , reportParameters , net2planParameters);
+		analysis.setFailureStateListener((srgIndex , npThisState) -> npThisState.saveToFile(new File (rootNameOfOutFiles.getString () + "_srgIndex_" + srgIndex)));
+		final ForkJoinPool pool = numberOfThreads.getInt() == 1? null : new ForkJoinPool (numberOfThreads.getInt());
+		final List<FailureStateAnalysis.FailureStateResult> resultsFailureStates;
+		try
 		{
-			if (!npForProducingAllFailures.getLinksDownAllLayers().isEmpty() || !npForProducingAllFailures.getNodesDown().isEmpty()) throw new RuntimeException ("Bad");
-
-			/* Fail this SRG */
-			final SharedRiskGroup srg = npForProducingAllFailures.getSRG(srgIndex);
-			Set<Link> linksToSetAsDown = new HashSet<Link> ();
-			Set<Node> nodesToSetAsDown = new HashSet<Node> ();
-			nodesToSetAsDown.addAll (srg.getNodes ());
-			linksToSetAsDown.addAll (srg.getLinksAllLayers ());
-			
-			/* Make the algorithm process the event of nodes and links down */
-			SimEvent.NodesAndLinksChangeFailureState failureInfo = new SimEvent.NodesAndLinksChangeFailureState(null , nodesToSetAsDown , null , linksToSetAsDown);
-			algorithm.processEvent(npForProducingAllFailures, new SimEvent(0, SimEvent.DestinationModule.EVENT_PROCESSOR , -1 , failureInfo)); 
-		
-			/* Save a coy of the new state */
-			npForProducingAllFailures.saveToFile(new File (rootNameOfOutFiles.getString () + "_srgIndex_" + srgIndex));
-			npsFailureStates.add (npForProducingAllFailures.copy ());
-			
-			/* Go back to the no failure state */
-			SimEvent.NodesAndLinksChangeFailureState repairInfo = new SimEvent.NodesAndLinksChangeFailureState(npForProducingAllFailures.getNodes() , null , npForProducingAllFailures_linksAllLayers , null);
-			algorithm.processEvent(npForProducingAllFailures, new SimEvent(0, SimEvent.DestinationModule.EVENT_PROCESSOR , -1 , repairInfo));
+			resultsFailureStates = analysis.run(SRGUtils.enumerateFailureStates(netPlan.getSRGs() , false , false) , Collectors.toList() , pool);
+		}
+		finally
+		{
+			if (pool != null) pool.shutdown();
 		}
 		
-		return printReport(npNoFailure , npsFailureStates , reportParameters);
+		return printReport(npNoFailure , resultsFailureStates , reportParameters);
 	}
 	
 	@Override
@@ -151,8 +135,9 @@ public class Report_perSRGFailureAnalysis implements IReport
 		return "Single-SRG failure analysis report";
 	}
 	
-	private String printReport(NetPlan npNoFailure , List<NetPlan> npFailureStates , Map<String,String> reportParameters)
+	private String printReport(NetPlan npNoFailure , List<FailureStateAnalysis.FailureStateResult> resultsFailureStates , Map<String,String> reportParameters)
 	{
+		final FailureStateAnalysis.FailureStateResult resultNoFailure = FailureStateAnalysis.evaluateCurrentState(npNoFailure);
 		StringBuilder out = new StringBuilder();
 		DecimalFormat df_6 = new DecimalFormat("#.######");
 		out.append("<html><body>");
@@ -192,9 +177,9 @@ public class Report_perSRGFailureAnalysis implements IReport
 				out.append("<h3>Unicast traffic</h3>");
 				out.append("<table border='1'>");
 				out.append("<tr><th><b>SRG Index failed</b></th><th><b>Offered traffic</b></th><th><b>Blocked traffic (%)</b></th><th><b>Offered traffic traversing oversubscribed links (%)</b></th><th><b>Offered traffic of demands with excessive latency (%)</b></th><b>Total blocked traffic [out of contract] (%)</b></th><th><b>% of demands fully ok</b></th></tr>");
-				printReport (npNoFailure , noFailureLayer , out , "No failure" , true);
+				printReport (npNoFailure , noFailureLayer , resultNoFailure , out , "No failure" , true);
 				for (int srgIndex = 0 ; srgIndex < npNoFailure.getNumberOfSRGs() ; srgIndex ++)
-					printReport (npFailureStates.get(srgIndex) , npFailureStates.get(srgIndex).getNetworkLayer (layerIndex) , out , "" + srgIndex , true);
+					printReport (npNoFailure , noFailureLayer , resultsFailureStates.get(srgIndex) , out , "" + srgIndex , true);
 				out.append("</table>");
 			}
 
@@ -203,9 +188,9 @@ public class Report_perSRGFailureAnalysis implements IReport
 				out.append("<h3>Multicast traffic</h3>");
 				out.append("<table border='1'>");
 				out.append("<tr><th><b>SRG Index failed</b></th><th><b>Offered traffic</b></th><th><b>Blocked traffic (%)</b></th><th><b>Offered traffic traversing oversubscribed links (%)</b></th><th><b>Offered traffic of demands with excessive latency (%)</b></th><b>Total blocked traffic [out of contract] (%)</b></th><th><b>% of demands fully ok</b></th></tr>");
-				printReport (npNoFailure , noFailureLayer , out , "No failure" , false);
+				printReport (npNoFailure , noFailureLayer , resultNoFailure , out , "No failure" , false);
 				for (int srgIndex = 0 ; srgIndex < npNoFailure.getNumberOfSRGs() ; srgIndex ++)
-					printReport (npFailureStates.get(srgIndex) , npFailureStates.get(srgIndex).getNetworkLayer (layerIndex) , out , "" + srgIndex , false);
+					printReport (npNoFailure , noFailureLayer , resultsFailureStates.get(srgIndex) , out , "" + srgIndex , false);
 				out.append("</table>");
 			}
 		}
@@ -213,54 +198,36 @@ public class Report_perSRGFailureAnalysis implements IReport
 		return out.toString();
 	}
 
-	private void printReport (NetPlan np , NetworkLayer layer , StringBuilder out , String rowTitle , boolean unicastDemands)
+	private void printReport (NetPlan np , NetworkLayer layer , FailureStateAnalysis.FailureStateResult result , StringBuilder out , String rowTitle , boolean unicastDemands)
 	{
+		final DoubleMatrix1D h_d = unicastDemands? np.getVectorDemandOfferedTraffic(layer) : np.getVectorMulticastDemandOfferedTraffic(layer);
+		final DoubleMatrix1D blocked_d = unicastDemands? result.getVectorDemandBlockedTraffic(layer) : result.getVectorMulticastDemandBlockedTraffic(layer);
+		final DoubleMatrix1D traversingOversubscribedLinks_d = unicastDemands? result.getVectorDemandTraversingOversubscribedLinks(layer) : result.getVectorMulticastDemandTraversingOversubscribedLinks(layer);
+		final DoubleMatrix1D worstCasePropagationTimeInMs_d = unicastDemands? result.getVectorDemandWorstCasePropagationTimeInMs(layer) : result.getVectorMulticastDemandWorstCasePropagationTimeInMs(layer);
 		double totalOfferedTraffic = 0;
 		double totalBlockedTraffic = 0; 
 		double totalTrafficOfDemandsTraversingOversubscribedLinks = 0;
 		double totalTrafficOfDemandsWithExcessiveWorseCaseLatency = 0;
 		double totalBlockedConsideringUserDefinedExtraLimitations = 0; 
 		int numberOfDemandsWithoutBlocking = 0;
-		if (unicastDemands)
-		{
-			for (Demand d : np.getDemands (layer))
-			{
-				totalOfferedTraffic += d.getOfferedTraffic();
-				totalBlockedTraffic += d.getBlockedTraffic();
-				final boolean travOversuscribedLink = d.isTraversingOversubscribedLinks();
-				final boolean hasExcessiveLatency = (maximumE2ELatencyMs.getDouble() > 0) && (d.getWorstCasePropagationTimeInMs() > maximumE2ELatencyMs.getDouble());
-				if (considerTrafficInOversubscribedLinksAsLost.getBoolean())
-					totalTrafficOfDemandsTraversingOversubscribedLinks += travOversuscribedLink? d.getOfferedTraffic() : 0;
-				if (hasExcessiveLatency) 
-					totalTrafficOfDemandsWithExcessiveWorseCaseLatency += d.getOfferedTraffic();
-				if (hasExcessiveLatency || (considerTrafficInOversubscribedLinksAsLost.getBoolean() && travOversuscribedLink)) 
-					totalBlockedConsideringUserDefinedExtraLimitations += d.getOfferedTraffic();
-				else
-				{
-					totalBlockedConsideringUserDefinedExtraLimitations += d.getBlockedTraffic();
-					if (d.getBlockedTraffic() < PRECISION_FACTOR) numberOfDemandsWithoutBlocking ++;
-				}
-			}
-		}
-		else
+		for (int index = 0 ; index < h_d.size () ; index ++)
 		{
-			for (MulticastDemand d : np.getMulticastDemands (layer))
+			final double offeredTraffic = h_d.get (index);
+			final double blockedTraffic = blocked_d.get (index);
+			totalOfferedTraffic += offeredTraffic;
+			totalBlockedTraffic += blockedTraffic;
+			final boolean travOversuscribedLink = traversingOversubscribedLinks_d.get (index) == 1;
+			final boolean hasExcessiveLatency = (maximumE2ELatencyMs.getDouble() > 0) && (worstCasePropagationTimeInMs_d.get (index) > maximumE2ELatencyMs.getDouble());
+			if (considerTrafficInOversubscribedLinksAsLost.getBoolean())
+				totalTrafficOfDemandsTraversingOversubscribedLinks += travOversuscribedLink? offeredTraffic : 0;
+			if (hasExcessiveLatency) 
+				totalTrafficOfDemandsWithExcessiveWorseCaseLatency += offeredTraffic;
+			if (hasExcessiveLatency || (considerTrafficInOversubscribedLinksAsLost.getBoolean() && travOversuscribedLink)) 
+				totalBlockedConsideringUserDefinedExtraLimitations += offeredTraffic;
+			else
 			{
-				totalOfferedTraffic += d.getOfferedTraffic();
-				totalBlockedTraffic += d.getBlockedTraffic();
-				final boolean travOversuscribedLink = d.isTraversingOversubscribedLinks();
-				final boolean hasExcessiveLatency = (maximumE2ELatencyMs.getDouble() > 0) && (d.getWorseCasePropagationTimeInMs() > maximumE2ELatencyMs.getDouble());
-				if (considerTrafficInOversubscribedLinksAsLost.getBoolean())
-					totalTrafficOfDemandsTraversingOversubscribedLinks += travOversuscribedLink? d.getOfferedTraffic() : 0;
-				if (hasExcessiveLatency) 
-					totalTrafficOfDemandsWithExcessiveWorseCaseLatency += d.getOfferedTraffic();
-				if (hasExcessiveLatency || (considerTrafficInOversubscribedLinksAsLost.getBoolean() && travOversuscribedLink)) 
-					totalBlockedConsideringUserDefinedExtraLimitations += d.getOfferedTraffic();
-				else
-				{
-					totalBlockedConsideringUserDefinedExtraLimitations += d.getBlockedTraffic();
-					if (d.getBlockedTraffic() < PRECISION_FACTOR) numberOfDemandsWithoutBlocking ++;
-				}
+				totalBlockedConsideringUserDefinedExtraLimitations += blockedTraffic;
+				if (blockedTraffic < PRECISION_FACTOR) numberOfDemandsWithoutBlocking ++;
 			}
 		}
 
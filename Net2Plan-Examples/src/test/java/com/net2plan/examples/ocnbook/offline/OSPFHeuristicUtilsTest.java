@@ -0,0 +1,77 @@
+package com.net2plan.examples.ocnbook.offline;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import com.net2plan.interfaces.networkDesign.Link;
+import com.net2plan.interfaces.networkDesign.NetPlan;
+import com.net2plan.libraries.IPUtils;
+import com.net2plan.utils.Pair;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class OSPFHeuristicUtilsTest
+{
+	private NetPlan np;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		this.np = new NetPlan(new File("src/test/resources/data/networkTopologies/abilene_N12_E30_withTraffic.n2p"));
+	}
+
+	@Test
+	public void testObjectiveFunctionMatchesFullRecomputation()
+	{
+		final int maxLinkWeight = 6;
+		final OSPFHeuristicUtils ospfEngine = new OSPFHeuristicUtils(np, maxLinkWeight, 0.5, new Random(1L));
+		final DoubleMatrix1D sol = ospfEngine.getInitialSolution("random").getFirst();
+		checkObjectiveFunction(ospfEngine, sol, ospfEngine.computeObjectiveFunction(sol));
+
+		/* The neighbor evaluations reuse the routing of the previously evaluated solution */
+		final Random rng = new Random(2L);
+		for (int it = 0; it < 300; it++)
+		{
+			final Link e = np.getLink(rng.nextInt(np.getNumberOfLinks()));
+			final int newWeight = 1 + rng.nextInt(maxLinkWeight);
+			final boolean keepInitialSolutionUnchanged = rng.nextBoolean();
+			final DoubleMatrix1D neighborSol = sol.copy();
+			neighborSol.set(e.getIndex(), newWeight);
+			final Pair<Double, DoubleMatrix1D> eval = ospfEngine.computeObjectiveFunctionOfNeighborSolution(sol, null, e, newWeight, keepInitialSolutionUnchanged);
+			checkObjectiveFunction(ospfEngine, neighborSol, eval);
+			if (!keepInitialSolutionUnchanged) assertEquals(neighborSol, sol);
+		}
+
+		/* The local search ends in a solution whose stored objective function is the one of the solution */
+		final double objFunc = ospfEngine.localSearch(sol, ospfEngine.computeObjectiveFunction(sol).getFirst(), 1, false).getFirst();
+		assertEquals(computeObjectiveFunctionFromScratch(ospfEngine, sol), objFunc, 1e-6);
+	}
+
+	private void checkObjectiveFunction(OSPFHeuristicUtils ospfEngine, DoubleMatrix1D sol, Pair<Double, DoubleMatrix1D> eval)
+	{
+		final DoubleMatrix1D y_e = IPUtils.computeCarriedTrafficFromIGPWeights(np, sol).getFourth();
+		for (Link e : np.getLinks())
+			assertEquals(y_e.get(e.getIndex()), eval.getSecond().get(e.getIndex()), 1e-6);
+		assertEquals(computeObjectiveFunctionFromScratch(ospfEngine, sol), eval.getFirst(), 1e-6);
+	}
+
+	/* The objective function as computed before the routing was kept between evaluations */
+	private double computeObjectiveFunctionFromScratch(OSPFHeuristicUtils ospfEngine, DoubleMatrix1D sol)
+	{
+		final DoubleMatrix1D y_e = IPUtils.computeCarriedTrafficFromIGPWeights(np, sol).getFourth();
+		double congestion = 0;
+		double accumUtilization = 0;
+		for (Link e : np.getLinks())
+		{
+			final double linkTraf = y_e.get(e.getIndex());
+			final double u_e = e.getCapacity();
+			final double utilization = (linkTraf == 0) ? 0 : (u_e == 0) ? Double.MAX_VALUE : linkTraf / u_e;
+			accumUtilization += utilization;
+			congestion = Math.max(congestion, utilization);
+		}
+		return ospfEngine.weightOfMaxUtilizationInObjectiveFunction * congestion + (1 - ospfEngine.weightOfMaxUtilizationInObjectiveFunction) * accumUtilization / np.getNumberOfLinks();
+	}
+}
@@ -13,11 +13,15 @@
 package com.net2plan.gui.utils;
 
 import javax.swing.table.DefaultTableModel;
+import java.util.Vector;
+import java.util.function.Supplier;
 
 /**
  * <p>This class extends {@code DefaultTableModel} so that computes the
  * classes of its columns from the values that they contain.</p>
  * <p>Credits to Simon White for his <a href='http://www.catalysoft.com/articles/ClassAwareTableModel.html'>A TableModel with Class</a></p>
+ * <p>Cells can be filled with a {@link LazyValue}, so their value is only computed the first time it is read (e.g. when the cell is
+ * painted in the visible part of the table, or its column is sorted), and then kept in the model.</p>
  *
  * @author Pablo Pavon-Marino, Jose-Luis Izquierdo-Zaragoza
  * @since 0.2.0
@@ -43,6 +47,36 @@ public class ClassAwareTableModel extends DefaultTableModel {
         super(data, columnNames);
     }
 
+    /**
+     * Cell value computed the first time it is read from the model.
+     *
+     * @since 0.5.1
+     */
+    public static final class LazyValue {
+        private final Supplier<?> supplier;
+
+        /**
+         * Default constructor.
+         *
+         * @param supplier Computes the cell value
+         * @since 0.5.1
+         */
+        public LazyValue(Supplier<?> supplier) {
+            this.supplier = supplier;
+        }
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Object value = super.getValueAt(row, column);
+        if (!(value instanceof LazyValue)) return value;
+
+        /* The value is replaced in the data vector directly, since reading a cell must not fire any table event */
+        value = ((LazyValue) value).supplier.get();
+        ((Vector) dataVector.elementAt(row)).setElementAt(value, column);
+        return value;
+    }
+
     @Override
     public Class getColumnClass(int col) {
         if (getRowCount() == 0) return Object.class;
@@ -27,6 +27,7 @@ import com.net2plan.gui.plugins.networkDesign.viewEditTopolTables.tableVisualiza
 import com.net2plan.gui.plugins.networkDesign.viewEditTopolTables.tableVisualizationFilters.TBFToFromCarriedTraffic;
 import com.net2plan.gui.plugins.networkDesign.visualizationControl.VisualizationState;
 import com.net2plan.gui.utils.AdvancedJTable;
+import com.net2plan.gui.utils.ClassAwareTableModel;
 import com.net2plan.gui.utils.ColumnHeaderToolTips;
 import com.net2plan.gui.utils.FixedColumnDecorator;
 import com.net2plan.interfaces.networkDesign.*;
@@ -49,6 +50,7 @@ import java.awt.event.*;
 import java.io.File;
 import java.util.*;
 import java.util.List;
+import java.util.function.Supplier;
 
 import static com.net2plan.gui.plugins.networkDesign.ElementSelection.SelectionType;
 import static com.net2plan.gui.plugins.networkDesign.ElementSelection.getElementType;
@@ -1536,6 +1538,19 @@ public abstract class AdvancedJTable_networkElement extends AdvancedJTable
         }
     }
 
+    /**
+     * Returns a cell value that is computed only when the cell is read from the table model (e.g. when it is painted in the visible part of the
+     * table, or its column is sorted), and then kept until the next update of the table. If the element was removed meanwhile, the cell is empty.
+     *
+     * @param element Element of the row
+     * @param valueSupplier Computes the cell value
+     * @return see above
+     */
+    protected static ClassAwareTableModel.LazyValue lazyCellValue(NetworkElement element, Supplier<?> valueSupplier)
+    {
+        return new ClassAwareTableModel.LazyValue(() -> element.wasRemoved() ? null : valueSupplier.get());
+    }
+
     public static class LastRowAggregatedValue
     {
         private String value;
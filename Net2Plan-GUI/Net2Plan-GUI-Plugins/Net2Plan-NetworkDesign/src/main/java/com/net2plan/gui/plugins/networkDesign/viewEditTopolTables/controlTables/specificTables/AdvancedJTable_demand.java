@@ -163,8 +163,8 @@ public class AdvancedJTable_demand extends AdvancedJTable_networkElement
             demandData[COLUMN_NUMROUTES] = routes_thisDemand.isEmpty() ? "none" : routes_thisDemand.size() + " (" + routes_thisDemand.stream().filter(e -> e.isBackupRoute()).count() + ")";
             demandData[COLUMN_MAXE2ELATENCY] = demand.getWorstCasePropagationTimeInMs();
             accum_worstCasePropDelayMs = Math.max(accum_worstCasePropDelayMs, demand.getWorstCasePropagationTimeInMs());
-            demandData[COLUMN_TAGS] = StringUtils.listToString(Lists.newArrayList(demand.getTags()));
-            demandData[COLUMN_ATTRIBUTES] = StringUtils.mapToString(demand.getAttributes());
+            demandData[COLUMN_TAGS] = lazyCellValue(demand, () -> StringUtils.listToString(Lists.newArrayList(demand.getTags())));
+            demandData[COLUMN_ATTRIBUTES] = lazyCellValue(demand, () -> StringUtils.mapToString(demand.getAttributes()));
             for (int i = netPlanViewTableHeader.length; i < netPlanViewTableHeader.length + attributesColumns.size(); i++)
             {
                 if (demand.getAttributes().containsKey(attributesColumns.get(i - netPlanViewTableHeader.length)))
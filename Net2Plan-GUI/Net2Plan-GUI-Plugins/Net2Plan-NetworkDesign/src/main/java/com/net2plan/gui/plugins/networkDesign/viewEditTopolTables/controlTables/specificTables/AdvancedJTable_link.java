@@ -12,8 +12,6 @@
 
 package com.net2plan.gui.plugins.networkDesign.viewEditTopolTables.controlTables.specificTables;
 
-import cern.colt.matrix.tdouble.DoubleFactory1D;
-import cern.colt.matrix.tdouble.DoubleMatrix1D;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.net2plan.gui.plugins.GUINetworkDesign;
@@ -106,22 +104,6 @@ public class AdvancedJTable_link extends AdvancedJTable_networkElement
         List<Object[]> allLinkData = new LinkedList<Object[]>();
         for (Link link : rowVisibleLinks)
         {
-            Set<SharedRiskGroup> srgIds_thisLink = link.getSRGs();
-            Set<Route> traversingRoutes = isSourceRouting ? link.getTraversingRoutes() : new LinkedHashSet<Route>();
-            Set<Route> traversingBURoutes = isSourceRouting ? link.getTraversingBackupRoutes() : new LinkedHashSet<Route>();
-            Set<MulticastTree> traversingMulticastTrees = link.getTraversingTrees();
-            DoubleMatrix1D forwardingRules = !isSourceRouting ? currentState.getMatrixDemandBasedForwardingRules().viewColumn(link.getIndex()).copy() : DoubleFactory1D.sparse.make(currentState.getNumberOfDemands(), 0);
-            int numRoutes = traversingRoutes.size();
-            int numSegments = traversingBURoutes.size();
-            int numForwardingRules = 0;
-            for (int d = 0; d < forwardingRules.size(); d++) if (forwardingRules.get(d) != 0) numForwardingRules++;
-            int numMulticastTrees = traversingMulticastTrees.size();
-
-            String routesString = numRoutes + (numRoutes > 0 ? " (" + CollectionUtils.join(NetPlan.getIndexes(traversingRoutes), ", ") + ")" : "");
-            String segmentsString = numSegments + (numSegments > 0 ? " (" + CollectionUtils.join(NetPlan.getIndexes(traversingBURoutes), ", ") + ")" : "");
-            String multicastTreesString = numMulticastTrees + (numMulticastTrees > 0 ? " (" + CollectionUtils.join(NetPlan.getIndexes(traversingMulticastTrees), ", ") + ")" : "");
-            StringBuilder forwardingRulesString = new StringBuilder(Integer.toString(numForwardingRules));
-
             Demand coupledDemand = link.getCoupledDemand();
             MulticastDemand coupledMulticastDemand = link.getCoupledMulticastDemand();
 
@@ -146,14 +128,15 @@ public class AdvancedJTable_link extends AdvancedJTable_networkElement
             linkData[COLUMN_LENGTH] = link.getLengthInKm();
             linkData[COLUMN_PROPSPEED] = link.getPropagationSpeedInKmPerSecond();
             linkData[COLUMN_PROPDELAYMS] = link.getPropagationDelayInMs();
-            linkData[COLUMN_NUMROUTES] = routesString;
-            linkData[COLUMN_NUMSEGMENTS] = segmentsString;
-            linkData[COLUMN_NUMFORWRULES] = forwardingRulesString.toString();
-            linkData[COLUMN_NUMTREES] = multicastTreesString.toString();
-            linkData[COLUMN_SRGS] = srgIds_thisLink.isEmpty() ? "none" : srgIds_thisLink.size() + " (" + CollectionUtils.join(NetPlan.getIndexes(srgIds_thisLink), ", ") + ")";
+            /* The columns listing the indexes of other elements are only computed for the rows shown */
+            linkData[COLUMN_NUMROUTES] = isSourceRouting ? lazyCellValue(link, () -> joinIndexes(link.getTraversingRoutes())) : "0";
+            linkData[COLUMN_NUMSEGMENTS] = isSourceRouting ? lazyCellValue(link, () -> joinIndexes(link.getTraversingBackupRoutes())) : "0";
+            linkData[COLUMN_NUMFORWRULES] = isSourceRouting ? "0" : Integer.toString(link.getNumberOfForwardingRules());
+            linkData[COLUMN_NUMTREES] = lazyCellValue(link, () -> joinIndexes(link.getTraversingTrees()));
+            linkData[COLUMN_SRGS] = lazyCellValue(link, () -> link.getSRGs().isEmpty() ? "none" : joinIndexes(link.getSRGs()));
             linkData[COLUMN_COUPLEDTODEMAND] = coupledDemand != null ? "d" + coupledDemand.getIndex() + " (layer " + coupledDemand.getLayer() + ")" : (coupledMulticastDemand == null ? "" : "d" + coupledMulticastDemand.getIndex() + " (layer " + coupledMulticastDemand.getLayer() + ")");
-            linkData[COLUMN_TAGS] = StringUtils.listToString(Lists.newArrayList(link.getTags()));
-            linkData[COLUMN_ATTRIBUTES] = StringUtils.mapToString(link.getAttributes());
+            linkData[COLUMN_TAGS] = lazyCellValue(link, () -> StringUtils.listToString(Lists.newArrayList(link.getTags())));
+            linkData[COLUMN_ATTRIBUTES] = lazyCellValue(link, () -> StringUtils.mapToString(link.getAttributes()));
 
             for (int i = netPlanViewTableHeader.length; i < netPlanViewTableHeader.length + attributesColumns.size(); i++)
             {
@@ -194,6 +177,11 @@ public class AdvancedJTable_link extends AdvancedJTable_networkElement
         return allLinkData;
     }
 
+    private static String joinIndexes(Collection<? extends NetworkElement> elements)
+    {
+        return elements.size() + (elements.isEmpty() ? "" : " (" + CollectionUtils.join(NetPlan.getIndexes(elements), ", ") + ")");
+    }
+
     public String getTabName()
     {
         return netPlanViewTabName;
@@ -88,7 +88,6 @@ public class AdvancedJTable_multicastDemand extends AdvancedJTable_networkElemen
         final List<MulticastDemand> rowVisibleDemands = getVisibleElementsInTable();
         for (MulticastDemand demand : rowVisibleDemands)
         {
-            Set<MulticastTree> multicastTreeIds_thisDemand = demand.getMulticastTrees();
             Set<Link> coupledLinks = demand.getCoupledLinks();
             Node ingressNode = demand.getIngressNode();
             Set<Node> egressNodes = demand.getEgressNodes();
@@ -109,10 +108,10 @@ public class AdvancedJTable_multicastDemand extends AdvancedJTable_networkElemen
             demandData[COLUMN_LOSTTRAFFIC] = h_d == 0 ? 0 : 100 * lostTraffic_d / h_d;
             demandData[COLUMN_ROUTINGCYCLES] = "Loopless by definition";
             demandData[COLUMN_BIFURCATED] = demand.isBifurcated() ? String.format("Yes (%d)", demand.getMulticastTrees().size()) : "No";
-            demandData[COLUMN_NUMTREES] = multicastTreeIds_thisDemand.isEmpty() ? "none" : multicastTreeIds_thisDemand.size() + " (" + CollectionUtils.join(NetPlan.getIndexes(multicastTreeIds_thisDemand), ",") + ")";
+            demandData[COLUMN_NUMTREES] = lazyCellValue(demand, () -> demand.getMulticastTrees().isEmpty() ? "none" : demand.getMulticastTrees().size() + " (" + CollectionUtils.join(NetPlan.getIndexes(demand.getMulticastTrees()), ",") + ")");
             demandData[COLUMN_MAXE2ELATENCY] = demand.getWorseCasePropagationTimeInMs();
-            demandData[COLUMN_TAGS] = StringUtils.listToString(Lists.newArrayList(demand.getTags()));
-            demandData[COLUMN_ATTRIBUTES] = StringUtils.mapToString(demand.getAttributes());
+            demandData[COLUMN_TAGS] = lazyCellValue(demand, () -> StringUtils.listToString(Lists.newArrayList(demand.getTags())));
+            demandData[COLUMN_ATTRIBUTES] = lazyCellValue(demand, () -> StringUtils.mapToString(demand.getAttributes()));
             for (int i = netPlanViewTableHeader.length; i < netPlanViewTableHeader.length + attributesColumns.size(); i++)
             {
                 if (demand.getAttributes().containsKey(attributesColumns.get(i - netPlanViewTableHeader.length)))
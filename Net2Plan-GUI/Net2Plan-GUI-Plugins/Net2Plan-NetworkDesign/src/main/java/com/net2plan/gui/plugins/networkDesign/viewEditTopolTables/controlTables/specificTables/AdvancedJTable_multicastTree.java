@@ -92,8 +92,18 @@ public class AdvancedJTable_multicastTree extends AdvancedJTable_networkElement
     {
         final List<MulticastTree> rowVisibleTrees = getVisibleElementsInTable();
         List<Object[]> allTreeData = new LinkedList<Object[]>();
+        int aggWCNumHops = 0;
+        double aggWCLength = 0;
+        double aggWCPropDelay = 0;
         for (MulticastTree tree : rowVisibleTrees)
         {
+            /* The worst case path of the tree is computed once, for the row and the aggregation row */
+            final int worstCaseNumHops = tree.getTreeMaximumPathLengthInHops();
+            final double worstCaseLength = tree.getTreeMaximumPathLengthInKm();
+            final double worstCasePropDelay = tree.getTreeMaximumPropagationDelayInMs();
+            aggWCNumHops = Math.max(aggWCNumHops, worstCaseNumHops);
+            aggWCLength = Math.max(aggWCLength, worstCaseLength);
+            aggWCPropDelay = Math.max(aggWCPropDelay, worstCasePropDelay);
             final MulticastDemand demand = tree.getMulticastDemand();
             final double maxUtilization = tree.getLinkSet().stream().mapToDouble(e -> e.getUtilization()).max().orElse(0);
             final Node ingressNode = tree.getIngressNode();
@@ -111,15 +121,15 @@ public class AdvancedJTable_multicastTree extends AdvancedJTable_networkElement
             treeData[COLUMN_OFFEREDTRAFFIC] = demand.getOfferedTraffic();
             treeData[COLUMN_CARRIEDTRAFFIC] = demand.getCarriedTraffic();
             treeData[COLUMN_OCCUPIEDCAPACITY] = tree.getOccupiedLinkCapacity();
-            treeData[COLUMN_SETOFLINKS] = CollectionUtils.join(NetPlan.getIndexes(tree.getLinkSet()), " ; ");
+            treeData[COLUMN_SETOFLINKS] = lazyCellValue(tree, () -> CollectionUtils.join(NetPlan.getIndexes(tree.getLinkSet()), " ; "));
             treeData[COLUMN_NUMLINKS] = tree.getLinkSet().size();
-            treeData[COLUMN_SETOFNODES] = CollectionUtils.join(NetPlan.getIndexes(tree.getNodeSet()), " ; ");
-            treeData[COLUMN_WORSECASENUMHOPS] = tree.getTreeMaximumPathLengthInHops();
-            treeData[COLUMN_WORSECASELENGTH] = tree.getTreeMaximumPathLengthInKm();
-            treeData[COLUMN_WORSECASEPROPDELAY] = tree.getTreeMaximumPropagationDelayInMs();
+            treeData[COLUMN_SETOFNODES] = lazyCellValue(tree, () -> CollectionUtils.join(NetPlan.getIndexes(tree.getNodeSet()), " ; "));
+            treeData[COLUMN_WORSECASENUMHOPS] = worstCaseNumHops;
+            treeData[COLUMN_WORSECASELENGTH] = worstCaseLength;
+            treeData[COLUMN_WORSECASEPROPDELAY] = worstCasePropDelay;
             treeData[COLUMN_BOTTLENECKUTILIZATION] = maxUtilization;
-            treeData[COLUMN_TAGS] = StringUtils.listToString(Lists.newArrayList(tree.getTags()));
-            treeData[COLUMN_ATTRIBUTES] = StringUtils.mapToString(tree.getAttributes());
+            treeData[COLUMN_TAGS] = lazyCellValue(tree, () -> StringUtils.listToString(Lists.newArrayList(tree.getTags())));
+            treeData[COLUMN_ATTRIBUTES] = lazyCellValue(tree, () -> StringUtils.mapToString(tree.getAttributes()));
 
             for (int i = netPlanViewTableHeader.length; i < netPlanViewTableHeader.length + attributesColumns.size(); i++)
             {
@@ -136,9 +146,6 @@ public class AdvancedJTable_multicastTree extends AdvancedJTable_networkElement
         final double aggOffered = rowVisibleTrees.stream().map(e -> e.getMulticastDemand()).mapToDouble(e -> e.getOfferedTraffic()).sum();
         final double aggCarried = rowVisibleTrees.stream().mapToDouble(e -> e.getCarriedTraffic()).sum();
         final double aggOccupiedCap = rowVisibleTrees.stream().mapToDouble(e -> e.getOccupiedLinkCapacity()).sum();
-        final int aggWCNumHops = rowVisibleTrees.stream().mapToInt(e -> e.getTreeMaximumPathLengthInHops()).max().orElse(0);
-        final double aggWCLength = rowVisibleTrees.stream().mapToDouble(e -> e.getTreeMaximumPathLengthInKm()).max().orElse(0);
-        final double aggWCPropDelay = rowVisibleTrees.stream().mapToDouble(e -> e.getTreeMaximumPropagationDelayInMs()).max().orElse(0);
         final LastRowAggregatedValue[] aggregatedData = new LastRowAggregatedValue[netPlanViewTableHeader.length + attributesColumns.size()];
         Arrays.fill(aggregatedData, new LastRowAggregatedValue());
         aggregatedData[COLUMN_OFFEREDTRAFFIC] = new LastRowAggregatedValue(aggOffered);
@@ -119,9 +119,6 @@ public class AdvancedJTable_node extends AdvancedJTable_networkElement
 
         for (Node node : rowVisibleNodes)
         {
-            Set<Link> outgoingLinks = node.getOutgoingLinks();
-            Set<Link> incomingLinks = node.getIncomingLinks();
-
             Object[] nodeData = new Object[netPlanViewTableHeader.length + attributesTitles.size()];
             nodeData[COLUMN_ID] = node.getId();
             nodeData[COLUMN_INDEX] = node.getIndex();
@@ -130,18 +127,18 @@ public class AdvancedJTable_node extends AdvancedJTable_networkElement
             nodeData[COLUMN_STATE] = node.isUp();
             nodeData[COLUMN_XCOORD] = node.getXYPositionMap().getX();
             nodeData[COLUMN_YCOORD] = node.getXYPositionMap().getY();
-            nodeData[COLUMN_OUTLINKS] = outgoingLinks.isEmpty() ? "none" : outgoingLinks.size() + " (" + CollectionUtils.join(outgoingLinks, ", ") + ")";
-            nodeData[COLUMN_INLINKS] = incomingLinks.isEmpty() ? "none" : incomingLinks.size() + " (" + CollectionUtils.join(incomingLinks, ", ") + ")";
+            nodeData[COLUMN_OUTLINKS] = lazyCellValue(node, () -> joinLinks(node.getOutgoingLinks()));
+            nodeData[COLUMN_INLINKS] = lazyCellValue(node, () -> joinLinks(node.getIncomingLinks()));
             nodeData[COLUMN_INGRESSTRAFFIC] = node.getIngressOfferedTraffic() + "(" + node.getIngressCarriedTraffic() + ")";
             nodeData[COLUMN_EGRESSTRAFFIC] = node.getEgressOfferedTraffic() + "(" + node.getEgressCarriedTraffic() + ")";
             nodeData[COLUMN_INCOMINGLINKTRAFFIC] = node.getIncomingLinksTraffic();
             nodeData[COLUMN_OUTGOINGLINKTRAFFIC] = node.getOutgoingLinksTraffic();
             nodeData[COLUMN_INGRESSMULTICASTTRAFFIC] = node.getIngressOfferedMulticastTraffic() + "(" + node.getIngressOfferedMulticastTraffic() + ")";
             nodeData[COLUMN_EGRESSMULTICASTTRAFFIC] = node.getEgressOfferedMulticastTraffic() + "(" + node.getEgressOfferedMulticastTraffic() + ")";
-            nodeData[COLUMN_SRGS] = node.getSRGs().isEmpty() ? "none" : node.getSRGs().size() + " (" + CollectionUtils.join(currentState.getIndexes(node.getSRGs()), ", ") + ")";
+            nodeData[COLUMN_SRGS] = lazyCellValue(node, () -> node.getSRGs().isEmpty() ? "none" : node.getSRGs().size() + " (" + CollectionUtils.join(NetPlan.getIndexes(node.getSRGs()), ", ") + ")");
             nodeData[COLUMN_POPULATION] = node.getPopulation();
-            nodeData[COLUMN_TAGS] = StringUtils.listToString(Lists.newArrayList(node.getTags()));
-            nodeData[COLUMN_ATTRIBUTES] = StringUtils.mapToString(node.getAttributes());
+            nodeData[COLUMN_TAGS] = lazyCellValue(node, () -> StringUtils.listToString(Lists.newArrayList(node.getTags())));
+            nodeData[COLUMN_ATTRIBUTES] = lazyCellValue(node, () -> StringUtils.mapToString(node.getAttributes()));
             for (int i = netPlanViewTableHeader.length; i < netPlanViewTableHeader.length + attributesTitles.size(); i++)
             {
                 if (node.getAttributes().containsKey(attributesTitles.get(i - netPlanViewTableHeader.length)))
@@ -194,6 +191,11 @@ public class AdvancedJTable_node extends AdvancedJTable_networkElement
     }
 
 
+    private static String joinLinks(Set<Link> links)
+    {
+        return links.isEmpty() ? "none" : links.size() + " (" + CollectionUtils.join(links, ", ") + ")";
+    }
+
     public String getTabName()
     {
         return netPlanViewTabName;
@@ -84,12 +84,12 @@ public class AdvancedJTable_resource extends AdvancedJTable_networkElement
             resData[COLUMN_CAPACITY] = res.getCapacity();
             resData[COLUMN_CAPACITYMUNITS] = res.getCapacityMeasurementUnits();
             resData[COLUMN_OCCUPIEDCAPACITY] = res.getOccupiedCapacity();
-            resData[COLUMN_TRAVERSINGROUTES] = joinTraversingRoutesWithTheirCapacities(res);
-            resData[COLUMN_UPPERRESOURCES] = joinUpperResourcesWithTheirCapacities(res);
-            resData[COLUMN_BASERESOURCES] = joinBaseResourcesWithTheirCapacities(res);
+            resData[COLUMN_TRAVERSINGROUTES] = lazyCellValue(res, () -> joinTraversingRoutesWithTheirCapacities(res));
+            resData[COLUMN_UPPERRESOURCES] = lazyCellValue(res, () -> joinUpperResourcesWithTheirCapacities(res));
+            resData[COLUMN_BASERESOURCES] = lazyCellValue(res, () -> joinBaseResourcesWithTheirCapacities(res));
             resData[COLUMN_PROCESSINGTIME] = res.getProcessingTimeToTraversingTrafficInMs();
-            resData[COLUMN_TAGS] = StringUtils.listToString(Lists.newArrayList(res.getTags()));
-            resData[COLUMN_ATTRIBUTES] = StringUtils.mapToString(res.getAttributes());
+            resData[COLUMN_TAGS] = lazyCellValue(res, () -> StringUtils.listToString(Lists.newArrayList(res.getTags())));
+            resData[COLUMN_ATTRIBUTES] = lazyCellValue(res, () -> StringUtils.mapToString(res.getAttributes()));
 
             for (int i = netPlanViewTableHeader.length; i < netPlanViewTableHeader.length + attributesTitles.size(); i++)
             {
@@ -112,17 +112,17 @@ public class AdvancedJTable_route extends AdvancedJTable_networkElement
             routeData[COLUMN_EGRESSNODE] = egressNode.getIndex() + (egressNodeName.isEmpty() ? "" : " (" + egressNodeName + ")");
             routeData[COLUMN_DEMANDOFFEREDTRAFFIC] = demand.getOfferedTraffic();
             routeData[COLUMN_CARRIEDTRAFFIC] = route.getCarriedTraffic();
-            routeData[COLUMN_OCCUPIEDCAPACITY] = getSequenceOccupiedCapacities(route);
-            routeData[COLUMN_SEQUENCEOFLINKSANDRESOURCES] = getSequenceLinkResourceIndexes(route);
-            routeData[COLUMN_SEQUENCEOFNODES] = getSequenceNodeIndexesWithResourceInfo(route);
+            routeData[COLUMN_OCCUPIEDCAPACITY] = lazyCellValue(route, () -> getSequenceOccupiedCapacities(route));
+            routeData[COLUMN_SEQUENCEOFLINKSANDRESOURCES] = lazyCellValue(route, () -> getSequenceLinkResourceIndexes(route));
+            routeData[COLUMN_SEQUENCEOFNODES] = lazyCellValue(route, () -> getSequenceNodeIndexesWithResourceInfo(route));
             routeData[COLUMN_NUMHOPS] = route.getNumberOfHops();
             routeData[COLUMN_LENGTH] = route.getLengthInKm();
             routeData[COLUMN_PROPDELAY] = route.getPropagationDelayInMiliseconds();
             routeData[COLUMN_BOTTLENECKUTILIZATION] = maxUtilization;
-            routeData[COLUMN_ISBACKUP] = (route.isBackupRoute() ? "yes (" + (CollectionUtils.join(NetPlan.getIndexes(route.getRoutesIAmBackup()), ", ")) + ")" : "no");
-            routeData[COLUMN_HASBACKUPROUTES] = (route.hasBackupRoutes() ? "yes (" + (CollectionUtils.join(NetPlan.getIndexes(route.getBackupRoutes()), ", ")) + ")" : "no");
-            routeData[COLUMN_TAGS] = StringUtils.listToString(Lists.newArrayList(route.getTags()));
-            routeData[COLUMN_ATTRIBUTES] = StringUtils.mapToString(route.getAttributes());
+            routeData[COLUMN_ISBACKUP] = lazyCellValue(route, () -> route.isBackupRoute() ? "yes (" + (CollectionUtils.join(NetPlan.getIndexes(route.getRoutesIAmBackup()), ", ")) + ")" : "no");
+            routeData[COLUMN_HASBACKUPROUTES] = lazyCellValue(route, () -> route.hasBackupRoutes() ? "yes (" + (CollectionUtils.join(NetPlan.getIndexes(route.getBackupRoutes()), ", ")) + ")" : "no");
+            routeData[COLUMN_TAGS] = lazyCellValue(route, () -> StringUtils.listToString(Lists.newArrayList(route.getTags())));
+            routeData[COLUMN_ATTRIBUTES] = lazyCellValue(route, () -> StringUtils.mapToString(route.getAttributes()));
 
             for (int i = netPlanViewTableHeader.length; i < netPlanViewTableHeader.length + attributesColumns.size(); i++)
             {
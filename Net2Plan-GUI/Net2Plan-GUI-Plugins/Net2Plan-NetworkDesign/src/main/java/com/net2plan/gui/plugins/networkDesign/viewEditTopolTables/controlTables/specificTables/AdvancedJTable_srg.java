@@ -54,19 +54,19 @@ public class AdvancedJTable_srg extends AdvancedJTable_networkElement
             "Nodes", "Links", "Links (other layers)", "# Affected routes", "# Affected backup routes", "# Affected multicast trees", "Tags", "Attributes");
     private static final String[] netPlanViewTableTips = StringUtils.arrayOf("Unique identifier (never repeated in the same netPlan object, never changes, long)",
             "Index (consecutive integer starting in zero)", "Mean time to fail", "Mean time to repair", "Expected availability", "Nodes included into the shared-risk group", "Links (in this layer) included into the shared-risk group", "Links (in other layers) included into the shared-risk group", "# Affected routes (primary or backup)", "# Affected routes that are designated as backup routes", "# Affected multicast trees", "Tags", "Attributes");
-    private static final int COLUMN_ID = 0;
-    private static final int COLUMN_INDEX = 1;
-    private static final int COLUMN_MTTF = 2;
-    private static final int COLUMN_MTTR = 3;
-    private static final int COLUMN_AVAILABILITY = 4;
-    private static final int COLUMN_NODES = 5;
-    private static final int COLUMN_LINKS = 6;
-    private static final int COLUMN_LINKSOTHERLAYERS = 7;
-    private static final int COLUMN_AFFECTEDROUTES = 8;
-    private static final int COLUMN_AFFECTEDBACKUPROUTES = 9;
-    private static final int COLUMN_AFFECTEDTREES = 10;
-    private static final int COLUMN_TAGS = 11;
-    private static final int COLUMN_ATTRIBUTES = 12;
+    static final int COLUMN_ID = 0;
+    static final int COLUMN_INDEX = 1;
+    static final int COLUMN_MTTF = 2;
+    static final int COLUMN_MTTR = 3;
+    static final int COLUMN_AVAILABILITY = 4;
+    static final int COLUMN_NODES = 5;
+    static final int COLUMN_LINKS = 6;
+    static final int COLUMN_LINKSOTHERLAYERS = 7;
+    static final int COLUMN_AFFECTEDROUTES = 8;
+    static final int COLUMN_AFFECTEDBACKUPROUTES = 9;
+    static final int COLUMN_AFFECTEDTREES = 10;
+    static final int COLUMN_TAGS = 11;
+    static final int COLUMN_ATTRIBUTES = 12;
     private static int MAXNUMDECIMALSINAVAILABILITY = 7;
 
     public AdvancedJTable_srg(final GUINetworkDesign callback)
@@ -92,12 +92,7 @@ public class AdvancedJTable_srg extends AdvancedJTable_networkElement
         List<Object[]> allSRGData = new LinkedList<Object[]>();
         for (SharedRiskGroup srg : rowVisibleSRGs)
         {
-            final Set<Route> routeIds_thisSRG = currentState.getRoutingType() == Constants.RoutingType.SOURCE_ROUTING ? srg.getAffectedRoutes(layer) : new LinkedHashSet<Route>();
-            final Set<Route> segmentIds_thisSRG = currentState.getRoutingType() == Constants.RoutingType.SOURCE_ROUTING ? srg.getAffectedRoutes(layer).stream().filter(e -> e.isBackupRoute()).collect(Collectors.toSet()) : new LinkedHashSet<Route>();
-            final Set<MulticastTree> treeIds_thisSRG = currentState.getRoutingType() == Constants.RoutingType.SOURCE_ROUTING ? srg.getAffectedMulticastTrees(layer) : new LinkedHashSet<MulticastTree>();
-            final int numRoutes = routeIds_thisSRG.size();
-            final int numSegments = segmentIds_thisSRG.size();
-            final int numMulticastTrees = treeIds_thisSRG.size();
+            final boolean isSourceRouting = currentState.getRoutingType() == Constants.RoutingType.SOURCE_ROUTING;
             final Set<Node> nodeIds_thisSRG = srg.getNodes();
             final Set<Link> linkIds_thisSRG = srg.getLinks(layer);
 
@@ -110,11 +105,12 @@ public class AdvancedJTable_srg extends AdvancedJTable_networkElement
             srgData[COLUMN_NODES] = nodeIds_thisSRG.isEmpty() ? "none" : CollectionUtils.join(NetPlan.getIndexes(nodeIds_thisSRG), ", ");
             srgData[COLUMN_LINKS] = linkIds_thisSRG.isEmpty() ? "none" : CollectionUtils.join(NetPlan.getIndexes(srg.getLinksAllLayers()), ", ");
             srgData[COLUMN_LINKSOTHERLAYERS] = srg.getLinks(layer).isEmpty() ? "none" : CollectionUtils.join(NetPlan.getIndexes(srg.getLinks(layer)), ", ");
-            srgData[COLUMN_AFFECTEDROUTES] = numRoutes == 0 ? "none" : numRoutes + " (" + CollectionUtils.join(NetPlan.getIndexes(routeIds_thisSRG), ", ") + ")";
-            srgData[COLUMN_AFFECTEDBACKUPROUTES] = numSegments == 0 ? "none" : numSegments + " (" + CollectionUtils.join(NetPlan.getIndexes(segmentIds_thisSRG), ", ") + ")";
-            srgData[COLUMN_AFFECTEDTREES] = numMulticastTrees == 0 ? "none" : numMulticastTrees + " (" + CollectionUtils.join(NetPlan.getIndexes(treeIds_thisSRG), ", ") + ")";
-            srgData[COLUMN_TAGS] = StringUtils.listToString(Lists.newArrayList(srg.getTags()));
-            srgData[COLUMN_ATTRIBUTES] = StringUtils.mapToString(srg.getAttributes());
+            /* The affected routes and trees are only computed for the rows shown */
+            srgData[COLUMN_AFFECTEDROUTES] = isSourceRouting ? lazyCellValue(srg, () -> joinIndexes(srg.getAffectedRoutes(layer))) : "none";
+            srgData[COLUMN_AFFECTEDBACKUPROUTES] = isSourceRouting ? lazyCellValue(srg, () -> joinIndexes(srg.getAffectedRoutes(layer).stream().filter(e -> e.isBackupRoute()).collect(Collectors.toSet()))) : "none";
+            srgData[COLUMN_AFFECTEDTREES] = isSourceRouting ? lazyCellValue(srg, () -> joinIndexes(srg.getAffectedMulticastTrees(layer))) : "none";
+            srgData[COLUMN_TAGS] = lazyCellValue(srg, () -> StringUtils.listToString(Lists.newArrayList(srg.getTags())));
+            srgData[COLUMN_ATTRIBUTES] = lazyCellValue(srg, () -> StringUtils.mapToString(srg.getAttributes()));
 
             for (int i = netPlanViewTableHeader.length; i < netPlanViewTableHeader.length + attributesColumns.size(); i++)
             {
@@ -147,6 +143,11 @@ public class AdvancedJTable_srg extends AdvancedJTable_networkElement
         return allSRGData;
     }
 
+    private static String joinIndexes(Collection<? extends NetworkElement> elements)
+    {
+        return elements.isEmpty() ? "none" : elements.size() + " (" + CollectionUtils.join(NetPlan.getIndexes(elements), ", ") + ")";
+    }
+
     public String getTabName()
     {
         return netPlanViewTabName;
@@ -0,0 +1,203 @@
+package com.net2plan.gui.plugins.networkDesign.viewEditTopolTables.controlTables.specificTables;
+
+import cern.colt.matrix.tdouble.DoubleMatrix1D;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.net2plan.gui.plugins.GUINetworkDesign;
+import com.net2plan.gui.utils.ClassAwareTableModel;
+import com.net2plan.interfaces.networkDesign.Demand;
+import com.net2plan.interfaces.networkDesign.Link;
+import com.net2plan.interfaces.networkDesign.MulticastDemand;
+import com.net2plan.interfaces.networkDesign.MulticastTree;
+import com.net2plan.interfaces.networkDesign.NetPlan;
+import com.net2plan.interfaces.networkDesign.NetworkLayer;
+import com.net2plan.interfaces.networkDesign.Node;
+import com.net2plan.interfaces.networkDesign.Route;
+import com.net2plan.interfaces.networkDesign.SharedRiskGroup;
+import com.net2plan.libraries.SRGUtils;
+import com.net2plan.utils.CollectionUtils;
+import com.net2plan.utils.Constants;
+import com.net2plan.utils.StringUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.swing.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the cells computed lazily in the table model have the values that the tables computed eagerly before
+ */
+public class AdvancedJTable_lazyCells_Test
+{
+    private static final int N = 5;
+
+    private static GUINetworkDesign networkDesign;
+    private static NetPlan netPlan;
+    private static NetworkLayer sourceRoutingLayer;
+    private static NetworkLayer hopByHopLayer;
+
+    @Before
+    public void setUp()
+    {
+        networkDesign = new GUINetworkDesign();
+        networkDesign.configure(new JPanel());
+
+        /* A bidirectional ring with routes, backup routes, multicast trees and SRGs, and a hop-by-hop layer on top of it */
+        netPlan = new NetPlan();
+        sourceRoutingLayer = netPlan.getNetworkLayerDefault();
+        for (int n = 0; n < N; n++) netPlan.addNode(n, n, "Node " + n, null);
+        for (int n = 0; n < N; n++)
+        {
+            final Map<String, String> attributes = new HashMap<>();
+            attributes.put("ring", "yes");
+            if (n % 2 == 0) attributes.put("even", Integer.toString(n));
+            final Link e1 = netPlan.addLink(netPlan.getNode(n), netPlan.getNode((n + 1) % N), 100, 10, 200000, attributes, sourceRoutingLayer);
+            final Link e2 = netPlan.addLink(netPlan.getNode((n + 1) % N), netPlan.getNode(n), 100, 10, 200000, null, sourceRoutingLayer);
+            e1.addTag("clockwise");
+            if (n % 2 == 0) e2.addTag("even");
+        }
+        SRGUtils.configureSRGs(netPlan, 1000, 10, SRGUtils.SharedRiskModel.PER_BIDIRECTIONAL_LINK_BUNDLE, true, sourceRoutingLayer);
+        netPlan.addSRG(1000, 10, Collections.singletonMap("node", "yes")).addNode(netPlan.getNode(0));
+        netPlan.getSRG(0).addTag("first");
+        for (int n = 0; n < N; n++)
+        {
+            final Node a = netPlan.getNode(n);
+            final Node b = netPlan.getNode((n + 2) % N);
+            final Demand d = netPlan.addDemand(a, b, 10, null, sourceRoutingLayer);
+            final List<Link> clockwise = Arrays.asList(netPlan.getNodePairLinks(a, netPlan.getNode((n + 1) % N), false, sourceRoutingLayer).iterator().next(), netPlan.getNodePairLinks(netPlan.getNode((n + 1) % N), b, false, sourceRoutingLayer).iterator().next());
+            final Route primary = netPlan.addRoute(d, 10, 10, clockwise, null);
+            if (n % 2 != 0) continue;
+            final List<Link> counterClockwise = new ArrayList<>();
+            for (int cont = 0; cont < N - 2; cont++)
+                counterClockwise.add(netPlan.getNodePairLinks(netPlan.getNode((n - cont + N) % N), netPlan.getNode((n - cont - 1 + N) % N), false, sourceRoutingLayer).iterator().next());
+            primary.addBackupRoute(netPlan.addRoute(d, 0, 10, counterClockwise, null));
+        }
+        final MulticastDemand multicastDemand = netPlan.addMulticastDemand(netPlan.getNode(0), Sets.newHashSet(netPlan.getNode(1), netPlan.getNode(2)), 5, null, sourceRoutingLayer);
+        netPlan.addMulticastTree(multicastDemand, 5, 5, Sets.newHashSet(netPlan.getNodePairLinks(netPlan.getNode(0), netPlan.getNode(1), false, sourceRoutingLayer).iterator().next(), netPlan.getNodePairLinks(netPlan.getNode(1), netPlan.getNode(2), false, sourceRoutingLayer).iterator().next()), null);
+
+        hopByHopLayer = netPlan.addLayer("HbH", null, null, null, null, null);
+        netPlan.setRoutingType(Constants.RoutingType.HOP_BY_HOP_ROUTING, hopByHopLayer);
+        for (int n = 0; n < N; n++) netPlan.addLink(netPlan.getNode(n), netPlan.getNode((n + 1) % N), 100, 10, 200000, null, hopByHopLayer);
+        final Map<Demand, Map<Link, Double>> forwardingRules = new HashMap<>();
+        for (int n = 0; n < N; n++)
+        {
+            final Demand d = netPlan.addDemand(netPlan.getNode(n), netPlan.getNode((n + 2) % N), 3, null, hopByHopLayer);
+            final Map<Link, Double> rules = new HashMap<>();
+            rules.put(netPlan.getLink(n, hopByHopLayer), 1.0);
+            rules.put(netPlan.getLink((n + 1) % N, hopByHopLayer), 1.0);
+            forwardingRules.put(d, rules);
+        }
+        netPlan.setForwardingRules(forwardingRules, null);
+        netPlan.addSRG(1000, 10, null).addLink(netPlan.getLink(0, hopByHopLayer));
+
+        networkDesign.setDesign(netPlan);
+        networkDesign.updateVisualizationAfterNewTopology();
+    }
+
+    @Test
+    public void linkTableTest()
+    {
+        for (NetworkLayer layer : Arrays.asList(sourceRoutingLayer, hopByHopLayer))
+        {
+            netPlan.setNetworkLayerDefault(layer);
+            final boolean isSourceRouting = layer == sourceRoutingLayer;
+            final DoubleMatrix1D [] forwardingRules = new DoubleMatrix1D [netPlan.getNumberOfLinks(layer)];
+            for (Link link : netPlan.getLinks(layer))
+                forwardingRules [link.getIndex()] = isSourceRouting ? null : netPlan.getMatrixDemandBasedForwardingRules(layer).viewColumn(link.getIndex()).copy();
+
+            final ClassAwareTableModel model = createModel(new AdvancedJTable_link(networkDesign).getAllData(netPlan, new ArrayList<>()));
+            assertEquals(netPlan.getNumberOfLinks(layer) + 1, model.getRowCount());
+            for (Link link : netPlan.getLinks(layer))
+            {
+                final int row = link.getIndex();
+                assertEquals(link.getId(), model.getValueAt(row, AdvancedJTable_link.COLUMN_ID));
+
+                /* The values that were computed for every link when the table was updated */
+                final Set<Route> traversingRoutes = isSourceRouting ? link.getTraversingRoutes() : Collections.emptySet();
+                final Set<Route> traversingBURoutes = isSourceRouting ? link.getTraversingBackupRoutes() : Collections.emptySet();
+                final Set<MulticastTree> traversingTrees = link.getTraversingTrees();
+                int numForwardingRules = 0;
+                if (!isSourceRouting) for (int d = 0; d < forwardingRules [row].size(); d++) if (forwardingRules [row].get(d) != 0) numForwardingRules++;
+                assertEquals(traversingRoutes.size() + (traversingRoutes.isEmpty() ? "" : " (" + CollectionUtils.join(NetPlan.getIndexes(traversingRoutes), ", ") + ")"), model.getValueAt(row, AdvancedJTable_link.COLUMN_NUMROUTES));
+                assertEquals(traversingBURoutes.size() + (traversingBURoutes.isEmpty() ? "" : " (" + CollectionUtils.join(NetPlan.getIndexes(traversingBURoutes), ", ") + ")"), model.getValueAt(row, AdvancedJTable_link.COLUMN_NUMSEGMENTS));
+                assertEquals(Integer.toString(numForwardingRules), model.getValueAt(row, AdvancedJTable_link.COLUMN_NUMFORWRULES));
+                assertEquals(traversingTrees.size() + (traversingTrees.isEmpty() ? "" : " (" + CollectionUtils.join(NetPlan.getIndexes(traversingTrees), ", ") + ")"), model.getValueAt(row, AdvancedJTable_link.COLUMN_NUMTREES));
+                assertEquals(link.getSRGs().isEmpty() ? "none" : link.getSRGs().size() + " (" + CollectionUtils.join(NetPlan.getIndexes(link.getSRGs()), ", ") + ")", model.getValueAt(row, AdvancedJTable_link.COLUMN_SRGS));
+                assertEquals(StringUtils.listToString(Lists.newArrayList(link.getTags())), model.getValueAt(row, AdvancedJTable_link.COLUMN_TAGS));
+                assertEquals(StringUtils.mapToString(link.getAttributes()), model.getValueAt(row, AdvancedJTable_link.COLUMN_ATTRIBUTES));
+            }
+            if (isSourceRouting) assertNotEquals("0", model.getValueAt(0, AdvancedJTable_link.COLUMN_NUMROUTES));
+            else assertNotEquals("0", model.getValueAt(0, AdvancedJTable_link.COLUMN_NUMFORWRULES));
+            checkNoLazyValuesLeft(model);
+        }
+    }
+
+    @Test
+    public void srgTableTest()
+    {
+        for (NetworkLayer layer : Arrays.asList(sourceRoutingLayer, hopByHopLayer))
+        {
+            netPlan.setNetworkLayerDefault(layer);
+            final boolean isSourceRouting = layer == sourceRoutingLayer;
+            final ClassAwareTableModel model = createModel(new AdvancedJTable_srg(networkDesign).getAllData(netPlan, new ArrayList<>()));
+            assertEquals(netPlan.getNumberOfSRGs() + 1, model.getRowCount());
+            for (SharedRiskGroup srg : netPlan.getSRGs())
+            {
+                final int row = srg.getIndex();
+                assertEquals(srg.getId(), model.getValueAt(row, AdvancedJTable_srg.COLUMN_ID));
+
+                /* The values that were computed for every SRG when the table was updated */
+                final Set<Route> affectedRoutes = isSourceRouting ? srg.getAffectedRoutes(layer) : Collections.emptySet();
+                final Set<Route> affectedBackupRoutes = isSourceRouting ? srg.getAffectedRoutes(layer).stream().filter(e -> e.isBackupRoute()).collect(Collectors.toSet()) : Collections.emptySet();
+                final Set<MulticastTree> affectedTrees = isSourceRouting ? srg.getAffectedMulticastTrees(layer) : Collections.emptySet();
+                assertEquals(affectedRoutes.isEmpty() ? "none" : affectedRoutes.size() + " (" + CollectionUtils.join(NetPlan.getIndexes(affectedRoutes), ", ") + ")", model.getValueAt(row, AdvancedJTable_srg.COLUMN_AFFECTEDROUTES));
+                assertEquals(affectedBackupRoutes.isEmpty() ? "none" : affectedBackupRoutes.size() + " (" + CollectionUtils.join(NetPlan.getIndexes(affectedBackupRoutes), ", ") + ")", model.getValueAt(row, AdvancedJTable_srg.COLUMN_AFFECTEDBACKUPROUTES));
+                assertEquals(affectedTrees.isEmpty() ? "none" : affectedTrees.size() + " (" + CollectionUtils.join(NetPlan.getIndexes(affectedTrees), ", ") + ")", model.getValueAt(row, AdvancedJTable_srg.COLUMN_AFFECTEDTREES));
+                assertEquals(StringUtils.listToString(Lists.newArrayList(srg.getTags())), model.getValueAt(row, AdvancedJTable_srg.COLUMN_TAGS));
+                assertEquals(StringUtils.mapToString(srg.getAttributes()), model.getValueAt(row, AdvancedJTable_srg.COLUMN_ATTRIBUTES));
+            }
+            if (isSourceRouting) assertNotEquals("none", model.getValueAt(0, AdvancedJTable_srg.COLUMN_AFFECTEDBACKUPROUTES));
+            checkNoLazyValuesLeft(model);
+        }
+    }
+
+    @Test
+    public void removedElementTest()
+    {
+        final ClassAwareTableModel model = createModel(new AdvancedJTable_link(networkDesign).getAllData(netPlan, new ArrayList<>()));
+        final Object tagsBeforeRemoval = model.getValueAt(1, AdvancedJTable_link.COLUMN_TAGS);
+        netPlan.getLink(0).remove();
+
+        /* The cells already read keep their value, and the ones of removed elements are empty */
+        assertNull(model.getValueAt(0, AdvancedJTable_link.COLUMN_TAGS));
+        assertEquals(tagsBeforeRemoval, model.getValueAt(1, AdvancedJTable_link.COLUMN_TAGS));
+    }
+
+    private static ClassAwareTableModel createModel(List<Object[]> allData)
+    {
+        final Object[] header = new Object[allData.get(0).length];
+        for (int col = 0; col < header.length; col++) header[col] = "Column " + col;
+        return new ClassAwareTableModel(allData.toArray(new Object[allData.size()][]), header);
+    }
+
+    /* Once read, every lazy cell is replaced by its value in the model */
+    private static void checkNoLazyValuesLeft(ClassAwareTableModel model)
+    {
+        for (int row = 0; row < model.getRowCount(); row++)
+            for (int col = 0; col < model.getColumnCount(); col++)
+                model.getValueAt(row, col);
+        for (Object rowData : model.getDataVector())
+            for (Object value : (Vector) rowData)
+                assertFalse(value instanceof ClassAwareTableModel.LazyValue);
+    }
+}